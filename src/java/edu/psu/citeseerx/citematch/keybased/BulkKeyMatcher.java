@@ -0,0 +1,707 @@
+/*
+ * Copyright 2007 Penn State University
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.psu.citeseerx.citematch.keybased;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import edu.psu.citeseerx.citematch.utils.SelfCitationFilter;
+import edu.psu.citeseerx.dao2.InferenceBuilder;
+import edu.psu.citeseerx.dao2.logic.CSXDAO;
+import edu.psu.citeseerx.domain.Author;
+import edu.psu.citeseerx.domain.Citation;
+import edu.psu.citeseerx.domain.Document;
+import edu.psu.citeseerx.domain.ThinDoc;
+import edu.psu.citeseerx.utility.ExternalSorter;
+
+/**
+ * Clusters all Documents and Citations in the corpus offline, writing the
+ * contents of the citation graph database as tab separated files for
+ * LOAD DATA INFILE instead of going through the CiteClusterDAO one
+ * statement at a time.
+ * <br><br>
+ * Documents are read and keyed by a pool of threads but are clustered one
+ * at a time in DOI order, following the same rules as
+ * CiteClusterDAOImpl.clusterDocument, so the files hold what
+ * {@link KeyMatcher#buildAll(String)} would have produced on an empty
+ * database.  The keymap is held in memory as a {@link ClusterKeyTable};
+ * citation graph edges and cluster metadata are written out unsorted and
+ * put together afterwards with external sorts, so their size is bounded by
+ * disk rather than heap.
+ * <br><br>
+ * The generated load.sql loads the citation graph before the clusters so
+ * that the citegraph triggers find no clusters to update and the cluster
+ * sizes come from the files.
+ *
+ * @version $Rev$ $Date$
+ */
+public class BulkKeyMatcher {
+
+    public static final String CLUSTERS_FILE  = "clusters.txt";
+    public static final String KEYMAP_FILE    = "keymap.txt";
+    public static final String CITATIONS_FILE = "citations.txt";
+    public static final String PAPERS_FILE    = "papers.txt";
+    public static final String CITEGRAPH_FILE = "citegraph.txt";
+    public static final String LOAD_SCRIPT    = "load.sql";
+
+    private static final String ENCODING = "UTF-8";
+    private static final String NULL = "\\N";
+
+    private static final String DOC_EVENT = "D";
+    private static final String OBSERVATION_EVENT = "O";
+
+    private final KeyMatcher keyMatcher = new KeyMatcher();
+
+    private CSXDAO csxdao;
+
+    public void setCSXDAO(CSXDAO csxdao) {
+        this.csxdao = csxdao;
+    } //- setCSXDAO
+
+
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * @param threads number of threads reading and keying documents
+     * (default: number of processors).
+     */
+    public void setThreads(int threads) {
+        this.threads = threads;
+    } //- setThreads
+
+
+    private int batchSize = 100;
+
+    /**
+     * @param batchSize number of documents handed to a thread at once
+     * (default 100).
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    } //- setBatchSize
+
+
+    private int expectedKeys = 10000000;
+
+    /**
+     * @param expectedKeys initial capacity of the key table (default 10M).
+     */
+    public void setExpectedKeys(int expectedKeys) {
+        this.expectedKeys = expectedKeys;
+    } //- setExpectedKeys
+
+
+    private long sortRunChars = 32L*1024*1024;
+
+    /**
+     * @param sortRunChars characters held in memory per external sort run
+     * (default 32M).
+     */
+    public void setSortRunChars(long sortRunChars) {
+        this.sortRunChars = sortRunChars;
+    } //- setSortRunChars
+
+
+    /**
+     * Clusters every document from the given DOI on and writes the load
+     * files to outputDir.  The citation graph database should be empty
+     * before the files are loaded.
+     * @param start
+     * @param outputDir
+     * @throws IOException
+     * @throws JSONException
+     */
+    public void buildAll(String start, File outputDir)
+    throws IOException, JSONException {
+
+        if (!outputDir.isDirectory() && !outputDir.mkdirs()) {
+            throw new IOException("Could not create " + outputDir);
+        }
+        Build build = new Build(outputDir);
+        try {
+            readAll(start, build);
+            build.finish();
+        } finally {
+            build.close();
+        }
+
+    }  //- buildAll
+
+
+    /*
+     * Reads and keys documents on the pool, handing them to the build in
+     * DOI order.  At most two batches per thread are outstanding.
+     */
+    private void readAll(String start, Build build)
+    throws IOException, JSONException {
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        LinkedList<Future<List<KeyedDocument>>> pending =
+            new LinkedList<Future<List<KeyedDocument>>>();
+        int counter = 0;
+        try {
+            while (true) {
+                List<String> dois = csxdao.getDOIs(start, 1000);
+                if (dois.isEmpty()) {
+                    break;
+                }
+                for (int i=0; i<dois.size(); i+=batchSize) {
+                    List<String> batch = new ArrayList<String>(dois.subList(i,
+                            Math.min(i+batchSize, dois.size())));
+                    pending.add(pool.submit(new KeyingTask(batch)));
+                }
+                start = dois.get(dois.size()-1);
+
+                while (pending.size() > threads*2) {
+                    counter += build.clusterDocuments(
+                            take(pending.removeFirst()));
+                }
+                System.out.println("finished "+counter);
+            }
+            while (!pending.isEmpty()) {
+                counter += build.clusterDocuments(take(pending.removeFirst()));
+            }
+            System.out.println("finished "+counter);
+        } finally {
+            pool.shutdownNow();
+        }
+
+    }  //- readAll
+
+
+    private static List<KeyedDocument> take(
+            Future<List<KeyedDocument>> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException)e.getCause();
+            }
+            IOException ioe = new IOException(e.getCause().getMessage());
+            ioe.initCause(e.getCause());
+            throw ioe;
+        }
+    } //- take
+
+
+    private static class KeyedDocument {
+        final Document doc;
+        final List<String> keys;
+
+        KeyedDocument(Document doc, List<String> keys) {
+            this.doc = doc;
+            this.keys = keys;
+        }
+    }  //- class KeyedDocument
+
+
+    private class KeyingTask implements Callable<List<KeyedDocument>> {
+
+        private final List<String> dois;
+
+        KeyingTask(List<String> dois) {
+            this.dois = dois;
+        }
+
+        public List<KeyedDocument> call() {
+            List<KeyedDocument> docs = new ArrayList<KeyedDocument>();
+            for (String doi : dois) {
+                Document doc = csxdao.getDocumentFromDB(doi, true, false);
+                SelfCitationFilter.filterCitations(doc);
+                List<String> keys = keyMatcher.processDocument(doc);
+                docs.add(new KeyedDocument(doc, keys));
+            }
+            return docs;
+        }
+
+    }  //- class KeyingTask
+
+
+    /**
+     * State of a single run: the key table, the cluster counter and the
+     * files being written.
+     */
+    private class Build {
+
+        private final File outputDir;
+        private final ExternalSorter sorter;
+
+        private final ClusterKeyTable keyTable =
+            new ClusterKeyTable(expectedKeys);
+        private final BitSet inCollection = new BitSet();
+        private long lastCluster = 0;
+        private long seq = 0;
+
+        private final File eventFile;
+        private final File edgeFile;
+
+        private final Writer papers;
+        private final Writer keymap;
+        private final Writer citations;
+        private final Writer events;
+        private final Writer edges;
+
+        Build(File outputDir) throws IOException {
+            this.outputDir = outputDir;
+            sorter = new ExternalSorter(outputDir);
+            sorter.setMaxRunChars(sortRunChars);
+            eventFile = new File(outputDir, "events.tmp");
+            edgeFile = new File(outputDir, "edges.tmp");
+            papers = openWriter(new File(outputDir, PAPERS_FILE));
+            keymap = openWriter(new File(outputDir, KEYMAP_FILE));
+            citations = openWriter(new File(outputDir, CITATIONS_FILE));
+            events = openWriter(eventFile);
+            edges = openWriter(edgeFile);
+        }
+
+        int clusterDocuments(List<KeyedDocument> docs) throws IOException {
+            for (KeyedDocument keyed : docs) {
+                clusterDocument(keyed.keys, keyed.doc);
+            }
+            return docs.size();
+        }
+
+        /*
+         * Same rules as CiteClusterDAOImpl.clusterDocument.
+         */
+        private void clusterDocument(List<String> keys, Document doc)
+        throws IOException {
+
+            long cid = 0;
+            String keyFound = null;
+            if (!keys.isEmpty()) {
+                // Only test the first (best) key for documents
+                cid = keyTable.get(keys.get(0));
+                if (cid != 0) {
+                    keyFound = keys.get(0);
+                }
+            }
+
+            if (cid == 0) {
+                cid = ++lastCluster;
+                writeEvent(cid, DOC_EVENT, getClusterAuthors(doc),
+                        doc.getDatum(Document.TITLE_KEY, Document.UNENCODED));
+                for (String key : keys) {
+                    insertKeyMapping(key, cid);
+                }
+            } else {
+                for (String key : keys) {
+                    if (!key.equalsIgnoreCase(keyFound)) {
+                        insertKeyMapping(key, cid);
+                    }
+                }
+            }
+            writeRow(papers, doc.getDatum(Document.DOI_KEY),
+                    Long.toString(cid));
+            inCollection.set((int)cid);
+
+            for (Citation citation : doc.getCitations()) {
+                clusterCitation(citation.getKeys(), citation, cid);
+            }
+
+        }  //- clusterDocument
+
+        /*
+         * Same rules as CiteClusterDAOImpl.clusterCitation.
+         */
+        private void clusterCitation(List<String> keys, Citation citation,
+                long docCID) throws IOException {
+
+            if (keys.isEmpty()) {
+                return;
+            }
+
+            String keyFound = null;
+            long firstCID = 0;
+            int found = 0;
+            for (String key : keys) {
+                long cid = keyTable.get(key);
+                if (cid != 0) {
+                    keyFound = key;
+                    if (firstCID == 0) {
+                        firstCID = cid;
+                    }
+                    found++;
+                }
+            }
+
+            String context = null;
+            if (!citation.getContexts().isEmpty()) {
+                context = citation.getContexts().get(0);
+            }
+
+            long cid = firstCID;
+            if (found == 0) {
+                cid = ++lastCluster;
+                for (String key : keys) {
+                    insertKeyMapping(key, cid);
+                }
+            } else if (found == 1) {
+                for (String key : keys) {
+                    if (!key.equals(keyFound)) {
+                        insertKeyMapping(key, cid);
+                    }
+                }
+            }
+
+            writeRow(citations, citation.getDatum(Citation.DOI_KEY),
+                    Long.toString(cid),
+                    citation.getDatum(Citation.PAPERID_KEY));
+
+            ThinDoc obs = InferenceBuilder.toThinDoc(citation);
+            writeEvent(cid, OBSERVATION_EVENT, obs.getAuthors(),
+                    obs.getTitle(), obs.getVenue(), obs.getVentype(),
+                    obs.getPages(), obs.getPublisher(), obs.getTech(),
+                    Integer.toString(obs.getYear()),
+                    Integer.toString(obs.getVol()),
+                    Integer.toString(obs.getNum()));
+
+            // Don't allow clusters to cite themselves.
+            if (docCID != cid) {
+                writeRow(edges, ExternalSorter.pad(docCID),
+                        ExternalSorter.pad(cid), ExternalSorter.pad(seq++),
+                        context, citation.isSelf() ? "1" : "0");
+            }
+
+        }  //- clusterCitation
+
+        private void insertKeyMapping(String key, long cid)
+        throws IOException {
+            writeRow(keymap, null, key, Long.toString(cid));
+            keyTable.putIfAbsent(key, cid);
+        }
+
+        private void writeEvent(long cid, String type, String... fields)
+        throws IOException {
+            String[] row = new String[fields.length+3];
+            row[0] = ExternalSorter.pad(cid);
+            row[1] = ExternalSorter.pad(seq++);
+            row[2] = type;
+            System.arraycopy(fields, 0, row, 3, fields.length);
+            writeRow(events, row);
+        }
+
+
+        /**
+         * Puts together the citation graph and cluster files from the
+         * edges and events written while clustering.
+         */
+        void finish() throws IOException, JSONException {
+
+            papers.close();
+            keymap.close();
+            citations.close();
+            events.close();
+            edges.close();
+            System.out.println("clustered into "+lastCluster+" clusters, "+
+                    keyTable.size()+" distinct keys");
+
+            File edgeOrderFile = new File(outputDir, "edgeorder.tmp");
+            File countFile = new File(outputDir, "counts.tmp");
+            sorter.sort(edgeFile, edgeFile);
+            reduceEdges(edgeFile, edgeOrderFile, countFile);
+            edgeFile.delete();
+
+            sorter.sort(edgeOrderFile, edgeOrderFile);
+            writeCitegraph(edgeOrderFile);
+            edgeOrderFile.delete();
+
+            sorter.sort(countFile, countFile);
+            sorter.sort(eventFile, eventFile);
+            writeClusters(eventFile, countFile);
+            eventFile.delete();
+            countFile.delete();
+
+            writeLoadScript();
+
+        }  //- finish
+
+        /*
+         * Edges come sorted by citing, cited and sequence.  The first
+         * citation of a pair inserts the edge and sets its self flag; the
+         * context is the first one that is not null, as later citations
+         * only fill in a missing context.
+         */
+        private void reduceEdges(File sorted, File edgeOrder, File counts)
+        throws IOException {
+            BufferedReader reader = openReader(sorted);
+            Writer order = openWriter(edgeOrder);
+            Writer count = openWriter(counts);
+            try {
+                String[] edge = null;
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String[] row = splitRow(line);
+                    if (edge != null && edge[0].equals(row[0]) &&
+                            edge[1].equals(row[1])) {
+                        if (edge[3] == null) {
+                            edge[3] = row[3];
+                        }
+                        continue;
+                    }
+                    writeEdge(edge, order, count);
+                    edge = row;
+                }
+                writeEdge(edge, order, count);
+            } finally {
+                try { reader.close(); } catch (IOException e) {}
+                order.close();
+                count.close();
+            }
+        }
+
+        private void writeEdge(String[] edge, Writer order, Writer count)
+        throws IOException {
+            if (edge != null) {
+                writeRow(order, edge[2], edge[0], edge[1], edge[3], edge[4]);
+                writeRow(count, edge[1], edge[4]);
+            }
+        }
+
+        private void writeCitegraph(File edgeOrder) throws IOException {
+            BufferedReader reader = openReader(edgeOrder);
+            Writer citegraph = openWriter(new File(outputDir, CITEGRAPH_FILE));
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String[] row = splitRow(line);
+                    writeRow(citegraph, null,
+                            Long.toString(Long.parseLong(row[1])),
+                            Long.toString(Long.parseLong(row[2])),
+                            row[3], row[4]);
+                }
+            } finally {
+                try { reader.close(); } catch (IOException e) {}
+                citegraph.close();
+            }
+        }
+
+        /*
+         * Replays the events of each cluster in order: the document that
+         * created it sets authors and title, and every citation is added
+         * as an observation the way CiteClusterDAOImpl.updateObservations
+         * does.  Sizes count the distinct edges into the cluster, as the
+         * citegraph insert trigger does.
+         */
+        private void writeClusters(File sortedEvents, File sortedCounts)
+        throws IOException, JSONException {
+            BufferedReader eventReader = openReader(sortedEvents);
+            BufferedReader countReader = openReader(sortedCounts);
+            Writer clusters = openWriter(new File(outputDir, CLUSTERS_FILE));
+            try {
+                String[] event = readRow(eventReader);
+                String[] count = readRow(countReader);
+                for (long cid=1; cid<=lastCluster; cid++) {
+                    ThinDoc canon = new ThinDoc();
+                    String observations = null;
+                    while (event != null && Long.parseLong(event[0]) == cid) {
+                        if (DOC_EVENT.equals(event[2])) {
+                            canon.setAuthors(event[3]);
+                            canon.setTitle(event[4]);
+                        } else {
+                            ThinDoc obs = toObservation(event);
+                            JSONObject metadata = new JSONObject();
+                            if (observations != null) {
+                                metadata = new JSONObject(observations);
+                            }
+                            if (InferenceBuilder.addObservation(obs,
+                                    metadata)) {
+                                canon = obs;
+                            }
+                            observations = obs.getObservations();
+                        }
+                        event = readRow(eventReader);
+                    }
+                    int size = 0;
+                    int selfCites = 0;
+                    while (count != null && Long.parseLong(count[0]) == cid) {
+                        size++;
+                        selfCites += Integer.parseInt(count[1]);
+                        count = readRow(countReader);
+                    }
+                    writeRow(clusters, Long.toString(cid),
+                            Integer.toString(size),
+                            inCollection.get((int)cid) ? "1" : "0",
+                            canon.getAuthors(), canon.getTitle(),
+                            canon.getVenue(), canon.getVentype(),
+                            positive(canon.getYear()), canon.getPages(),
+                            canon.getPublisher(), positive(canon.getVol()),
+                            positive(canon.getNum()), canon.getTech(),
+                            observations, Integer.toString(selfCites));
+                }
+            } finally {
+                try { eventReader.close(); } catch (IOException e) {}
+                try { countReader.close(); } catch (IOException e) {}
+                clusters.close();
+            }
+        }
+
+        private void writeLoadScript() throws IOException {
+            Writer script = openWriter(new File(outputDir, LOAD_SCRIPT));
+            try {
+                script.write("-- Load into an empty csx_citegraph database, " +
+                        "in this order.\n");
+                writeLoad(script, CITEGRAPH_FILE, "citegraph",
+                        "id, citing, cited, firstContext, selfCite");
+                writeLoad(script, CLUSTERS_FILE, "clusters",
+                        "id, size, incollection, cauth, ctitle, cvenue, " +
+                        "cventype, cyear, cpages, cpublisher, cvol, cnum, " +
+                        "ctech, observations, selfCites");
+                writeLoad(script, KEYMAP_FILE, "keymap", "id, ckey, cid");
+                writeLoad(script, CITATIONS_FILE, "citations",
+                        "id, cluster, paperid");
+                writeLoad(script, PAPERS_FILE, "papers", "id, cluster");
+            } finally {
+                script.close();
+            }
+        }
+
+        private void writeLoad(Writer script, String file, String table,
+                String columns) throws IOException {
+            String path = new File(outputDir, file).getAbsolutePath();
+            script.write("LOAD DATA LOCAL INFILE '" +
+                    path.replace("\\", "\\\\").replace("'", "\\'") +
+                    "' INTO TABLE " + table + " CHARACTER SET utf8 (" +
+                    columns + ");\n");
+        }
+
+        void close() {
+            Writer[] writers = { papers, keymap, citations, events, edges };
+            for (Writer writer : writers) {
+                try { writer.close(); } catch (IOException e) {}
+            }
+        }
+
+    }  //- class Build
+
+
+    private static ThinDoc toObservation(String[] event) {
+        ThinDoc obs = new ThinDoc();
+        obs.setAuthors(event[3]);
+        obs.setTitle(event[4]);
+        obs.setVenue(event[5]);
+        obs.setVentype(event[6]);
+        obs.setPages(event[7]);
+        obs.setPublisher(event[8]);
+        obs.setTech(event[9]);
+        obs.setYear(Integer.parseInt(event[10]));
+        obs.setVol(Integer.parseInt(event[11]));
+        obs.setNum(Integer.parseInt(event[12]));
+        return obs;
+    } //- toObservation
+
+    private static String positive(int value) {
+        return (value > 0) ? Integer.toString(value) : null;
+    } //- positive
+
+    private static String getClusterAuthors(Document doc) {
+        StringBuffer authBuf = new StringBuffer();
+        for (int i=0; i<doc.getAuthors().size(); i++) {
+            if (i > 0) {
+                authBuf.append(",");
+            }
+            authBuf.append(doc.getAuthors().get(i).getDatum(Author.NAME_KEY,
+                    Author.UNENCODED));
+        }
+        return authBuf.toString();
+    } //- getClusterAuthors
+
+
+    /*
+     * Rows use the LOAD DATA defaults: tab separated fields, newline
+     * terminated lines, backslash escapes and \N for NULL.
+     */
+    private static void writeRow(Writer writer, String... fields)
+    throws IOException {
+        for (int i=0; i<fields.length; i++) {
+            if (i > 0) {
+                writer.write('\t');
+            }
+            String field = fields[i];
+            if (field == null) {
+                writer.write(NULL);
+                continue;
+            }
+            for (int j=0; j<field.length(); j++) {
+                char ch = field.charAt(j);
+                switch (ch) {
+                case '\\': writer.write("\\\\"); break;
+                case '\t': writer.write("\\t"); break;
+                case '\n': writer.write("\\n"); break;
+                case '\r': writer.write("\\r"); break;
+                case '\0': writer.write("\\0"); break;
+                default: writer.write(ch);
+                }
+            }
+        }
+        writer.write('\n');
+    } //- writeRow
+
+    private static String[] readRow(BufferedReader reader)
+    throws IOException {
+        String line = reader.readLine();
+        return (line == null) ? null : splitRow(line);
+    } //- readRow
+
+    private static String[] splitRow(String line) {
+        List<String> fields = new ArrayList<String>();
+        StringBuilder field = new StringBuilder();
+        boolean isNull = false;
+        for (int i=0; i<line.length(); i++) {
+            char ch = line.charAt(i);
+            if (ch == '\t') {
+                fields.add(isNull ? null : field.toString());
+                field.setLength(0);
+                isNull = false;
+            } else if (ch == '\\' && i+1 < line.length()) {
+                char next = line.charAt(++i);
+                switch (next) {
+                case 'N': isNull = true; break;
+                case 't': field.append('\t'); break;
+                case 'n': field.append('\n'); break;
+                case 'r': field.append('\r'); break;
+                case '0': field.append('\0'); break;
+                default: field.append(next);
+                }
+            } else {
+                field.append(ch);
+            }
+        }
+        fields.add(isNull ? null : field.toString());
+        return fields.toArray(new String[fields.size()]);
+    } //- splitRow
+
+    private static BufferedReader openReader(File file) throws IOException {
+        return new BufferedReader(new InputStreamReader(
+                new FileInputStream(file), ENCODING), 64*1024);
+    } //- openReader
+
+    private static Writer openWriter(File file) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(file), ENCODING), 64*1024);
+    } //- openWriter
+
+}  //- class BulkKeyMatcher
@@ -0,0 +1,196 @@
+/*
+ * Copyright 2007 Penn State University
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.psu.citeseerx.citematch.keybased;
+
+/**
+ * In-memory stand-in for the keymap table used by bulk clustering.  Keys
+ * are folded to one case the way the keymap collation compares them and
+ * kept with their 64 bit hashes and cluster IDs in open addressed
+ * primitive arrays: the folded characters are packed into shared char
+ * chunks, so a key costs 24 bytes per slot plus two per character instead
+ * of a String and a Long.  A key only matches a slot when its characters
+ * are equal, as in the keymap table, not just its hash.
+ *
+ * @version $Rev$ $Date$
+ */
+class ClusterKeyTable {
+
+    private static final float MAX_LOAD = 0.6f;
+
+    // Chunk size for folded key characters; a key never spans chunks.
+    private static final int CHUNK_BITS = 16;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int MAX_KEY_LENGTH = 0xffff;
+
+    private long[] hashes;
+    private long[] clusters;
+    private long[] keyRefs;
+    private int size = 0;
+    private int mask;
+
+    private char[][] chunks = new char[16][];
+    private int chunkCount = 0;
+    private int chunkUsed = CHUNK_SIZE;
+
+    ClusterKeyTable(int expectedKeys) {
+        int capacity = 1024;
+        while (capacity * MAX_LOAD < expectedKeys) {
+            capacity <<= 1;
+        }
+        allocate(capacity);
+    } //- ClusterKeyTable
+
+
+    /**
+     * @param key
+     * @return the cluster mapped to the key, or 0 if there is none.
+     */
+    long get(String key) {
+        long hash = hash(key);
+        for (int i = slot(hash); ; i = (i+1) & mask) {
+            if (clusters[i] == 0) {
+                return 0;
+            }
+            if (hashes[i] == hash && keyEquals(keyRefs[i], key)) {
+                return clusters[i];
+            }
+        }
+    } //- get
+
+
+    /**
+     * Maps the key to the given cluster unless it is mapped already, as
+     * the first keymap row for a key is the one that is used.
+     * @param key
+     * @param cluster a positive cluster ID.
+     */
+    void putIfAbsent(String key, long cluster) {
+        long hash = hash(key);
+        int i = slot(hash);
+        for ( ; clusters[i] != 0; i = (i+1) & mask) {
+            if (hashes[i] == hash && keyEquals(keyRefs[i], key)) {
+                return;
+            }
+        }
+        hashes[i] = hash;
+        clusters[i] = cluster;
+        keyRefs[i] = store(key);
+        if (++size > hashes.length * MAX_LOAD) {
+            rehash();
+        }
+    } //- putIfAbsent
+
+
+    int size() {
+        return size;
+    } //- size
+
+
+    private void allocate(int capacity) {
+        hashes = new long[capacity];
+        clusters = new long[capacity];
+        keyRefs = new long[capacity];
+        mask = capacity - 1;
+    } //- allocate
+
+    private void rehash() {
+        long[] oldHashes = hashes;
+        long[] oldClusters = clusters;
+        long[] oldKeyRefs = keyRefs;
+        allocate(oldHashes.length * 2);
+        for (int j=0; j<oldHashes.length; j++) {
+            if (oldClusters[j] != 0) {
+                int i = slot(oldHashes[j]);
+                while (clusters[i] != 0) {
+                    i = (i+1) & mask;
+                }
+                hashes[i] = oldHashes[j];
+                clusters[i] = oldClusters[j];
+                keyRefs[i] = oldKeyRefs[j];
+            }
+        }
+    } //- rehash
+
+    private int slot(long hash) {
+        return (int)(hash ^ (hash >>> 32)) & mask;
+    } //- slot
+
+
+    /*
+     * Copies the folded key into the chunks, returning a reference that
+     * holds its position above the low 16 bits and its length in them.
+     */
+    private long store(String key) {
+        int length = key.length();
+        if (length > MAX_KEY_LENGTH) {
+            throw new IllegalArgumentException(
+                    "Key longer than "+MAX_KEY_LENGTH+" characters");
+        }
+        if (chunkCount == 0 || chunkUsed + length > CHUNK_SIZE) {
+            if (chunkCount == chunks.length) {
+                char[][] grown = new char[chunks.length * 2][];
+                System.arraycopy(chunks, 0, grown, 0, chunkCount);
+                chunks = grown;
+            }
+            chunks[chunkCount++] = new char[CHUNK_SIZE];
+            chunkUsed = 0;
+        }
+        char[] chunk = chunks[chunkCount-1];
+        for (int k=0; k<length; k++) {
+            chunk[chunkUsed+k] = fold(key.charAt(k));
+        }
+        long position = ((long)(chunkCount-1) << CHUNK_BITS) | chunkUsed;
+        chunkUsed += length;
+        return (position << 16) | length;
+    } //- store
+
+    private boolean keyEquals(long keyRef, String key) {
+        int length = (int)(keyRef & 0xffff);
+        if (length != key.length()) {
+            return false;
+        }
+        long position = keyRef >>> 16;
+        char[] chunk = chunks[(int)(position >>> CHUNK_BITS)];
+        int offset = (int)(position & (CHUNK_SIZE-1));
+        for (int k=0; k<length; k++) {
+            if (chunk[offset+k] != fold(key.charAt(k))) {
+                return false;
+            }
+        }
+        return true;
+    } //- keyEquals
+
+    private static char fold(char ch) {
+        return Character.toLowerCase(Character.toUpperCase(ch));
+    } //- fold
+
+
+    /*
+     * FNV-1a over case folded characters followed by a 64 bit finalizer
+     * so that the low bits used for slots are well mixed.
+     */
+    static long hash(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (int i=0; i<key.length(); i++) {
+            h ^= fold(key.charAt(i));
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    } //- hash
+
+}  //- class ClusterKeyTable
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2007 Penn State University
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.psu.citeseerx.citematch.keybased;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import edu.psu.citeseerx.citematch.utils.TextNormalizer;
+
+/**
+ * Generates the same keys as a {@link KeyGenerator} built with the default
+ * stopword and name analyzers, but works over reusable char buffers: the
+ * only objects created per call are the keys and the list holding them.
+ * <br><br>
+ * Instances keep state between calls and must not be shared between
+ * threads.
+ *
+ * @version $Rev$ $Date$
+ */
+public class KeyBuilder {
+
+    private static final int MAX_TITLE = 30;
+    private static final int MIN_TITLE = 5;
+    private static final int MAX_AUTHORS = 2;
+
+    private final TextNormalizer normalizer = new TextNormalizer();
+
+    private final char[][] titleKeys = new char[2][MAX_TITLE];
+    private final int[] titleKeyLengths = new int[2];
+    private int titleKeyCount;
+
+    private final char[][] authorKeys = new char[MAX_AUTHORS][32];
+    private final int[] authorKeyLengths = new int[MAX_AUTHORS];
+    private int authorKeyCount;
+
+    private char[] key = new char[64];
+
+
+    /**
+     * @param title
+     * @param authors comma separated author names.
+     * @return a list of keys representing the specified title/author combo.
+     */
+    public List<String> getKeys(String title, String authors) {
+        List<String> keys = new ArrayList<String>();
+        if (title == null || authors == null) {
+            return keys;
+        }
+
+        buildTitleKeys(title);
+        if (titleKeyCount == 0) {
+            return keys;
+        }
+        buildAuthorKeys(authors);
+
+        for (int i=0; i<authorKeyCount; i++) {
+            for (int j=0; j<titleKeyCount; j++) {
+                int length = authorKeyLengths[i] + 1 + titleKeyLengths[j];
+                if (key.length < length) {
+                    key = new char[length*2];
+                }
+                System.arraycopy(authorKeys[i], 0, key, 0,
+                        authorKeyLengths[i]);
+                key[authorKeyLengths[i]] = '_';
+                System.arraycopy(titleKeys[j], 0, key, authorKeyLengths[i]+1,
+                        titleKeyLengths[j]);
+                keys.add(new String(key, 0, length));
+            }
+        }
+        return keys;
+
+    }  //- getKeys
+
+
+    /*
+     * A key from the whole normalized title and, when the title has more
+     * than one word, one from the title without its first word.
+     */
+    private void buildTitleKeys(String title) {
+        titleKeyCount = 0;
+        int length = normalizer.normalizeTitle(title, true);
+        char[] ntitle = normalizer.getBuffer();
+
+        buildTitleKey(ntitle, 0, length);
+
+        int firstSpace = 0;
+        while (firstSpace < length && ntitle[firstSpace] != ' ') {
+            firstSpace++;
+        }
+        if (firstSpace < length && length-firstSpace-1 > 1) {
+            buildTitleKey(ntitle, firstSpace+1, length);
+        }
+    } //- buildTitleKeys
+
+    private void buildTitleKey(char[] ntitle, int start, int end) {
+        char[] titleKey = titleKeys[titleKeyCount];
+        int n = 0;
+        for (int i=start; i<end && n<MAX_TITLE; i++) {
+            if (ntitle[i] != ' ') {
+                titleKey[n++] = ntitle[i];
+            }
+        }
+        if (n >= MIN_TITLE) {
+            titleKeyLengths[titleKeyCount++] = n;
+        }
+    } //- buildTitleKey
+
+
+    /*
+     * The last word of each of the first two names that do not normalize
+     * to nothing.
+     */
+    private void buildAuthorKeys(String authors) {
+        authorKeyCount = 0;
+        int start = 0;
+        while (start <= authors.length() && authorKeyCount < MAX_AUTHORS) {
+            int end = authors.indexOf(',', start);
+            if (end < 0) {
+                end = authors.length();
+            }
+            int length = normalizer.normalizeName(authors, start, end);
+            if (length > 0) {
+                char[] name = normalizer.getBuffer();
+                int lastStart = length;
+                while (lastStart > 0 && name[lastStart-1] != ' ') {
+                    lastStart--;
+                }
+                int keyLength = length-lastStart;
+                if (authorKeys[authorKeyCount].length < keyLength) {
+                    authorKeys[authorKeyCount] = new char[keyLength*2];
+                }
+                System.arraycopy(name, lastStart, authorKeys[authorKeyCount],
+                        0, keyLength);
+                authorKeyLengths[authorKeyCount++] = keyLength;
+            }
+            start = end+1;
+        }
+    } //- buildAuthorKeys
+
+}  //- class KeyBuilder
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2007 Penn State University
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.psu.citeseerx.citematch.keybased;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import edu.psu.citeseerx.citematch.utils.DefaultStopwordAnalyzer;
+import edu.psu.citeseerx.citematch.utils.NameAnalyzer;
+
+/**
+ * Compares {@link KeyBuilder} with {@link KeyGenerator} on a file of
+ * citations, one per line as the title and the comma separated authors
+ * separated by a tab, e.g. the output of
+ * <pre>
+ *   mysql -B -N -e "select title, authors from citations limit 100000" citeseerx
+ * </pre>
+ * Both generators are first checked to give the same keys for every line,
+ * then each is timed over several rounds after a warm up.
+ * <br><br>
+ * Usage: KeyBuilderBenchmark citations.tsv [rounds]
+ *
+ * @version $Rev$ $Date$
+ */
+public class KeyBuilderBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: KeyBuilderBenchmark citations.tsv " +
+                    "[rounds]");
+            System.exit(1);
+        }
+        int rounds = (args.length > 1) ? Integer.parseInt(args[1]) : 10;
+
+        List<String[]> citations = readCitations(args[0]);
+        final KeyGenerator generator = new KeyGenerator(
+                new DefaultStopwordAnalyzer(), new NameAnalyzer());
+        final KeyBuilder builder = new KeyBuilder();
+
+        int mismatches = 0;
+        for (String[] citation : citations) {
+            List<String> expected =
+                generator.getKeys(citation[0], citation[1]);
+            List<String> keys = builder.getKeys(citation[0], citation[1]);
+            if (!expected.equals(keys)) {
+                if (mismatches++ < 10) {
+                    System.out.println("MISMATCH " + citation[0] + " / " +
+                            citation[1] + ": " + expected + " != " + keys);
+                }
+            }
+        }
+        System.out.println(citations.size() + " citations, " + mismatches +
+                " mismatches");
+
+        Task generatorTask = new Task() {
+            public int run(String title, String authors) {
+                return generator.getKeys(title, authors).size();
+            }
+        };
+        Task builderTask = new Task() {
+            public int run(String title, String authors) {
+                return builder.getKeys(title, authors).size();
+            }
+        };
+        // Warm up both before timing either.
+        time(generatorTask, citations, rounds);
+        time(builderTask, citations, rounds);
+
+        report("KeyGenerator", time(generatorTask, citations, rounds),
+                citations.size() * rounds);
+        report("KeyBuilder", time(builderTask, citations, rounds),
+                citations.size() * rounds);
+
+    } //- main
+
+
+    private interface Task {
+        int run(String title, String authors);
+    }
+
+    private static long time(Task task, List<String[]> citations,
+            int rounds) {
+        long keys = 0;
+        long start = System.nanoTime();
+        for (int r=0; r<rounds; r++) {
+            for (String[] citation : citations) {
+                keys += task.run(citation[0], citation[1]);
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        if (keys < 0) {
+            System.out.println(keys);
+        }
+        return elapsed;
+    } //- time
+
+    private static void report(String name, long nanos, long calls) {
+        System.out.println(name + ": " + (nanos / 1000000) + " ms, " +
+                (nanos / Math.max(1, calls)) + " ns per citation");
+    } //- report
+
+    private static List<String[]> readCitations(String path)
+    throws IOException {
+        List<String[]> citations = new ArrayList<String[]>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(path), "UTF-8"));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int tab = line.indexOf('\t');
+                if (tab < 0) {
+                    continue;
+                }
+                citations.add(new String[] {
+                        line.substring(0, tab), line.substring(tab+1) });
+            }
+        } finally {
+            reader.close();
+        }
+        return citations;
+    } //- readCitations
+
+}  //- class KeyBuilderBenchmark
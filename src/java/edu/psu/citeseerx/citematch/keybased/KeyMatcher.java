@@ -20,9 +20,6 @@ import java.util.Set;
 import org.json.JSONException;
 
 import edu.psu.citeseerx.citematch.CitationClusterer;
-import edu.psu.citeseerx.citematch.utils.Analyzer;
-import edu.psu.citeseerx.citematch.utils.DefaultStopwordAnalyzer;
-import edu.psu.citeseerx.citematch.utils.NameAnalyzer;
 import edu.psu.citeseerx.citematch.utils.SelfCitationFilter;
 import edu.psu.citeseerx.dao2.logic.CSXDAO;
 import edu.psu.citeseerx.dao2.logic.CiteClusterDAO;
@@ -32,7 +29,7 @@ import edu.psu.citeseerx.domain.Document;
 
 /**
  * This CitationClusterer implementation uses a hash key approach to
- * cluster citations and documents in an online manner.  A KeyGenerator
+ * cluster citations and documents in an online manner.  A KeyBuilder
  * is used to create the hash keys and mappings are managed within a
  * persistent storage backend.
  *
@@ -41,12 +38,19 @@ import edu.psu.citeseerx.domain.Document;
  */
 public class KeyMatcher implements CitationClusterer {
 
-    private final KeyGenerator keyGenerator;
+    /*
+     * Keys are built with the default analyzers, so the buffer based
+     * KeyBuilder gives the same keys as a KeyGenerator.  Builders are not
+     * thread safe, hence one per thread.
+     */
+    private final ThreadLocal<KeyBuilder> keyBuilder =
+        new ThreadLocal<KeyBuilder>() {
+        protected KeyBuilder initialValue() {
+            return new KeyBuilder();
+        }
+    };
     
     public KeyMatcher() {
-        Analyzer stopWordAnalyzer = new DefaultStopwordAnalyzer();
-        Analyzer nameAnalyzer = new NameAnalyzer();
-        keyGenerator = new KeyGenerator(stopWordAnalyzer, nameAnalyzer);
     } //- KeyMatcher
 
     private CSXDAO csxdao;
@@ -92,7 +96,7 @@ public class KeyMatcher implements CitationClusterer {
         if (title == null || authors == null) {
             return;
         }
-        List<String> keys = keyGenerator.getKeys(title, authStr);
+        List<String> keys = keyBuilder.get().getKeys(title, authStr);
         citation.setKeys(keys);
 
     }  //- processCitation
@@ -167,7 +171,7 @@ public class KeyMatcher implements CitationClusterer {
         String authStr = authBuf.toString();
         String title = doc.getDatum(Document.TITLE_KEY);
         
-        List<String> keys = keyGenerator.getKeys(title, authStr);
+        List<String> keys = keyBuilder.get().getKeys(title, authStr);
                 
         return keys;
         
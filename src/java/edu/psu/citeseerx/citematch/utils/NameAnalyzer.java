@@ -35,6 +35,13 @@ public class NameAnalyzer implements Analyzer {
         }
     } //- NameAnalyzer
     
+    /**
+     * @return the name prefixes that are joined to the following token.
+     */
+    public static String[] getJoinWords() {
+        return joinWords.clone();
+    } //- getJoinWords
+    
     /**
      * Joins multi-word names into unspaced strings, leaving spaces between
      * all other tokens.
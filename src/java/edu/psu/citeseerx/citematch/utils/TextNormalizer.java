@@ -0,0 +1,331 @@
+/*
+ * Copyright 2007 Penn State University
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.psu.citeseerx.citematch.utils;
+
+import java.util.Locale;
+
+import edu.psu.citeseerx.utility.SafeText;
+
+/**
+ * Buffer based counterpart of {@link Normalizer} for the default analyzers.
+ * Text is normalized into a reusable char buffer in a few passes instead of
+ * through a chain of regular expressions and intermediate Strings, giving
+ * exactly the same result as normalizeTitle with a
+ * {@link DefaultStopwordAnalyzer} and normalizeAuthors with a
+ * {@link NameAnalyzer}.  The rare inputs whose lower case form depends on
+ * context or locale (surrogate pairs, dotted capital I, capital sigma, or a
+ * Turkish, Azeri or Lithuanian default locale) go through Normalizer
+ * itself.
+ * <br><br>
+ * Instances keep state between calls and must not be shared between
+ * threads.
+ *
+ * @version $Rev$ $Date$
+ */
+public class TextNormalizer {
+
+    /* SafeText.removeAccents for single Latin-1 characters. */
+    private static final char[] ACCENTS = new char[256];
+    static {
+        for (char c=0; c<ACCENTS.length; c++) {
+            String plain = SafeText.removeAccents(String.valueOf(c));
+            ACCENTS[c] = (plain.length() == 1) ? plain.charAt(0) : c;
+        }
+    }
+
+    private final WordSet stopwords =
+        new WordSet(DefaultStopwordList.getStopwords());
+    private final WordSet joinWords =
+        new WordSet(NameAnalyzer.getJoinWords());
+    private final Stemmer stemmer = new Stemmer();
+
+    private Analyzer stopWordAnalyzer;
+    private Analyzer nameAnalyzer;
+
+    private char[] text = new char[128];
+    private char[] work = new char[128];
+    private int length = 0;
+
+
+    /**
+     * @return the buffer holding the result of the last call; only the
+     * first {@link #getLength()} characters are meaningful.
+     */
+    public char[] getBuffer() {
+        return text;
+    } //- getBuffer
+
+    /**
+     * @return the length of the result of the last call.
+     */
+    public int getLength() {
+        return length;
+    } //- getLength
+
+
+    /**
+     * Normalizes a title into the buffer, with the same result as
+     * Normalizer.normalizeTitle(s, new DefaultStopwordAnalyzer(), stem).
+     * @param s
+     * @param stem whether to stem tokens.
+     * @return the length of the result.
+     */
+    public int normalizeTitle(String s, boolean stem) {
+
+        int n = clean(s, 0, s.length());
+        if (n < 0) {
+            if (stopWordAnalyzer == null) {
+                stopWordAnalyzer = new DefaultStopwordAnalyzer();
+            }
+            return setText(Normalizer.normalizeTitle(s, stopWordAnalyzer,
+                    stem));
+        }
+
+        // Stopword removal, following DefaultStopwordAnalyzer: a space
+        // follows each kept token that is not the last one.
+        ensureText(n);
+        int out = 0;
+        for (int i=0; i<n; ) {
+            if (work[i] == ' ') {
+                i++;
+                continue;
+            }
+            int start = i;
+            while (i < n && work[i] != ' ') {
+                i++;
+            }
+            if (!stopwords.contains(work, start, i-start)) {
+                System.arraycopy(work, start, text, out, i-start);
+                out += i-start;
+                if (i+1 < n) {
+                    text[out++] = ' ';
+                }
+            }
+        }
+
+        if (stem) {
+            out = stem(out);
+        }
+        length = trim(text, out);
+        return length;
+
+    }  //- normalizeTitle
+
+
+    /**
+     * Normalizes one name from a comma separated list into the buffer,
+     * with the same result the name gets within
+     * Normalizer.normalizeAuthors(s, new NameAnalyzer()).
+     * @param s
+     * @param start index of the first character of the name.
+     * @param end index after the last character of the name.
+     * @return the length of the result.
+     */
+    public int normalizeName(String s, int start, int end) {
+
+        int n = clean(s, start, end);
+        if (n < 0) {
+            if (nameAnalyzer == null) {
+                nameAnalyzer = new NameAnalyzer();
+            }
+            String name = SafeText.normalizeText(s.substring(start, end));
+            return setText(nameAnalyzer.analyze(name.toLowerCase()).trim());
+        }
+
+        // Following NameAnalyzer, join words are not followed by a space.
+        ensureText(n);
+        int out = 0;
+        for (int i=0; i<n; ) {
+            if (work[i] == ' ') {
+                i++;
+                continue;
+            }
+            int tokenStart = i;
+            while (i < n && work[i] != ' ') {
+                i++;
+            }
+            System.arraycopy(work, tokenStart, text, out, i-tokenStart);
+            out += i-tokenStart;
+            if (i+1 < n && !joinWords.contains(work, tokenStart,
+                    i-tokenStart)) {
+                text[out++] = ' ';
+            }
+        }
+        length = trim(text, out);
+        return length;
+
+    }  //- normalizeName
+
+
+    /*
+     * SafeText.normalizeText followed by toLowerCase, into work.  Returns
+     * -1 if the input needs the String based path.
+     */
+    private int clean(String s, int start, int end) {
+        if (work.length < end-start) {
+            work = new char[Math.max(end-start, work.length*2)];
+        }
+        if (localeSensitive()) {
+            return -1;
+        }
+        int n = 0;
+        for (int i=start; i<end; i++) {
+            char c = s.charAt(i);
+            if (c < ACCENTS.length) {
+                c = ACCENTS[c];
+            }
+            if (c == ' ') {
+                if (n == 0 || work[n-1] != ' ') {
+                    work[n++] = ' ';
+                }
+            } else if (c >= '0' && c <= '9') {
+                work[n++] = c;
+            } else if (Character.isHighSurrogate(c) ||
+                    Character.isLowSurrogate(c) ||
+                    c == '\u0130' || c == '\u03A3') {
+                return -1;
+            } else if (Character.isLetter(c)) {
+                work[n++] = Character.toLowerCase(c);
+            }
+        }
+        return n;
+    } //- clean
+
+
+    /*
+     * Stemmer.stemString over text[0..n), through work.
+     */
+    private int stem(int n) {
+        if (work.length < n*2) {
+            work = new char[Math.max(n*2, work.length*2)];
+        }
+        int out = 0;
+        for (int i=0; i<n; i++) {
+            char c = text[i];
+            boolean letter = Character.isLetter(c);
+            if (letter) {
+                stemmer.add(Character.toLowerCase(c));
+            }
+            if (!letter || i == n-1) {
+                stemmer.stem();
+                int stemLength = stemmer.getResultLength();
+                if (work.length < out+stemLength+1) {
+                    char[] grown = new char[(out+stemLength+1)*2];
+                    System.arraycopy(work, 0, grown, 0, out);
+                    work = grown;
+                }
+                System.arraycopy(stemmer.getResultBuffer(), 0, work, out,
+                        stemLength);
+                out += stemLength;
+                if (!letter) {
+                    work[out++] = c;
+                }
+            }
+        }
+        char[] swap = text;
+        text = work;
+        work = swap;
+        return out;
+    } //- stem
+
+
+    private static int trim(char[] buf, int n) {
+        int start = 0;
+        while (start < n && buf[start] <= ' ') {
+            start++;
+        }
+        while (n > start && buf[n-1] <= ' ') {
+            n--;
+        }
+        if (start > 0) {
+            System.arraycopy(buf, start, buf, 0, n-start);
+        }
+        return n-start;
+    } //- trim
+
+    private int setText(String s) {
+        ensureText(s.length());
+        s.getChars(0, s.length(), text, 0);
+        length = s.length();
+        return length;
+    } //- setText
+
+    private void ensureText(int n) {
+        if (text.length < n) {
+            text = new char[Math.max(n, text.length*2)];
+        }
+    } //- ensureText
+
+    private static boolean localeSensitive() {
+        String language = Locale.getDefault().getLanguage();
+        return "tr".equals(language) || "az".equals(language) ||
+            "lt".equals(language);
+    } //- localeSensitive
+
+
+    /**
+     * Open addressed set of words that can be probed with a slice of a
+     * char buffer.
+     */
+    private static class WordSet {
+
+        private final char[][] table;
+        private final int mask;
+
+        WordSet(String[] words) {
+            int capacity = 16;
+            while (capacity < words.length*4) {
+                capacity <<= 1;
+            }
+            table = new char[capacity][];
+            mask = capacity-1;
+            for (String word : words) {
+                char[] chars = word.toCharArray();
+                if (!contains(chars, 0, chars.length)) {
+                    int i = hash(chars, 0, chars.length) & mask;
+                    while (table[i] != null) {
+                        i = (i+1) & mask;
+                    }
+                    table[i] = chars;
+                }
+            }
+        }
+
+        boolean contains(char[] buf, int off, int len) {
+            for (int i = hash(buf, off, len) & mask; table[i] != null;
+                    i = (i+1) & mask) {
+                char[] word = table[i];
+                if (word.length == len) {
+                    int j = 0;
+                    while (j < len && word[j] == buf[off+j]) {
+                        j++;
+                    }
+                    if (j == len) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        private static int hash(char[] buf, int off, int len) {
+            int h = 0;
+            for (int i=off; i<off+len; i++) {
+                h = 31*h + buf[i];
+            }
+            return h ^ (h >>> 16);
+        }
+
+    }  //- class WordSet
+
+}  //- class TextNormalizer
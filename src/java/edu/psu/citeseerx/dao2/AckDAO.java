@@ -14,6 +14,7 @@ package edu.psu.citeseerx.dao2;
 
 import org.springframework.dao.DataAccessException;
 import java.util.List;
+import java.util.Map;
 import edu.psu.citeseerx.domain.Acknowledgment;
 
 /**
@@ -35,6 +36,19 @@ public interface AckDAO {
             boolean getContexts, boolean getSource)
             throws DataAccessException;
 
+    /**
+     * Returns the acknowledges associated to each of the given dois
+     * @param dois  dois to get the acknowledges from
+     * @param getContexts if true the context of each acknowledges is included
+     * @param getSource if true the source is included in the answer
+     * @return The acknowledges of each doi, keyed by doi. Dois without
+     * acknowledges are left out.
+     * @throws DataAccessException
+     */
+    public Map<String, List<Acknowledgment>> getAcknowledgments(
+            List<String> dois, boolean getContexts, boolean getSource)
+            throws DataAccessException;
+
     /**
      * Add a new acknowledge to the doi
      * @param doi
@@ -16,6 +16,7 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Types;
 import java.util.List;
+import java.util.Map;
 import java.util.Iterator;
 import javax.sql.DataSource;
 
@@ -40,6 +41,9 @@ public class AckDAOImpl extends JdbcDaoSupport implements AckDAO {
     private GetAcks getAcks;
     private GetAckSrc getAckSrc;
     private GetContexts getContexts;
+    private BatchLookup<Acknowledgment> getDocsAcks;
+    private BatchLookup<Acknowledgment> getDocsAckSrcs;
+    private BatchLookup<String> getDocsContexts;
     private InsertAck insertAck;
     private InsertAckSrc insertAckSrc;
     private InsertContext insertContext;
@@ -62,6 +66,27 @@ public class AckDAOImpl extends JdbcDaoSupport implements AckDAO {
         getAcks = new GetAcks(getDataSource());
         getAckSrc = new GetAckSrc(getDataSource());
         getContexts = new GetContexts(getDataSource());
+        getDocsAcks = new BatchLookup<Acknowledgment>(getDataSource(),
+                DEF_GET_DOCS_ACKS_QUERY, "paperid") {
+            protected Acknowledgment mapRow(ResultSet rs, int rowNum)
+            throws SQLException {
+                return getAcks.mapRow(rs, rowNum);
+            }
+        };
+        getDocsAckSrcs = new BatchLookup<Acknowledgment>(getDataSource(),
+                DEF_GET_DOCS_ACK_SRCS_QUERY, "id") {
+            protected Acknowledgment mapRow(ResultSet rs, int rowNum)
+            throws SQLException {
+                return getAckSrc.mapRow(rs, rowNum);
+            }
+        };
+        getDocsContexts = new BatchLookup<String>(getDataSource(),
+                DEF_GET_DOCS_CONTEXTS_QUERY, "ackid") {
+            protected String mapRow(ResultSet rs, int rowNum)
+            throws SQLException {
+                return getContexts.mapRow(rs, rowNum);
+            }
+        };
         insertAck = new InsertAck(getDataSource());
         insertAckSrc = new InsertAckSrc(getDataSource());
         insertContext = new InsertContext(getDataSource());
@@ -109,6 +134,46 @@ public class AckDAOImpl extends JdbcDaoSupport implements AckDAO {
         
     }  //- getAcknowledgments
 
+
+    /* (non-Javadoc)
+     * @see edu.psu.citeseerx.dao2.AckDAO#getAcknowledgments(java.util.List, boolean, boolean)
+     */
+    public Map<String, List<Acknowledgment>> getAcknowledgments(
+            List<String> dois, boolean withContexts, boolean withSource)
+    throws DataAccessException {
+
+        Map<String, List<Acknowledgment>> acks = getDocsAcks.run(dois);
+        if ((!withContexts && !withSource) || acks.isEmpty()) return acks;
+
+        Map<String, List<String>> contexts = (withContexts) ?
+                getDocsContexts.run(dois) : null;
+        Map<String, List<Acknowledgment>> srcAcks = (withSource) ?
+                getDocsAckSrcs.run(dois) : null;
+        for (List<Acknowledgment> docAcks : acks.values()) {
+            for (Acknowledgment ack : docAcks) {
+                String id = ack.getDatum(Acknowledgment.DOI_KEY);
+                if (withContexts && contexts.containsKey(id)) {
+                    for (String c : contexts.get(id)) {
+                        ack.addContext(c);
+                    }
+                }
+                if (withSource) {
+                    List<Acknowledgment> found = srcAcks.get(id);
+                    Acknowledgment srcAck = (found != null) ?
+                            found.get(0) : new Acknowledgment();
+                    ack.setSource(Acknowledgment.NAME_KEY,
+                            srcAck.getSource(Acknowledgment.NAME_KEY));
+                    ack.setSource(Acknowledgment.ENT_TYPE_KEY,
+                            srcAck.getSource(Acknowledgment.ENT_TYPE_KEY));
+                    ack.setSource(Acknowledgment.ACK_TYPE_KEY,
+                            srcAck.getSource(Acknowledgment.ACK_TYPE_KEY));
+                }
+            }
+        }
+        return acks;
+        
+    }  //- getAcknowledgments
+
     
     /* (non-Javadoc)
      * @see edu.psu.citeseerx.dao2.AckDAO#getAckContexts(java.lang.Long)
@@ -191,6 +256,10 @@ public class AckDAOImpl extends JdbcDaoSupport implements AckDAO {
         "select id, cluster, name, entType, ackType from acknowledgments " +
         "where paperid=?";
 
+    private static final String DEF_GET_DOCS_ACKS_QUERY =
+        "select id, cluster, name, entType, ackType, paperid from " +
+        "acknowledgments where paperid in (:ids) order by id";
+
     private class GetAcks extends MappingSqlQuery {
         
         public GetAcks(DataSource dataSource) {
@@ -221,6 +290,15 @@ public class AckDAOImpl extends JdbcDaoSupport implements AckDAO {
         "select name, entType, ackType from acknowledgments_versionShadow " +
         "where id=?";
     
+    private static final String DEF_GET_DOCS_ACK_SRCS_QUERY =
+        "select acknowledgments_versionShadow.id, " +
+        "acknowledgments_versionShadow.name, " +
+        "acknowledgments_versionShadow.entType, " +
+        "acknowledgments_versionShadow.ackType from " +
+        "acknowledgments_versionShadow, acknowledgments where " +
+        "acknowledgments_versionShadow.id=acknowledgments.id and " +
+        "acknowledgments.paperid in (:ids)";
+    
     private class GetAckSrc extends MappingSqlQuery {
         
         public GetAckSrc(DataSource dataSource) {
@@ -256,6 +334,13 @@ public class AckDAOImpl extends JdbcDaoSupport implements AckDAO {
     private static final String DEF_GET_CONTEXTS_QUERY =
         "select context from acknowledgmentContexts where ackid=?";
 
+    private static final String DEF_GET_DOCS_CONTEXTS_QUERY =
+        "select acknowledgmentContexts.context, " +
+        "acknowledgmentContexts.ackid from acknowledgmentContexts, " +
+        "acknowledgments where acknowledgmentContexts.ackid=" +
+        "acknowledgments.id and acknowledgments.paperid in (:ids) " +
+        "order by acknowledgmentContexts.id";
+
     private class GetContexts extends MappingSqlQuery {
         
         public GetContexts(DataSource dataSource) {
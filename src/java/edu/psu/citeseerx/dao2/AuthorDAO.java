@@ -14,6 +14,7 @@ package edu.psu.citeseerx.dao2;
 
 import org.springframework.dao.DataAccessException;
 import java.util.List;
+import java.util.Map;
 import edu.psu.citeseerx.domain.Author;
 
 /**
@@ -34,6 +35,18 @@ public interface AuthorDAO {
     public List<Author> getDocAuthors(String docID, boolean getSource)
     throws DataAccessException;
 
+    /**
+     * Gets the authors of several documents with one query per table.
+     * @param docIDs
+     * @param getSource If true, affiliation, name, email, and order are
+     * included from the latest version of metadata in the system (Corrected)
+     * @return the authors of each document, keyed by document ID.
+     * Documents without authors are left out.
+     * @throws DataAccessException
+     */
+    public Map<String, List<Author>> getDocAuthors(List<String> docIDs,
+            boolean getSource) throws DataAccessException;
+
     /**
      * Associates the given author to the given document
      * @param docID
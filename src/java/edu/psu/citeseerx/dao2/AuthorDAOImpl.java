@@ -16,6 +16,7 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Types;
 import java.util.List;
+import java.util.Map;
 import javax.sql.DataSource;
 
 import org.springframework.context.ApplicationContextException;
@@ -37,6 +38,8 @@ public class AuthorDAOImpl extends JdbcDaoSupport implements AuthorDAO {
 
     private GetAuthors getAuthors;
     private GetAuthorSrc getAuthorSrc;
+    private BatchLookup<Author> getDocsAuthors;
+    private BatchLookup<Author> getDocsAuthorSrcs;
     private InsertAuthor insertAuthor;
     private InsertAuthorSrc insertAuthorSrc;
     private UpdateAuthor updateAuthor;
@@ -53,6 +56,20 @@ public class AuthorDAOImpl extends JdbcDaoSupport implements AuthorDAO {
     protected void initMappingSqlQueries() throws ApplicationContextException {
         getAuthors = new GetAuthors(getDataSource());
         getAuthorSrc = new GetAuthorSrc(getDataSource());
+        getDocsAuthors = new BatchLookup<Author>(getDataSource(),
+                DEF_GET_DOCS_AUTH_QUERY, "paperid") {
+            protected Author mapRow(ResultSet rs, int rowNum)
+            throws SQLException {
+                return getAuthors.mapRow(rs, rowNum);
+            }
+        };
+        getDocsAuthorSrcs = new BatchLookup<Author>(getDataSource(),
+                DEF_GET_DOCS_AUTH_SRC_QUERY, "id") {
+            protected Author mapRow(ResultSet rs, int rowNum)
+            throws SQLException {
+                return getAuthorSrc.mapRow(rs, rowNum);
+            }
+        };
         insertAuthor = new InsertAuthor(getDataSource());
         insertAuthorSrc = new InsertAuthorSrc(getDataSource());
         updateAuthor = new UpdateAuthor(getDataSource());
@@ -74,19 +91,7 @@ public class AuthorDAOImpl extends JdbcDaoSupport implements AuthorDAO {
                 Author auth = (Author)o;
                 Author srcAuth = getAuthorSrc.run(
                         Long.parseLong(auth.getDatum(Author.DOI_KEY)));
-                if (srcAuth == null) {  // Just in case...
-                    srcAuth = new Author();
-                }
-                auth.setSource(Author.NAME_KEY,
-                        srcAuth.getSource(Author.NAME_KEY));
-                auth.setSource(Author.AFFIL_KEY,
-                        srcAuth.getSource(Author.AFFIL_KEY));
-                auth.setSource(Author.ADDR_KEY,
-                        srcAuth.getSource(Author.ADDR_KEY));
-                auth.setSource(Author.EMAIL_KEY,
-                        srcAuth.getSource(Author.EMAIL_KEY));
-                auth.setSource(Author.ORD_KEY,
-                        srcAuth.getSource(Author.ORD_KEY));
+                copySource(srcAuth, auth);
             }
         }
         return authors;
@@ -94,6 +99,45 @@ public class AuthorDAOImpl extends JdbcDaoSupport implements AuthorDAO {
     }  //- getDocAuthors 
 
     
+    /* (non-Javadoc)
+     * @see edu.psu.citeseerx.dao2.AuthorDAO#getDocAuthors(java.util.List, boolean)
+     */
+    public Map<String, List<Author>> getDocAuthors(List<String> docIDs,
+            boolean getSource) throws DataAccessException {
+        Map<String, List<Author>> authors = getDocsAuthors.run(docIDs);
+        if (getSource && !authors.isEmpty()) {
+            Map<String, List<Author>> srcAuths =
+                getDocsAuthorSrcs.run(docIDs);
+            for (List<Author> docAuthors : authors.values()) {
+                for (Author auth : docAuthors) {
+                    List<Author> found =
+                        srcAuths.get(auth.getDatum(Author.DOI_KEY));
+                    copySource((found == null) ? null : found.get(0), auth);
+                }
+            }
+        }
+        return authors;
+        
+    }  //- getDocAuthors
+
+
+    private static void copySource(Author srcAuth, Author auth) {
+        if (srcAuth == null) {  // Just in case...
+            srcAuth = new Author();
+        }
+        auth.setSource(Author.NAME_KEY,
+                srcAuth.getSource(Author.NAME_KEY));
+        auth.setSource(Author.AFFIL_KEY,
+                srcAuth.getSource(Author.AFFIL_KEY));
+        auth.setSource(Author.ADDR_KEY,
+                srcAuth.getSource(Author.ADDR_KEY));
+        auth.setSource(Author.EMAIL_KEY,
+                srcAuth.getSource(Author.EMAIL_KEY));
+        auth.setSource(Author.ORD_KEY,
+                srcAuth.getSource(Author.ORD_KEY));
+    }  //- copySource
+
+    
     /* (non-Javadoc)
      * @see edu.psu.citeseerx.dao2.AuthorDAO#insertAuthor(java.lang.String, edu.psu.citeseerx.domain.Author)
      */
@@ -174,6 +218,17 @@ public class AuthorDAOImpl extends JdbcDaoSupport implements AuthorDAO {
     } //- class GetAuthors
     
     
+    private static final String DEF_GET_DOCS_AUTH_QUERY =
+        "select id, cluster, name, affil, address, email, ord, paperid " +
+        "from authors where paperid in (:ids) order by ord ASC, id ASC";
+
+    private static final String DEF_GET_DOCS_AUTH_SRC_QUERY =
+        "select authors_versionShadow.id, authors_versionShadow.name, " +
+        "authors_versionShadow.affil, authors_versionShadow.address, " +
+        "authors_versionShadow.email, authors_versionShadow.ord from " +
+        "authors_versionShadow, authors where " +
+        "authors_versionShadow.id=authors.id and authors.paperid in (:ids)";
+    
     private static final String DEF_GET_AUTH_SRC_QUERY =
         "select name, affil, address, email, ord from " +
         "authors_versionShadow where id=?";
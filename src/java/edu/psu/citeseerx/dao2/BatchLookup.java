@@ -0,0 +1,85 @@
+/*
+ * Copyright 2007 Penn State University
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.psu.citeseerx.dao2;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcDaoSupport;
+
+/**
+ * Query over many parent records at once, bound through an
+ * <code>in (:ids)</code> list, whose rows are mapped and grouped by the
+ * value of a key column.  Rows keep the order of the result set within
+ * each group.  Used to fetch child records (authors, citations, contexts,
+ * ...) of a whole set of documents with a single statement.
+ *
+ * @version $Rev$ $Date$
+ */
+abstract class BatchLookup<T> extends NamedParameterJdbcDaoSupport {
+
+    private final String sql;
+    private final String keyColumn;
+
+    /**
+     * @param dataSource
+     * @param sql query with an <code>:ids</code> parameter.
+     * @param keyColumn column holding the ID rows are grouped by.
+     */
+    BatchLookup(DataSource dataSource, String sql, String keyColumn) {
+        setDataSource(dataSource);
+        this.sql = sql;
+        this.keyColumn = keyColumn;
+    } //- BatchLookup
+
+    protected abstract T mapRow(ResultSet rs, int rowNum)
+    throws SQLException;
+
+    /**
+     * @param ids
+     * @return mapped rows by key; keys with no rows are left out.
+     */
+    public Map<String, List<T>> run(Collection<?> ids) {
+        final Map<String, List<T>> groups = new HashMap<String, List<T>>();
+        if (ids.isEmpty()) {
+            return groups;
+        }
+        MapSqlParameterSource parameters = new MapSqlParameterSource();
+        parameters.addValue("ids", ids);
+        getNamedParameterJdbcTemplate().query(sql, parameters,
+                new RowCallbackHandler() {
+            private int rowNum = 0;
+
+            public void processRow(ResultSet rs) throws SQLException {
+                String key = rs.getString(keyColumn);
+                List<T> group = groups.get(key);
+                if (group == null) {
+                    group = new ArrayList<T>();
+                    groups.put(key, group);
+                }
+                group.add(mapRow(rs, rowNum++));
+            }
+        });
+        return groups;
+    } //- run
+
+}  //- class BatchLookup
@@ -14,6 +14,7 @@ package edu.psu.citeseerx.dao2;
 
 import org.springframework.dao.DataAccessException;
 import java.util.List;
+import java.util.Map;
 import edu.psu.citeseerx.domain.Citation;
 
 /**
@@ -33,6 +34,18 @@ public interface CitationDAO {
     public List<Citation> getCitations(String docID, boolean getContexts)
     throws DataAccessException;
     
+    /**
+     * 
+     * @param docIDs
+     * @param getContexts If true, Citation contexts is included.
+     * @return The Citation objects associated to each of the given
+     * documents, keyed by document ID. Documents without citations are
+     * left out.
+     * @throws DataAccessException
+     */
+    public Map<String, List<Citation>> getCitations(List<String> docIDs,
+            boolean getContexts) throws DataAccessException;
+    
     /**
      * 
      * @param clusterid
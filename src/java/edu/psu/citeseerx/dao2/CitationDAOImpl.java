@@ -18,6 +18,7 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Types;
 import java.util.List;
+import java.util.Map;
 import java.util.Iterator;
 
 import javax.sql.DataSource;
@@ -45,6 +46,8 @@ public class CitationDAOImpl extends JdbcDaoSupport implements CitationDAO {
     private InsertCite insertCite;
     private InsertContext insertContext;
     private GetContexts getContexts;
+    private BatchLookup<Citation> getDocsCites;
+    private BatchLookup<String> getDocsContexts;
     private SetCluster setCluster;
     private DeleteCites deleteCites;
     private DeleteCite deleteCite;
@@ -67,6 +70,20 @@ public class CitationDAOImpl extends JdbcDaoSupport implements CitationDAO {
         insertCite = new InsertCite(getDataSource());
         insertContext = new InsertContext(getDataSource());
         getContexts = new GetContexts(getDataSource());
+        getDocsCites = new BatchLookup<Citation>(getDataSource(),
+                DEF_GET_DOCS_CITES_QUERY, "paperid") {
+            protected Citation mapRow(ResultSet rs, int rowNum)
+            throws SQLException {
+                return mapCitation(rs);
+            }
+        };
+        getDocsContexts = new BatchLookup<String>(getDataSource(),
+                DEF_GET_DOCS_CONTEXTS_QUERY, "citationid") {
+            protected String mapRow(ResultSet rs, int rowNum)
+            throws SQLException {
+                return getContexts.mapRow(rs, rowNum);
+            }
+        };
         setCluster = new SetCluster(getDataSource());
         deleteCites = new DeleteCites(getDataSource());
         deleteCite = new DeleteCite(getDataSource());
@@ -96,6 +113,32 @@ public class CitationDAOImpl extends JdbcDaoSupport implements CitationDAO {
     }  //- getCitations
 
     
+    /* (non-Javadoc)
+     * @see edu.psu.citeseerx.dao2.CitationDAO#getCitations(java.util.List, boolean)
+     */
+    public Map<String, List<Citation>> getCitations(List<String> dois,
+            boolean withContexts) throws DataAccessException {
+        Map<String, List<Citation>> citations = getDocsCites.run(dois);
+        if (withContexts && !citations.isEmpty()) {
+            Map<String, List<String>> contexts = getDocsContexts.run(dois);
+            for (List<Citation> docCitations : citations.values()) {
+                for (Citation c : docCitations) {
+                    List<String> found =
+                        contexts.get(c.getDatum(Citation.DOI_KEY));
+                    if (found == null) {
+                        continue;
+                    }
+                    for (String context : found) {
+                        c.addContext(context);
+                    }
+                }
+            }
+        }
+        return citations;
+        
+    }  //- getCitations
+
+    
     /* (non-Javadoc)
      * @see edu.psu.citeseerx.dao2.CitationDAO#getCitationsForCluster(java.lang.Long)
      */
@@ -203,6 +246,12 @@ public class CitationDAOImpl extends JdbcDaoSupport implements CitationDAO {
         "pages, editors, publisher, pubAddress, volume, number, tech, " +
         "raw, paperid, self from citations where paperid=?";
 
+    private static final String DEF_GET_DOCS_CITES_QUERY =
+        "select id, cluster, authors, title, venue, venueType, year, " +
+        "pages, editors, publisher, pubAddress, volume, number, tech, " +
+        "raw, paperid, self from citations where paperid in (:ids) " +
+        "order by id";
+
     private class GetCites extends MappingSqlQuery {
         
         public GetCites(DataSource dataSource) {
@@ -467,6 +516,13 @@ public class CitationDAOImpl extends JdbcDaoSupport implements CitationDAO {
     }  //- class GetContexts
     
     
+    private static final String DEF_GET_DOCS_CONTEXTS_QUERY =
+        "select citationContexts.context, citationContexts.citationid " +
+        "from citationContexts, citations where " +
+        "citationContexts.citationid=citations.id and " +
+        "citations.paperid in (:ids) order by citationContexts.id";
+    
+    
     private static final String DEF_SET_CLUSTER_QUERY =
         "update citations set cluster=? where id=?";
     
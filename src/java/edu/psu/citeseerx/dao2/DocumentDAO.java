@@ -14,6 +14,7 @@ package edu.psu.citeseerx.dao2;
 
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 
 import org.springframework.dao.DataAccessException;
 
@@ -37,6 +38,18 @@ public interface DocumentDAO {
     public Document getDocument(String docID, boolean getSource)
     throws DataAccessException;
 
+    /**
+     * Gets the records of many documents with one query.
+     * @param docIDs
+     * @param getSource If true, add source information from last version
+     * of metadata
+     * @return Document information keyed by ID, in no particular order;
+     * IDs with no document are left out.
+     * @throws DataAccessException
+     */
+    public Map<String, Document> getDocuments(List<String> docIDs,
+            boolean getSource) throws DataAccessException;
+
     /**
      * Inserts a document into the system
      * @param doc
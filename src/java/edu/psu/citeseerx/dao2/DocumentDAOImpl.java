@@ -23,7 +23,9 @@ import java.sql.Types;
 import java.text.DateFormat;
 import java.text.ParseException;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.sql.DataSource;
 
@@ -52,6 +54,8 @@ public class DocumentDAOImpl
 
     private GetDoc getDoc;
     private GetDocSrc getDocSrc;
+    private BatchLookup<Document> getDocs;
+    private BatchLookup<Document> getDocSrcs;
     private InsertDoc insertDoc;
     private InsertDocSrc insertDocSrc;
     private UpdateDoc updateDoc;
@@ -85,6 +89,25 @@ public class DocumentDAOImpl
 
         this.getDoc = new GetDoc(this.getDataSource());
         this.getDocSrc = new GetDocSrc(this.getDataSource());
+        this.getDocs = new BatchLookup<Document>(this.getDataSource(), DEF_GET_DOCS_QUERY, "id")
+        {
+            @Override
+            protected Document mapRow(final ResultSet rs, final int rowNum)
+                throws SQLException
+            {
+                return DocumentDAOImpl.this.getDoc.mapRow(rs, rowNum);
+            }
+        };
+        this.getDocSrcs = new BatchLookup<Document>(this.getDataSource(), DEF_GET_DOC_SRCS_QUERY,
+                "id")
+        {
+            @Override
+            protected Document mapRow(final ResultSet rs, final int rowNum)
+                throws SQLException
+            {
+                return DocumentDAOImpl.this.getDocSrc.mapRow(rs, rowNum);
+            }
+        };
         this.insertDoc = new InsertDoc(this.getDataSource());
         this.insertDocSrc = new InsertDocSrc(this.getDataSource());
         this.updateDoc = new UpdateDoc(this.getDataSource());
@@ -119,23 +142,62 @@ public class DocumentDAOImpl
                 System.err.println("WARNING: Null Source Doc for " + doi);
                 srcDoc = new Document(); // Just in case...
             }
-            doc.setSource(Document.TITLE_KEY, srcDoc.getSource(Document.TITLE_KEY));
-            doc.setSource(Document.ABSTRACT_KEY, srcDoc.getSource(Document.ABSTRACT_KEY));
-            doc.setSource(Document.YEAR_KEY, srcDoc.getSource(Document.YEAR_KEY));
-            doc.setSource(Document.VENUE_KEY, srcDoc.getSource(Document.VENUE_KEY));
-            doc.setSource(Document.VEN_TYPE_KEY, srcDoc.getSource(Document.VEN_TYPE_KEY));
-            doc.setSource(Document.PAGES_KEY, srcDoc.getSource(Document.PAGES_KEY));
-            doc.setSource(Document.VOL_KEY, srcDoc.getSource(Document.VOL_KEY));
-            doc.setSource(Document.NUM_KEY, srcDoc.getSource(Document.NUM_KEY));
-            doc.setSource(Document.PUBLISHER_KEY, srcDoc.getSource(Document.PUBLISHER_KEY));
-            doc.setSource(Document.PUBADDR_KEY, srcDoc.getSource(Document.PUBADDR_KEY));
-            doc.setSource(Document.TECH_KEY, srcDoc.getSource(Document.TECH_KEY));
-            doc.setSource(Document.CITES_KEY, srcDoc.getSource(Document.CITES_KEY));
+            copySource(srcDoc, doc);
         }
         return doc;
 
     } // - getDocument
 
+    /*
+     * (non-Javadoc)
+     *
+     * @see edu.psu.citeseerx.dao2.DocumentDAO#getDocuments(java.util.List, boolean)
+     */
+    @Override
+    public Map<String, Document> getDocuments(final List<String> dois,
+            final boolean getSource)
+        throws DataAccessException
+    {
+        Map<String, Document> docs = new HashMap<String, Document>();
+        for (List<Document> found : this.getDocs.run(dois).values()) {
+            Document doc = found.get(0);
+            docs.put(doc.getDatum(Document.DOI_KEY), doc);
+        }
+        if (getSource && !docs.isEmpty()) {
+            Map<String, List<Document>> srcDocs = this.getDocSrcs.run(docs.keySet());
+            for (Map.Entry<String, Document> entry : docs.entrySet()) {
+                List<Document> found = srcDocs.get(entry.getKey());
+                Document srcDoc;
+                if (found == null) {
+                    System.err.println("WARNING: Null Source Doc for " + entry.getKey());
+                    srcDoc = new Document(); // Just in case...
+                }
+                else {
+                    srcDoc = found.get(0);
+                }
+                copySource(srcDoc, entry.getValue());
+            }
+        }
+        return docs;
+
+    } // - getDocuments
+
+    private static void copySource(final Document srcDoc, final Document doc)
+    {
+        doc.setSource(Document.TITLE_KEY, srcDoc.getSource(Document.TITLE_KEY));
+        doc.setSource(Document.ABSTRACT_KEY, srcDoc.getSource(Document.ABSTRACT_KEY));
+        doc.setSource(Document.YEAR_KEY, srcDoc.getSource(Document.YEAR_KEY));
+        doc.setSource(Document.VENUE_KEY, srcDoc.getSource(Document.VENUE_KEY));
+        doc.setSource(Document.VEN_TYPE_KEY, srcDoc.getSource(Document.VEN_TYPE_KEY));
+        doc.setSource(Document.PAGES_KEY, srcDoc.getSource(Document.PAGES_KEY));
+        doc.setSource(Document.VOL_KEY, srcDoc.getSource(Document.VOL_KEY));
+        doc.setSource(Document.NUM_KEY, srcDoc.getSource(Document.NUM_KEY));
+        doc.setSource(Document.PUBLISHER_KEY, srcDoc.getSource(Document.PUBLISHER_KEY));
+        doc.setSource(Document.PUBADDR_KEY, srcDoc.getSource(Document.PUBADDR_KEY));
+        doc.setSource(Document.TECH_KEY, srcDoc.getSource(Document.TECH_KEY));
+        doc.setSource(Document.CITES_KEY, srcDoc.getSource(Document.CITES_KEY));
+    } // - copySource
+
     /*
      * (non-Javadoc)
      *
@@ -409,6 +471,15 @@ public class DocumentDAOImpl
 
     } // - class GetDocSrc
 
+    private static final String DEF_GET_DOCS_QUERY = "select id, version, cluster, title, abstract, year, venue, "
+            + "venueType, pages, volume, number, publisher, pubAddress, tech, "
+            + "public, ncites, versionName, crawlDate, repositoryID, "
+            + "conversionTrace, selfCites, versionTime from papers where id in (:ids)";
+
+    private static final String DEF_GET_DOC_SRCS_QUERY = "select id, title, abstract, year, venue, "
+            + "venueType, pages, volume, number, publisher, pubAddress, tech, citations from "
+            + "papers_versionShadow where id in (:ids)";
+
     /*
      * id, version, cluster, title, abstract, year, venue, venueType, pages, volume, number,
      * publisher, pubAddress, tech, public, size, versionName, crawlDate, repositoryID,
@@ -15,6 +15,7 @@ package edu.psu.citeseerx.dao2;
 import org.springframework.dao.DataAccessException;
 import edu.psu.citeseerx.domain.Hub;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Provides transparent access to HUBs for URLs persistence storage 
@@ -80,6 +81,16 @@ public interface HubDAO {
      */
     public List<String> getUrls(String doi) throws DataAccessException;
     
+    /**
+     * 
+     * @param dois
+     * @return The URLs associated to each of the given documents, keyed
+     * by document identifier. Documents without URLs are left out.
+     * @throws DataAccessException
+     */
+    public Map<String, List<String>> getUrls(List<String> dois)
+    throws DataAccessException;
+    
     /**
      * Associates an URL to a document
      * @param doi
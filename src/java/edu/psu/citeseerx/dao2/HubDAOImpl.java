@@ -19,6 +19,7 @@ import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.sql.Types;
 import java.util.List;
+import java.util.Map;
 import javax.sql.DataSource;
 
 import org.springframework.context.ApplicationContextException;
@@ -47,6 +48,7 @@ public class HubDAOImpl extends JdbcDaoSupport implements HubDAO {
     private GetUrlID getUrlID;
     private InsertUrl insertUrl;
     private GetUrls getUrls;
+    private BatchLookup<String> getDocsUrls;
     private GetPaperIDSForHub getPaperIDSForHub;
     
     /* (non-Javadoc)
@@ -68,6 +70,13 @@ public class HubDAOImpl extends JdbcDaoSupport implements HubDAO {
         getUrlID = new GetUrlID(getDataSource());
         insertUrl = new InsertUrl(getDataSource());
         getUrls = new GetUrls(getDataSource());
+        getDocsUrls = new BatchLookup<String>(getDataSource(),
+                DEF_GET_DOCS_URLS_STMT, "paperid") {
+            protected String mapRow(ResultSet rs, int rowNum)
+            throws SQLException {
+                return getUrls.mapRow(rs, rowNum);
+            }
+        };
         getPaperIDSForHub = new GetPaperIDSForHub(getDataSource());
     } //- initMappingSqlQueries
     
@@ -142,6 +151,15 @@ public class HubDAOImpl extends JdbcDaoSupport implements HubDAO {
     public List<String> getUrls(String doi) throws DataAccessException {
         return getUrls.run(doi);
     } //- getUrls
+    
+    
+    /* (non-Javadoc)
+     * @see edu.psu.citeseerx.dao2.HubDAO#getUrls(java.util.List)
+     */
+    public Map<String, List<String>> getUrls(List<String> dois)
+    throws DataAccessException {
+        return getDocsUrls.run(dois);
+    } //- getUrls
 
     
     public long insertUrl(String doi, String url) throws DataAccessException {
@@ -442,6 +460,10 @@ public class HubDAOImpl extends JdbcDaoSupport implements HubDAO {
         
     }  //- class GetUrls
     
+    
+    private static final String DEF_GET_DOCS_URLS_STMT =
+        "select paperid, url from urls where paperid in (:ids) order by id";
+    
     private static String DEF_GET_PAPER_IDS_FOR_HUB_STMT = "select " +
     		"urls.paperid from hubUrls, hubMap, urls where " +
     		"hubUrls.id = hubMap.hubid and hubMap.urlid = urls.id " +
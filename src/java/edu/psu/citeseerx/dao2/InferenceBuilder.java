@@ -12,9 +12,12 @@
  */
 package edu.psu.citeseerx.dao2;
 
+import java.util.Iterator;
+
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import edu.psu.citeseerx.domain.Citation;
 import edu.psu.citeseerx.domain.ThinDoc;
 
 /**
@@ -229,6 +232,44 @@ public class InferenceBuilder {
     }  //- deleteObservation
     
     
+    /**
+     * Builds the observation record for a citation, as passed to
+     * {@link #addObservation(ThinDoc, JSONObject)} when the citation is
+     * added to a cluster.
+     * @param citation
+     * @return the metadata of the given citation as a ThinDoc.
+     */
+    public static ThinDoc toThinDoc(Citation citation) {
+        
+        StringBuffer authorBuf = new StringBuffer();
+        for (Iterator<String> it = citation.getAuthorNames().iterator();
+        it.hasNext(); ) {
+            authorBuf.append(it.next());
+            if (it.hasNext()) {
+                authorBuf.append(",");
+            }
+        }
+        
+        String yearStr = citation.getDatum(Citation.YEAR_KEY);
+        String volStr  = citation.getDatum(Citation.VOL_KEY);
+        String numStr  = citation.getDatum(Citation.NUMBER_KEY);
+        
+        ThinDoc thinDoc = new ThinDoc();
+        thinDoc.setAuthors(authorBuf.toString());
+        thinDoc.setTitle(citation.getDatum(Citation.TITLE_KEY));
+        thinDoc.setVenue(citation.getDatum(Citation.VENUE_KEY));
+        thinDoc.setVentype(citation.getDatum(Citation.VEN_TYPE_KEY));
+        thinDoc.setPages(citation.getDatum(Citation.PAGES_KEY));
+        thinDoc.setPublisher(citation.getDatum(Citation.PUBLISHER_KEY));
+        thinDoc.setTech(citation.getDatum(Citation.TECH_KEY));
+        try {thinDoc.setYear(Integer.parseInt(yearStr));} catch (Exception e) {}
+        try {thinDoc.setVol(Integer.parseInt(volStr));}   catch (Exception e) {}
+        try {thinDoc.setNum(Integer.parseInt(numStr));}   catch (Exception e) {}
+        return thinDoc;
+        
+    }  //- toThinDoc
+    
+    
     /**
      * Returns a ThinDoc representation of the canonical metadata represented
      * by the JSON metadata bundle.
@@ -13,6 +13,7 @@
 package edu.psu.citeseerx.dao2;
 
 import java.util.List;
+import java.util.Map;
 import edu.psu.citeseerx.domain.Keyword;
 import org.springframework.dao.DataAccessException;
 
@@ -33,6 +34,17 @@ public interface KeywordDAO {
     public List<Keyword> getKeywords(String doi, boolean getSource)
     throws DataAccessException;
     
+    /**
+     * 
+     * @param dois
+     * @param getSource
+     * @return The keywords associated to each of the given dois, keyed by
+     * doi. Dois without keywords are left out.
+     * @throws DataAccessException
+     */
+    public Map<String, List<Keyword>> getKeywords(List<String> dois,
+            boolean getSource) throws DataAccessException;
+    
     /**
      * Associates a keyword with the given doi
      * @param doi
@@ -15,6 +15,7 @@ package edu.psu.citeseerx.dao2;
 import edu.psu.citeseerx.domain.Keyword;
 
 import java.util.List;
+import java.util.Map;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Types;
@@ -39,6 +40,8 @@ public class KeywordDAOImpl extends JdbcDaoSupport implements KeywordDAO {
 
     private GetKeywords getKeywords;
     private GetKeySrc getKeySrc;
+    private BatchLookup<Keyword> getDocsKeywords;
+    private BatchLookup<String> getDocsKeySrcs;
     private InsertKeyword insertKeyword;
     private InsertKeySrc insertKeySrc;
     private UpdateKeyword updateKeyword;
@@ -57,6 +60,20 @@ public class KeywordDAOImpl extends JdbcDaoSupport implements KeywordDAO {
     protected void initMappingSqlQueries() throws ApplicationContextException {
         getKeywords = new GetKeywords(getDataSource());
         getKeySrc = new GetKeySrc(getDataSource());
+        getDocsKeywords = new BatchLookup<Keyword>(getDataSource(),
+                DEF_GET_DOCS_KEYWORD_QUERY, "paperid") {
+            protected Keyword mapRow(ResultSet rs, int rowNum)
+            throws SQLException {
+                return getKeywords.mapRow(rs, rowNum);
+            }
+        };
+        getDocsKeySrcs = new BatchLookup<String>(getDataSource(),
+                DEF_GET_DOCS_KEYWORD_SRC_QUERY, "id") {
+            protected String mapRow(ResultSet rs, int rowNum)
+            throws SQLException {
+                return getKeySrc.mapRow(rs, rowNum);
+            }
+        };
         insertKeyword = new InsertKeyword(getDataSource());
         insertKeySrc = new InsertKeySrc(getDataSource());
         updateKeyword = new UpdateKeyword(getDataSource());
@@ -82,6 +99,27 @@ public class KeywordDAOImpl extends JdbcDaoSupport implements KeywordDAO {
     } //- getKeywords
 
     
+    /* (non-Javadoc)
+     * @see edu.psu.citeseerx.dao2.KeywordDAO#getKeywords(java.util.List, boolean)
+     */
+    public Map<String, List<Keyword>> getKeywords(List<String> dois,
+            boolean getSource) throws DataAccessException {
+        Map<String, List<Keyword>> keywords = getDocsKeywords.run(dois);
+        if (getSource && !keywords.isEmpty()) {
+            Map<String, List<String>> srcKeys = getDocsKeySrcs.run(dois);
+            for (List<Keyword> docKeywords : keywords.values()) {
+                for (Keyword keyword : docKeywords) {
+                    List<String> found =
+                        srcKeys.get(keyword.getDatum(Keyword.DOI_KEY));
+                    keyword.setSource(Keyword.KEYWORD_KEY,
+                            (found == null) ? null : found.get(0));
+                }
+            }
+        }
+        return keywords;
+    } //- getKeywords
+
+    
     /* (non-Javadoc)
      * @see edu.psu.citeseerx.dao2.KeywordDAO#insertKeyword(java.lang.String, edu.psu.citeseerx.domain.Keyword)
      */
@@ -126,6 +164,10 @@ public class KeywordDAOImpl extends JdbcDaoSupport implements KeywordDAO {
     private static final String DEF_GET_KEYWORD_QUERY =
         "select id, keyword from keywords where paperid=?";
 
+    private static final String DEF_GET_DOCS_KEYWORD_QUERY =
+        "select id, keyword, paperid from keywords where paperid in (:ids) " +
+        "order by id";
+
     private class GetKeywords extends MappingSqlQuery {
         
         public GetKeywords(DataSource dataSource) {
@@ -151,6 +193,12 @@ public class KeywordDAOImpl extends JdbcDaoSupport implements KeywordDAO {
     private static final String DEF_GET_KEYWORD_SRC_QUERY =
         "select keyword from keywords_versionShadow where id=?";
 
+    private static final String DEF_GET_DOCS_KEYWORD_SRC_QUERY =
+        "select keywords_versionShadow.keyword, keywords_versionShadow.id " +
+        "from keywords_versionShadow, keywords where " +
+        "keywords_versionShadow.id=keywords.id and " +
+        "keywords.paperid in (:ids)";
+
     private class GetKeySrc extends MappingSqlQuery {
         
         public GetKeySrc(DataSource dataSource) {
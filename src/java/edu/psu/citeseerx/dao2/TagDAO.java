@@ -14,6 +14,7 @@ package edu.psu.citeseerx.dao2;
 
 import org.springframework.dao.DataAccessException;
 import java.util.List;
+import java.util.Map;
 
 import edu.psu.citeseerx.domain.Tag;
 
@@ -49,4 +50,14 @@ public interface TagDAO {
      */
     public List<Tag> getTags(String paperid) throws DataAccessException;
     
+    /**
+     * 
+     * @param paperids
+     * @return The tags assigned to each of the given documents, keyed by
+     * document. Documents without tags are left out.
+     * @throws DataAccessException
+     */
+    public Map<String, List<Tag>> getTags(List<String> paperids)
+    throws DataAccessException;
+    
 } //- interface TagDAO
@@ -16,6 +16,7 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Types;
 import java.util.List;
+import java.util.Map;
 
 import javax.sql.DataSource;
 
@@ -36,6 +37,7 @@ import edu.psu.citeseerx.domain.Tag;
 public class TagDAOImpl extends JdbcDaoSupport implements TagDAO {
 
     private GetTags getTags;
+    private BatchLookup<Tag> getDocsTags;
     private TagExists tagExists;
     private InsertTag insertTag;
     private IncrementTag incrementTag;
@@ -53,6 +55,13 @@ public class TagDAOImpl extends JdbcDaoSupport implements TagDAO {
     
     protected void initMappingSqlQueries() throws ApplicationContextException {
         getTags = new GetTags(getDataSource());
+        getDocsTags = new BatchLookup<Tag>(getDataSource(),
+                DEF_GET_DOCS_TAGS_QUERY, "paperid") {
+            protected Tag mapRow(ResultSet rs, int rowNum)
+            throws SQLException {
+                return getTags.mapRow(rs, rowNum);
+            }
+        };
         tagExists = new TagExists(getDataSource());
         insertTag = new InsertTag(getDataSource());
         incrementTag = new IncrementTag(getDataSource());
@@ -90,6 +99,15 @@ public class TagDAOImpl extends JdbcDaoSupport implements TagDAO {
     public List<Tag> getTags(String doi) throws DataAccessException {
         return getTags.run(doi);
     } //- getTags
+    
+    
+    /* (non-Javadoc)
+     * @see edu.psu.citeseerx.dao2.TagDAO#getTags(java.util.List)
+     */
+    public Map<String, List<Tag>> getTags(List<String> paperids)
+    throws DataAccessException {
+        return getDocsTags.run(paperids);
+    } //- getTags
 
     
     private static final String DEF_GET_TAGS_QUERY =
@@ -115,6 +133,11 @@ public class TagDAOImpl extends JdbcDaoSupport implements TagDAO {
             return execute(doi);
         } //- GetTags.run
     } //- class GetTags
+    
+    
+    private static final String DEF_GET_DOCS_TAGS_QUERY =
+        "select tag, count, paperid from tags where paperid in (:ids) " +
+        "order by count desc";
         
     
     private static final String DEF_GET_TAG_QUERY =
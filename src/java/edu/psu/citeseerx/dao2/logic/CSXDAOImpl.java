@@ -14,8 +14,10 @@ package edu.psu.citeseerx.dao2.logic;
 
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 
 import org.springframework.dao.DataAccessException;
 
@@ -71,6 +73,12 @@ public class CSXDAOImpl
     implements CSXDAO
 {
 
+    /**
+     * Maximum number of documents fetched by each query in
+     * getDocumentsFromDB.
+     */
+    private static final int DOCUMENT_BATCH_SIZE = 500;
+
     private AckDAO ackDAO;
     private AdminDAO adminDAO;
     private AuthorDAO authDAO;
@@ -310,6 +318,93 @@ public class CSXDAOImpl
 
     } // - getDocumentFromDB
 
+    /*
+     * (non-Javadoc)
+     *
+     * @see edu.psu.citeseerx.dao2.logic.CSXOperations#getDocumentsFromDB(java.util.List, boolean,
+     * boolean, boolean, boolean, boolean, boolean)
+     */
+    @Override
+    public List<Document> getDocumentsFromDB(final List<String> dois, final boolean getCitations,
+            final boolean getContexts, final boolean getSource, final boolean getAcks,
+            final boolean getKeywords, final boolean getTags)
+        throws DataAccessException
+    {
+
+        List<Document> docs = new ArrayList<Document>(dois.size());
+
+        for (int start = 0; start < dois.size(); start += DOCUMENT_BATCH_SIZE) {
+            List<String> batch = dois.subList(start,
+                    Math.min(dois.size(), start + DOCUMENT_BATCH_SIZE));
+
+            Map<String, Document> found = this.docDAO.getDocuments(batch, getSource);
+            if (found.isEmpty())
+                continue;
+            List<String> ids = new ArrayList<String>(found.keySet());
+
+            Map<String, List<String>> urls = this.hubDAO.getUrls(ids);
+            Map<String, List<Author>> authors = this.authDAO.getDocAuthors(ids, getSource);
+            Map<String, List<Citation>> citations = null;
+            if (getCitations) {
+                citations = this.citeDAO.getCitations(ids, getContexts);
+            }
+            Map<String, List<Acknowledgment>> acks = null;
+            if (getAcks) {
+                acks = this.ackDAO.getAcknowledgments(ids, getContexts, getSource);
+            }
+            Map<String, List<Keyword>> keywords = null;
+            if (getKeywords) {
+                keywords = this.keywordDAO.getKeywords(ids, getSource);
+            }
+            Map<String, List<Tag>> tags = null;
+            if (getTags) {
+                tags = this.tagDAO.getTags(ids);
+            }
+
+            for (String doi : batch) {
+                // Removed so that a repeated DOI is only assembled once.
+                Document doc = found.remove(doi);
+                if (doc == null)
+                    continue;
+
+                DocumentFileInfo finfo = doc.getFileInfo();
+                for (String url : forDocument(urls, doi)) {
+                    finfo.addUrl(url);
+                }
+                for (Author author : forDocument(authors, doi)) {
+                    doc.addAuthor(author);
+                }
+                if (getCitations) {
+                    for (Citation citation : forDocument(citations, doi)) {
+                        doc.addCitation(citation);
+                    }
+                }
+                if (getAcks) {
+                    for (Acknowledgment ack : forDocument(acks, doi)) {
+                        doc.addAcknowledgment(ack);
+                    }
+                }
+                if (getKeywords) {
+                    for (Keyword keyword : forDocument(keywords, doi)) {
+                        doc.addKeyword(keyword);
+                    }
+                }
+                if (getTags) {
+                    doc.setTags(forDocument(tags, doi));
+                }
+                docs.add(doc);
+            }
+        }
+        return docs;
+
+    } // - getDocumentsFromDB
+
+    private static <T> List<T> forDocument(final Map<String, List<T>> records, final String doi)
+    {
+        List<T> list = records.get(doi);
+        return (list != null) ? list : new ArrayList<T>();
+    } // - forDocument
+
     /*
      * (non-Javadoc)
      *
@@ -463,6 +558,19 @@ public class CSXDAOImpl
         return this.ackDAO.getAcknowledgments(doi, getContexts, getSource);
     } // - getAcknowledgments
 
+    /*
+     * (non-Javadoc)
+     *
+     * @see edu.psu.citeseerx.dao2.AckDAO#getAcknowledgments(java.util.List, boolean, boolean)
+     */
+    @Override
+    public Map<String, List<Acknowledgment>> getAcknowledgments(final List<String> dois,
+            final boolean getContexts, final boolean getSource)
+        throws DataAccessException
+    {
+        return this.ackDAO.getAcknowledgments(dois, getContexts, getSource);
+    } // - getAcknowledgments
+
     /*
      * (non-Javadoc)
      *
@@ -558,6 +666,19 @@ public class CSXDAOImpl
         return this.authDAO.getDocAuthors(docID, getSource);
     } // - getdocAuthors
 
+    /*
+     * (non-Javadoc)
+     *
+     * @see edu.psu.citeseerx.dao2.AuthorDAO#getDocAuthors(java.util.List, boolean)
+     */
+    @Override
+    public Map<String, List<Author>> getDocAuthors(final List<String> docIDs,
+            final boolean getSource)
+        throws DataAccessException
+    {
+        return this.authDAO.getDocAuthors(docIDs, getSource);
+    } // - getDocAuthors
+
     /*
      * (non-Javadoc)
      *
@@ -651,6 +772,19 @@ public class CSXDAOImpl
         return this.citeDAO.getCitations(docID, getContexts);
     } // - getCitations
 
+    /*
+     * (non-Javadoc)
+     *
+     * @see edu.psu.citeseerx.dao2.CitationDAO#getCitations(java.util.List, boolean)
+     */
+    @Override
+    public Map<String, List<Citation>> getCitations(final List<String> docIDs,
+            final boolean getContexts)
+        throws DataAccessException
+    {
+        return this.citeDAO.getCitations(docIDs, getContexts);
+    } // - getCitations
+
     /*
      * (non-Javadoc)
      *
@@ -816,6 +950,18 @@ public class CSXDAOImpl
         return this.docDAO.getDocument(docID, getSource);
     } // - getDocument
 
+    /*
+     * (non-Javadoc)
+     *
+     * @see edu.psu.citeseerx.dao2.DocumentDAO#getDocuments(java.util.List, boolean)
+     */
+    @Override
+    public Map<String, Document> getDocuments(final List<String> docIDs, final boolean getSource)
+        throws DataAccessException
+    {
+        return this.docDAO.getDocuments(docIDs, getSource);
+    } // - getDocuments
+
     /*
      * (non-Javadoc)
      *
@@ -1062,6 +1208,19 @@ public class CSXDAOImpl
         return this.keywordDAO.getKeywords(doi, getSource);
     } // - getKeywords
 
+    /*
+     * (non-Javadoc)
+     *
+     * @see edu.psu.citeseerx.dao2.KeywordDAO#getKeywords(java.util.List, boolean)
+     */
+    @Override
+    public Map<String, List<Keyword>> getKeywords(final List<String> dois,
+            final boolean getSource)
+        throws DataAccessException
+    {
+        return this.keywordDAO.getKeywords(dois, getSource);
+    } // - getKeywords
+
     /*
      * (non-Javadoc)
      *
@@ -1503,6 +1662,17 @@ public class CSXDAOImpl
         return this.hubDAO.getUrls(doi);
     } // - getUrls
 
+    /*
+     * (non-Javadoc)
+     *
+     * @see edu.psu.citeseerx.dao2.HubDAO#getUrls(java.util.List)
+     */
+    @Override
+    public Map<String, List<String>> getUrls(final List<String> dois)
+    {
+        return this.hubDAO.getUrls(dois);
+    } // - getUrls
+
     /*
      * (non-Javadoc)
      *
@@ -1625,6 +1795,18 @@ public class CSXDAOImpl
         return this.tagDAO.getTags(paperid);
     } // - getTags
 
+    /*
+     * (non-Javadoc)
+     *
+     * @see edu.psu.citeseerx.dao2.TagDAO#getTags(java.util.List)
+     */
+    @Override
+    public Map<String, List<Tag>> getTags(final List<String> paperids)
+        throws DataAccessException
+    {
+        return this.tagDAO.getTags(paperids);
+    } // - getTags
+
     // /////////////////////////////////////////////////////
     // Admin DAO
     // /////////////////////////////////////////////////////
@@ -14,6 +14,7 @@ package edu.psu.citeseerx.dao2.logic;
 
 import org.springframework.dao.DataAccessException;
 import java.io.IOException;
+import java.util.List;
 import edu.psu.citeseerx.domain.Document;
 
 public interface CSXOperations {
@@ -63,6 +64,27 @@ public interface CSXOperations {
             boolean getContexts, boolean getSource, boolean getAcks,
             boolean getKeywords, boolean getTags) throws DataAccessException;
 
+    /**
+     * Retrieves many documents at once, with the same options as
+     * getDocumentFromDB.  Instead of one set of queries per document, each
+     * table is read once for a whole batch of documents, so this should be
+     * preferred whenever more than a handful of documents is needed.
+     * @param dois
+     * @param getCitations
+     * @param getContexts
+     * @param getSource
+     * @param getAcks
+     * @param getKeywords
+     * @param getTags
+     * @return The documents, in the order of dois. DOIs that are not in
+     * the database, and repeated DOIs, are skipped.
+     * @throws DataAccessException
+     */
+    public List<Document> getDocumentsFromDB(List<String> dois,
+            boolean getCitations, boolean getContexts, boolean getSource,
+            boolean getAcks, boolean getKeywords, boolean getTags)
+    throws DataAccessException;
+
     /**
      * Gets a document object with all the core document metadata, with
      * options to retrieve citation contexts and provenance data.
@@ -29,5 +29,25 @@ public interface CitationStatisticsDAO {
     
     public List<AuthorStatContainer> getAuthorStats(long startingID, int amount)
     throws DataAccessException;
+    
+    /**
+     * Gets the citation count, collection flag and year of a page of
+     * clusters, in ID order; other fields are not set.
+     * @param startingID first cluster ID of the page.
+     * @param amount
+     * @return clusters with IDs from startingID on.
+     * @throws DataAccessException
+     */
+    public List<ThinDoc> getClusterSizes(long startingID, int amount)
+    throws DataAccessException;
+    
+    /**
+     * @param clusterIDs
+     * @return the given clusters, in no particular order; clusters that
+     * no longer exist are left out.
+     * @throws DataAccessException
+     */
+    public List<ThinDoc> getClusters(List<Long> clusterIDs)
+    throws DataAccessException;
 
 } //- interface CitationStatisticsDAO
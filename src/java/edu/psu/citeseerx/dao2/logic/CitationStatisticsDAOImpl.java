@@ -12,6 +12,7 @@
  */
 package edu.psu.citeseerx.dao2.logic;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.sql.ResultSet;
 import java.sql.SQLException;
@@ -20,7 +21,10 @@ import javax.sql.DataSource;
 
 import org.springframework.context.ApplicationContextException;
 import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.SqlParameter;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcDaoSupport;
 import org.springframework.jdbc.core.support.JdbcDaoSupport;
 import org.springframework.jdbc.object.MappingSqlQuery;
 
@@ -36,6 +40,8 @@ implements CitationStatisticsDAO {
     private GetClustersByYear getClustersByYear;
     private GetInColByYear getInColByYear;
     private GetAuthorStats getAuthorStats;
+    private GetClusterSizes getClusterSizes;
+    private GetClustersByID getClustersByID;
     
     protected void initDao() throws ApplicationContextException {
         initMappingSqlQueries();
@@ -48,6 +54,8 @@ implements CitationStatisticsDAO {
         getClustersByYear = new GetClustersByYear(getDataSource());
         getInColByYear = new GetInColByYear(getDataSource());
         getAuthorStats = new GetAuthorStats(getDataSource());
+        getClusterSizes = new GetClusterSizes(getDataSource());
+        getClustersByID = new GetClustersByID(getDataSource());
     }
     
     
@@ -74,6 +82,16 @@ implements CitationStatisticsDAO {
         return getAuthorStats.run(startingID, amount);
     }
     
+    public List<ThinDoc> getClusterSizes(long startingID, int amount)
+    throws DataAccessException {
+        return getClusterSizes.run(startingID, amount);
+    }
+    
+    public List<ThinDoc> getClusters(List<Long> clusterIDs)
+    throws DataAccessException {
+        return getClustersByID.run(clusterIDs);
+    }
+    
     
     private static final String DEF_GET_CLUSTERS_QUERY =
         "select id, size, incollection, cauth, ctitle, cvenue, cyear " +
@@ -220,5 +238,65 @@ implements CitationStatisticsDAO {
             return execute(params);
         }
     }
+    
+    
+    private static final String DEF_GET_CLUSTER_SIZES_QUERY =
+        "select id, size, incollection, cyear from clusters where id>=? " +
+        "order by id asc limit ?";
+    
+    private class GetClusterSizes extends MappingSqlQuery {
+        
+        public GetClusterSizes(DataSource dataSource) {
+            setDataSource(dataSource);
+            setSql(DEF_GET_CLUSTER_SIZES_QUERY);
+            declareParameter(new SqlParameter(Types.BIGINT));
+            declareParameter(new SqlParameter(Types.INTEGER));
+            compile();
+        }
+        
+        public ThinDoc mapRow(ResultSet rs, int rowNum) throws SQLException {
+            ThinDoc doc = new ThinDoc();
+            doc.setCluster(rs.getLong(1));
+            doc.setNcites(rs.getInt(2));
+            doc.setInCollection(rs.getBoolean(3));
+            doc.setYear(rs.getInt(4));
+            return doc;
+        }
+        
+        public List<ThinDoc> run(long startingID, int amount) {
+            Object[] params = new Object[] {
+                    new Long(startingID), new Integer(amount)
+            };
+            return execute(params);
+        }
+    }
+    
+    
+    private static final String DEF_GET_CLUSTERS_BY_ID_QUERY =
+        "select id, size, incollection, cauth, ctitle, cvenue, cyear " +
+        "from clusters where id in (:ids)";
+    
+    private class GetClustersByID extends NamedParameterJdbcDaoSupport {
+        
+        public GetClustersByID(DataSource dataSource) {
+            setDataSource(dataSource);
+        }
+        
+        public List<ThinDoc> run(List<Long> clusterIDs) {
+            final List<ThinDoc> docs = new ArrayList<ThinDoc>();
+            if (clusterIDs.isEmpty()) {
+                return docs;
+            }
+            MapSqlParameterSource parameters = new MapSqlParameterSource();
+            parameters.addValue("ids", clusterIDs);
+            getNamedParameterJdbcTemplate().query(DEF_GET_CLUSTERS_BY_ID_QUERY,
+                    parameters, new RowCallbackHandler() {
+                public void processRow(ResultSet rs) throws SQLException {
+                    docs.add(mapThinDoc(rs));
+                }
+            });
+            return docs;
+        }
+    }
 
 }  //- class CitationStatisticsDAOImpl
@@ -15,6 +15,8 @@ package edu.psu.citeseerx.dao2.logic;
 import org.springframework.dao.DataAccessException;
 import java.util.List;
 import java.util.Date;
+import java.util.Map;
+import java.util.Set;
 
 import edu.psu.citeseerx.domain.*;
 import org.json.JSONException;
@@ -177,6 +179,76 @@ public interface CiteClusterDAO {
      */
     public List<String> getPaperIDs(Long clusterid) throws DataAccessException;
     
+    /**
+     * Loads the citation graph neighbourhood (cited clusters, citing
+     * clusters and paper identifiers) of all the given clusters at once
+     * using set-based queries. Intended for callers that walk the cluster
+     * table page by page.
+     * @param clusterids
+     * @return The neighbourhood of the given clusters, ready to be read.
+     * @throws DataAccessException
+     */
+    public ClusterNeighbors getClusterNeighbors(List<Long> clusterids)
+    throws DataAccessException;
+
+    /**
+     * Gets the paper identifiers of many clusters with one query.
+     * @param clusterids
+     * @return The paper identifiers of each cluster, in identifier order.
+     * Clusters with no papers are left out.
+     * @throws DataAccessException
+     */
+    public Map<Long, List<String>> getPaperIDs(List<Long> clusterids)
+    throws DataAccessException;
+
+    /**
+     * @param doi
+     * @return The cluster the given paper belongs to, or null if the paper
+     * is not clustered.
+     * @throws DataAccessException
+     */
+    public Long getPaperCluster(String doi) throws DataAccessException;
+
+    /**
+     * Reads the stored public representative paper of the given clusters.
+     * The mapping of a cluster is invalidated whenever a paper joins or
+     * leaves it, so a valid entry, when present, is current.
+     * @param clusterids
+     * @param versions Receives the version of each cluster whose mapping
+     * has been invalidated, to be passed back to insertPublicDOIs.
+     * @return The DOI of the public paper of each cluster that has a valid
+     * stored mapping.  The DOI is null for clusters known to have no public
+     * paper.
+     * @throws DataAccessException
+     */
+    public Map<Long, String> getPublicDOIs(List<Long> clusterids,
+            Map<Long, Long> versions) throws DataAccessException;
+
+    /**
+     * Stores the public representative paper of each given cluster, null
+     * for clusters with no public paper, unless its mapping was invalidated
+     * after it was read: a cluster with a version is only stored if that
+     * is still its version, and one without only if it still has no stored
+     * mapping at all.
+     * @param dois DOI by cluster
+     * @param versions version of each cluster, as read by getPublicDOIs
+     * @return The clusters whose mapping was stored.
+     * @throws DataAccessException
+     */
+    public Set<Long> insertPublicDOIs(Map<Long, String> dois,
+            Map<Long, Long> versions) throws DataAccessException;
+
+    /**
+     * Invalidates the stored public representative paper of a cluster,
+     * which will be looked up again when next needed.  Mappings being
+     * worked out from the cluster's earlier state are then no longer
+     * stored.
+     * @param clusterid
+     * @throws DataAccessException
+     */
+    public void invalidatePublicDOI(Long clusterid)
+    throws DataAccessException;
+    
     /**
      * 
      * @param clusterid
@@ -229,6 +301,38 @@ public interface CiteClusterDAO {
     public void insertInfUpdateTime(Long cid, Date time)
     throws DataAccessException;
     
+    /**
+     * Gets, in ID order, up to amount clusters after start whose record
+     * has been updated since inference was last run on it, or on which
+     * inference has never been run.  The update time of each returned
+     * cluster is the one to record with insertInfUpdateTimes once it has
+     * been processed.
+     * @param start
+     * @param amount
+     * @return The canonical representation of the clusters, without
+     * observations.
+     * @throws DataAccessException
+     */
+    public List<ThinDoc> getInfUpdateRequired(Long start, int amount)
+    throws DataAccessException;
+    
+    /**
+     * Updates the canonical metadata and observations of the given clusters
+     * as a single batch.
+     * @param clusters
+     * @throws DataAccessException
+     */
+    public void updateClusters(List<ThinDoc> clusters)
+    throws DataAccessException;
+    
+    /**
+     * Records the last inference time of several clusters as a single batch.
+     * @param times inference time by cluster ID
+     * @throws DataAccessException
+     */
+    public void insertInfUpdateTimes(Map<Long, Date> times)
+    throws DataAccessException;
+    
     public void setLastIndexTime(Date time);
     
     public Date getLastIndexTime();
@@ -22,8 +22,12 @@ import javax.sql.DataSource;
 
 import org.springframework.context.ApplicationContextException;
 import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.SqlParameter;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcDaoSupport;
 import org.springframework.jdbc.core.support.JdbcDaoSupport;
+import org.springframework.jdbc.object.BatchSqlUpdate;
 import org.springframework.jdbc.object.MappingSqlQuery;
 import org.springframework.jdbc.object.SqlUpdate;
 import org.springframework.jdbc.support.KeyHolder;
@@ -53,11 +57,16 @@ implements CiteClusterDAO {
     private InsertKeyMapping insertKeyMapping;
     private GetClustersInCollection getClustersInCollection;
     private GetPaperIDs getPaperIDs;
+    private GetPaperCluster getPaperCluster;
+    private GetNeighborhood getNeighborhood;
+    private GetPublicDOIs getPublicDOIs;
+    private InvalidatePublicDOI invalidatePublicDOI;
     private GetCiteIDs getCiteIDs;
     private GetCluster getCluster;
     private UpdateCluster updateCluster;
     private UpdateObs updateObs;
     private GetClustersSinceTime getClustersSinceTime;
+    private GetInfUpdateRequired getInfUpdateRequired;
     private GetCiteContext getCiteContext;
     private GetMinClusterID getMinClusterID;
     private GetMaxClusterID getMaxClusterID;
@@ -83,6 +92,42 @@ implements CiteClusterDAO {
     private GetDeletions getDeletions;
     private DeleteCitations deleteCitations;
     private DeleteKeyMappings deleteKeyMappings;
+    private GetClusterIDs getClusterIDs;
+    private GetGraphMappings getGraphMappings;
+    
+    
+    private boolean batchClustering = false;
+    
+    /**
+     * When set, clusterDocument resolves the keys of the document and all
+     * of its citations with one query and sends the key mapping, citation
+     * and graph writes as JDBC batches at the end of the document, rather
+     * than issuing a query or update per key and citation.  The resulting
+     * clusters are the same either way.  Add rewriteBatchedStatements=true
+     * to the MySQL connection URL to have the driver send each batch as a
+     * single multi-row statement.
+     * @param batchClustering (default false)
+     */
+    public void setBatchClustering(boolean batchClustering) {
+        this.batchClustering = batchClustering;
+    } //- setBatchClustering
+    
+    
+    private KeyClusterCache keyCache = null;
+    
+    /**
+     * Keeps the given number of recently used key to cluster mappings in
+     * memory, least recently used first out.  Only used by batched
+     * clustering.  Entries are dropped when clusters are deleted through
+     * this DAO but not when another process changes the keymap table, so
+     * the cache should only be enabled for the sole writer of the graph.
+     * @param keyCacheSize (default 0, no cache)
+     */
+    public void setKeyCacheSize(int keyCacheSize) {
+        keyCache = (keyCacheSize > 0) ? new KeyClusterCache(keyCacheSize) :
+            null;
+    } //- setKeyCacheSize
+    
     
     protected void initDao() throws ApplicationContextException {
         initMappingSqlQueries();
@@ -107,11 +152,16 @@ implements CiteClusterDAO {
         insertKeyMapping = new InsertKeyMapping(getDataSource());
         getClustersInCollection = new GetClustersInCollection(getDataSource());
         getPaperIDs = new GetPaperIDs(getDataSource());
+        getPaperCluster = new GetPaperCluster(getDataSource());
+        getNeighborhood = new GetNeighborhood(getDataSource());
+        getPublicDOIs = new GetPublicDOIs(getDataSource());
+        invalidatePublicDOI = new InvalidatePublicDOI(getDataSource());
         getCiteIDs = new GetCiteIDs(getDataSource());
         getCluster = new GetCluster(getDataSource());
         updateCluster = new UpdateCluster(getDataSource());
         updateObs = new UpdateObs(getDataSource());
         getClustersSinceTime = new GetClustersSinceTime(getDataSource());
+        getInfUpdateRequired = new GetInfUpdateRequired(getDataSource());
         getCiteContext = new GetCiteContext(getDataSource());
         getMinClusterID = new GetMinClusterID(getDataSource());
         getMaxClusterID = new GetMaxClusterID(getDataSource());
@@ -137,6 +187,8 @@ implements CiteClusterDAO {
         getDeletions = new GetDeletions(getDataSource());
         deleteCitations = new DeleteCitations(getDataSource());
         deleteKeyMappings = new DeleteKeyMappings(getDataSource());
+        getClusterIDs = new GetClusterIDs(getDataSource());
+        getGraphMappings = new GetGraphMappings(getDataSource());
         
     }  //- initMappingSqlQueries
     
@@ -147,6 +199,10 @@ implements CiteClusterDAO {
     public Long clusterDocument(List<String> keys, Document doc)
     throws DataAccessException, JSONException {
         
+        if (batchClustering) {
+            return clusterDocumentBatched(keys, doc);
+        }
+        
         String keyFound = null;
         List<Long> cids = new ArrayList<Long>();
 
@@ -286,6 +342,122 @@ implements CiteClusterDAO {
         
     }  //- insertGraphMapping
     
+    /**
+     * Batched version of {@link #clusterDocument(List, Document)}.  All the
+     * keys are resolved up front and the answers are kept up to date in
+     * memory as clusters and key mappings are created, so every citation
+     * is matched against the same mappings it would have found in the
+     * database had each write been sent right away.
+     * @param keys
+     * @param doc
+     * @return the cluster identifier of the document.
+     * @throws DataAccessException
+     * @throws JSONException
+     */
+    private Long clusterDocumentBatched(List<String> keys, Document doc)
+    throws DataAccessException, JSONException {
+        
+        ClusteringBatch batch = new ClusteringBatch();
+        List<String> allKeys = new ArrayList<String>(keys);
+        for (Citation citation : doc.getCitations()) {
+            allKeys.addAll(citation.getKeys());
+        }
+        batch.resolve(allKeys);
+        
+        Long cid = null;
+        String keyFound = null;
+        if (!keys.isEmpty()) {
+            // Only test the first (best) key for documents
+            cid = batch.getClusterID(keys.get(0));
+            if (cid != null) {
+                keyFound = keys.get(0);
+            }
+        }
+        
+        if (cid == null) {
+            cid = insertCluster.run(true, getClusterAuthors(doc),
+                    doc.getDatum(Document.TITLE_KEY, Document.UNENCODED));
+            for (String key : keys) {
+                batch.addKeyMapping(key, cid);
+            }
+        } else {
+            for (String key : keys) {
+                if (!key.equalsIgnoreCase(keyFound)) {
+                    batch.addKeyMapping(key, cid);
+                }
+            }
+        }
+        insertDocument(doc, cid);
+        
+        batch.loadGraphMappings(cid);
+        for (Citation citation : doc.getCitations()) {
+            clusterCitation(citation.getKeys(), citation, cid, batch);
+        }
+        batch.flush();
+        
+        return cid;
+        
+    }  //- clusterDocumentBatched
+    
+    /**
+     * Batched version of {@link #clusterCitation(List, Citation, Long)}.
+     * Key mappings, the citation and the graph edge are queued on the
+     * given batch; observations are still updated right away since they
+     * build on the current state of the cluster.
+     * @param keys
+     * @param citation
+     * @param docCID
+     * @param batch
+     * @throws DataAccessException
+     * @throws JSONException
+     */
+    private void clusterCitation(List<String> keys, Citation citation,
+            Long docCID, ClusteringBatch batch)
+    throws DataAccessException, JSONException {
+        
+        if (keys.isEmpty()) {
+            return;
+        }
+        
+        String keyFound = null;
+        Long firstCID = null;
+        int found = 0;
+        
+        for (String key : keys) {
+            Long cid = batch.getClusterID(key);
+            if (cid != null) {
+                keyFound = key;
+                if (firstCID == null) {
+                    firstCID = cid;
+                }
+                found++;
+            }
+        }
+        
+        String context = null;
+        if (!citation.getContexts().isEmpty()) {
+            context = citation.getContexts().get(0);
+        }
+        
+        Long cid = firstCID;
+        if (found == 0) {
+            cid = insertCluster.run(false, null, null);
+            for (String key : keys) {
+                batch.addKeyMapping(key, cid);
+            }
+        } else if (found == 1) {
+            for (String key : keys) {
+                if (!key.equals(keyFound)) {
+                    batch.addKeyMapping(key, cid);
+                }
+            }
+        }
+        batch.addCitation(citation, cid);
+        updateObservations(citation, cid);
+        batch.addGraphMapping(docCID, cid, context, citation.isSelf());
+        
+    }  //- clusterCitation
+    
     /*
      * (non-Javadoc)
      * @see edu.psu.citeseerx.dao2.logic.CiteClusterDAO#getCitingDocuments(java.lang.Long, int, int)
@@ -367,6 +539,7 @@ implements CiteClusterDAO {
         deleteCitations.update(doi);
         
         deletePaper.update(doi);
+        invalidatePublicDOI.update(cid);
         
         List<String> papers = getPaperIDs(cid);
         if (papers.size() == 0) {
@@ -396,6 +569,9 @@ implements CiteClusterDAO {
         deleteInfUpdate.update(cid);
         deleteKeyMappings.update(cid);
         deleteCluster.update(cid);
+        if (keyCache != null) {
+            keyCache.clear();
+        }
         
     }  //- deleteCluster
     
@@ -453,6 +629,58 @@ implements CiteClusterDAO {
     throws DataAccessException {
         updateInfTime.run(cid, time);
     } //- insertInfUpdateTime
+    
+    /*
+     * (non-Javadoc)
+     * @see edu.psu.citeseerx.dao2.logic.CiteClusterDAO#getInfUpdateRequired(java.lang.Long, int)
+     */
+    public List<ThinDoc> getInfUpdateRequired(Long start, int amount)
+    throws DataAccessException {
+        return getInfUpdateRequired.run(start, amount);
+    } //- getInfUpdateRequired
+    
+    /*
+     * (non-Javadoc)
+     * @see edu.psu.citeseerx.dao2.logic.CiteClusterDAO#updateClusters(java.util.List)
+     */
+    public void updateClusters(List<ThinDoc> clusters)
+    throws DataAccessException {
+        if (clusters.isEmpty()) {
+            return;
+        }
+        BatchSqlUpdate update = new BatchSqlUpdate(getDataSource(),
+                DEF_UPDATE_CLUSTER_STMT);
+        UpdateCluster.declareParameters(update);
+        update.setBatchSize(clusters.size());
+        update.compile();
+        for (ThinDoc cluster : clusters) {
+            update.update(UpdateCluster.toParams(cluster));
+        }
+        update.flush();
+    } //- updateClusters
+    
+    /*
+     * (non-Javadoc)
+     * @see edu.psu.citeseerx.dao2.logic.CiteClusterDAO#insertInfUpdateTimes(java.util.Map)
+     */
+    public void insertInfUpdateTimes(Map<Long, Date> times)
+    throws DataAccessException {
+        if (times.isEmpty()) {
+            return;
+        }
+        BatchSqlUpdate update = new BatchSqlUpdate(getDataSource(),
+                DEF_UPSERT_INFUPDATE_STMT);
+        update.declareParameter(new SqlParameter(Types.BIGINT));
+        update.declareParameter(new SqlParameter(Types.TIMESTAMP));
+        update.setBatchSize(times.size());
+        update.compile();
+        for (Map.Entry<Long, Date> time : times.entrySet()) {
+            update.update(new Object[] {
+                    time.getKey(), new Timestamp(time.getValue().getTime())
+            });
+        }
+        update.flush();
+    } //- insertInfUpdateTimes
 
     /**
      * Creates a new cluster and stores the associated keys.
@@ -486,15 +714,7 @@ implements CiteClusterDAO {
      */
     private Long insertCluster(Document doc, List<String> keys)
     throws DataAccessException {
-        StringBuffer authBuf = new StringBuffer();
-        for (Iterator<Author> it = doc.getAuthors().iterator(); it.hasNext();) {
-            String name = it.next().getDatum(Author.NAME_KEY, Author.UNENCODED);
-            authBuf.append(name);
-            if (it.hasNext()) {
-                authBuf.append(",");
-            }
-        }
-        String authors = authBuf.toString();
+        String authors = getClusterAuthors(doc);
         String title = doc.getDatum(Document.TITLE_KEY, Document.UNENCODED);
         Long cid = insertCluster.run(true, authors, title);
         for (String key : keys) {
@@ -503,6 +723,23 @@ implements CiteClusterDAO {
         return cid;
 
     }  //- insertCluster
+    
+    /**
+     * @param doc
+     * @return the comma separated author names of the given document.
+     */
+    private String getClusterAuthors(Document doc) {
+        StringBuffer authBuf = new StringBuffer();
+        for (Iterator<Author> it = doc.getAuthors().iterator(); it.hasNext();) {
+            String name = it.next().getDatum(Author.NAME_KEY, Author.UNENCODED);
+            authBuf.append(name);
+            if (it.hasNext()) {
+                authBuf.append(",");
+            }
+        }
+        return authBuf.toString();
+        
+    }  //- getClusterAuthors
 
     /**
      * Stores all the information about the given document and the cluster it 
@@ -514,6 +751,7 @@ implements CiteClusterDAO {
     private void insertDocument(Document doc, Long cid)
     throws DataAccessException {
         insertDoc.run(doc.getDatum(Document.DOI_KEY), cid);
+        invalidatePublicDOI.update(cid);
         setInCollection.run(cid, true);
         doc.setClusterID(cid);
                     
@@ -545,30 +783,7 @@ implements CiteClusterDAO {
     private void updateObservations(Citation citation, Long cid)
     throws DataAccessException, JSONException {
                 
-        StringBuffer authorBuf = new StringBuffer();
-        for (Iterator<String> it = citation.getAuthorNames().iterator();
-        it.hasNext(); ) {
-            authorBuf.append(it.next());
-            if (it.hasNext()) {
-                authorBuf.append(",");
-            }
-        }
-        
-        String yearStr = citation.getDatum(Citation.YEAR_KEY);
-        String volStr  = citation.getDatum(Citation.VOL_KEY);
-        String numStr  = citation.getDatum(Citation.NUMBER_KEY);
-        
-        ThinDoc thinDoc = new ThinDoc();
-        thinDoc.setAuthors(authorBuf.toString());
-        thinDoc.setTitle(citation.getDatum(Citation.TITLE_KEY));
-        thinDoc.setVenue(citation.getDatum(Citation.VENUE_KEY));
-        thinDoc.setVentype(citation.getDatum(Citation.VEN_TYPE_KEY));
-        thinDoc.setPages(citation.getDatum(Citation.PAGES_KEY));
-        thinDoc.setPublisher(citation.getDatum(Citation.PUBLISHER_KEY));
-        thinDoc.setTech(citation.getDatum(Citation.TECH_KEY));
-        try {thinDoc.setYear(Integer.parseInt(yearStr));} catch (Exception e) {}
-        try {thinDoc.setVol(Integer.parseInt(volStr));}   catch (Exception e) {}
-        try {thinDoc.setNum(Integer.parseInt(numStr));}   catch (Exception e) {}
+        ThinDoc thinDoc = InferenceBuilder.toThinDoc(citation);
         thinDoc.setCluster(cid);
         
         ThinDoc cluster = getThinDoc(cid);
@@ -599,6 +814,103 @@ implements CiteClusterDAO {
         return getPaperIDs.run(clusterid);
     }  //- getPaperIDs
 
+    /*
+     * (non-Javadoc)
+     * @see edu.psu.citeseerx.dao2.logic.CiteClusterDAO#getClusterNeighbors(java.util.List)
+     */
+    public ClusterNeighbors getClusterNeighbors(List<Long> clusterids)
+    throws DataAccessException {
+        return getNeighborhood.run(clusterids);
+    }  //- getClusterNeighbors
+
+    /*
+     * (non-Javadoc)
+     * @see edu.psu.citeseerx.dao2.logic.CiteClusterDAO#getPaperIDs(java.util.List)
+     */
+    public Map<Long, List<String>> getPaperIDs(List<Long> clusterids)
+    throws DataAccessException {
+        return getPublicDOIs.getPaperIDs(clusterids);
+    }  //- getPaperIDs
+
+    /*
+     * (non-Javadoc)
+     * @see edu.psu.citeseerx.dao2.logic.CiteClusterDAO#getPaperCluster(java.lang.String)
+     */
+    public Long getPaperCluster(String doi) throws DataAccessException {
+        List<Long> clusters = getPaperCluster.execute(doi);
+        return clusters.isEmpty() ? null : clusters.get(0);
+    }  //- getPaperCluster
+
+    /*
+     * (non-Javadoc)
+     * @see edu.psu.citeseerx.dao2.logic.CiteClusterDAO#getPublicDOIs(java.util.List, java.util.Map)
+     */
+    public Map<Long, String> getPublicDOIs(List<Long> clusterids,
+            Map<Long, Long> versions) throws DataAccessException {
+        return getPublicDOIs.run(clusterids, versions);
+    }  //- getPublicDOIs
+
+    /*
+     * (non-Javadoc)
+     * @see edu.psu.citeseerx.dao2.logic.CiteClusterDAO#insertPublicDOIs(java.util.Map, java.util.Map)
+     */
+    public Set<Long> insertPublicDOIs(Map<Long, String> dois,
+            Map<Long, Long> versions) throws DataAccessException {
+        Set<Long> stored = new HashSet<Long>();
+        if (dois.isEmpty()) {
+            return stored;
+        }
+        List<Long> updated = new ArrayList<Long>();
+        List<Long> inserted = new ArrayList<Long>();
+        BatchSqlUpdate update = new BatchSqlUpdate(getDataSource(),
+                DEF_UPDATE_PUBLICDOI_STMT);
+        update.declareParameter(new SqlParameter(Types.VARCHAR));
+        update.declareParameter(new SqlParameter(Types.BIGINT));
+        update.declareParameter(new SqlParameter(Types.BIGINT));
+        update.setBatchSize(dois.size());
+        update.compile();
+        BatchSqlUpdate insert = new BatchSqlUpdate(getDataSource(),
+                DEF_INSERT_PUBLICDOI_STMT);
+        insert.declareParameter(new SqlParameter(Types.VARCHAR));
+        insert.declareParameter(new SqlParameter(Types.BIGINT));
+        insert.setBatchSize(dois.size());
+        insert.compile();
+        for (Map.Entry<Long, String> doi : dois.entrySet()) {
+            Long version = versions.get(doi.getKey());
+            if (version != null) {
+                update.update(new Object[] {
+                        doi.getValue(), doi.getKey(), version });
+                updated.add(doi.getKey());
+            } else {
+                insert.update(new Object[] { doi.getValue(), doi.getKey() });
+                inserted.add(doi.getKey());
+            }
+        }
+        update.flush();
+        insert.flush();
+        addStored(stored, updated, update.getRowsAffected());
+        addStored(stored, inserted, insert.getRowsAffected());
+        return stored;
+    }  //- insertPublicDOIs
+
+    private static void addStored(Set<Long> stored, List<Long> clusterids,
+            int[] rows) {
+        for (int i=0; i<rows.length && i<clusterids.size(); i++) {
+            if (rows[i] > 0) {
+                stored.add(clusterids.get(i));
+            }
+        }
+    }  //- addStored
+
+    /*
+     * (non-Javadoc)
+     * @see edu.psu.citeseerx.dao2.logic.CiteClusterDAO#invalidatePublicDOI(java.lang.Long)
+     */
+    public void invalidatePublicDOI(Long clusterid)
+    throws DataAccessException {
+        invalidatePublicDOI.update(clusterid);
+    }  //- invalidatePublicDOI
+
     /*
      * (non-Javadoc)
      * @see edu.psu.citeseerx.dao2.logic.CiteClusterDAO#getCitationIDs(java.lang.Long)
@@ -1128,6 +1440,297 @@ implements CiteClusterDAO {
     }  //- class InsertKeyMapping
     
     
+    private static final String DEF_GET_CLUSTERIDS_QUERY =
+        "select ckey, cid from keymap where ckey in (:keys) order by id";
+    
+    /**
+     * Looks up many keys at once.  Like {@link GetClusterID}, the first
+     * mapping found for a key wins.
+     */
+    private class GetClusterIDs extends NamedParameterJdbcDaoSupport {
+        
+        public GetClusterIDs(DataSource dataSource) {
+            setDataSource(dataSource);
+        }
+        
+        /**
+         * Adds the cluster of each of the given keys that has one to found.
+         * @param keys
+         * @param found should compare keys the way the keymap table does.
+         */
+        public void run(List<String> keys, final Map<String,Long> found) {
+            MapSqlParameterSource parameters = new MapSqlParameterSource();
+            parameters.addValue("keys", keys);
+            getNamedParameterJdbcTemplate().query(DEF_GET_CLUSTERIDS_QUERY,
+                    parameters, new RowCallbackHandler() {
+                public void processRow(ResultSet rs) throws SQLException {
+                    String key = rs.getString(1);
+                    if (!found.containsKey(key)) {
+                        found.put(key, rs.getLong(2));
+                    }
+                }
+            });
+        }
+        
+    }  //- class GetClusterIDs
+    
+    
+    private static final String DEF_GET_GRAPH_MAPPINGS_QUERY =
+        "select cited, id, firstContext from citegraph where citing=? " +
+        "order by id";
+    
+    private class GetGraphMappings extends MappingSqlQuery {
+        
+        public GetGraphMappings(DataSource dataSource) {
+            setDataSource(dataSource);
+            setSql(DEF_GET_GRAPH_MAPPINGS_QUERY);
+            declareParameter(new SqlParameter(Types.BIGINT));
+            compile();
+        }
+        
+        public GraphMapping mapRow(ResultSet rs, int rowNum)
+        throws SQLException {
+            GraphMapping mapping = new GraphMapping();
+            mapping.setCited(rs.getLong(1));
+            mapping.setId(rs.getLong(2));
+            mapping.setFirstContext(rs.getString(3));
+            return mapping;
+        }
+        
+        public List<GraphMapping> run(Long citing) {
+            return execute(citing);
+        }
+        
+    }  //- class GetGraphMappings
+    
+    
+    /**
+     * Key mapping, citation and graph writes for one document, queued so
+     * they can be sent as JDBC batches.  Batch statements keep state, so a
+     * new set is compiled for each document instead of being shared by
+     * the threads using this DAO.
+     */
+    private class ClusteringBatch {
+        
+        private static final int MAX_KEYS_PER_QUERY = 500;
+        
+        /* keymap compares keys case insensitively. */
+        private final Map<String,Long> clusterIDs =
+            new TreeMap<String,Long>(String.CASE_INSENSITIVE_ORDER);
+        
+        private final List<Object[]> keyMappings = new ArrayList<Object[]>();
+        private final List<Object[]> citations = new ArrayList<Object[]>();
+        
+        private Long citing;
+        private final Map<Long,GraphEdge> edges = new HashMap<Long,GraphEdge>();
+        private final List<GraphEdge> newEdges = new ArrayList<GraphEdge>();
+        
+        /**
+         * Looks up the clusters of the given keys, first in the key cache
+         * and then in the database.
+         * @param keys
+         */
+        void resolve(List<String> keys) {
+            Set<String> missing = new LinkedHashSet<String>();
+            for (String key : keys) {
+                Long cid = (keyCache != null) ? keyCache.get(key) : null;
+                if (cid != null) {
+                    clusterIDs.put(key, cid);
+                } else {
+                    missing.add(key);
+                }
+            }
+            
+            List<String> chunk = new ArrayList<String>(MAX_KEYS_PER_QUERY);
+            for (Iterator<String> it = missing.iterator(); it.hasNext(); ) {
+                chunk.add(it.next());
+                if (chunk.size() == MAX_KEYS_PER_QUERY || !it.hasNext()) {
+                    getClusterIDs.run(chunk, clusterIDs);
+                    chunk.clear();
+                }
+            }
+            if (keyCache != null) {
+                for (String key : missing) {
+                    Long cid = clusterIDs.get(key);
+                    if (cid != null) {
+                        keyCache.put(key, cid);
+                    }
+                }
+            }
+        }
+        
+        Long getClusterID(String key) {
+            return clusterIDs.get(key);
+        }
+        
+        void addKeyMapping(String key, Long cid) {
+            keyMappings.add(new Object[] { key, cid });
+            if (!clusterIDs.containsKey(key)) {
+                clusterIDs.put(key, cid);
+            }
+        }
+        
+        void addCitation(Citation citation, Long cid) {
+            citations.add(new Object[] {
+                    Long.parseLong(citation.getDatum(Citation.DOI_KEY)),
+                    cid, citation.getDatum(Citation.PAPERID_KEY)
+            });
+        }
+        
+        /**
+         * Reads the existing edges of the citing cluster.  Must be called
+         * before any graph mapping is added.
+         * @param docCID
+         */
+        void loadGraphMappings(Long docCID) {
+            citing = docCID;
+            for (GraphMapping mapping : getGraphMappings.run(docCID)) {
+                if (!edges.containsKey(mapping.getCited())) {
+                    GraphEdge edge = new GraphEdge();
+                    edge.id = mapping.getId();
+                    edge.context = mapping.getFirstContext();
+                    edges.put(mapping.getCited(), edge);
+                }
+            }
+        }
+        
+        /**
+         * Same rules as
+         * {@link CiteClusterDAOImpl#insertGraphMapping(Long, Long, String, boolean)}.
+         */
+        void addGraphMapping(Long docCID, Long cid, String context,
+                boolean isSelf) {
+            if (docCID.longValue() == cid.longValue()) {
+                return;
+            }
+            GraphEdge edge = edges.get(cid);
+            if (edge == null) {
+                edge = new GraphEdge();
+                edge.cited = cid;
+                edge.context = context;
+                edge.self = isSelf;
+                edges.put(cid, edge);
+                newEdges.add(edge);
+            } else if (edge.context == null) {
+                edge.context = context;
+                edge.changed = (edge.id != null);
+            }
+        }
+        
+        /**
+         * Sends all queued writes.
+         */
+        void flush() {
+            if (!keyMappings.isEmpty()) {
+                BatchSqlUpdate update = new BatchSqlUpdate(getDataSource(),
+                        DEF_INSERT_KEYMAP_STMT);
+                update.declareParameter(new SqlParameter(Types.VARCHAR));
+                update.declareParameter(new SqlParameter(Types.BIGINT));
+                run(update, keyMappings);
+            }
+            if (!citations.isEmpty()) {
+                BatchSqlUpdate update = new BatchSqlUpdate(getDataSource(),
+                        DEF_INSERT_CITATION_STMT);
+                update.declareParameter(new SqlParameter(Types.BIGINT));
+                update.declareParameter(new SqlParameter(Types.BIGINT));
+                update.declareParameter(new SqlParameter(Types.VARCHAR));
+                run(update, citations);
+            }
+            
+            List<Object[]> inserts = new ArrayList<Object[]>();
+            for (GraphEdge edge : newEdges) {
+                inserts.add(new Object[] {
+                        citing, edge.cited, edge.context, edge.self });
+            }
+            List<Object[]> updates = new ArrayList<Object[]>();
+            for (GraphEdge edge : edges.values()) {
+                if (edge.changed) {
+                    updates.add(new Object[] { edge.context, edge.id });
+                }
+            }
+            if (!inserts.isEmpty()) {
+                BatchSqlUpdate update = new BatchSqlUpdate(getDataSource(),
+                        DEF_INSERT_GRAPH_MAPPING_STMT);
+                update.declareParameter(new SqlParameter(Types.BIGINT));
+                update.declareParameter(new SqlParameter(Types.BIGINT));
+                update.declareParameter(new SqlParameter(Types.BLOB));
+                update.declareParameter(new SqlParameter(Types.TINYINT));
+                run(update, inserts);
+            }
+            if (!updates.isEmpty()) {
+                BatchSqlUpdate update = new BatchSqlUpdate(getDataSource(),
+                        DEF_UPDATE_GRAPH_CONTEXT_STMT);
+                update.declareParameter(new SqlParameter(Types.BLOB));
+                update.declareParameter(new SqlParameter(Types.BIGINT));
+                run(update, updates);
+            }
+            
+            if (keyCache != null) {
+                for (Object[] mapping : keyMappings) {
+                    keyCache.putIfAbsent((String)mapping[0], (Long)mapping[1]);
+                }
+            }
+        }
+        
+        private void run(BatchSqlUpdate update, List<Object[]> rows) {
+            update.setBatchSize(rows.size());
+            update.compile();
+            for (Object[] row : rows) {
+                update.update(row);
+            }
+            update.flush();
+        }
+        
+    }  //- class ClusteringBatch
+    
+    
+    private static class GraphEdge {
+        Long id;
+        Long cited;
+        String context;
+        boolean self;
+        boolean changed;
+    }  //- class GraphEdge
+    
+    
+    /**
+     * Bounded, least recently used key to cluster map.
+     */
+    private static class KeyClusterCache {
+        
+        private final Map<String,Long> map;
+        
+        KeyClusterCache(final int capacity) {
+            map = new LinkedHashMap<String,Long>(1024, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+                protected boolean removeEldestEntry(
+                        Map.Entry<String,Long> eldest) {
+                    return size() > capacity;
+                }
+            };
+        }
+        
+        synchronized Long get(String key) {
+            return map.get(key);
+        }
+        
+        synchronized void put(String key, Long cid) {
+            map.put(key, cid);
+        }
+        
+        synchronized void putIfAbsent(String key, Long cid) {
+            if (!map.containsKey(key)) {
+                map.put(key, cid);
+            }
+        }
+        
+        synchronized void clear() {
+            map.clear();
+        }
+        
+    }  //- class KeyClusterCache
+    
+    
     private static final String DEF_GET_CLUSTERS_IN_COLL_QUERY =
         "select id, size, cauth, ctitle, cvenue, cventype, cyear, " +
         "cpages, cpublisher, cvol, cnum, ctech, selfCites, updated " +
@@ -1216,6 +1819,160 @@ implements CiteClusterDAO {
     }  //- class GetPaperIDs
         
     
+    private static final String DEF_GET_CLUSTER_BY_PAPERID_QUERY =
+        "select cluster from papers where id=?";
+    
+    private class GetPaperCluster extends MappingSqlQuery {
+        
+        public GetPaperCluster(DataSource dataSource) {
+            setDataSource(dataSource);
+            setSql(DEF_GET_CLUSTER_BY_PAPERID_QUERY);
+            declareParameter(new SqlParameter(Types.VARCHAR));
+            compile();
+        }
+        
+        public Long mapRow(ResultSet rs, int rowNum) throws SQLException {
+            return rs.getLong(1);
+        }
+        
+    }  //- class GetPaperCluster
+        
+    
+    private static final String DEF_GET_CITED_EDGES_QUERY =
+        "select citing, cited from citegraph where citing in (:ids)";
+    
+    private static final String DEF_GET_CITING_EDGES_QUERY =
+        "select citing, cited from citegraph where cited in (:ids)";
+    
+    private static final String DEF_GET_PAPERIDS_BY_CLUSTERS_QUERY =
+        "select cluster, id from papers where cluster in (:ids)";
+    
+    /**
+     * Reads the edges and papers of a set of clusters with one query per
+     * relation, streaming rows straight into a ClusterNeighbors object.
+     */
+    private class GetNeighborhood extends NamedParameterJdbcDaoSupport {
+        
+        public GetNeighborhood(DataSource dataSource) {
+            setDataSource(dataSource);
+        }
+        
+        public ClusterNeighbors run(List<Long> clusterids) {
+            final ClusterNeighbors neighbors =
+                new ClusterNeighbors(clusterids);
+            if (clusterids.isEmpty()) {
+                return neighbors.build();
+            }
+            MapSqlParameterSource parameters = new MapSqlParameterSource();
+            parameters.addValue("ids", clusterids);
+            
+            RowCallbackHandler edgeHandler = new RowCallbackHandler() {
+                public void processRow(ResultSet rs) throws SQLException {
+                    neighbors.addEdge(rs.getLong(1), rs.getLong(2));
+                }
+            };
+            getNamedParameterJdbcTemplate().query(DEF_GET_CITED_EDGES_QUERY,
+                    parameters, edgeHandler);
+            // Edges inside the set were already seen by the first query.
+            getNamedParameterJdbcTemplate().query(DEF_GET_CITING_EDGES_QUERY,
+                    parameters, new RowCallbackHandler() {
+                public void processRow(ResultSet rs) throws SQLException {
+                    long citing = rs.getLong(1);
+                    if (!neighbors.contains(citing)) {
+                        neighbors.addEdge(citing, rs.getLong(2));
+                    }
+                }
+            });
+            getNamedParameterJdbcTemplate().query(
+                    DEF_GET_PAPERIDS_BY_CLUSTERS_QUERY, parameters,
+                    new RowCallbackHandler() {
+                public void processRow(ResultSet rs) throws SQLException {
+                    neighbors.addPaperID(rs.getLong(1), rs.getString(2));
+                }
+            });
+            return neighbors.build();
+        }
+        
+    }  //- class GetNeighborhood
+    
+    
+    private static final String DEF_GET_ORDERED_PAPERIDS_BY_CLUSTERS_QUERY =
+        "select cluster, id from papers where cluster in (:ids) " +
+        "order by cluster, id";
+    
+    private static final String DEF_GET_PUBLICDOIS_QUERY =
+        "select cluster, id, valid, version from publicpapers " +
+        "where cluster in (:ids)";
+    
+    /**
+     * Reads papers and public representative papers of a set of clusters
+     * with one query each.
+     */
+    private class GetPublicDOIs extends NamedParameterJdbcDaoSupport {
+        
+        public GetPublicDOIs(DataSource dataSource) {
+            setDataSource(dataSource);
+        }
+        
+        public Map<Long, String> run(List<Long> clusterids,
+                final Map<Long, Long> versions) {
+            final Map<Long, String> dois = new HashMap<Long, String>();
+            if (clusterids.isEmpty()) {
+                return dois;
+            }
+            MapSqlParameterSource parameters = new MapSqlParameterSource();
+            parameters.addValue("ids", clusterids);
+            getNamedParameterJdbcTemplate().query(DEF_GET_PUBLICDOIS_QUERY,
+                    parameters, new RowCallbackHandler() {
+                public void processRow(ResultSet rs) throws SQLException {
+                    if (rs.getBoolean(3)) {
+                        dois.put(rs.getLong(1), rs.getString(2));
+                    } else {
+                        versions.put(rs.getLong(1), rs.getLong(4));
+                    }
+                }
+            });
+            return dois;
+        }
+        
+        public Map<Long, List<String>> getPaperIDs(List<Long> clusterids) {
+            final Map<Long, List<String>> papers =
+                new HashMap<Long, List<String>>();
+            if (clusterids.isEmpty()) {
+                return papers;
+            }
+            MapSqlParameterSource parameters = new MapSqlParameterSource();
+            parameters.addValue("ids", clusterids);
+            getNamedParameterJdbcTemplate().query(
+                    DEF_GET_ORDERED_PAPERIDS_BY_CLUSTERS_QUERY, parameters,
+                    new RowCallbackHandler() {
+                public void processRow(ResultSet rs) throws SQLException {
+                    Long cluster = rs.getLong(1);
+                    List<String> ids = papers.get(cluster);
+                    if (ids == null) {
+                        ids = new ArrayList<String>();
+                        papers.put(cluster, ids);
+                    }
+                    ids.add(rs.getString(2));
+                }
+            });
+            return papers;
+        }
+        
+    }  //- class GetPublicDOIs
+    
+    
+    // Only stored if not invalidated since read.  Clusters deleted since
+    // are not inserted again.
+    private static final String DEF_UPDATE_PUBLICDOI_STMT =
+        "update publicpapers set id=?, valid=1 " +
+        "where cluster=? and version=? and valid=0";
+    
+    private static final String DEF_INSERT_PUBLICDOI_STMT =
+        "insert ignore into publicpapers (cluster, id, valid, version) " +
+        "select clusters.id, ?, 1, 0 from clusters where clusters.id=?";
+    
+    
     private static final String DEF_GET_CITEIDS_BY_CLUSTER_QUERY =
         "select id from citations where cluster=?";
     
@@ -1292,27 +2049,39 @@ implements CiteClusterDAO {
         "cvenue=?, cventype=?, cyear=?, cpages=?, cpublisher=?, cvol=?, " +
         "cnum=?, ctech=?, observations=?, updated=current_timestamp where id=?";
     
-    private class UpdateCluster extends SqlUpdate {
+    private static class UpdateCluster extends SqlUpdate {
         
         public UpdateCluster(DataSource dataSource) {
             setDataSource(dataSource);
             setSql(DEF_UPDATE_CLUSTER_STMT);
-            declareParameter(new SqlParameter(Types.BLOB));
-            declareParameter(new SqlParameter(Types.VARCHAR));
-            declareParameter(new SqlParameter(Types.VARCHAR));
-            declareParameter(new SqlParameter(Types.VARCHAR));
-            declareParameter(new SqlParameter(Types.INTEGER));
-            declareParameter(new SqlParameter(Types.VARCHAR));
-            declareParameter(new SqlParameter(Types.VARCHAR));
-            declareParameter(new SqlParameter(Types.INTEGER));
-            declareParameter(new SqlParameter(Types.INTEGER));
-            declareParameter(new SqlParameter(Types.VARCHAR));
-            declareParameter(new SqlParameter(Types.BLOB));
-            declareParameter(new SqlParameter(Types.BIGINT));
+            declareParameters(this);
             compile();
         }
         
+        /**
+         * Declares the parameters of DEF_UPDATE_CLUSTER_STMT, so that
+         * batches of the same statement can be built.
+         */
+        static void declareParameters(SqlUpdate update) {
+            update.declareParameter(new SqlParameter(Types.BLOB));
+            update.declareParameter(new SqlParameter(Types.VARCHAR));
+            update.declareParameter(new SqlParameter(Types.VARCHAR));
+            update.declareParameter(new SqlParameter(Types.VARCHAR));
+            update.declareParameter(new SqlParameter(Types.INTEGER));
+            update.declareParameter(new SqlParameter(Types.VARCHAR));
+            update.declareParameter(new SqlParameter(Types.VARCHAR));
+            update.declareParameter(new SqlParameter(Types.INTEGER));
+            update.declareParameter(new SqlParameter(Types.INTEGER));
+            update.declareParameter(new SqlParameter(Types.VARCHAR));
+            update.declareParameter(new SqlParameter(Types.BLOB));
+            update.declareParameter(new SqlParameter(Types.BIGINT));
+        }
+        
         public int run(ThinDoc cluster, boolean changed) {
+            return update(toParams(cluster));
+        }
+        
+        static Object[] toParams(ThinDoc cluster) {
             Integer year = null;
             if (cluster.getYear() > 0) {
                 year = cluster.getYear();
@@ -1328,11 +2097,11 @@ implements CiteClusterDAO {
             Object[] params = new Object[] {
                     cluster.getAuthors(), cluster.getTitle(),
                     cluster.getVenue(), cluster.getVentype(), year,
-                    cluster.getPages(), cluster.getPublisher(), num, vol,
+                    cluster.getPages(), cluster.getPublisher(), vol, num,
                     cluster.getTech(), cluster.getObservations(),
                     cluster.getCluster()
             };
-            return update(params);
+            return params;
         }
         
     }  //- class UpdateCluster
@@ -1406,6 +2175,37 @@ implements CiteClusterDAO {
     }  //- class GetClustersSinceTime
     
     
+    private static final String DEF_GET_INF_UPDATE_REQUIRED_QUERY =
+        "select clusters.id, size, incollection, cauth, ctitle, cvenue, " +
+        "cventype, cyear, cpages, cpublisher, cvol, cnum, ctech, " +
+        "selfCites, updated from clusters left join infupdates on " +
+        "infupdates.id=clusters.id where clusters.id>? and " +
+        "(infupdates.lastupdate is null or " +
+        "clusters.updated>infupdates.lastupdate) " +
+        "order by clusters.id asc limit ?";
+    
+    private class GetInfUpdateRequired extends MappingSqlQuery {
+        
+        public GetInfUpdateRequired(DataSource dataSource) {
+            setDataSource(dataSource);
+            setSql(DEF_GET_INF_UPDATE_REQUIRED_QUERY);
+            declareParameter(new SqlParameter(Types.BIGINT));
+            declareParameter(new SqlParameter(Types.INTEGER));
+            compile();
+        }
+        
+        public ThinDoc mapRow(ResultSet rs, int rowNum) throws SQLException {
+            return getClustersSinceTime.mapRow(rs, rowNum);
+        }
+        
+        public List<ThinDoc> run(Long start, int amount) {
+            Object[] params = { start, new Integer(amount) };
+            return execute(params);
+        }
+        
+    }  //- class GetInfUpdateRequired
+    
+    
     private static final String DEF_GET_CONTEXT_QUERY =
         "select firstContext from citegraph where citing=? and cited=?";
     
@@ -1563,6 +2363,11 @@ implements CiteClusterDAO {
     }  //- class UpdateInfTime
     
     
+    private static final String DEF_UPSERT_INFUPDATE_STMT =
+        "insert into infupdates values (?, ?) " +
+        "on duplicate key update lastupdate=values(lastupdate)";
+    
+    
     private static final String DEF_GET_UPDATE_TIME_QUERY =
         "select updated from clusters where id=?";
     
@@ -1651,6 +2456,27 @@ implements CiteClusterDAO {
     }  //- class DeletePaper
 
 
+    // The row is kept, with a new version, so that mappings worked out
+    // before are not stored over it.
+    private static final String DEF_INVALIDATE_PUBLICDOI_STMT =
+        "insert into publicpapers (cluster, id, valid, version) " +
+        "select clusters.id, null, 0, 1 from clusters where clusters.id=? " +
+        "on duplicate key update publicpapers.id=null, " +
+        "publicpapers.valid=0, " +
+        "publicpapers.version=publicpapers.version+1";
+    
+    protected class InvalidatePublicDOI extends SqlUpdate {
+        
+        public InvalidatePublicDOI(DataSource dataSource) {
+            setDataSource(dataSource);
+            setSql(DEF_INVALIDATE_PUBLICDOI_STMT);
+            declareParameter(new SqlParameter(Types.BIGINT));
+            compile();
+        }
+        
+    }  //- class InvalidatePublicDOI
+
+
     private static final String DEF_DEL_INFUPDATE_STMT =
         "delete from infupdates where id=?";
     
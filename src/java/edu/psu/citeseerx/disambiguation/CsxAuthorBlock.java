@@ -20,14 +20,12 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileReader;
-import java.io.FileWriter;
 import java.sql.Connection;
 import javax.sql.DataSource;
 
-import edu.psu.citeseerx.disambiguation.dbscan.BlockingDatabase;
+import edu.psu.citeseerx.disambiguation.dbscan.IndexedBlockingDatabase;
 import edu.psu.citeseerx.disambiguation.dao.CiteSeerDoc;
 import edu.psu.citeseerx.disambiguation.dao.CsxAuthor;
 import edu.psu.citeseerx.disambiguation.DisambiguationService;
@@ -41,18 +39,19 @@ import edu.psu.citeseerx.disambiguation.DisambiguationService;
  * @author Puck Treeratpituk
  * @version $Rev$ $Date$
  */
-public class CsxAuthorBlock extends BlockingDatabase {
+public class CsxAuthorBlock extends IndexedBlockingDatabase {
     
 	Set<Integer> aids = new HashSet<Integer>();
 	Map<Integer,CsxAuthorPoint> points = new HashMap<Integer,CsxAuthorPoint>();
 	Map<String, List<CsxAuthorPoint>> regions = 
 	    new HashMap<String, List<CsxAuthorPoint>>();
-	Map<String,Double> distCache = new HashMap<String,Double>();
+	DistanceCache distCache = new DistanceCache();
+	// points by index, in the order of aids
+	CsxAuthorPoint[] indexed = new CsxAuthorPoint[0];
 
 	DataSource dataSource;
 	ProfileDistance profDistance;
 	DisambiguationService distService;
-	String tmpFile;
 
 	public CsxAuthorBlock() { }
 	
@@ -77,9 +76,13 @@ public class CsxAuthorBlock extends BlockingDatabase {
 		String aidStr;
         BufferedReader reader = new BufferedReader(new FileReader(
                 new File(aids_file)));
-		while ((aidStr = reader.readLine()) != null) {
-			Integer aid = Integer.parseInt(aidStr);
-			aids.add(aid);
+		try {
+			while ((aidStr = reader.readLine()) != null) {
+				Integer aid = Integer.parseInt(aidStr);
+				aids.add(aid);
+			}
+		} finally {
+			reader.close();
 		}
 		loadAuthors(aids);
 	} //- loadAuthors
@@ -88,27 +91,41 @@ public class CsxAuthorBlock extends BlockingDatabase {
 		this.aids      = new HashSet<Integer>();
 		this.points    = new HashMap<Integer,CsxAuthorPoint>();
 		this.regions   = new HashMap<String, List<CsxAuthorPoint>>();
-		this.distCache = new HashMap<String,Double>();
+		this.distCache = new DistanceCache();
 
 		Connection conn = this.dataSource.getConnection();
-		for (Integer aid : aids) {
-			CiteSeerDoc doc = new CiteSeerDoc(conn, aid);
-			CsxAuthor auth  = (CsxAuthor)doc.getAuthorById(aid.toString());
+		try {
+			for (Integer aid : aids) {
+				if (this.points.containsKey(aid))
+					continue;
+				CiteSeerDoc doc = new CiteSeerDoc(conn, aid);
+				CsxAuthor auth  = (CsxAuthor)doc.getAuthorById(aid.toString());
 			
-			CsxAuthorPoint point = new CsxAuthorPoint(auth, doc);
+				CsxAuthorPoint point = new CsxAuthorPoint(auth, doc);
 			
-			this.points.put(aid, point);
-			this.aids.add(aid);
+				this.points.put(aid, point);
+				this.aids.add(aid);
 			
-			String namekey = this.getNameKey(auth);
-			List<CsxAuthorPoint> list;
-			if (!regions.containsKey(namekey)) {
-				list = new ArrayList<CsxAuthorPoint>();
-				regions.put(namekey, list);
+				String namekey = this.getNameKey(auth);
+				List<CsxAuthorPoint> list;
+				if (!regions.containsKey(namekey)) {
+					list = new ArrayList<CsxAuthorPoint>();
+					regions.put(namekey, list);
+				}
+				else 
+					list = regions.get(namekey);
+				list.add(point);			
 			}
-			else 
-				list = regions.get(namekey);
-			list.add(point);			
+		} finally {
+			conn.close();
+		}
+
+		this.indexed = new CsxAuthorPoint[this.aids.size()];
+		int index = 0;
+		for (Integer aid : this.aids) {
+			CsxAuthorPoint point = this.points.get(aid);
+			point.index = index;
+			this.indexed[index++] = point;
 		}
 	} //- loadAuthors
 
@@ -127,13 +144,6 @@ public class CsxAuthorBlock extends BlockingDatabase {
 		this.distService = distService;
 	} //- setDistService
 	
-	public void setTmpFile(String tmpFile) {
-		this.tmpFile = tmpFile;
-	} //- setTmpFile
-	
-	public String getTmpFile() {
-		return this.tmpFile;
-	} //- getTmpFile
 	// END Set & Get Methods
 	// ------------------------------------------------------------
 
@@ -155,14 +165,24 @@ public class CsxAuthorBlock extends BlockingDatabase {
 		return this.aids;
 	} //- getAllPoints
 	
-	public String getDistKey(Integer aid1, Integer aid2) {
-		if (aid1 <= aid2) 
-			return aid1 + ":" + aid2;
-		else return aid2 + ":" + aid1;
+	public int size() {
+		return this.indexed.length;
+	} //- size
+
+	public int getPointId(int index) {
+		return this.indexed[index].id;
+	} //- getPointId
+
+	public long getDistKey(int aid1, int aid2) {
+		return DistanceCache.key(aid1, aid2);
 	} //- getDistKey
 
-	public Set<Integer> getNeighbors(CsxAuthorPoint p1, double eps) {
-		Set<Integer> neighbors = new HashSet<Integer>();
+	/*
+	 * Points in the eps neighborhood of p1, computing the distances not
+	 * yet cached.
+	 */
+	List<CsxAuthorPoint> findNeighbors(CsxAuthorPoint p1, double eps) {
+		List<CsxAuthorPoint> neighbors = new ArrayList<CsxAuthorPoint>();
 
 		String namekey = this.getNameKey(p1.author); // 2 chars key
 
@@ -181,8 +201,13 @@ public class CsxAuthorBlock extends BlockingDatabase {
 		
 		if (no_caches.size() > 0)
 			getNeighborsByService(p1, no_caches, eps, neighbors);
-		else {
-			//System.out.println(">>> GREAT!!!!");
+		return neighbors;
+	} //- findNeighbors
+
+	public Set<Integer> getNeighbors(CsxAuthorPoint p1, double eps) {
+		Set<Integer> neighbors = new HashSet<Integer>();
+		for (CsxAuthorPoint p2 : findNeighbors(p1, eps)) {
+			neighbors.add(p2.id);
 		}
 		return neighbors;
 	} //- getNeighbors
@@ -192,25 +217,33 @@ public class CsxAuthorBlock extends BlockingDatabase {
 		CsxAuthorPoint p1 = points.get(aid);
 		return getNeighbors(p1, eps);
 	} //-getNeighbors
+
+	public int[] getNeighborIndices(int index, double eps) {
+		List<CsxAuthorPoint> neighbors = findNeighbors(indexed[index], eps);
+		int[] indices = new int[neighbors.size()];
+		for (int i = 0; i < indices.length; i++) {
+			indices[i] = neighbors.get(i).index;
+		}
+		return indices;
+	} //- getNeighborIndices
 	
 	public boolean passConstrains(CsxAuthor a1, CsxAuthor a2) {
 		return a1.isCompatible(a2);
 	} //- passConstrains
 	
 	public void getNeighborsByCache(CsxAuthorPoint p1, 
-	        List<CsxAuthorPoint> region, double eps, Set<Integer> neighbors,
-	        List<CsxAuthorPoint> no_caches) {		
+	        List<CsxAuthorPoint> region, double eps,
+	        List<CsxAuthorPoint> neighbors, List<CsxAuthorPoint> no_caches) {		
 		for (CsxAuthorPoint p2: region) {
 			if ((p1.id == p2.id) || (p1.doc.getId().equals(p2.doc.getId())))
 				continue;
 			if (!passConstrains(p1.author, p2.author))
 				continue;
 
-			String distkey = getDistKey(p1.id, p2.id);
-			Double d = distCache.get(distkey);
-			if (d != null) {
+			float d = distCache.get(getDistKey(p1.id, p2.id));
+			if (!Float.isNaN(d)) {
 				if (d < eps) {
-					neighbors.add(p2.id);
+					neighbors.add(p2);
 				}
 			}
 			else {
@@ -220,39 +253,27 @@ public class CsxAuthorBlock extends BlockingDatabase {
 	} //- getNeighborsByCache
 	
 	public void getNeighborsByService(CsxAuthorPoint p1, 
-	        List<CsxAuthorPoint> region, double eps, Set<Integer> neighbors) {
-		try {
-			BufferedWriter out = new BufferedWriter(
-			        new FileWriter(getTmpFile()));
-			out.write("auth_fst,auth_mid,auth_ord,auth_last_idf,email_jac," +
-					"aff_softtfidf,aff_tfidf,aff_jac,coauth_lname_shared," +
-					"coauth_lname_idf,coauth_lname_jac,title_shared\n");
-			
-			for (CsxAuthorPoint p2: region) {
-				Map<ProfileDistance.FeatType, Double> feats = 
-					profDistance.calcFeatures(p1.doc, p1.author, p2.doc, 
-					        p2.author);
-				String line = profDistance.getFeatureString(feats, false);
-				out.write(line + "\n");
-			}
-			out.close();
-			double[] dists = distService.calcDistances(getTmpFile());
-			
-			int i = 0;
-			for (CsxAuthorPoint p2: region) {
-				double d = dists[i];
-				String distkey = getDistKey(p1.id, p2.id);
-				distCache.put(distkey, new Double(d));
-				if (d < eps) {
-					
-					neighbors.add(p2.id);
-				}
-				i++;
+	        List<CsxAuthorPoint> region, double eps,
+	        List<CsxAuthorPoint> neighbors) {
+		double[][] rows = new double[region.size()][];
+		int i = 0;
+		for (CsxAuthorPoint p2: region) {
+			Map<ProfileDistance.FeatType, Double> feats = 
+				profDistance.calcFeatures(p1.doc, p1.author, p2.doc, 
+				        p2.author);
+			rows[i++] = distService.getFeatureRow(feats);
+		}
+		double[] dists = distService.calcDistances(rows);
+
+		i = 0;
+		for (CsxAuthorPoint p2: region) {
+			// Compared as cached, so both orders of a pair agree.
+			float d = (float)dists[i];
+			distCache.put(getDistKey(p1.id, p2.id), d);
+			if (d < eps) {
+				neighbors.add(p2);
 			}
-		} catch (Exception ex) { 
-			System.out.println(ex);
-			ex.printStackTrace();
-			System.exit(0);
+			i++;
 		}
 	} //- getNeighborsByService
 	
@@ -281,6 +302,7 @@ public class CsxAuthorBlock extends BlockingDatabase {
 
 	public class CsxAuthorPoint {
 		Integer id;
+		int index;
 		CsxAuthor author;
 		CiteSeerDoc doc;
 		
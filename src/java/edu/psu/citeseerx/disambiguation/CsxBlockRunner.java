@@ -0,0 +1,252 @@
+/*
+ * Copyright 2007 Penn State University
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.psu.citeseerx.disambiguation;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.beans.factory.ListableBeanFactory;
+
+import edu.psu.citeseerx.disambiguation.dbscan.CompactDBScan;
+
+/**
+ * CsxBlockRunner
+ *
+ * Runs DBSCAN over a directory of author blocks, as written by
+ * CsxDisambiguation.createBlocks, on several threads.  Blocks share no
+ * authors, so each is clustered on its own.  Workers take blocks from a
+ * shared queue, largest file first, so the big blocks, which cost the most
+ * since every pair of their authors may be compared, don't end up last on
+ * a single thread.
+ * <br><br>
+ * Each worker gets its own csxAuthorBlock bean, and with it its own
+ * profileDistance; both are prototypes.  The disambiguationService is
+ * shared, its forest being read only.
+ * <br><br>
+ * The results of a block are written to a temporary file renamed to the
+ * block's .out file once complete, so a block is done if and only if its
+ * .out file exists.  Blocks already done are skipped, which lets an
+ * interrupted run be resumed by starting it again.  Once all the blocks are
+ * done the results can be merged into one file, written the same way.
+ *
+ * @version $Rev$ $Date$
+ */
+class CsxBlockRunner {
+
+	private static final String BLOCK_EXT = ".txt";
+	private static final String RESULT_EXT = ".out";
+	private static final String TMP_EXT = ".tmp";
+
+	private final ListableBeanFactory factory;
+	private final int threads;
+
+	private final AtomicInteger clustered = new AtomicInteger();
+	private final AtomicInteger failed = new AtomicInteger();
+	private int skipped = 0;
+
+	/**
+	 * @param factory context holding the csxAuthorBlock prototype
+	 * @param threads number of blocks clustered at once
+	 */
+	CsxBlockRunner(ListableBeanFactory factory, int threads) {
+		this.factory = factory;
+		this.threads = Math.max(threads, 1);
+	} //- CsxBlockRunner
+
+	/**
+	 * Clusters every block file under indir not yet done, writing its
+	 * results under outdir, at the same relative path with a .out
+	 * extension.
+	 * @param indir
+	 * @param outdir
+	 * @param merged file receiving the results of all the blocks, or null.
+	 * It is only written if every block is done.
+	 * @return true if every block is done
+	 * @throws IOException if the merged results can't be written
+	 * @throws InterruptedException
+	 */
+	public boolean run(File indir, File outdir, File merged)
+	throws IOException, InterruptedException {
+		long start = System.nanoTime();
+
+		List<String> blocks = new ArrayList<String>();
+		listBlocks(indir, "", blocks);
+		Collections.sort(blocks);
+
+		List<File[]> pending = new ArrayList<File[]>();
+		for (String block : blocks) {
+			File infile = new File(indir, block + BLOCK_EXT);
+			File outfile = new File(outdir, block + RESULT_EXT);
+			if (outfile.exists()) {
+				skipped++;
+			} else {
+				pending.add(new File[] { infile, outfile });
+			}
+		}
+		Collections.sort(pending, new Comparator<File[]>() {
+			public int compare(File[] f1, File[] f2) {
+				long l1 = f1[0].length();
+				long l2 = f2[0].length();
+				return (l1 > l2) ? -1 : ((l1 < l2) ? 1 : 0);
+			}
+		});
+		ConcurrentLinkedQueue<File[]> queue =
+			new ConcurrentLinkedQueue<File[]>(pending);
+
+		List<Thread> workers = new ArrayList<Thread>();
+		for (int i = 0; i < threads; i++) {
+			Thread worker = new Thread(new Worker(queue), "dbscan-" + i);
+			worker.start();
+			workers.add(worker);
+		}
+		for (Thread worker : workers) {
+			worker.join();
+		}
+		// Left over if the workers couldn't get their author blocks.
+		failed.addAndGet(queue.size());
+
+		long seconds = Math.round((System.nanoTime() - start) / 1e9);
+		System.out.println("Clustered " + clustered + ", failed " + failed +
+				", skipped " + skipped + " of " + blocks.size() +
+				" blocks in " + seconds + "s on " + threads + " threads");
+
+		if (failed.get() > 0) {
+			return false;
+		}
+		if (merged != null) {
+			merge(outdir, blocks, merged);
+		}
+		return true;
+	} //- run
+
+	/*
+	 * Block names are the paths of the block files relative to the input
+	 * directory, without extension.
+	 */
+	static void listBlocks(File dir, String prefix,
+			List<String> blocks) {
+		File[] files = dir.listFiles();
+		if (files == null) {
+			return;
+		}
+		for (File file : files) {
+			String name = file.getName();
+			if (file.isDirectory()) {
+				listBlocks(file, prefix + name + "/", blocks);
+			} else if (name.endsWith(BLOCK_EXT)) {
+				blocks.add(prefix +
+						name.substring(0, name.length() - BLOCK_EXT.length()));
+			}
+		}
+	} //- listBlocks
+
+	private void cluster(CsxAuthorBlock block, File infile, File outfile)
+	throws Exception {
+		block.loadAuthors(infile.getPath());
+		CompactDBScan dbscan = CsxDisambiguation.runDBScan(block);
+
+		outfile.getParentFile().mkdirs();
+		File tmp = new File(outfile.getPath() + TMP_EXT);
+		Writer out = new BufferedWriter(new FileWriter(tmp));
+		try {
+			dbscan.writeResults(out);
+		} finally {
+			out.close();
+		}
+		rename(tmp, outfile);
+	} //- cluster
+
+	/*
+	 * Concatenates the results of the blocks, naming each cluster after its
+	 * block: [AB/smith_j:1]
+	 */
+	private static void merge(File outdir, List<String> blocks, File merged)
+	throws IOException {
+		File tmp = new File(merged.getPath() + TMP_EXT);
+		Writer out = new BufferedWriter(new FileWriter(tmp));
+		try {
+			for (String block : blocks) {
+				BufferedReader reader = new BufferedReader(new FileReader(
+						new File(outdir, block + RESULT_EXT)));
+				try {
+					String line;
+					while ((line = reader.readLine()) != null) {
+						if (line.startsWith("[")) {
+							line = "[" + block + ":" + line.substring(1);
+						}
+						out.write(line + "\n");
+					}
+				} finally {
+					reader.close();
+				}
+			}
+		} finally {
+			out.close();
+		}
+		rename(tmp, merged);
+	} //- merge
+
+	private static void rename(File from, File to) throws IOException {
+		if (!from.renameTo(to)) {
+			// Some platforms won't rename over an existing file.
+			to.delete();
+			if (!from.renameTo(to)) {
+				throw new IOException("Unable to rename " + from + " to " +
+						to);
+			}
+		}
+	} //- rename
+
+	/**
+	 * Clusters blocks from the queue until it is empty, with its own
+	 * author block.
+	 */
+	private class Worker implements Runnable {
+
+		private final ConcurrentLinkedQueue<File[]> queue;
+
+		Worker(ConcurrentLinkedQueue<File[]> queue) {
+			this.queue = queue;
+		}
+
+		public void run() {
+			CsxAuthorBlock block =
+				(CsxAuthorBlock) factory.getBean("csxAuthorBlock");
+			File[] job;
+			while ((job = queue.poll()) != null) {
+				System.out.println("> " + job[0]);
+				try {
+					cluster(block, job[0], job[1]);
+					clustered.incrementAndGet();
+				} catch (Exception e) {
+					failed.incrementAndGet();
+					System.err.println("Failed " + job[0] + ": " + e);
+					e.printStackTrace();
+				}
+			}
+		}
+
+	} //- class Worker
+
+} //- class CsxBlockRunner
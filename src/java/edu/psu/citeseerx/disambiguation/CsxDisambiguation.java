@@ -14,7 +14,6 @@ package edu.psu.citeseerx.disambiguation;
 
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
-import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.ArrayList;
@@ -38,7 +37,7 @@ import org.springframework.beans.factory.ListableBeanFactory;
 import edu.psu.citeseerx.loaders.ContextReader;
 import edu.psu.citeseerx.disambiguation.CsxAuthorBlock;
 import edu.psu.citeseerx.disambiguation.CsxAuthorFilter;
-import edu.psu.citeseerx.disambiguation.dbscan.DBScan;
+import edu.psu.citeseerx.disambiguation.dbscan.CompactDBScan;
 import edu.psu.citeseerx.disambiguation.dao.CsxAuthor;
 
 /**
@@ -139,6 +138,19 @@ public class CsxDisambiguation {
 		}
 	}
 	
+	/**
+	 * Clusters the authors loaded in a block
+	 * @param block
+	 * @return the clustering, already run
+	 */
+	public static CompactDBScan runDBScan(CsxAuthorBlock block) {
+		int min_pts = MIN_PTS;
+		if (block.points.size() <= 3) min_pts = 1;
+		CompactDBScan dbscan = new CompactDBScan(block, EPS, min_pts);
+		dbscan.run();
+		return dbscan;
+	}
+
 	public static void disambiguate(ListableBeanFactory factory, String infile,
 	        String outfile) throws Exception {
 		
@@ -146,10 +158,7 @@ public class CsxDisambiguation {
 		    (CsxAuthorBlock) factory.getBean("csxAuthorBlock");
 		block.loadAuthors(infile);
 
-		int min_pts = MIN_PTS;
-		if (block.points.size() <= 3) min_pts = 1;
-		DBScan dbscan = new DBScan(block, EPS, min_pts);
-		dbscan.run();
+		CompactDBScan dbscan = runDBScan(block);
 		dbscan.printResults(outfile);
 	}
 
@@ -163,24 +172,28 @@ public class CsxDisambiguation {
 		    (CsxAuthorBlock) factory.getBean("csxAuthorBlock");
 		block.loadAuthors(infile);
 
-		int min_pts = MIN_PTS;
-		if (block.points.size() <= 3) min_pts = 1;
-		DBScan dbscan = new DBScan(block, EPS, min_pts);
-		dbscan.run();
+		CompactDBScan dbscan = runDBScan(block);
 		dbscan.printResults();
 	}
 	
+	/**
+	 * Disambiguates every block under indir on the given number of threads,
+	 * see {@link CsxBlockRunner}.  Blocks with results in outdir are
+	 * skipped, so an interrupted run is resumed by running it again.
+	 * @param factory
+	 * @param indir
+	 * @param outdir
+	 * @param threads
+	 * @param merged file receiving the results of all the blocks, or null
+	 * @throws Exception if some blocks failed
+	 */
 	public static void disambiguateDirectory(ListableBeanFactory factory, 
-	        String indir, String outdir) throws Exception {
-				
-		File dir = new File(indir);
-		String[] files = dir.list(); 
-		Arrays.sort(files);
-		for (String file : files) {
-			String infile  = indir + "/" + file;
-			String outfile = outdir + "/" + file.replace(".txt",".out");
-			System.out.println("> " + file);
-			disambiguate(factory, infile, outfile);				
+	        String indir, String outdir, int threads, String merged)
+	throws Exception {
+		CsxBlockRunner runner = new CsxBlockRunner(factory, threads);
+		if (!runner.run(new File(indir), new File(outdir),
+				(merged == null) ? null : new File(merged))) {
+			throw new Exception("Some blocks failed, run again to resume");
 		}
 	}
 
@@ -212,10 +225,22 @@ public class CsxDisambiguation {
 			.hasArg()
 			.withDescription("directory to put the output files")
 			.create("outdir");
+		Option threads  = OptionBuilder.withArgName("n")
+			.hasArg()
+			.withDescription("number of blocks disambiguated at once " +
+					"with -indir (default: number of processors)")
+			.create("threads");
+		Option merged   = OptionBuilder.withArgName("file")
+			.hasArg()
+			.withDescription("file to put the results of all the blocks " +
+					"with -indir")
+			.create("merged");
 		options.addOption(cmd);
 		options.addOption(infile);
 		options.addOption(indir);
 		options.addOption(outdir);
+		options.addOption(threads);
+		options.addOption(merged);
 		return options;
 	}
 
@@ -229,6 +254,10 @@ public class CsxDisambiguation {
 			System.out.println("\nERROR: Please specify either -infile or -indir, but not both");
 			return false;
 		}
+		if (line.hasOption("indir") && !line.hasOption("outdir")) {
+			System.out.println("\nERROR: Please specify -outdir with -indir");
+			return false;
+		}
 		return true;
 	}
 
@@ -257,8 +286,18 @@ public class CsxDisambiguation {
 			}
 			else if (cmd.equals("dbscan")) {
 				// 3) disambiguate (required 1. & 2.)
-				//disambiguateDirectory(factory, args[0], args[1]);
-				disambiguateFile(factory, args[0]);
+				if (line.hasOption("indir")) {
+					int threads = Runtime.getRuntime().availableProcessors();
+					if (line.hasOption("threads"))
+						threads = Integer.parseInt(
+						        line.getOptionValue("threads"));
+					disambiguateDirectory(factory, 
+					        line.getOptionValue("indir"),
+					        line.getOptionValue("outdir"), threads,
+					        line.getOptionValue("merged"));
+				}
+				else
+					disambiguateFile(factory, line.getOptionValue("infile"));
 			}
 			/*else if (cmd.equals("match_author")) {
 				String input_file = "";
@@ -0,0 +1,315 @@
+/*
+ * Copyright 2007 Penn State University
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.psu.citeseerx.disambiguation;
+
+import java.io.File;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.springframework.beans.factory.ListableBeanFactory;
+
+import edu.psu.citeseerx.disambiguation.dbscan.CompactDBScan;
+import edu.psu.citeseerx.disambiguation.dbscan.DBScan;
+import edu.psu.citeseerx.disambiguation.dbscan.IndexedBlockingDatabase;
+import edu.psu.citeseerx.loaders.ContextReader;
+
+/**
+ * Checks that {@link CompactDBScan} finds the same clusters as
+ * {@link DBScan}, with the same IDs, and compares their run time and
+ * garbage collections.
+ * <br><br>
+ * With no arguments, or a number of points, both run over a synthetic
+ * block: points scattered around random centers in the unit square, with
+ * random author-like IDs, whose neighborhoods are computed once so only
+ * the clustering is timed.
+ * <br><br>
+ * With -blocks, both run over the block files under a directory, as
+ * written by CsxDisambiguation.createBlocks, using the csxAuthorBlock of
+ * the context.  The authors are loaded again before each run, so neither
+ * finds the distances of the other cached.
+ * <br><br>
+ * Usage: DBScanBenchmark [points [rounds]]<br>
+ *        DBScanBenchmark -blocks dir [max_blocks]
+ *
+ * @version $Rev$ $Date$
+ */
+public class DBScanBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		if (args.length > 0 && args[0].equals("-blocks")) {
+			if (args.length < 2) {
+				System.out.println("Usage: DBScanBenchmark -blocks dir " +
+						"[max_blocks]");
+				System.exit(1);
+			}
+			int max = (args.length > 2) ?
+					Integer.parseInt(args[2]) : Integer.MAX_VALUE;
+			runBlocks(new File(args[1]), max);
+		} else {
+			int points = (args.length > 0) ? Integer.parseInt(args[0]) : 20000;
+			int rounds = (args.length > 1) ? Integer.parseInt(args[1]) : 10;
+			runSynthetic(points, rounds);
+		}
+	} //- main
+
+	private static void runSynthetic(int n, int rounds) {
+		SyntheticBlock block = new SyntheticBlock(n, new Random(0));
+		double eps = 0.01;
+		int minPts = CsxDisambiguation.MIN_PTS;
+
+		DBScan dbscan = new DBScan(block, eps, minPts);
+		dbscan.run();
+		CompactDBScan compact = new CompactDBScan(block, eps, minPts);
+		compact.run();
+		boolean same =
+			sameClusters(dbscan.getClusters(), compact.getClusters());
+		System.out.println(n + " points, " + block.edges + " neighbor " +
+				"pairs, " + compact.getClusters().size() + " clusters, " +
+				(same ? "same clusters" : "MISMATCH"));
+
+		// Warm up both before timing either.
+		for (int r = 0; r < rounds; r++) {
+			new DBScan(block, eps, minPts).run();
+			new CompactDBScan(block, eps, minPts).run();
+		}
+
+		System.out.println("impl\tms/run\tgc\tgc_ms");
+		long[] gc = gcCounts();
+		long start = System.nanoTime();
+		for (int r = 0; r < rounds; r++) {
+			new DBScan(block, eps, minPts).run();
+		}
+		report("DBScan", System.nanoTime() - start, rounds, gc);
+
+		gc = gcCounts();
+		start = System.nanoTime();
+		for (int r = 0; r < rounds; r++) {
+			new CompactDBScan(block, eps, minPts).run();
+		}
+		report("CompactDBScan", System.nanoTime() - start, rounds, gc);
+
+		if (!same) {
+			System.exit(1);
+		}
+	} //- runSynthetic
+
+	private static void runBlocks(File dir, int max) throws Exception {
+		ListableBeanFactory factory = ContextReader.loadContext();
+		CsxAuthorBlock block =
+			(CsxAuthorBlock) factory.getBean("csxAuthorBlock");
+
+		List<String> names = new ArrayList<String>();
+		CsxBlockRunner.listBlocks(dir, "", names);
+		int blocks = 0;
+		int mismatches = 0;
+		long dbscanTime = 0;
+		long compactTime = 0;
+		for (String name : names) {
+			if (blocks++ >= max) {
+				break;
+			}
+			String file = new File(dir, name + ".txt").getPath();
+
+			block.loadAuthors(file);
+			int minPts = (block.points.size() <= 3) ?
+					1 : CsxDisambiguation.MIN_PTS;
+			long start = System.nanoTime();
+			DBScan dbscan = new DBScan(block, CsxDisambiguation.EPS, minPts);
+			dbscan.run();
+			dbscanTime += System.nanoTime() - start;
+
+			block.loadAuthors(file);
+			start = System.nanoTime();
+			CompactDBScan compact =
+				new CompactDBScan(block, CsxDisambiguation.EPS, minPts);
+			compact.run();
+			compactTime += System.nanoTime() - start;
+
+			if (!sameClusters(dbscan.getClusters(), compact.getClusters())) {
+				mismatches++;
+				System.out.println("MISMATCH " + name);
+			}
+		}
+		System.out.println(Math.min(blocks, names.size()) + " blocks, " +
+				mismatches + " mismatches");
+		System.out.println("DBScan: " + (dbscanTime / 1000000) + " ms, " +
+				"CompactDBScan: " + (compactTime / 1000000) + " ms");
+		if (mismatches > 0) {
+			System.exit(1);
+		}
+	} //- runBlocks
+
+	/*
+	 * Clusters are compared as sets of points, their order depending on
+	 * hash maps in DBScan.
+	 */
+	private static boolean sameClusters(Map<Integer, List<Integer>> c1,
+			Map<Integer, List<Integer>> c2) {
+		if (!c1.keySet().equals(c2.keySet())) {
+			return false;
+		}
+		for (Integer cid : c1.keySet()) {
+			if (!new HashSet<Integer>(c1.get(cid)).equals(
+					new HashSet<Integer>(c2.get(cid)))) {
+				return false;
+			}
+		}
+		return true;
+	} //- sameClusters
+
+	private static long[] gcCounts() {
+		long count = 0;
+		long time = 0;
+		for (GarbageCollectorMXBean gc :
+			ManagementFactory.getGarbageCollectorMXBeans()) {
+			count += gc.getCollectionCount();
+			time += gc.getCollectionTime();
+		}
+		return new long[] { count, time };
+	} //- gcCounts
+
+	private static void report(String name, long nanos, int rounds,
+			long[] gcBefore) {
+		long[] gc = gcCounts();
+		System.out.println(name + "\t" + (nanos / 1000000 / rounds) + "\t" +
+				(gc[0] - gcBefore[0]) + "\t" + (gc[1] - gcBefore[1]));
+	} //- report
+
+	/**
+	 * Points around random centers in the unit square, with precomputed
+	 * neighborhoods.  getNeighbors answers a new set of boxed IDs each
+	 * time, as CsxAuthorBlock does.
+	 */
+	private static class SyntheticBlock extends IndexedBlockingDatabase {
+
+		private final Set<Integer> ids = new LinkedHashSet<Integer>();
+		private final Map<Integer,Integer> indices =
+			new HashMap<Integer,Integer>();
+		private final int[] pointIds;
+		private final int[][] neighbors;
+		int edges = 0;
+
+		SyntheticBlock(int n, Random random) {
+			Set<Integer> aids = new HashSet<Integer>();
+			while (aids.size() < n) {
+				aids.add(1 + random.nextInt(10000000));
+			}
+			// Indexed in the order DBScan visits them.
+			pointIds = new int[n];
+			int index = 0;
+			for (Integer aid : aids) {
+				ids.add(aid);
+				indices.put(aid, index);
+				pointIds[index++] = aid;
+			}
+
+			int centers = Math.max(1, n / 20);
+			double[][] xy = new double[n][2];
+			double[][] center = new double[centers][2];
+			for (double[] c : center) {
+				c[0] = random.nextDouble();
+				c[1] = random.nextDouble();
+			}
+			for (double[] p : xy) {
+				double[] c = center[random.nextInt(centers)];
+				p[0] = c[0] + random.nextGaussian() * 0.005;
+				p[1] = c[1] + random.nextGaussian() * 0.005;
+			}
+
+			// Neighbors within 0.01, found through a grid of that size.
+			int cells = 100;
+			Map<Integer, List<Integer>> grid =
+				new HashMap<Integer, List<Integer>>();
+			for (int i = 0; i < n; i++) {
+				Integer cell = cell(xy[i][0], cells) * (cells+2) +
+					cell(xy[i][1], cells);
+				List<Integer> list = grid.get(cell);
+				if (list == null) {
+					list = new ArrayList<Integer>();
+					grid.put(cell, list);
+				}
+				list.add(i);
+			}
+			neighbors = new int[n][];
+			for (int i = 0; i < n; i++) {
+				List<Integer> found = new ArrayList<Integer>();
+				int cx = cell(xy[i][0], cells);
+				int cy = cell(xy[i][1], cells);
+				for (int dx = -1; dx <= 1; dx++) {
+					for (int dy = -1; dy <= 1; dy++) {
+						List<Integer> list =
+							grid.get((cx+dx) * (cells+2) + (cy+dy));
+						if (list == null) {
+							continue;
+						}
+						for (int j : list) {
+							double ex = xy[i][0] - xy[j][0];
+							double ey = xy[i][1] - xy[j][1];
+							if (j != i && ex*ex + ey*ey < 0.0001) {
+								found.add(j);
+							}
+						}
+					}
+				}
+				neighbors[i] = new int[found.size()];
+				for (int k = 0; k < found.size(); k++) {
+					neighbors[i][k] = found.get(k);
+				}
+				edges += found.size();
+			}
+			edges /= 2;
+		}
+
+		private static int cell(double v, int cells) {
+			return Math.max(-1, Math.min(cells, (int)Math.floor(v * cells)));
+		}
+
+		public Set<Integer> getAllPoints() {
+			return ids;
+		}
+
+		public Set<Integer> getNeighbors(Integer point, double eps) {
+			Set<Integer> set = new HashSet<Integer>();
+			for (int j : neighbors[indices.get(point)]) {
+				set.add(pointIds[j]);
+			}
+			return set;
+		}
+
+		public void printPoint(Integer point) {
+			System.out.println("\t" + point);
+		}
+
+		public int size() {
+			return pointIds.length;
+		}
+
+		public int getPointId(int index) {
+			return pointIds[index];
+		}
+
+		public int[] getNeighborIndices(int index, double eps) {
+			return neighbors[index];
+		}
+
+	} //- class SyntheticBlock
+
+} //- class DBScanBenchmark
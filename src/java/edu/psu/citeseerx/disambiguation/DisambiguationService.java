@@ -12,63 +12,175 @@
  */
 package edu.psu.citeseerx.disambiguation;
 
-import org.rosuda.REngine.Rserve.RConnection;
-import org.rosuda.REngine.REXP;
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import org.springframework.beans.factory.ListableBeanFactory;
 import edu.psu.citeseerx.loaders.ContextReader;
+import edu.psu.citeseerx.disambiguation.ProfileDistance.FeatType;
 
 /**
  * DisambiguationService
- * 
+ *
+ * Scores pairs of author records with the random forest trained in R.  The
+ * forest is exported with src/utility_scripts/disambiguation/export_forest.R
+ * and scored in process by {@link RandomForest}; the distance of a pair is
+ * the probability of its first class, as predict(rf, x, type='prob')[,1]
+ * gives it.
+ *
  * @author Puck Treeratpituk
  * @version $Rev$ $Date$
  */
 public class DisambiguationService {
-	RConnection c;
-	String rf_path; // "../../data/csauthors/csauthors.rf";
-	
-	public DisambiguationService() throws Exception {
-		c = new RConnection();
-		c.eval("library(randomForest)");
-	}
+	RandomForest rf;
+	String rf_path; // "../../data/csauthors/csauthors.forest";
+	FeatType[] featTypes;
 
-	public void setModelFile(String modelFile) throws Exception {
+	public DisambiguationService() { }
+
+	/**
+	 * Loads an exported forest.  Its features must all be features computed
+	 * by ProfileDistance, named as in ProfileDistance.FEATURES.
+	 * @param modelFile
+	 * @throws IOException
+	 */
+	public void setModelFile(String modelFile) throws IOException {
+		RandomForest forest = new RandomForest(modelFile);
+		Map<String,FeatType> names = new HashMap<String,FeatType>();
+		for (Map.Entry<FeatType,String> e :
+			ProfileDistance.FEATURES.entrySet()) {
+			names.put(e.getValue().split(" ")[0], e.getKey());
+		}
+		String[] features = forest.getFeatures();
+		FeatType[] types = new FeatType[features.length];
+		for (int i = 0; i < features.length; i++) {
+			types[i] = names.get(features[i]);
+			if (types[i] == null) {
+				throw new IOException("unknown feature " + features[i] +
+						" in " + modelFile);
+			}
+		}
+		this.rf = forest;
+		this.featTypes = types;
 		this.rf_path = modelFile;
-		c.eval("load('" + this.rf_path + "')");
-	}
+	} //- setModelFile
+
+	/**
+	 * @return the features of the model, in the order rows must hold them.
+	 */
+	public FeatType[] getFeatureTypes() {
+		return featTypes.clone();
+	} //- getFeatureTypes
+
+	/**
+	 * @param feats features of a pair, as computed by ProfileDistance
+	 * @return a row of the feature matrix for calcDistances
+	 */
+	public double[] getFeatureRow(Map<FeatType,Double> feats) {
+		double[] row = new double[featTypes.length];
+		for (int i = 0; i < featTypes.length; i++) {
+			row[i] = feats.get(featTypes[i]);
+		}
+		return row;
+	} //- getFeatureRow
+
+	/**
+	 * @param feat features of a pair, comma separated in the order of
+	 * ProfileDistance.getFeatureString without ids
+	 * @return the distance of the pair
+	 */
+	public double calcSingleDistance(String feat) {
+		String[] vals = feat.split(",");
+		Map<FeatType,Double> feats = new HashMap<FeatType,Double>();
+		int i = 0;
+		for (FeatType type : FeatType.values()) {
+			if (type != FeatType.DID1 && type != FeatType.DID2) {
+				feats.put(type, Double.valueOf(vals[i++].trim()));
+			}
+		}
+		return calcDistances(new double[][] { getFeatureRow(feats) })[0];
+	} //- calcSingleDistance
+
+	/**
+	 * @param rows feature matrix, one row per pair, built by getFeatureRow
+	 * @return the distance of each pair
+	 */
+	public double[] calcDistances(double[][] rows) {
+		return rf.score(rows);
+	} //- calcDistances
 
-	public double calcSingleDistance(String feat) throws Exception {
-		c.eval("test = c(" + feat + ")");
-		REXP x = c.eval("predict(rf, test, proximity=FALSE, type='prob')[,1]");
-		return x.asDouble();
-	}
-	
-	public double[] calcDistances(String dist_file) throws Exception {
-		
-		c.eval("test = read.table('" + dist_file + "', header=TRUE, sep=',')");
-		REXP x = c.eval("predict(rf, test, proximity=FALSE, type='prob')[,1]");
-		
-		double[] probs = x.asDoubles();
-		return probs;
-	}
+	/**
+	 * @param dist_file comma separated features, one pair per line, with a
+	 * header line naming the columns as in ProfileDistance.FEATURES
+	 * @return the distance of each pair
+	 * @throws IOException
+	 */
+	public double[] calcDistances(String dist_file) throws IOException {
+		return calcDistances(readFeatureRows(dist_file));
+	} //- calcDistances
 
-	public void startup() throws Exception {
-		if (c != null)
-			c.shutdown();
-		c = new RConnection();
-	}
-	public void shutdown() throws Exception {
-		c.shutdown();
-		c = null;
-	}
+	/**
+	 * Reads a feature matrix from a file in the format of calcDistances.
+	 * Columns are matched to the model features by name.
+	 * @param dist_file
+	 * @return one row per pair, as built by getFeatureRow
+	 * @throws IOException
+	 */
+	public double[][] readFeatureRows(String dist_file) throws IOException {
+		BufferedReader reader = new BufferedReader(new FileReader(dist_file));
+		try {
+			String line = reader.readLine();
+			if (line == null) {
+				return new double[0][];
+			}
+			String[] header = line.split(",");
+			int[] cols = new int[featTypes.length];
+			for (int i = 0; i < featTypes.length; i++) {
+				String name =
+					ProfileDistance.FEATURES.get(featTypes[i]).split(" ")[0];
+				cols[i] = -1;
+				for (int j = 0; j < header.length; j++) {
+					if (header[j].trim().equals(name)) {
+						cols[i] = j;
+					}
+				}
+				if (cols[i] < 0) {
+					throw new IOException("no column " + name + " in " +
+							dist_file);
+				}
+			}
+			List<double[]> rows = new ArrayList<double[]>();
+			while ((line = reader.readLine()) != null) {
+				if (line.trim().length() == 0) {
+					continue;
+				}
+				String[] vals = line.split(",");
+				double[] row = new double[cols.length];
+				for (int i = 0; i < cols.length; i++) {
+					row[i] = Double.parseDouble(vals[cols[i]].trim());
+				}
+				rows.add(row);
+			}
+			return rows.toArray(new double[rows.size()][]);
+		} finally {
+			reader.close();
+		}
+	} //- readFeatureRows
 
-	// java -Dcsx.boot=bootstrap/disambiguation.txt -Dcsx.conf=conf edu.psu.citeseerx.disambiguation.DisambiguationService
+	// java -Dcsx.boot=bootstrap/disambiguation.txt -Dcsx.conf=conf edu.psu.citeseerx.disambiguation.DisambiguationService feats.dat
     public static void main(String[] args) throws Exception {
         ListableBeanFactory factory = ContextReader.loadContext();
-		DisambiguationService c = 
+		DisambiguationService c =
 		    (DisambiguationService)factory.getBean("disambiguationService");
-		//c.loadRandomForest();
-		//c.calcDistances("/home/pxt162/codes/citeseerx/resources/disambiguation/feats.dat");
+		if (args.length > 0) {
+			for (double d : c.calcDistances(args[0])) {
+				System.out.println(d);
+			}
+		}
     } //- main
-}
\ No newline at end of file
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2007 Penn State University
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.psu.citeseerx.disambiguation;
+
+/**
+ * DistanceCache
+ *
+ * Distances between pairs of authors, keyed by the pair of author IDs
+ * packed in a long and held in open addressing arrays of primitives, so a
+ * pair costs twelve bytes (at most twice that with the table half full)
+ * rather than a map entry, a key string and a Double.
+ *
+ * @version $Rev$ $Date$
+ */
+class DistanceCache {
+
+	// Marks free slots; a point is never paired with itself.
+	private static final long FREE = 0;
+
+	private long[] keys;
+	private float[] distances;
+	private int size = 0;
+	private int shift;
+
+	DistanceCache() {
+		allocate(1024);
+	} //- DistanceCache
+
+	/**
+	 * @param id1
+	 * @param id2
+	 * @return the key of the pair, the same whatever the order of the IDs
+	 */
+	static long key(int id1, int id2) {
+		if (id1 > id2) {
+			int id = id1;
+			id1 = id2;
+			id2 = id;
+		}
+		return ((long)id1 << 32) | (id2 & 0xffffffffL);
+	} //- key
+
+	/**
+	 * @param key
+	 * @return the distance of the pair, or NaN if not cached
+	 */
+	float get(long key) {
+		int slot = slot(key);
+		return (keys[slot] == FREE) ? Float.NaN : distances[slot];
+	} //- get
+
+	void put(long key, float distance) {
+		int slot = slot(key);
+		if (keys[slot] == FREE) {
+			keys[slot] = key;
+			size++;
+			if (size*2 > keys.length) {
+				distances[slot] = distance;
+				allocate(keys.length*2);
+				return;
+			}
+		}
+		distances[slot] = distance;
+	} //- put
+
+	int size() {
+		return size;
+	} //- size
+
+	/*
+	 * Pair keys share many bits, so they are spread by a multiplicative
+	 * hash taking the high bits of the product.
+	 */
+	private int slot(long key) {
+		int mask = keys.length-1;
+		int slot = (int)((key * 0x9e3779b97f4a7c15L) >>> shift);
+		while (keys[slot] != FREE && keys[slot] != key) {
+			slot = (slot+1) & mask;
+		}
+		return slot;
+	} //- slot
+
+	private void allocate(int capacity) {
+		long[] oldKeys = keys;
+		float[] oldDistances = distances;
+		keys = new long[capacity];
+		distances = new float[capacity];
+		shift = 64 - Integer.numberOfTrailingZeros(capacity);
+		size = 0;
+		if (oldKeys == null) {
+			return;
+		}
+		for (int i=0; i<oldKeys.length; i++) {
+			if (oldKeys[i] != FREE) {
+				int slot = slot(oldKeys[i]);
+				keys[slot] = oldKeys[i];
+				distances[slot] = oldDistances[i];
+				size++;
+			}
+		}
+	} //- allocate
+
+} //- class DistanceCache
@@ -434,7 +434,7 @@ public class ProfileDistance
 		    DriverManager.getConnection(connectionURL,"csx-devel","csx-devel");
 
 		DisambiguationService distService = new DisambiguationService();
-		//distService.loadRandomForest();
+		distService.setModelFile(args[2]);
 		
 		String aid1 = args[0];
 		String aid2 = args[1];
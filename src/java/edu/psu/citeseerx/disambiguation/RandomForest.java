@@ -0,0 +1,252 @@
+/*
+ * Copyright 2007 Penn State University
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.psu.citeseerx.disambiguation;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * RandomForest
+ *
+ * Classification forest trained with the R randomForest package and
+ * exported by src/utility_scripts/disambiguation/export_forest.R, scored
+ * without R.  The nodes of all the trees are kept in a few flat arrays.
+ * <br><br>
+ * Probabilities are the fraction of trees voting for a class, each tree
+ * sending a row left when the tested feature is less than or equal to the
+ * split point, which is what predict(rf, x, type='prob') computes for
+ * numeric features.  Split points are exported at full precision, so the
+ * probabilities are the same as R's.
+ * <br><br>
+ * Export file format, one record per line, fields separated by blanks:
+ * <pre>
+ * forest  ntrees nfeatures nclasses
+ * features name ...
+ * classes  label ...
+ * tree     nnodes
+ * left right feature split class    (nnodes lines per tree)
+ * </pre>
+ * Node indices are 0-based within their tree; leaves have feature -1 and
+ * internal nodes class -1.  Lines starting with # are ignored.
+ *
+ * @version $Rev$ $Date$
+ */
+public class RandomForest {
+
+	private String[] features;
+	private String[] classes;
+
+	/* First node of each tree. */
+	private int[] roots;
+
+	/*
+	 * Per node: tested feature, or -1 for leaves; split point; children
+	 * as absolute node indices.  Leaves keep the class they vote for in
+	 * left.
+	 */
+	private int[] feature;
+	private double[] split;
+	private int[] left;
+	private int[] right;
+
+	/**
+	 * Reads a forest from an export file
+	 * @param file
+	 * @throws IOException if the file can't be read or is not well formed
+	 */
+	public RandomForest(String file) throws IOException {
+		BufferedReader reader = new BufferedReader(new FileReader(file));
+		try {
+			read(reader);
+		} finally {
+			reader.close();
+		}
+	} //- RandomForest
+
+	public int getNumTrees() {
+		return roots.length;
+	} //- getNumTrees
+
+	public int getNumNodes() {
+		return feature.length;
+	} //- getNumNodes
+
+	/**
+	 * @return names of the features, in the order rows must hold them.
+	 */
+	public String[] getFeatures() {
+		return features.clone();
+	} //- getFeatures
+
+	/**
+	 * @return labels of the classes, in R level order.
+	 */
+	public String[] getClasses() {
+		return classes.clone();
+	} //- getClasses
+
+	/**
+	 * @param row feature values, in the order of getFeatures
+	 * @return the probability of the first class
+	 */
+	public double score(double[] row) {
+		return score(new double[][] { row })[0];
+	} //- score
+
+	/**
+	 * @param rows feature values of each row, in the order of getFeatures
+	 * @return the probability of the first class for each row
+	 */
+	public double[] score(double[][] rows) {
+		double[] probs = new double[rows.length];
+		score(rows, rows.length, 0, probs);
+		return probs;
+	} //- score
+
+	/**
+	 * Scores the first n rows of a feature matrix.  Each tree is run over
+	 * all the rows before moving to the next, so its nodes stay in cache.
+	 * @param rows feature values of each row, in the order of getFeatures
+	 * @param n number of rows to score
+	 * @param cls index of the class whose probability is wanted
+	 * @param probs receives the probability of the class for each row
+	 */
+	public void score(double[][] rows, int n, int cls, double[] probs) {
+		for (int r = 0; r < n; r++) {
+			if (rows[r].length < features.length) {
+				throw new IllegalArgumentException("rows must have " +
+						features.length + " features");
+			}
+		}
+		int[] votes = new int[n];
+		for (int t = 0; t < roots.length; t++) {
+			int root = roots[t];
+			for (int r = 0; r < n; r++) {
+				double[] row = rows[r];
+				int k = root;
+				int f;
+				while ((f = feature[k]) >= 0) {
+					k = (row[f] <= split[k]) ? left[k] : right[k];
+				}
+				if (left[k] == cls) {
+					votes[r]++;
+				}
+			}
+		}
+		for (int r = 0; r < n; r++) {
+			probs[r] = (double)votes[r] / roots.length;
+		}
+	} //- score
+
+	private void read(BufferedReader reader) throws IOException {
+		String[] header = next(reader, "forest");
+		int ntrees = Integer.parseInt(header[1]);
+		int nfeatures = Integer.parseInt(header[2]);
+		int nclasses = Integer.parseInt(header[3]);
+
+		features = rest(next(reader, "features"), nfeatures);
+		classes = rest(next(reader, "classes"), nclasses);
+
+		roots = new int[ntrees];
+		int capacity = 1024;
+		feature = new int[capacity];
+		split = new double[capacity];
+		left = new int[capacity];
+		right = new int[capacity];
+
+		int size = 0;
+		for (int t = 0; t < ntrees; t++) {
+			int nnodes = Integer.parseInt(next(reader, "tree")[1]);
+			if (size + nnodes > capacity) {
+				capacity = Math.max(capacity * 2, size + nnodes);
+				feature = Arrays.copyOf(feature, capacity);
+				split = Arrays.copyOf(split, capacity);
+				left = Arrays.copyOf(left, capacity);
+				right = Arrays.copyOf(right, capacity);
+			}
+			roots[t] = size;
+			for (int i = 0; i < nnodes; i++) {
+				String[] node = next(reader, null);
+				int k = size + i;
+				feature[k] = Integer.parseInt(node[2]);
+				if (feature[k] >= nfeatures) {
+					throw new IOException("bad feature in tree " + t);
+				}
+				if (feature[k] < 0) {
+					feature[k] = -1;
+					left[k] = Integer.parseInt(node[4]);
+					if (left[k] < 0 || left[k] >= nclasses) {
+						throw new IOException("bad class in tree " + t);
+					}
+				} else {
+					split[k] = Double.parseDouble(node[3]);
+					left[k] = size + child(node[0], i, nnodes, t);
+					right[k] = size + child(node[1], i, nnodes, t);
+				}
+			}
+			size += nnodes;
+		}
+		feature = Arrays.copyOf(feature, size);
+		split = Arrays.copyOf(split, size);
+		left = Arrays.copyOf(left, size);
+		right = Arrays.copyOf(right, size);
+	} //- read
+
+	/*
+	 * Reads the next record, checking its type when given.
+	 */
+	private static String[] next(BufferedReader reader, String type)
+	throws IOException {
+		String line;
+		do {
+			line = reader.readLine();
+			if (line == null) {
+				throw new IOException("unexpected end of forest file");
+			}
+			line = line.trim();
+		} while (line.length() == 0 || line.startsWith("#"));
+		String[] fields = line.split("\\s+");
+		if (type != null) {
+			if (!fields[0].equals(type) || fields.length < 2) {
+				throw new IOException("expected " + type + ": " + line);
+			}
+		} else if (fields.length != 5) {
+			throw new IOException("expected node: " + line);
+		}
+		return fields;
+	} //- next
+
+	private static String[] rest(String[] fields, int n) throws IOException {
+		if (fields.length != n + 1) {
+			throw new IOException("expected " + n + " " + fields[0]);
+		}
+		String[] rest = new String[n];
+		System.arraycopy(fields, 1, rest, 0, n);
+		return rest;
+	} //- rest
+
+	/*
+	 * Children always come after their parent, so no tree can loop.
+	 */
+	private static int child(String field, int parent, int nnodes, int tree)
+	throws IOException {
+		int child = Integer.parseInt(field);
+		if (child <= parent || child >= nnodes) {
+			throw new IOException("bad child in tree " + tree);
+		}
+		return child;
+	} //- child
+
+} //- class RandomForest
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2007 Penn State University
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.psu.citeseerx.disambiguation;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Measures how many pairs per second {@link DisambiguationService} scores
+ * with an exported forest, and optionally checks its scores against the
+ * probabilities R predicts for the same features, as written by
+ * src/utility_scripts/disambiguation/export_forest.R.
+ * <br><br>
+ * Without a features file the pairs are random values in [0, 1), which only
+ * give a rough idea of the speed on real features.
+ * <br><br>
+ * Usage: RandomForestBenchmark model.forest [feats.dat [probs.txt]]
+ *
+ * @version $Rev$ $Date$
+ */
+public class RandomForestBenchmark {
+
+	private static final int[] BATCH_SIZES = { 1, 10, 100, 1000, 10000 };
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.out.println("Usage: RandomForestBenchmark model.forest " +
+					"[feats.dat [probs.txt]]");
+			System.exit(1);
+		}
+		DisambiguationService service = new DisambiguationService();
+		service.setModelFile(args[0]);
+		System.out.println(service.rf.getNumTrees() + " trees, " +
+				service.rf.getNumNodes() + " nodes");
+
+		double[][] rows;
+		if (args.length > 1) {
+			rows = service.readFeatureRows(args[1]);
+		} else {
+			rows = randomRows(100000, service.getFeatureTypes().length);
+		}
+
+		if (args.length > 2) {
+			double[] expected = readProbs(args[2]);
+			double[] probs = service.calcDistances(rows);
+			if (expected.length != probs.length) {
+				System.out.println("MISMATCH " + expected.length +
+						" R probabilities for " + probs.length + " pairs");
+				System.exit(1);
+			}
+			int mismatches = 0;
+			double maxDiff = 0;
+			for (int i = 0; i < probs.length; i++) {
+				double diff = Math.abs(expected[i] - probs[i]);
+				if (diff > 0 && mismatches++ < 10) {
+					System.out.println("MISMATCH pair " + (i+1) + ": " +
+							expected[i] + " != " + probs[i]);
+				}
+				maxDiff = Math.max(maxDiff, diff);
+			}
+			System.out.println(probs.length + " pairs, " + mismatches +
+					" mismatches, max difference " + maxDiff);
+		}
+
+		// Warm up before timing.
+		time(service, rows, 1000);
+		System.out.println("batch\tpairs/s");
+		for (int size : BATCH_SIZES) {
+			if (size > rows.length) {
+				break;
+			}
+			long nanos = time(service, rows, size);
+			System.out.println(size + "\t" +
+					(long)(rows.length * 1e9 / Math.max(1, nanos)));
+		}
+	} //- main
+
+	/*
+	 * Scores all the rows in batches of the given size, as CsxAuthorBlock
+	 * scores the candidates of a point.
+	 */
+	private static long time(DisambiguationService service, double[][] rows,
+			int size) {
+		double sum = 0;
+		double[][] batch = new double[size][];
+		long start = System.nanoTime();
+		for (int i = 0; i + size <= rows.length; i += size) {
+			System.arraycopy(rows, i, batch, 0, size);
+			for (double d : service.calcDistances(batch)) {
+				sum += d;
+			}
+		}
+		long elapsed = System.nanoTime() - start;
+		if (sum < 0) {
+			System.out.println(sum);
+		}
+		return elapsed;
+	} //- time
+
+	private static double[][] randomRows(int n, int features) {
+		Random random = new Random(0);
+		double[][] rows = new double[n][features];
+		for (double[] row : rows) {
+			for (int j = 0; j < features; j++) {
+				row[j] = random.nextDouble();
+			}
+		}
+		return rows;
+	} //- randomRows
+
+	private static double[] readProbs(String path) throws IOException {
+		List<Double> probs = new ArrayList<Double>();
+		BufferedReader reader = new BufferedReader(new FileReader(path));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.trim().length() > 0) {
+					probs.add(Double.valueOf(line.trim()));
+				}
+			}
+		} finally {
+			reader.close();
+		}
+		double[] values = new double[probs.size()];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = probs.get(i);
+		}
+		return values;
+	} //- readProbs
+
+} //- class RandomForestBenchmark
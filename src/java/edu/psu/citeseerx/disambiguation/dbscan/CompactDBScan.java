@@ -0,0 +1,175 @@
+/*
+ * Copyright 2007 Penn State University
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.psu.citeseerx.disambiguation.dbscan;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * DBSCAN clustering algorithm over the dense point indices of an
+ * IndexedBlockingDatabase.  The state is kept in int arrays and bit sets
+ * instead of collections of boxed point IDs.
+ * <br><br>
+ * Points are visited in index order, the order in which DBScan visits them,
+ * and neighborhoods are expanded the same way, so both give the same
+ * clusters with the same IDs.
+ *
+ * @version $Rev$ $Date$
+ */
+public class CompactDBScan {
+	IndexedBlockingDatabase db;
+	double eps;
+	int minPts;
+
+	// point index => cluster ID, 0 if in no cluster
+	int[] cids;
+	BitSet visited;
+	// points put in the seeds of a cluster
+	BitSet seen;
+	int numClusters = 0;
+
+	int[] seeds = new int[16];
+
+	public CompactDBScan(IndexedBlockingDatabase db, double eps,
+			int minPts) {
+		this.db 	= db;
+		this.eps 	= eps;
+		this.minPts = minPts;
+	} //- CompactDBScan
+
+	public void run() {
+		int n = db.size();
+		cids = new int[n];
+		visited = new BitSet(n);
+		seen = new BitSet(n);
+		numClusters = 0;
+
+		for (int p1 = 0; p1 < n; p1++) {
+			if (!visited.get(p1)) {
+				visited.set(p1);
+				int[] n1 = db.getNeighborIndices(p1, eps);
+				if (n1.length >= minPts) {
+					expandCluster(p1, n1, ++numClusters);
+				}
+			}
+		}
+	} //- run
+
+	/*
+	 * Neighbors of the first point join the cluster even if already
+	 * visited, as noise; those of the points reached from it only if not
+	 * yet visited.
+	 */
+	private void expandCluster(int p1, int[] n1, int clusterID) {
+		cids[p1] = clusterID;
+		int size = 0;
+		for (int p2 : n1) {
+			seeds = append(seeds, size++, p2);
+			seen.set(p2);
+		}
+
+		for (int i = 0; i < size; i++) {
+			int p2 = seeds[i];
+			if (!visited.get(p2)) {
+				visited.set(p2);
+				int[] n2 = db.getNeighborIndices(p2, eps);
+				if (n2.length >= minPts) {
+					for (int p3 : n2) {
+						if (!visited.get(p3) && !seen.get(p3)) {
+							seeds = append(seeds, size++, p3);
+							seen.set(p3);
+						}
+					}
+				}
+			}
+			if (cids[p2] == 0) {
+				cids[p2] = clusterID;
+			}
+		}
+	} //- expandCluster
+
+	private static int[] append(int[] array, int size, int value) {
+		if (size == array.length) {
+			int[] grown = new int[array.length * 2];
+			System.arraycopy(array, 0, grown, 0, size);
+			array = grown;
+		}
+		array[size] = value;
+		return array;
+	} //- append
+
+	/**
+	 * @return the point IDs of each cluster, by cluster ID
+	 */
+	public Map<Integer, List<Integer>> getClusters() {
+		List<List<Integer>> lists = new ArrayList<List<Integer>>();
+		for (int c = 0; c < numClusters; c++) {
+			lists.add(new ArrayList<Integer>());
+		}
+		for (int p = 0; p < cids.length; p++) {
+			if (cids[p] != 0) {
+				lists.get(cids[p] - 1).add(db.getPointId(p));
+			}
+		}
+		Map<Integer, List<Integer>> clusters =
+			new LinkedHashMap<Integer, List<Integer>>();
+		for (int c = 0; c < numClusters; c++) {
+			clusters.put(c + 1, lists.get(c));
+		}
+		return clusters;
+	} //- getClusters
+
+	public void printResults(String outfile) {
+		try {
+			BufferedWriter out = new BufferedWriter(new FileWriter(outfile));
+			writeResults(out);
+			out.close();
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+	} //- printResults
+
+	/**
+	 * Writes each cluster as its ID in brackets followed by its points, one
+	 * per line, as DBScan does
+	 * @param out
+	 * @throws IOException
+	 */
+	public void writeResults(Writer out) throws IOException {
+		Map<Integer, List<Integer>> clusters = getClusters();
+		for (Integer cid: clusters.keySet()) {
+			out.write("[" + cid + "]\n");
+			for (Integer pid: clusters.get(cid)) {
+				out.write(pid + "\n");
+			}
+		}
+	} //- writeResults
+
+	public void printResults() {
+		Map<Integer, List<Integer>> clusters = getClusters();
+
+		for (Integer cid: clusters.keySet()) {
+			System.out.println(cid + ">>>>>>");
+			for (Integer pid: clusters.get(cid)) {
+				db.printPoint(pid);
+			}
+		}
+	} //- printResults
+} //- class CompactDBScan
@@ -14,6 +14,8 @@ package edu.psu.citeseerx.disambiguation.dbscan;
 
 import java.io.BufferedWriter;
 import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.ArrayList;
@@ -118,22 +120,31 @@ public class DBScan {
 	} //- getClusters
 
 	public void printResults(String outfile) {
-		Map<Integer, List<Integer>> clusters = getClusters();
 		try {	
 			BufferedWriter out = new BufferedWriter(new FileWriter(outfile));	
-
-			for (Integer cid: clusters.keySet()) {
-				List<Integer> list = clusters.get(cid);
-				out.write("[" + cid + "]\n");
-				for (Integer pid: list) {
-					out.write(pid + "\n");
-				}
-			}
+			writeResults(out);
 			out.close();
 		} catch (Exception e) {
 			e.printStackTrace();
 		}
 	} //- printResults
+
+	/**
+	 * Writes each cluster as its ID in brackets followed by its points, one
+	 * per line
+	 * @param out
+	 * @throws IOException
+	 */
+	public void writeResults(Writer out) throws IOException {
+		Map<Integer, List<Integer>> clusters = getClusters();
+		for (Integer cid: clusters.keySet()) {
+			List<Integer> list = clusters.get(cid);
+			out.write("[" + cid + "]\n");
+			for (Integer pid: list) {
+				out.write(pid + "\n");
+			}
+		}
+	} //- writeResults
 	
 	public void printResults() {
 		Map<Integer, List<Integer>> clusters = getClusters();
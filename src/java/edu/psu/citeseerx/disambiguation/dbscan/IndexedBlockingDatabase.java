@@ -0,0 +1,36 @@
+/*
+ * Copyright 2007 Penn State University
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.psu.citeseerx.disambiguation.dbscan;
+
+/**
+ * IndexedBlockingDatabase
+ *
+ * a BlockingDatabase whose points can also be addressed by dense indices,
+ * 0 to size()-1, numbered in the order getAllPoints iterates them, as
+ * used by CompactDBScan.
+ *
+ * @version $Rev$ $Date$
+ */
+public abstract class IndexedBlockingDatabase extends BlockingDatabase
+{
+	public abstract int size();
+	public abstract int getPointId(int index);
+
+	/**
+	 * @param index
+	 * @param eps
+	 * @return the indices of the points in the eps neighborhood of the
+	 * point, each once; the same points getNeighbors returns.
+	 */
+	public abstract int[] getNeighborIndices(int index, double eps);
+} //- class IndexedBlockingDatabase
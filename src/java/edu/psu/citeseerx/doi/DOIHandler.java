@@ -17,7 +17,8 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
-import java.util.Hashtable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.naming.Context;
 import javax.naming.InitialContext;
@@ -40,6 +41,14 @@ import javax.sql.DataSource;
  * DOI_TYPE: marker to determine the type of object that this DOI references
  * BIN: top-level ID space, each bin can contain only 9999 REC
  * REC: low-level ID space, record identifiers
+ * <br><br>
+ * Rather than recording each DOI given out, the handler leases a range of
+ * RECs within a BIN for each DOI type, recorded in a single insert, and
+ * hands them out from memory.  The size of the ranges is read from the
+ * optional JNDI entry java:comp/env/doi/rangeSize.  On close, the unused
+ * end of each open range is given back; a range left open by a handler
+ * that did not close stays reserved, since any of its DOIs may have been
+ * given out.
  *
  * @author Isaac Councill
  * @version $Rev$ $Date$
@@ -49,23 +58,48 @@ public class DOIHandler {
     private DOIHandler() throws NamingException, SQLException {
         initializeConnection();
         collectPrefixInfo();
+        closeAbandonedRanges();
+        
+        Runtime.getRuntime().addShutdownHook(new Thread("DOIHandler close") {
+            public void run() {
+                close();
+            }
+        });
         
     }  //- DOIHandler
 
 
-    private final String getMarkerInfoQuery =
-        "select max(bin), max(rec) from doi_granted where doi_type=?";
-    private final String insertDOIQuery =
-        "insert into doi_granted values (NULL, ?, ?, ?, NULL)";
+    private final String getLastGrantedQuery =
+        "select bin, rec from doi_granted where doi_type=? " +
+        "order by bin desc, rec desc limit 1";
+    private final String getLastRangeQuery =
+        "select bin, last_rec from doi_ranges where doi_type=? " +
+        "order by bin desc, last_rec desc limit 1";
+    private final String insertRangeQuery =
+        "insert into doi_ranges (doi_type, bin, first_rec, last_rec) " +
+        "values (?, ?, ?, ?)";
+    private final String closeRangeQuery =
+        "update doi_ranges set last_rec=?, closed=CURRENT_TIMESTAMP " +
+        "where id=?";
+    private final String deleteRangeQuery =
+        "delete from doi_ranges where id=?";
+    private final String closeAbandonedQuery =
+        "update doi_ranges set closed=CURRENT_TIMESTAMP where closed is null";
     private final String validationQuery =
         "select current_date";
     
     private Connection connection;
     
-    private PreparedStatement getMarkerInfoStmnt;
-    private PreparedStatement insertDOIStmnt;
+    private PreparedStatement getLastGrantedStmnt;
+    private PreparedStatement getLastRangeStmnt;
+    private PreparedStatement insertRangeStmnt;
+    private PreparedStatement closeRangeStmnt;
+    private PreparedStatement deleteRangeStmnt;
     private PreparedStatement validationStmnt;
     
+    /* Number of RECs leased at a time, unless the BIN has fewer left. */
+    private int rangeSize = DEFAULT_RANGE_SIZE;
+    
     /**
      * Gets a database connection from a JNDI resource that is expected
      * to have been configured in the app container.  Also prepares
@@ -80,10 +114,23 @@ public class DOIHandler {
             throw new NamingException("Null DataSource");
         }
         connection = source.getConnection();
-        getMarkerInfoStmnt = connection.prepareStatement(getMarkerInfoQuery);
-        insertDOIStmnt = connection.prepareStatement(insertDOIQuery);
+        getLastGrantedStmnt = connection.prepareStatement(getLastGrantedQuery);
+        getLastRangeStmnt = connection.prepareStatement(getLastRangeQuery);
+        insertRangeStmnt = connection.prepareStatement(insertRangeQuery,
+                Statement.RETURN_GENERATED_KEYS);
+        closeRangeStmnt = connection.prepareStatement(closeRangeQuery);
+        deleteRangeStmnt = connection.prepareStatement(deleteRangeQuery);
         validationStmnt = connection.prepareStatement(validationQuery);
         
+        try {
+            Object size = ctx.lookup("java:comp/env/doi/rangeSize");
+            if (size != null && Integer.parseInt(size.toString()) > 0) {
+                rangeSize = Integer.parseInt(size.toString());
+            }
+        } catch (NamingException e) {
+            /* Not configured - use the default. */
+        }
+        
     }  //- getConnection
     
 
@@ -115,6 +162,26 @@ public class DOIHandler {
     }  //- collectPrefixInfo
 
     
+    /**
+     * Closes ranges left open by an earlier handler that did not close.
+     * They are kept, so that none of their RECs is given out again.
+     * @throws SQLException
+     */
+    private void closeAbandonedRanges() throws SQLException {
+        Statement st = connection.createStatement();
+        try {
+            int count = st.executeUpdate(closeAbandonedQuery);
+            if (count > 0) {
+                System.err.println("DOIHandler: " + count + " DOI range(s) " +
+                        "left open by an earlier run are kept reserved");
+            }
+        } finally {
+            st.close();
+        }
+        
+    }  //- closeAbandonedRanges
+    
+    
     private static DOIHandler instance;
 
     /**
@@ -122,7 +189,8 @@ public class DOIHandler {
      * @throws NamingException
      * @throws SQLException
      */
-    public static DOIHandler getInstance() throws NamingException, SQLException {
+    public static synchronized DOIHandler getInstance()
+    throws NamingException, SQLException {
         if (instance == null) {
             instance = new DOIHandler();
         }
@@ -131,28 +199,63 @@ public class DOIHandler {
     }  //- getInstance
     
 
-    private Hashtable<Integer,DOIMarker> markerCache =
-        new Hashtable<Integer,DOIMarker>();
+    /* The range currently handed out for each DOI type. */
+    private final ConcurrentHashMap<Integer,DOIRange> ranges =
+        new ConcurrentHashMap<Integer,DOIRange>();
+    
+    /* Guards the connection and the leasing of ranges. */
+    private final Object leaseLock = new Object();
+    
+    private boolean closed = false;
     
     private static final String DELIM = ".";
     
     /**
-     * Gets a new DOI for the specified DOI type and persists the DOI
-     * to the database backend.
+     * Gets a new DOI for the specified DOI type.
      * @param type
      * @return A new DOI from the DOI type
      * @throws SQLException
      */
-    public synchronized String getDOI(int type) throws SQLException {
-        validateConnection();
-        Integer key = new Integer(type);
-        DOIMarker marker;
-        if (markerCache.containsKey(key)) {
-            marker = markerCache.get(key);
-        } else {
-            marker = buildMarker(type);
-            markerCache.put(key, marker);
+    public String getDOI(int type) throws SQLException {
+        return getDOIs(type, 1)[0];
+        
+    }  //- getDOI
+    
+    
+    /**
+     * Gets new DOIs for the specified DOI type.  DOIs are taken from the
+     * range leased for the type, and a new range is leased from the
+     * database only when it runs out.
+     * @param type
+     * @param n number of DOIs, from 1 to MAX_BATCH
+     * @return n new DOIs of the DOI type
+     * @throws SQLException
+     */
+    public String[] getDOIs(int type, int n) throws SQLException {
+        if (n < 1 || n > MAX_BATCH) {
+            throw new IllegalArgumentException("Invalid number of DOIs: " + n);
         }
+        String[] dois = new String[n];
+        int count = 0;
+        DOIRange range = ranges.get(type);
+        while (true) {
+            if (range != null) {
+                int first = range.next.getAndAdd(n-count);
+                int last = Math.min(first + (n-count) - 1, range.last);
+                for (int rec = first; rec <= last; rec++) {
+                    dois[count++] = format(type, range.bin, rec);
+                }
+                if (count == n) {
+                    return dois;
+                }
+            }
+            range = nextRange(type, range);
+        }
+        
+    }  //- getDOIs
+    
+    
+    private String format(int type, int bin, int rec) {
         StringBuffer buffer = new StringBuffer();
         buffer.append(siteID);
         buffer.append(DELIM);
@@ -160,16 +263,56 @@ public class DOIHandler {
         buffer.append(DELIM);
         buffer.append(type);
         buffer.append(DELIM);
-        buffer.append(marker.bin);
+        buffer.append(bin);
         buffer.append(DELIM);
-        buffer.append(marker.rec);
-        
-        insertDOI(type, marker.bin, marker.rec);
-        marker.increment();
-        
+        buffer.append(rec);
         return buffer.toString();
         
-    }  //- getDOI
+    }  //- format
+    
+    
+    /**
+     * Returns the range to take DOIs from once the given range, if any,
+     * has run out: either one leased meanwhile by another thread, or a
+     * new one.
+     * @param type
+     * @param exhausted
+     * @return the range to use.
+     * @throws SQLException
+     */
+    private DOIRange nextRange(int type, DOIRange exhausted)
+    throws SQLException {
+        synchronized(leaseLock) {
+            if (closed) {
+                throw new SQLException("DOIHandler is closed");
+            }
+            DOIRange current = ranges.get(type);
+            if (current != null && current != exhausted) {
+                return current;
+            }
+            validateConnection();
+            int bin;
+            int rec;
+            if (current != null) {
+                closeRange(current, current.last);
+                bin = current.bin;
+                rec = current.last;
+            } else {
+                int[] last = findLastRec(type);
+                bin = last[0];
+                rec = last[1];
+            }
+            if (rec >= BIN_SIZE) {
+                bin++;
+                rec = 0;
+            }
+            DOIRange range = leaseRange(type, bin, rec+1,
+                    (int)Math.min((long)rec + rangeSize, BIN_SIZE));
+            ranges.put(type, range);
+            return range;
+        }
+        
+    }  //- nextRange
     
     
     /**
@@ -197,46 +340,105 @@ public class DOIHandler {
     
     
     /**
-     * Calls the database to find the max values of BIN and REC for the
-     * supplied DOI type in order to build a marker for the next DOI
-     * that should be returned for this type.
+     * Finds the last BIN and REC given out for the supplied DOI type,
+     * whether recorded one by one (as earlier versions did) or as part of
+     * a leased range.
      * @param doiType
-     * @return a marker for the next DOI for the given type
+     * @return the BIN and REC, or BIN 1 and REC 0 if there are none.
      * @throws SQLException
      */
-    private DOIMarker buildMarker(int doiType) throws SQLException {
-        validateConnection();
-        getMarkerInfoStmnt.setInt(1, doiType);
-        ResultSet rs = getMarkerInfoStmnt.executeQuery();
-        rs.first();
-        int bin = rs.getInt(1);
-        if (bin == 0) {
-            bin = 1;
+    private int[] findLastRec(int doiType) throws SQLException {
+        int[] last = new int[] { 1, 0 };
+        PreparedStatement[] queries =
+            new PreparedStatement[] { getLastGrantedStmnt, getLastRangeStmnt };
+        for (PreparedStatement query : queries) {
+            query.setInt(1, doiType);
+            ResultSet rs = query.executeQuery();
+            if (rs.next()) {
+                int bin = rs.getInt(1);
+                int rec = rs.getInt(2);
+                if (bin > last[0] || (bin == last[0] && rec > last[1])) {
+                    last[0] = bin;
+                    last[1] = rec;
+                }
+            }
+            rs.close();
         }
-        int rec = rs.getInt(2);  // If 0, will be incremented to 1.
-        DOIMarker marker = new DOIMarker(bin, rec);
-        marker.increment();
-        return marker;
+        return last;
         
-    }  //- buildMarker
+    }  //- findLastRec
     
     
     /**
-     * Inserts a record into database to indicate that a specific
-     * DOI has been assigned.
+     * Records a new range of RECs for a DOI type.
      * @param type the type of DOI
      * @param bin
-     * @param rec
+     * @param first
+     * @param last
+     * @return the range leased.
      * @throws SQLException
      */
-    private void insertDOI(int type, int bin, int rec) throws SQLException {
-        validateConnection();
-        insertDOIStmnt.setInt(1, type);
-        insertDOIStmnt.setLong(2, bin);
-        insertDOIStmnt.setLong(3, rec);
-        insertDOIStmnt.executeUpdate();
+    private DOIRange leaseRange(int type, int bin, int first, int last)
+    throws SQLException {
+        insertRangeStmnt.setInt(1, type);
+        insertRangeStmnt.setLong(2, bin);
+        insertRangeStmnt.setLong(3, first);
+        insertRangeStmnt.setLong(4, last);
+        insertRangeStmnt.executeUpdate();
+        ResultSet rs = insertRangeStmnt.getGeneratedKeys();
+        if (!rs.next()) {
+            throw new SQLException("No ID generated for DOI range");
+        }
+        long id = rs.getLong(1);
+        rs.close();
+        return new DOIRange(id, bin, first, last);
+        
+    }  //- leaseRange
+    
+    
+    /**
+     * Records a range as closed, with RECs up to lastUsed given out.  The
+     * range is deleted if none were.
+     * @throws SQLException
+     */
+    private void closeRange(DOIRange range, int lastUsed)
+    throws SQLException {
+        if (lastUsed < range.first) {
+            deleteRangeStmnt.setLong(1, range.id);
+            deleteRangeStmnt.executeUpdate();
+        } else {
+            closeRangeStmnt.setLong(1, lastUsed);
+            closeRangeStmnt.setLong(2, range.id);
+            closeRangeStmnt.executeUpdate();
+        }
         
-    }  //- insertDOI
+    }  //- closeRange
+    
+    
+    /**
+     * Closes the open ranges, giving back the RECs not handed out, after
+     * which no more DOIs are given out.  Called on JVM shutdown.
+     */
+    public void close() {
+        synchronized(leaseLock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                validateConnection();
+                for (DOIRange range : ranges.values()) {
+                    // Stops threads that already hold the range.
+                    int next = range.next.getAndAdd(BIN_SIZE);
+                    closeRange(range, Math.min(next-1, range.last));
+                }
+                ranges.clear();
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+        }
+        
+    }  //- close
     
     
     /**
@@ -251,28 +453,32 @@ public class DOIHandler {
 
     /* Number of RECs in a BIN before incrementing
      * BIN and starting REC from 1. */
-    private static final long BIN_SIZE = 9999;
+    private static final int BIN_SIZE = 9999;
+    
+    /* Default number of RECs leased at a time. */
+    private static final int DEFAULT_RANGE_SIZE = 1000;
+    
+    /* Largest number of DOIs given out in one call. */
+    public static final int MAX_BATCH = 10000;
     
     /**
-     * Used to cache the value of the next DOI to be handed out,
-     * so we don't have to poll the database for every new DOI. 
+     * A range of RECs leased for a DOI type, handed out from memory.
      */
-    private class DOIMarker {
-        public int bin;
-        public int rec;
-        public DOIMarker(int bin, int rec) {
+    private static class DOIRange {
+        final long id;
+        final int bin;
+        final int first;
+        final int last;
+        final AtomicInteger next;
+        
+        DOIRange(long id, int bin, int first, int last) {
+            this.id = id;
             this.bin = bin;
-            this.rec = rec;
-        }
-        public void increment() {
-            if (rec >= BIN_SIZE) {
-                bin++;
-                rec = 1;
-            } else {
-                rec++;
-            }
+            this.first = first;
+            this.last = last;
+            this.next = new AtomicInteger(first);
         }
         
-    }  //- class DOIMarker
+    }  //- class DOIRange
     
 }  //- class DOIHandler
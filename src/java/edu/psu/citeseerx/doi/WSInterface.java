@@ -32,6 +32,18 @@ public class WSInterface {
         return handler.getDOI(doiType);
     } //- getDOI
     
+    /**
+     * 
+     * @param doiType
+     * @param n number of DOIs, at most DOIHandler.MAX_BATCH
+     * @return n new digital object identifiers for the given type
+     * @throws Exception
+     */
+    public String[] getDOIs(int doiType, int n) throws Exception {
+        DOIHandler handler = DOIHandler.getInstance();
+        return handler.getDOIs(doiType, n);
+    } //- getDOIs
+    
     /**
      * 
      * @return the String representation of the prefix this DOI Server
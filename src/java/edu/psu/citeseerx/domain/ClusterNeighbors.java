@@ -0,0 +1,228 @@
+/*
+ * Copyright 2007 Penn State University
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.psu.citeseerx.domain;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Citation graph neighbourhood of a set of clusters: the clusters each one
+ * cites, the clusters citing it and the papers it contains.  Adjacency is
+ * kept in compressed primitive arrays (one offset array and one target
+ * array per direction) so a page of a thousand clusters with all of their
+ * edges costs a handful of objects instead of one Long per edge.
+ * <br><br>
+ * Instances are filled through the add methods and must be sealed with
+ * {@link #build()} before they are read.
+ *
+ * @version $Rev$ $Date$
+ */
+public class ClusterNeighbors {
+
+    private static final long[] EMPTY = new long[0];
+
+    /* Sorted cluster IDs; the index of an ID is its row. */
+    private final long[] ids;
+
+    private final Adjacency cited = new Adjacency();
+    private final Adjacency citing = new Adjacency();
+
+    private final List<List<String>> paperIDs;
+
+    private boolean built = false;
+
+
+    public ClusterNeighbors(List<Long> clusterids) {
+        long[] sorted = new long[clusterids.size()];
+        int n = 0;
+        for (Long cid : clusterids) {
+            if (cid != null) {
+                sorted[n++] = cid.longValue();
+            }
+        }
+        Arrays.sort(sorted, 0, n);
+        int unique = 0;
+        for (int i=0; i<n; i++) {
+            if (unique == 0 || sorted[unique-1] != sorted[i]) {
+                sorted[unique++] = sorted[i];
+            }
+        }
+        ids = (unique == sorted.length) ? sorted : Arrays.copyOf(sorted, unique);
+        paperIDs = new ArrayList<List<String>>(ids.length);
+        for (int i=0; i<ids.length; i++) {
+            paperIDs.add(null);
+        }
+    }  //- ClusterNeighbors
+
+
+    /**
+     * @return the cluster IDs covered by this neighbourhood, sorted.
+     */
+    public long[] getClusterIDs() {
+        return ids.clone();
+    }  //- getClusterIDs
+
+    public boolean contains(long clusterid) {
+        return Arrays.binarySearch(ids, clusterid) >= 0;
+    }  //- contains
+
+
+    /**
+     * Records that citingCluster cites citedCluster.  Either endpoint that
+     * belongs to this neighbourhood gets the edge.
+     * @param citingCluster
+     * @param citedCluster
+     */
+    public void addEdge(long citingCluster, long citedCluster) {
+        checkNotBuilt();
+        int row = Arrays.binarySearch(ids, citingCluster);
+        if (row >= 0) {
+            cited.add(row, citedCluster);
+        }
+        row = Arrays.binarySearch(ids, citedCluster);
+        if (row >= 0) {
+            citing.add(row, citingCluster);
+        }
+    }  //- addEdge
+
+
+    public void addPaperID(long clusterid, String doi) {
+        checkNotBuilt();
+        int row = Arrays.binarySearch(ids, clusterid);
+        if (row < 0) {
+            return;
+        }
+        List<String> dois = paperIDs.get(row);
+        if (dois == null) {
+            dois = new ArrayList<String>(2);
+            paperIDs.set(row, dois);
+        }
+        dois.add(doi);
+    }  //- addPaperID
+
+
+    /**
+     * Compacts the collected edges into their final layout.  No edges may
+     * be added afterwards.
+     * @return this object
+     */
+    public ClusterNeighbors build() {
+        if (!built) {
+            cited.build(ids.length);
+            citing.build(ids.length);
+            built = true;
+        }
+        return this;
+    }  //- build
+
+
+    /**
+     * @param clusterid
+     * @return IDs of the clusters cited by the given cluster, in the order
+     * they were added, or an empty array for unknown clusters.
+     */
+    public long[] getCitedClusters(Long clusterid) {
+        return cited.get(row(clusterid));
+    }  //- getCitedClusters
+
+    /**
+     * @param clusterid
+     * @return IDs of the clusters citing the given cluster, in the order
+     * they were added, or an empty array for unknown clusters.
+     */
+    public long[] getCitingClusters(Long clusterid) {
+        return citing.get(row(clusterid));
+    }  //- getCitingClusters
+
+    /**
+     * @param clusterid
+     * @return the paper identifiers that belong to the given cluster.
+     */
+    public List<String> getPaperIDs(Long clusterid) {
+        int row = row(clusterid);
+        if (row < 0 || paperIDs.get(row) == null) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(paperIDs.get(row));
+    }  //- getPaperIDs
+
+
+    private int row(Long clusterid) {
+        if (!built) {
+            throw new IllegalStateException("build() has not been called");
+        }
+        if (clusterid == null) {
+            return -1;
+        }
+        return Arrays.binarySearch(ids, clusterid.longValue());
+    }  //- row
+
+    private void checkNotBuilt() {
+        if (built) {
+            throw new IllegalStateException("neighbourhood already built");
+        }
+    }  //- checkNotBuilt
+
+
+    /**
+     * One direction of the adjacency.  Edges are first appended as
+     * (row, target) pairs and then counting-sorted by row into offsets and
+     * targets, preserving insertion order within each row.
+     */
+    private static class Adjacency {
+
+        private int[] rows = new int[64];
+        private long[] targets = new long[64];
+        private int size = 0;
+
+        private int[] offsets;
+
+        void add(int row, long target) {
+            if (size == rows.length) {
+                rows = Arrays.copyOf(rows, size*2);
+                targets = Arrays.copyOf(targets, size*2);
+            }
+            rows[size] = row;
+            targets[size] = target;
+            size++;
+        }
+
+        void build(int nrows) {
+            offsets = new int[nrows+1];
+            for (int i=0; i<size; i++) {
+                offsets[rows[i]+1]++;
+            }
+            for (int r=0; r<nrows; r++) {
+                offsets[r+1] += offsets[r];
+            }
+            int[] next = Arrays.copyOf(offsets, nrows);
+            long[] sorted = new long[size];
+            for (int i=0; i<size; i++) {
+                sorted[next[rows[i]]++] = targets[i];
+            }
+            targets = sorted;
+            rows = null;
+        }
+
+        long[] get(int row) {
+            if (row < 0) {
+                return EMPTY;
+            }
+            return Arrays.copyOfRange(targets, offsets[row], offsets[row+1]);
+        }
+
+    }  //- class Adjacency
+
+}  //- class ClusterNeighbors
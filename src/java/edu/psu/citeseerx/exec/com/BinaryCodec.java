@@ -0,0 +1,409 @@
+/*
+ * Copyright 2007 Penn State University
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.psu.citeseerx.exec.com;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.StreamCorruptedException;
+import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import edu.psu.citeseerx.exec.protocol.DataItem;
+import edu.psu.citeseerx.exec.protocol.Protocol;
+import edu.psu.citeseerx.exec.protocol.ProtocolContainer;
+import edu.psu.citeseerx.exec.protocol.TaskError;
+
+/**
+ * Compact binary encoding of the messages exchanged by the task manager
+ * and its services.  Each value is written as a one byte tag followed by
+ * its content, with lengths as ints and strings as UTF-8, so that a
+ * Protocol costs little more than the bytes of its keys and values, with
+ * none of the class descriptors or reflection of Java serialization.
+ * <br><br>
+ * Protocols, protocol containers, task errors and validation messages
+ * have a fixed layout, as do strings, boxed primitives, byte arrays,
+ * ArrayLists, HashMaps and Hashtables (only those exact classes, so that
+ * values decode to the class they were encoded from).  DataItems are
+ * written by their own writeFields method when their class overrides it.
+ * Any other serializable value is embedded as a Java serialization
+ * stream.
+ * <br><br>
+ * decode expects a stream holding the whole message, such as the frame
+ * read by the connection, and checks every length read against the bytes
+ * left in it.
+ */
+public class BinaryCodec implements ObjectCodec {
+
+    private static final byte NULL = 0;
+    private static final byte STRING = 1;
+    private static final byte INTEGER = 2;
+    private static final byte LONG = 3;
+    private static final byte DOUBLE = 4;
+    private static final byte FLOAT = 5;
+    private static final byte BOOLEAN = 6;
+    private static final byte BYTES = 7;
+    private static final byte LIST = 8;
+    private static final byte HASHMAP = 9;
+    private static final byte HASHTABLE = 10;
+    private static final byte PROTOCOL = 11;
+    private static final byte PROTOCOL_CONTAINER = 12;
+    private static final byte TASK_ERROR = 13;
+    private static final byte VALIDATION_REQUEST = 14;
+    private static final byte VALIDATION_RESPONSE = 15;
+    private static final byte DATA_ITEM = 16;
+    private static final byte SERIALIZED = 17;
+
+    private static final String UTF8 = "UTF-8";
+
+    // Label constructors of the DataItem classes that have a compact form,
+    // and the classes known to have none.
+    private static final Map<Class<?>, Constructor<?>> dataItemConstructors =
+        new ConcurrentHashMap<Class<?>, Constructor<?>>();
+    private static final Set<Class<?>> serializedDataItems =
+        Collections.newSetFromMap(new ConcurrentHashMap<Class<?>, Boolean>());
+
+
+    /* (non-Javadoc)
+     * @see edu.psu.citeseerx.exec.com.ObjectCodec#encode(java.lang.Object, java.io.DataOutputStream)
+     */
+    public void encode(Object obj, DataOutputStream out) throws IOException {
+        if (obj == null) {
+            out.writeByte(NULL);
+        } else if (obj instanceof String) {
+            out.writeByte(STRING);
+            writeString((String)obj, out);
+        } else if (obj instanceof Integer) {
+            out.writeByte(INTEGER);
+            out.writeInt(((Integer)obj).intValue());
+        } else if (obj instanceof Long) {
+            out.writeByte(LONG);
+            out.writeLong(((Long)obj).longValue());
+        } else if (obj instanceof Double) {
+            out.writeByte(DOUBLE);
+            out.writeDouble(((Double)obj).doubleValue());
+        } else if (obj instanceof Float) {
+            out.writeByte(FLOAT);
+            out.writeFloat(((Float)obj).floatValue());
+        } else if (obj instanceof Boolean) {
+            out.writeByte(BOOLEAN);
+            out.writeBoolean(((Boolean)obj).booleanValue());
+        } else if (obj instanceof byte[]) {
+            byte[] bytes = (byte[])obj;
+            out.writeByte(BYTES);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        } else if (obj.getClass() == ArrayList.class) {
+            ArrayList<?> list = (ArrayList<?>)obj;
+            out.writeByte(LIST);
+            out.writeInt(list.size());
+            for (Iterator<?> it = list.iterator(); it.hasNext(); ) {
+                encode(it.next(), out);
+            }
+        } else if (obj.getClass() == HashMap.class) {
+            out.writeByte(HASHMAP);
+            writeMap((Map<?,?>)obj, out);
+        } else if (obj.getClass() == Hashtable.class) {
+            out.writeByte(HASHTABLE);
+            // Hashtable is synchronized; iterating is not.
+            synchronized(obj) {
+                writeMap((Map<?,?>)obj, out);
+            }
+        } else if (obj.getClass() == Protocol.class) {
+            out.writeByte(PROTOCOL);
+            writeProtocol((Protocol)obj, out);
+        } else if (obj.getClass() == ProtocolContainer.class) {
+            ProtocolContainer pc = (ProtocolContainer)obj;
+            out.writeByte(PROTOCOL_CONTAINER);
+            encode(pc.routingSlip, out);
+            encode(pc.getProtocol(), out);
+        } else if (obj.getClass() == TaskError.class) {
+            TaskError error = (TaskError)obj;
+            out.writeByte(TASK_ERROR);
+            encode(error.source, out);
+            encode(error.exception, out);
+        } else if (obj.getClass() == ValidationRequest.class) {
+            out.writeByte(VALIDATION_REQUEST);
+            out.writeLong(((ValidationRequest)obj).getID());
+        } else if (obj.getClass() == ValidationResponse.class) {
+            out.writeByte(VALIDATION_RESPONSE);
+            out.writeLong(((ValidationResponse)obj).getID());
+        } else if (obj instanceof DataItem &&
+                getDataItemConstructor(obj.getClass()) != null) {
+            DataItem item = (DataItem)obj;
+            out.writeByte(DATA_ITEM);
+            writeString(obj.getClass().getName(), out);
+            encode(item.label, out);
+            item.writeFields(out);
+        } else {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            ObjectOutputStream oos = new ObjectOutputStream(bytes);
+            oos.writeObject(obj);
+            oos.close();
+            out.writeByte(SERIALIZED);
+            out.writeInt(bytes.size());
+            bytes.writeTo(out);
+        }
+
+    }  //- encode
+
+
+    /* (non-Javadoc)
+     * @see edu.psu.citeseerx.exec.com.ObjectCodec#decode(java.io.DataInputStream)
+     */
+    public Object decode(DataInputStream in) throws IOException,
+            ClassNotFoundException {
+        byte tag = in.readByte();
+        switch(tag) {
+        case NULL:
+            return null;
+        case STRING:
+            return readString(in);
+        case INTEGER:
+            return new Integer(in.readInt());
+        case LONG:
+            return new Long(in.readLong());
+        case DOUBLE:
+            return new Double(in.readDouble());
+        case FLOAT:
+            return new Float(in.readFloat());
+        case BOOLEAN:
+            return Boolean.valueOf(in.readBoolean());
+        case BYTES:
+            byte[] bytes = new byte[readLength(in)];
+            in.readFully(bytes);
+            return bytes;
+        case LIST:
+            int size = readLength(in);
+            ArrayList<Object> list = new ArrayList<Object>(size);
+            for (int i=0; i<size; i++) {
+                list.add(decode(in));
+            }
+            return list;
+        case HASHMAP:
+            return readMap(new HashMap<Object,Object>(), in);
+        case HASHTABLE:
+            return readMap(new Hashtable<Object,Object>(), in);
+        case PROTOCOL:
+            return readProtocol(in);
+        case PROTOCOL_CONTAINER:
+            String routingSlip = (String)decode(in);
+            return new ProtocolContainer((Protocol)decode(in), routingSlip);
+        case TASK_ERROR:
+            String source = (String)decode(in);
+            return new TaskError(source, (Exception)decode(in));
+        case VALIDATION_REQUEST:
+            ValidationRequest request = new ValidationRequest();
+            request.id = in.readLong();
+            return request;
+        case VALIDATION_RESPONSE:
+            return new ValidationResponse(in.readLong());
+        case DATA_ITEM:
+            return readDataItem(in);
+        case SERIALIZED:
+            byte[] serialized = new byte[readLength(in)];
+            in.readFully(serialized);
+            ObjectInputStream ois = new ObjectInputStream(
+                    new ByteArrayInputStream(serialized));
+            try {
+                return ois.readObject();
+            } finally {
+                ois.close();
+            }
+        default:
+            throw new StreamCorruptedException("Unknown tag: " + tag);
+        }
+
+    }  //- decode
+
+
+    private void writeProtocol(Protocol protocol, DataOutputStream out)
+    throws IOException {
+        ArrayList<String> keys = new ArrayList<String>();
+        for (Enumeration<String> e = protocol.getDataKeys();
+                e.hasMoreElements(); ) {
+            keys.add(e.nextElement());
+        }
+        out.writeInt(keys.size());
+        for (String key : keys) {
+            writeString(key, out);
+            encode(protocol.get(key), out);
+        }
+
+        keys.clear();
+        for (Enumeration<String> e = protocol.getTaskParameterNames();
+                e.hasMoreElements(); ) {
+            keys.add(e.nextElement());
+        }
+        out.writeInt(keys.size());
+        for (String key : keys) {
+            writeString(key, out);
+            encode(protocol.getTaskParameter(key), out);
+        }
+
+        out.writeInt(protocol.getKeepers().size());
+        for (String keeper : protocol.getKeepers()) {
+            writeString(keeper, out);
+        }
+
+        out.writeInt(protocol.errorCount());
+        for (Iterator<TaskError> it = protocol.getErrors(); it.hasNext(); ) {
+            TaskError error = it.next();
+            encode(error.source, out);
+            encode(error.exception, out);
+        }
+
+    }  //- writeProtocol
+
+
+    private Protocol readProtocol(DataInputStream in) throws IOException,
+            ClassNotFoundException {
+        Protocol protocol = new Protocol();
+        int size = readLength(in);
+        for (int i=0; i<size; i++) {
+            String key = readString(in);
+            protocol.set(key, decode(in));
+        }
+        size = readLength(in);
+        for (int i=0; i<size; i++) {
+            String key = readString(in);
+            protocol.setTaskParameter(key, decode(in));
+        }
+        size = readLength(in);
+        for (int i=0; i<size; i++) {
+            protocol.setKeeper(readString(in));
+        }
+        size = readLength(in);
+        for (int i=0; i<size; i++) {
+            String source = (String)decode(in);
+            protocol.addError(new TaskError(source, (Exception)decode(in)));
+        }
+        return protocol;
+
+    }  //- readProtocol
+
+
+    private void writeMap(Map<?,?> map, DataOutputStream out)
+    throws IOException {
+        out.writeInt(map.size());
+        for (Map.Entry<?,?> entry : map.entrySet()) {
+            encode(entry.getKey(), out);
+            encode(entry.getValue(), out);
+        }
+    } //- writeMap
+
+    private Map<Object,Object> readMap(Map<Object,Object> map,
+            DataInputStream in) throws IOException, ClassNotFoundException {
+        int size = readLength(in);
+        for (int i=0; i<size; i++) {
+            Object key = decode(in);
+            map.put(key, decode(in));
+        }
+        return map;
+    } //- readMap
+
+
+    private Object readDataItem(DataInputStream in) throws IOException,
+            ClassNotFoundException {
+        String className = readString(in);
+        Class<?> cls = Class.forName(className);
+        Constructor<?> constructor = null;
+        if (DataItem.class.isAssignableFrom(cls)) {
+            constructor = getDataItemConstructor(cls);
+        }
+        if (constructor == null) {
+            throw new StreamCorruptedException(
+                    "No compact form for " + className);
+        }
+        String label = (String)decode(in);
+        DataItem item;
+        try {
+            item = (DataItem)constructor.newInstance(new Object[] { label });
+        } catch (Exception e) {
+            IOException ioe = new IOException("Could not create " + className);
+            ioe.initCause(e);
+            throw ioe;
+        }
+        item.readFields(in);
+        return item;
+
+    }  //- readDataItem
+
+
+    /*
+     * The label constructor of a DataItem class that overrides
+     * writeFields, or null if it has no compact form.
+     */
+    private static Constructor<?> getDataItemConstructor(Class<?> cls) {
+        Constructor<?> constructor = dataItemConstructors.get(cls);
+        if (constructor != null || serializedDataItems.contains(cls)) {
+            return constructor;
+        }
+        try {
+            Class<?> declaring = cls.getMethod("writeFields",
+                    DataOutput.class).getDeclaringClass();
+            if (declaring != DataItem.class) {
+                constructor = cls.getConstructor(String.class);
+            }
+        } catch (NoSuchMethodException e) {
+            /* no compact form */
+        }
+        if (constructor != null) {
+            dataItemConstructors.put(cls, constructor);
+        } else {
+            serializedDataItems.add(cls);
+        }
+        return constructor;
+
+    }  //- getDataItemConstructor
+
+
+    private static void writeString(String s, DataOutputStream out)
+    throws IOException {
+        byte[] bytes = s.getBytes(UTF8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    } //- writeString
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[readLength(in)];
+        in.readFully(bytes);
+        return new String(bytes, UTF8);
+    } //- readString
+
+    /*
+     * Lengths come from the peer, so a corrupt one must not cause a huge
+     * allocation; no length can exceed the bytes left in the frame.
+     */
+    private static int readLength(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > in.available()) {
+            throw new StreamCorruptedException("Invalid length: " + length);
+        }
+        return length;
+    } //- readLength
+
+}  //- class BinaryCodec
@@ -23,6 +23,8 @@ import java.net.*;
  */
 public class ByteStreamConnectionPool extends ConnectionPool {
 
+    private final ObjectCodec codec;
+
     /**
      * Set up a new connection pool with default configuration.
      * @param host remote server host.
@@ -30,6 +32,7 @@ public class ByteStreamConnectionPool extends ConnectionPool {
      */
     public ByteStreamConnectionPool(InetAddress host, int port) {
         super(host, port);
+        this.codec = null;
         
     }  //- ByteStreamConnectionPool
     
@@ -44,7 +47,26 @@ public class ByteStreamConnectionPool extends ConnectionPool {
     public ByteStreamConnectionPool(InetAddress host, int port,
             long expirationTime, boolean useCompression,
             int compressedBlockSize) {
+        this(host, port, expirationTime, useCompression, compressedBlockSize,
+                null);
+        
+    }  //- ByteStreamConnectionPool
+    
+    
+    /**
+     * Set up a new connection pool with the supplied configuration.
+     * @param host remote server host.
+     * @param port remote server port.
+     * @param expirationTime timeout on idle connections in ms.
+     * @param useCompression whether to use gzip compression.
+     * @param codec codec for framed transfer, or null for Java
+     * serialization.
+     */
+    public ByteStreamConnectionPool(InetAddress host, int port,
+            long expirationTime, boolean useCompression,
+            int compressedBlockSize, ObjectCodec codec) {
         super(host, port, expirationTime, useCompression, compressedBlockSize);
+        this.codec = codec;
         
     }  //- ByteStreamConnectionPool
     
@@ -57,7 +79,7 @@ public class ByteStreamConnectionPool extends ConnectionPool {
                 throws IOException {
         Socket socket = new Socket(serverHost, serverPort);
         return new ByteStreamTransferConnection(
-                socket, useCompression, compressedBlockSize);
+                socket, useCompression, compressedBlockSize, codec);
         
     }  //- createConnection
 
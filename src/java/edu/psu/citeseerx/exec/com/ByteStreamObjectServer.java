@@ -12,12 +12,12 @@
  */
 package edu.psu.citeseerx.exec.com;
 
-import java.net.*;
 import edu.psu.citeseerx.utility.*;
 
 /**
  * ObjectServer implementation that wraps incoming connections as
- * ByteStreamTransferConnections.
+ * ByteStreamTransferConnections, using the BinaryCodec if the configured
+ * transfer type is BINARY.
  *
  * @author Isaac Councill
  *
@@ -34,19 +34,5 @@ public class ByteStreamObjectServer extends ObjectServer {
             ConfigurationManager configurationManager) throws Exception {
         super (command, configurationManager);
     }
-    
-    /**
-     * Starts a ServiceWorker by supplying it with a
-     * ByteStreamSocketInitializer to wrap the raw client Socket.
-     */
-    protected void startWorker(ServiceWorker worker, Socket socket,
-            int compressedBlockSize) {  
-        SocketInitializer initializer =
-            new ByteStreamSocketInitializer(
-                    socket, config.isUseCompression(), compressedBlockSize);
-        worker.setInitializer(initializer);
-        threadPool.submit(worker);
-        
-    }  //- startWorker
 
 }  //- class ByteStreamObjectServer
@@ -24,9 +24,21 @@ import java.io.*;
  */
 public class ByteStreamSocketInitializer extends SocketInitializer {
     
+    protected final ObjectCodec codec;
+    
     public ByteStreamSocketInitializer(Socket socket, boolean compress,
             int compressedBlockSize) {
+        this(socket, compress, compressedBlockSize, null);
+    }
+    
+    /**
+     * @param codec codec for framed transfer, or null for Java
+     * serialization.
+     */
+    public ByteStreamSocketInitializer(Socket socket, boolean compress,
+            int compressedBlockSize, ObjectCodec codec) {
         super(socket, compress, compressedBlockSize);
+        this.codec = codec;
     }
     
     /**
@@ -35,7 +47,7 @@ public class ByteStreamSocketInitializer extends SocketInitializer {
      */
     public ByteStreamTransferConnection initialize() throws IOException {
         return new ByteStreamTransferConnection(
-                socket, useCompression, compressedBlockSize);
+                socket, useCompression, compressedBlockSize, codec);
     }
     
 }  //- class ByteStreamSocketInitializer
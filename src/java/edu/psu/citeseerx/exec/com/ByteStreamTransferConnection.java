@@ -18,12 +18,32 @@ import java.net.*;
 /**
  * Used to create a communication channel around a base socket for
  * transferring objects by byte stream serialization.
+ * <br><br>
+ * By default objects are written with Java serialization.  If an
+ * ObjectCodec is given, each object is instead encoded by the codec and
+ * sent as a frame: its length as an int, then the encoded bytes.
  * 
  * @author Isaac Councill
  *
  */
 public class ByteStreamTransferConnection extends ObjectTransferConnection {
     
+    /* Largest frame accepted from the peer, in bytes. */
+    static final int MAX_FRAME_SIZE = 64 * 1024 * 1024;
+    
+    /* The frame buffer is dropped after writing a frame larger than this. */
+    static final int MAX_RETAINED_BUFFER = 1024 * 1024;
+    
+    protected final ObjectCodec codec;
+    
+    private BufferedInputStream bufferedInputStream;
+    private DataInputStream dataInputStream;
+    private DataOutputStream dataOutputStream;
+    
+    /* Buffer for encoding a frame, reused across writes. */
+    private ByteArrayOutputStream frameBuffer;
+    private DataOutputStream frameOutputStream;
+    
     /**
      * Call super() to initialize socket communication channels.
      * @param socket base socket for communication.
@@ -32,7 +52,21 @@ public class ByteStreamTransferConnection extends ObjectTransferConnection {
      */
     public ByteStreamTransferConnection(Socket socket, boolean compressed,
             int compressedBlockSize) throws IOException {
+        this(socket, compressed, compressedBlockSize, null);
+        
+    }  //- ByteStreamTransferConnection
+    
+    /**
+     * Call super() to initialize socket communication channels.
+     * @param socket base socket for communication.
+     * @param compressed whether to compress communication.
+     * @param codec codec for framed transfer, or null for Java serialization.
+     * @throws IOException
+     */
+    public ByteStreamTransferConnection(Socket socket, boolean compressed,
+            int compressedBlockSize, ObjectCodec codec) throws IOException {
         super(socket, compressed, compressedBlockSize);
+        this.codec = codec;
         
     }  //- ByteStreamTransferConnection
     
@@ -41,30 +75,98 @@ public class ByteStreamTransferConnection extends ObjectTransferConnection {
      */
     public Object readObjectImpl() throws IOException, ClassNotFoundException,
             EOFException {
-        return objectInputStream.readObject();
+        if (codec == null) {
+            return objectInputStream.readObject();
+        }
+        int length = dataInputStream.readInt();
+        if (length < 0 || length > MAX_FRAME_SIZE) {
+            throw new StreamCorruptedException("Invalid frame length: " +
+                    length);
+        }
+        byte[] frame = new byte[length];
+        dataInputStream.readFully(frame);
+        return codec.decode(
+                new DataInputStream(new ByteArrayInputStream(frame)));
     }
 
     /**
      * Writes an object to the output stream.
      */
     public void writeObjectImpl(Object obj) throws IOException {
-        objectOutputStream.writeObject(obj);
+        if (codec == null) {
+            objectOutputStream.writeObject(obj);
+            return;
+        }
+        frameBuffer.reset();
+        codec.encode(obj, frameOutputStream);
+        frameOutputStream.flush();
+        dataOutputStream.writeInt(frameBuffer.size());
+        frameBuffer.writeTo(dataOutputStream);
+        if (frameBuffer.size() > MAX_RETAINED_BUFFER) {
+            frameBuffer = new ByteArrayOutputStream();
+            frameOutputStream = new DataOutputStream(frameBuffer);
+        }
     }
     
     /**
-     * Initialize socket inputstream as an ObjectInputStream.
+     * Initialize socket inputstream as an ObjectInputStream, or as a
+     * DataInputStream if a codec is used.
      */
     protected void initializeInputStream() throws IOException {
-        objectInputStream = new ObjectInputStream(
-                new BufferedInputStream(inputStream));
+        bufferedInputStream = new BufferedInputStream(inputStream);
+        if (codec == null) {
+            objectInputStream = new ObjectInputStream(bufferedInputStream);
+        } else {
+            dataInputStream = new DataInputStream(bufferedInputStream);
+        }
     }
     
     /**
-     * Initialize socket outputstream as an ObjectOutputStream.
+     * Initialize socket outputstream as an ObjectOutputStream, or as a
+     * DataOutputStream if a codec is used.
      */
     protected void initializeOutputStream() throws IOException {
-        objectOutputStream = new ObjectOutputStream(
-                new BufferedOutputStream(outputStream));
+        if (codec == null) {
+            objectOutputStream = new ObjectOutputStream(
+                    new BufferedOutputStream(outputStream));
+        } else {
+            dataOutputStream = new DataOutputStream(
+                    new BufferedOutputStream(outputStream));
+            frameBuffer = new ByteArrayOutputStream();
+            frameOutputStream = new DataOutputStream(frameBuffer);
+        }
+    }
+    
+    /**
+     * Reports input waiting in the buffer or the socket.
+     */
+    protected boolean hasPendingInputImpl() throws IOException {
+        return bufferedInputStream.available() > 0;
+    }
+    
+    protected void flushImpl() throws IOException {
+        if (codec == null) {
+            super.flushImpl();
+        } else {
+            dataOutputStream.flush();
+        }
+    }
+    
+    protected void terminateImpl() {
+        if (codec == null) {
+            super.terminateImpl();
+            return;
+        }
+        if (dataOutputStream != null) {
+            try {
+                dataOutputStream.close();
+            } catch (IOException e) {/*ignore*/}
+        }
+        if (dataInputStream != null) {
+            try {
+                dataInputStream.close();
+            } catch (IOException e) {/*ignore*/}
+        }
     }
     
 }  //- ByteStreamTransferConnection
@@ -14,10 +14,16 @@ package edu.psu.citeseerx.exec.com;
 
 import java.io.IOException;
 import java.net.InetAddress;
-import java.util.Enumeration;
-import java.util.Hashtable;
 import java.util.Iterator;
-import java.util.Vector;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * ConnectionPool manages client connections to a remote server host,
@@ -36,6 +42,13 @@ import java.util.Vector;
  * connections but it will continue to hold active connections until they are
  * returned or they time out.
  * 
+ * No lock is held across network I/O: idle connections wait in a
+ * non-blocking queue, leases in a concurrent map, and a connection is
+ * validated by the thread leasing it, and only if it has been idle for
+ * longer than validationInterval ms.  The number of connections leased
+ * at once can be bounded, in which case further leases wait for a
+ * connection to be returned, for at most leaseTimeout ms.
+ * 
  * @author Isaac Councill
  *
  */
@@ -58,11 +71,28 @@ public abstract class ConnectionPool {
     /* Sets the timeout for status requests over ObjectTransferConnections. */
     private int statusReqTimeout = 0;
     
+    /* Time, in ms, that connections can remain idle before they are
+     * validated again on lease. */
+    private long validationInterval = 1000;
+    
+    /* Maximum number of connections leased at once, and the time, in ms,
+     * for which a lease waits for one to be returned. */
+    private int maxConnections = 0;
+    private long leaseTimeout = 0;
+    private volatile Semaphore permits = null;
+    
     /* Storage for connections. */
-    private final Hashtable<ObjectTransferConnection, Long> leased =
-        new Hashtable<ObjectTransferConnection, Long>();
-    private final Hashtable<ObjectTransferConnection, Long> available =
-        new Hashtable<ObjectTransferConnection, Long>();
+    private final Map<ObjectTransferConnection, Lease> leased =
+        new ConcurrentHashMap<ObjectTransferConnection, Lease>();
+    private final ConcurrentLinkedQueue<IdleConnection> available =
+        new ConcurrentLinkedQueue<IdleConnection>();
+    
+    /* Gauges. */
+    private final AtomicInteger availableCount = new AtomicInteger();
+    private final AtomicInteger waitingCount = new AtomicInteger();
+    
+    /* Time of the last check for expired leases and idle connections. */
+    private final AtomicLong lastReap = new AtomicLong();
     
     
     /**
@@ -128,6 +158,14 @@ public abstract class ConnectionPool {
                     conf.getExpirationTime(),
                     conf.isUseCompression(),
                     conf.getCompressedBlockSize());
+        case BINARY:
+            return new ByteStreamConnectionPool(
+                    conf.getRemoteHost(),
+                    conf.getPort(),
+                    conf.getExpirationTime(),
+                    conf.isUseCompression(),
+                    conf.getCompressedBlockSize(),
+                    new BinaryCodec());
         default:
             throw new RuntimeException("Invalid ConnectionPool type: " +
                     conf.getType());
@@ -171,7 +209,7 @@ public abstract class ConnectionPool {
     /**
      * Validates a given connection.
      */
-    protected synchronized boolean validate(ObjectTransferConnection connection) 
+    protected boolean validate(ObjectTransferConnection connection) 
             throws IOException, ClassNotFoundException,
             ObjectTransferConnection.InvalidException {
         return connection.validate();
@@ -181,7 +219,7 @@ public abstract class ConnectionPool {
     /**
      * Shuts down an existing connection. 
      */
-    protected synchronized void expire(ObjectTransferConnection connection) {
+    protected void expire(ObjectTransferConnection connection) {
         connection.terminate();
         
     }  //- expire
@@ -195,9 +233,26 @@ public abstract class ConnectionPool {
     }
     
     
+    /**
+     * Returns the number of idle connections held for reuse.
+     */
+    public int countIdleConnections() {
+        return availableCount.get();
+    }
+    
+    
+    /**
+     * Returns the number of lease requests waiting for a connection to be
+     * returned, when the number of connections is bounded.
+     */
+    public int countWaitingLeases() {
+        return waitingCount.get();
+    }
+    
+    
     /* Flag for setting whether this pool is being,
      * or has been, shut down. */
-    private boolean shutdown = false;
+    private volatile boolean shutdown = false;
     
     
     /**
@@ -207,22 +262,22 @@ public abstract class ConnectionPool {
      * message will be sent to any monitors.  A thread is spawned that
      * will destroy any active connections whose lease expires.
      */
-    public synchronized void shutdown() {
-        if (shutdown)
-            return;
+    public void shutdown() {
+        synchronized(this) {
+            if (shutdown)
+                return;
+            shutdown = true;
+        }
         notifyShutdown();
-    	shutdown = true;
         new Thread("ConnectionPool Reaper") {
             public void run() {
                 while (leased.size() > 0) {
                     reapActiveConnections();
-                    if (leased.size() == 0) {
-                        expireAll();
-                    }
                     try {
                         sleep(200);
                     } catch (InterruptedException e) {}
                 }
+                expireAll();
                 notifyFinalized();
             }
         }.start();
@@ -231,102 +286,133 @@ public abstract class ConnectionPool {
     
     
     /**
-     * Destroy all connections.  This should only be called when there
+     * Destroy all idle connections.  This should only be called when there
      * are no leased connections and the pool is shutting down.
      */
-    private synchronized void expireAll() {
-        Enumeration<ObjectTransferConnection> l_enum = leased.keys();
-        while (l_enum.hasMoreElements()) {
-            expire(l_enum.nextElement());
-        }
-        Enumeration<ObjectTransferConnection> a_enum = available.keys();
-        while (a_enum.hasMoreElements()) {
-            expire(a_enum.nextElement());
+    private void expireAll() {
+        IdleConnection idle;
+        while ((idle = available.poll()) != null) {
+            availableCount.decrementAndGet();
+            expire(idle.connection);
         }
         
     }  //- expireAll
     
     
     /**
-     * Leases an ObjectTransferConnection from the pool.  This method
-     * checks the idle time of existing connections and expires connections
-     * that are older than expirationTime.  Available connections are
-     * checked against the validate method to make sure that they work
-     * before being handed off.  If no available connections exist, a new
-     * one is created.
+     * Leases an ObjectTransferConnection from the pool.  Idle connections
+     * are taken in the order they were returned; any older than
+     * expirationTime are expired, and any idle for longer than
+     * validationInterval are checked against the validate method to make
+     * sure that they work before being handed off.  If no available
+     * connections exist, a new one is created.  If the number of
+     * connections is bounded and all are leased, waits for one to be
+     * returned.
      * @return an ObjectTransferConnection from the pool.
      * @param time the time for which the connection will be leased. Specify
      * a negative value to lease forever.
+     * @throws LeaseTimeoutException if no connection was returned within
+     * the lease timeout.
      * @throws Exception
      */
-    public synchronized ObjectTransferConnection leaseConnection(long time)
+    public ObjectTransferConnection leaseConnection(long time)
             throws Exception {
         if (shutdown) {
             throw new ShutdownException();
         }
-        reapActiveConnections();
-        
         long now = System.currentTimeMillis();
-        long expirationDate = Long.MAX_VALUE;
-        if (time >= 0)
-            expirationDate = now+time;
+        if (now - lastReap.get() > REAP_INTERVAL) {
+            reapActiveConnections();
+        }
         
-        ObjectTransferConnection connection;
-        if (available.size() > 0) {
-            Enumeration<ObjectTransferConnection> en = available.keys();
-            while(en.hasMoreElements()) {
-                connection = en.nextElement();
-                if (now - available.get(connection).longValue() >
-                        expirationTime) {
-                    // Connection has expired.
-                    available.remove(connection);
-                    expire(connection);
-                } else {
-                    boolean isValid = false;
-                    try {
-                        isValid = validate(connection);
-                    } catch (Exception e) {
-                        /* We don't care - invalid is invalid.
-                         * However, care should be taken to ensure
-                         * that timeouts aren't killing performance. */
-                    }
-                    if (isValid) {
-                        available.remove(connection);
-                        leased.put(connection, new Long(expirationDate));
-                        return connection;
-                    } else {
-                        // Connection failed validation.
-                        available.remove(connection);
-                        expire(connection);
+        Semaphore leasePermits = permits;
+        if (leasePermits != null) {
+            waitingCount.incrementAndGet();
+            try {
+                if (leaseTimeout > 0) {
+                    if (!leasePermits.tryAcquire(leaseTimeout,
+                            TimeUnit.MILLISECONDS)) {
+                        throw new LeaseTimeoutException();
                     }
+                } else {
+                    leasePermits.acquire();
                 }
+            } finally {
+                waitingCount.decrementAndGet();
             }
         }
-        // No connections currently available, so create a new one.
-        connection = createConnection(useCompression, compressedBlockSize);
-        leased.put(connection, new Long(expirationDate));
+        
+        ObjectTransferConnection connection = null;
+        try {
+            connection = takeAvailable();
+            if (connection == null) {
+                // No connections currently available, so create a new one.
+                connection = createConnection(useCompression,
+                        compressedBlockSize);
+            }
+        } finally {
+            if (connection == null && leasePermits != null) {
+                leasePermits.release();
+            }
+        }
+        long expirationDate = Long.MAX_VALUE;
+        if (time >= 0)
+            expirationDate = System.currentTimeMillis()+time;
+        leased.put(connection, new Lease(expirationDate, leasePermits));
         return connection;
         
     }  //- leaseConnection
     
     
+    /*
+     * Takes the first idle connection that has not expired and, if it has
+     * been idle for a while, passes validation.
+     */
+    private ObjectTransferConnection takeAvailable() {
+        IdleConnection idle;
+        while ((idle = available.poll()) != null) {
+            availableCount.decrementAndGet();
+            long idleTime = System.currentTimeMillis() - idle.since;
+            if (idleTime > expirationTime) {
+                // Connection has expired.
+                expire(idle.connection);
+                continue;
+            }
+            if (idleTime >= validationInterval) {
+                boolean isValid = false;
+                try {
+                    isValid = validate(idle.connection);
+                } catch (Exception e) {
+                    /* We don't care - invalid is invalid.
+                     * However, care should be taken to ensure
+                     * that timeouts aren't killing performance. */
+                }
+                if (!isValid) {
+                    // Connection failed validation.
+                    expire(idle.connection);
+                    continue;
+                }
+            }
+            return idle.connection;
+        }
+        return null;
+        
+    }  //- takeAvailable
+    
+    
     /**
-     * Tries to add more time to an existing lease.  Locks the leased table
-     * during the method call.
+     * Tries to add more time to an existing lease.
      * @param connection connection to be renewed.
      * @param time time (from now) to extend the lease.
      * @throws Exception connection to be renewed is not in the leased table.
      */
     public void renew(ObjectTransferConnection connection, long time) 
             throws Exception {
-        synchronized(leased) {
-            if (leased.contains(connection)) {
-                long now = System.currentTimeMillis();
-                leased.put(connection, new Long(now+time));
-            } else {
-                throw new InvalidLeaseRequest();
-            }
+        Lease lease = leased.get(connection);
+        if (lease == null) {
+            throw new InvalidLeaseRequest();
         }
+        lease.expiration = System.currentTimeMillis()+time;
         
     }  //- renew
     
@@ -338,11 +424,10 @@ public abstract class ConnectionPool {
      * @param connection
      */
     public void invalidate(ObjectTransferConnection connection) {
-        synchronized(leased) {
-            if (leased.contains(connection)) {
-                leased.remove(connection);
-                expire(connection);
-            }
+        Lease lease = leased.remove(connection);
+        if (lease != null) {
+            expire(connection);
+            lease.release();
         }
         
     }  //- invalidate
@@ -372,23 +457,45 @@ public abstract class ConnectionPool {
     }
     
     
+    public class LeaseTimeoutException extends RuntimeException {
+        /**
+         * 
+         */
+        private static final long serialVersionUID = 4630273365402735614L;
+
+        public LeaseTimeoutException() {
+            super("No connection returned to ConnectionPool in time");
+        }
+    }
+    
+    
+    /* Interval, in ms, between checks for expired leases on lease. */
+    private static final long REAP_INTERVAL = 1000;
+    
     /**
-     * Destroy leased connections whose leases have expired.  Leasing
-     * objects were warned!
+     * Destroy leased connections whose leases have expired, and idle
+     * connections that have expired.  Leasing objects were warned!
      */
     private void reapActiveConnections() {
        long now = System.currentTimeMillis();
-       synchronized (leased) {
-           Enumeration<ObjectTransferConnection> activeConnections
-               = leased.keys();
-           while (activeConnections.hasMoreElements()) {
-               ObjectTransferConnection connection =
-                   activeConnections.nextElement();
-               long leaseExpiration = leased.get(connection).longValue();
-               if (now > leaseExpiration) {
-                   leased.remove(connection);
-                   expire(connection);
-               }
+       lastReap.set(now);
+       for (Iterator<Map.Entry<ObjectTransferConnection, Lease>> it =
+               leased.entrySet().iterator(); it.hasNext(); ) {
+           Map.Entry<ObjectTransferConnection, Lease> entry = it.next();
+           Lease lease = entry.getValue();
+           if (now > lease.expiration &&
+                   leased.remove(entry.getKey()) == lease) {
+               expire(entry.getKey());
+               lease.release();
+           }
+       }
+       for (Iterator<IdleConnection> it = available.iterator();
+               it.hasNext(); ) {
+           IdleConnection idle = it.next();
+           // Only one thread gets to remove a given connection.
+           if (now - idle.since > expirationTime && available.remove(idle)) {
+               availableCount.decrementAndGet();
+               expire(idle.connection);
            }
        }
        
@@ -400,19 +507,59 @@ public abstract class ConnectionPool {
      * available connections.
      * @param connection 
      */
-    public synchronized void returnConnection
-                (ObjectTransferConnection connection) {
-        if (leased.contains(connection)) {
-            leased.remove(connection);
-            available.put(connection, new Long(System.currentTimeMillis()));
+    public void returnConnection(ObjectTransferConnection connection) {
+        Lease lease = leased.remove(connection);
+        if (lease == null) {
+            return;
         }
+        if (shutdown) {
+            expire(connection);
+        } else {
+            available.offer(new IdleConnection(connection,
+                    System.currentTimeMillis()));
+            availableCount.incrementAndGet();
+        }
+        // Released last, so that a waiting lease finds the connection.
+        lease.release();
         
     }  //- returnConnection
     
     
+    /*
+     * Expiration date of a lease, and the permit it holds if the number of
+     * connections is bounded.
+     */
+    private static class Lease {
+        volatile long expiration;
+        private final Semaphore permits;
+        
+        Lease(long expiration, Semaphore permits) {
+            this.expiration = expiration;
+            this.permits = permits;
+        }
+        
+        void release() {
+            if (permits != null) {
+                permits.release();
+            }
+        }
+    }  //- class Lease
+    
+    
+    private static class IdleConnection {
+        final ObjectTransferConnection connection;
+        final long since;
+        
+        IdleConnection(ObjectTransferConnection connection, long since) {
+            this.connection = connection;
+            this.since = since;
+        }
+    }  //- class IdleConnection
+    
+    
     /* Objects that will monitor this pool. */
-    private final Vector<ConnectionPoolMonitor> monitors
-        = new Vector<ConnectionPoolMonitor>();
+    private final List<ConnectionPoolMonitor> monitors
+        = new CopyOnWriteArrayList<ConnectionPoolMonitor>();
 
     
     /**
@@ -421,11 +568,9 @@ public abstract class ConnectionPool {
      *  ConnectionPool is finished.
      */
     private void notifyFinalized() {
-        synchronized(monitors) {
-            for (Iterator<ConnectionPoolMonitor> it = monitors.iterator();
-                    it.hasNext(); ) {
-                it.next().notifyFinalized(this);
-            }
+        for (Iterator<ConnectionPoolMonitor> it = monitors.iterator();
+                it.hasNext(); ) {
+            it.next().notifyFinalized(this);
         }
         
     }  //- notifyFinalized
@@ -435,11 +580,9 @@ public abstract class ConnectionPool {
      * When a shutdown is initiated, notifies all monitors.
      */
     private void notifyShutdown() {
-        synchronized(monitors) {
-            for (Iterator<ConnectionPoolMonitor> it = monitors.iterator();
-                    it.hasNext(); ) {
-                it.next().notifyShutdown(this);
-            }
+        for (Iterator<ConnectionPoolMonitor> it = monitors.iterator();
+                it.hasNext(); ) {
+            it.next().notifyShutdown(this);
         }
 
     }  //- notifyShutdown();
@@ -449,7 +592,7 @@ public abstract class ConnectionPool {
      * Registers a class that will listen for events in this ConnectionPool.
      * @param cpm
      */
-    public synchronized void registerMonitor(ConnectionPoolMonitor cpm) {
+    public void registerMonitor(ConnectionPoolMonitor cpm) {
         if (!monitors.contains(cpm)) {
             monitors.add(cpm);
         }
@@ -462,10 +605,8 @@ public abstract class ConnectionPool {
      * in the list, nothing is done.
      * @param cpm
      */
-    public synchronized void removeMonitor(ConnectionPoolMonitor cpm) {
-        if (monitors.contains(cpm)) {
-            monitors.remove(cpm);
-        }
+    public void removeMonitor(ConnectionPoolMonitor cpm) {
+        monitors.remove(cpm);
         
     }  //- removeMonitor
 
@@ -496,6 +637,42 @@ public abstract class ConnectionPool {
         statusReqTimeout = timeout;
     }
     
+    /**
+     * Sets the time, in ms, that connections can remain idle before they
+     * are validated again on lease (default 1000).  If 0 is specified,
+     * every lease of an idle connection validates it.
+     * @param validationInterval
+     */
+    public void setValidationInterval(long validationInterval) {
+        this.validationInterval = validationInterval;
+    }
+    
+    /**
+     * Bounds the number of connections leased at once.  If <= 0 is
+     * specified (the default), the number is not bounded.  Should be
+     * called before the pool is used.
+     * @param maxConnections
+     */
+    public synchronized void setMaxConnections(int maxConnections) {
+        this.maxConnections = maxConnections;
+        permits = (maxConnections > 0) ?
+                new Semaphore(maxConnections, true) : null;
+    }
+    
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+    
+    /**
+     * Sets the time, in ms, for which a lease waits for a connection to be
+     * returned when the number of connections is bounded.  If <= 0 is
+     * specified (the default), leases wait indefinitely.
+     * @param leaseTimeout
+     */
+    public void setLeaseTimeout(long leaseTimeout) {
+        this.leaseTimeout = leaseTimeout;
+    }
+    
     /**
      * Returns whether this ConnectionPool is compressing it's messages.
      * @return true if the ConnectionPool is compressing it's messages.
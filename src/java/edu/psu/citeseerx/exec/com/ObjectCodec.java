@@ -0,0 +1,45 @@
+/*
+ * Copyright 2007 Penn State University
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.psu.citeseerx.exec.com;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Encoding of the objects carried by an ObjectTransferConnection.  A codec
+ * writes and reads the body of a single message; framing is left to the
+ * connection, which prefixes each body with its length.  Implementations
+ * must be safe for use by several connections at once.
+ */
+public interface ObjectCodec {
+
+    /**
+     * Writes the object to the stream.
+     * @param obj
+     * @param out
+     * @throws IOException
+     */
+    public void encode(Object obj, DataOutputStream out) throws IOException;
+
+    /**
+     * Reads back an object written by encode.
+     * @param in
+     * @return the object read.
+     * @throws IOException
+     * @throws ClassNotFoundException
+     */
+    public Object decode(DataInputStream in) throws IOException,
+            ClassNotFoundException;
+
+}  //- interface ObjectCodec
@@ -15,6 +15,7 @@ package edu.psu.citeseerx.exec.com;
 import edu.psu.citeseerx.utility.*;
 import java.util.concurrent.*;
 import java.net.*;
+import java.nio.channels.ServerSocketChannel;
 import java.io.*;
 import java.util.*;
 
@@ -68,7 +69,12 @@ public abstract class ObjectServer extends Thread {
                     if (connection == null)
                         connection = initializer.initialize();
                     Object result = command.execute(connection.readObject());
-                    connection.writeObject(result);
+                    connection.sendObject(result);
+                    // Responses to pipelined requests are flushed together,
+                    // once no further request is waiting.
+                    if (!connection.hasPendingInput()) {
+                        connection.flush();
+                    }
                 } catch (EOFException e) {
                     // Connection closed gracefully by client.
                     break;
@@ -136,10 +142,39 @@ public abstract class ObjectServer extends Thread {
      */
     public ObjectServer(ServiceCommand command,
             ConfigurationManager configurationManager) throws Exception {
+        this(command, configurationManager, false);
+        setName("ObjectServer main");
+        start();
+        
+    }  //- ObjectServer
+    
+    
+    /**
+     * Open the server socket and initialize the thread pool without
+     * starting to listen for connections, which is left to the subclass.
+     * If selectable, the socket is opened through a non-blocking
+     * ServerSocketChannel, no ServiceWorkers are cached, and pool threads
+     * are started as requests arrive and retired once idle.
+     * @param command command object for handling client messages
+     * @param configurationManager object for reading configuration.
+     * @param selectable whether to open the socket for use with a Selector.
+     * @throws Exception
+     */
+    protected ObjectServer(ServiceCommand command,
+            ConfigurationManager configurationManager, boolean selectable)
+    throws Exception {
 
         config = new ServerConfiguration(configurationManager);
         try {
-            server = new ServerSocket(config.getServerPort());
+            if (selectable) {
+                ServerSocketChannel channel = ServerSocketChannel.open();
+                channel.socket().bind(
+                        new InetSocketAddress(config.getServerPort()));
+                channel.configureBlocking(false);
+                server = channel.socket();
+            } else {
+                server = new ServerSocket(config.getServerPort());
+            }
             commandFactory = command;
 
             // threadPool is fixed size and keepalive
@@ -152,16 +187,20 @@ public abstract class ObjectServer extends Thread {
                                        workQueue);            // job queue
             threadPool.setRejectedExecutionHandler(
                     new ThreadPoolExecutor.AbortPolicy());
-            threadPool.prestartAllCoreThreads();  // No lazy initialization.
+            
+            if (selectable) {
+                threadPool.setKeepAliveTime(idleThreadTimeout,
+                        TimeUnit.MILLISECONDS);
+                threadPool.allowCoreThreadTimeOut(true);
+            } else {
+                threadPool.prestartAllCoreThreads();  // No lazy init.
         
-            for (int i=0; i<config.getPoolSize(); i++){
-                workerCache.addLast(
-                    new ServiceWorker(commandFactory.newCommand()));
+                for (int i=0; i<config.getPoolSize(); i++){
+                    workerCache.addLast(
+                        new ServiceWorker(commandFactory.newCommand()));
+                }
             }
             
-            setName("ObjectServer main");
-            start();
-            
         } catch (Exception e){
             throw(e);
         }
@@ -181,7 +220,15 @@ public abstract class ObjectServer extends Thread {
             ConfigurationManager configurationManager) throws Exception {
         ServerConfiguration tmpConfig =
             new ServerConfiguration(configurationManager);
-        if (tmpConfig.getType() == ServerConfiguration.TYPE.BYTE_STREAM) {
+        if (tmpConfig.isUseSelector()) {
+            if (tmpConfig.getType() != ServerConfiguration.TYPE.BINARY) {
+                throw new Exception("useSelector requires the BINARY "+
+                        "objectTransferType.");
+            }
+            return new SelectorObjectServer(command, configurationManager);
+        }
+        if (tmpConfig.getType() == ServerConfiguration.TYPE.BYTE_STREAM ||
+                tmpConfig.getType() == ServerConfiguration.TYPE.BINARY) {
             return new ByteStreamObjectServer(command, configurationManager);
         }
         if (tmpConfig.getType() == ServerConfiguration.TYPE.XSTREAM) {
@@ -203,9 +250,11 @@ public abstract class ObjectServer extends Thread {
     
     
     /* Flag for stopping the acceptance of new connections or messages. */
-    private boolean shutdown = false;
+    private volatile boolean shutdown = false;
     /* Socket timeout, in ms. */
     protected final int soTimeout = 30000;
+    /* Time after which idle pool threads of a selectable server exit, in ms. */
+    protected final long idleThreadTimeout = 60000;
 
     /* Precache protocol objects.  Not implementing this at this point.
     private final OKProtocol okProtocol = new OKProtocol();
@@ -259,14 +308,29 @@ public abstract class ObjectServer extends Thread {
     }  //- run
     
     
+    private static final ObjectCodec BINARY_CODEC = new BinaryCodec();
+    
     /**
-     * Subclasses must override to provide the correct initializer 
-     * for raw sockets accepted from client connections.
+     * Starts a ServiceWorker on a raw socket accepted from a client.  By
+     * default the socket is wrapped by a ByteStreamSocketInitializer, using
+     * the BinaryCodec if the configured transfer type is BINARY; subclasses
+     * override to provide other initializers.
      * @param worker a ServiceWorker that will use the specified socket  
      * @param socket raw socket accepted from server
      */
-    protected abstract void startWorker(
-            ServiceWorker worker, Socket socket, int compressedBlockSize);
+    protected void startWorker(ServiceWorker worker, Socket socket,
+            int compressedBlockSize) {
+        ObjectCodec codec = null;
+        if (config.getType() == ServerConfiguration.TYPE.BINARY) {
+            codec = BINARY_CODEC;
+        }
+        SocketInitializer initializer =
+            new ByteStreamSocketInitializer(socket, config.isUseCompression(),
+                    compressedBlockSize, codec);
+        worker.setInitializer(initializer);
+        threadPool.submit(worker);
+        
+    }  //- startWorker
 
     /**
      * Sets the shutdown flag so no new clients will be accepted or threads
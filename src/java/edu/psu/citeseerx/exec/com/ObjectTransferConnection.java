@@ -19,6 +19,8 @@ import java.io.ObjectOutputStream;
 import java.io.OutputStream;
 import java.net.Socket;
 import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Generic functionality for object transfer connections.  This class
@@ -41,6 +43,8 @@ public abstract class ObjectTransferConnection {
     protected ObjectOutputStream objectOutputStream;
 
     private boolean open = true;
+    private boolean inputInitialized = false;
+    private boolean outputInitialized = false;
     
     /* Amount of compressed outputstreams to buffer before compressing and
      * flushing. */
@@ -86,8 +90,9 @@ public abstract class ObjectTransferConnection {
      */
     final public Object readObject() throws IOException,
             ClassNotFoundException {
-        if (objectInputStream == null) {
+        if (!inputInitialized) {
             initializeInputStream();
+            inputInitialized = true;
         }
         Object obj;
         while ((obj = readObjectImpl()) instanceof ValidationRequest) {
@@ -107,13 +112,82 @@ public abstract class ObjectTransferConnection {
      * @throws ClassNotFoundException
      */
     public void writeObject(Object obj) throws IOException {        
-        if (objectOutputStream == null) {
+        sendObject(obj);
+        flush();
+        
+    }  //- writeObject
+    
+    
+    /**
+     * Writes an object without flushing the output stream, so that several
+     * objects can go out in a single network write.  flush() must be
+     * called once the last of them is written.
+     * @param obj
+     * @throws IOException
+     */
+    public void sendObject(Object obj) throws IOException {
+        if (!outputInitialized) {
             initializeOutputStream();
+            outputInitialized = true;
         }
         writeObjectImpl(obj);
-        flush();
         
-    }  //- writeObject
+    }  //- sendObject
+    
+    
+    /**
+     * Sends a batch of requests without waiting for the response to each
+     * before sending the next, and returns the responses in request order.
+     * At most window requests are outstanding at a time: the peer stops
+     * reading while it is blocked writing a response, so the responses to
+     * a window of requests should fit in the socket buffers.
+     * @param requests
+     * @param window maximum number of requests sent ahead of the responses
+     * read.
+     * @return the response to each request.
+     * @throws IOException
+     * @throws ClassNotFoundException
+     */
+    public List<Object> pipeline(List<?> requests, int window)
+    throws IOException, ClassNotFoundException {
+        List<Object> responses = new ArrayList<Object>(requests.size());
+        int sent = 0;
+        while (responses.size() < requests.size()) {
+            boolean written = false;
+            while (sent < requests.size() &&
+                    sent - responses.size() < Math.max(window, 1)) {
+                sendObject(requests.get(sent++));
+                written = true;
+            }
+            if (written) {
+                flush();
+            }
+            responses.add(readObject());
+        }
+        return responses;
+        
+    }  //- pipeline
+    
+    
+    /**
+     * Whether bytes of a further message have already arrived, in which
+     * case a server can hold back flushing its response so that responses
+     * to pipelined requests go out together.
+     * @return true only if more input is known to be available.
+     * @throws IOException
+     */
+    public boolean hasPendingInput() throws IOException {
+        return inputInitialized && hasPendingInputImpl();
+    }
+    
+    /**
+     * Subclasses can override to report input already received.  The
+     * default reports none, so that every response is flushed.
+     * @throws IOException
+     */
+    protected boolean hasPendingInputImpl() throws IOException {
+        return false;
+    }
     
     
     /**
@@ -0,0 +1,533 @@
+/*
+ * Copyright 2007 Penn State University
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.psu.citeseerx.exec.com;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import edu.psu.citeseerx.utility.ConfigurationManager;
+
+/**
+ * ObjectServer implementation that serves all connections from one thread
+ * through a Selector, so that open connections, such as those a client's
+ * ConnectionPool holds idle, do not each hold a thread.  The selector
+ * thread only accepts connections and moves bytes: once a connection has
+ * received complete requests, reading from it is suspended and the
+ * requests are handed to the thread pool, where they are decoded, executed
+ * and their responses encoded.  At most poolSize requests are executed at
+ * once, and pool threads are started only as requests need them.
+ * <br><br>
+ * Requests and responses are framed as by a ByteStreamTransferConnection
+ * with the BinaryCodec, compressed or not, so that clients configured for
+ * the BINARY transfer type are served unchanged.  The Java serialization
+ * and XStream transfer types carry no framing from which the end of a
+ * request could be found without decoding it, and are not supported.
+ *
+ * @version $Rev$ $Date$
+ */
+public class SelectorObjectServer extends ObjectServer {
+
+    private static final ObjectCodec CODEC = new BinaryCodec();
+
+    /* Limits shared with the blocking connections. */
+    private static final int MAX_FRAME_SIZE =
+        ByteStreamTransferConnection.MAX_FRAME_SIZE;
+    private static final int MAX_RETAINED_BUFFER =
+        ByteStreamTransferConnection.MAX_RETAINED_BUFFER;
+    /* Initial size of connection input buffers, in bytes. */
+    private static final int BUFFER_SIZE = 8192;
+    /* Interval between checks for idle connections, in ms. */
+    private static final long SWEEP_INTERVAL = 1000;
+
+    private final Selector selector;
+
+    /* Connections handed back by pool threads once their requests are
+     * answered, whose interest is to be restored by the selector thread. */
+    private final ConcurrentLinkedQueue<Connection> answered =
+        new ConcurrentLinkedQueue<Connection>();
+
+    /* One command per pool thread, as each ServiceWorker has its own. */
+    private final ThreadLocal<ServiceCommand> commands =
+        new ThreadLocal<ServiceCommand>() {
+        protected ServiceCommand initialValue() {
+            return commandFactory.newCommand();
+        }
+    };
+
+    /**
+     * Opens the server socket and starts the selector thread.
+     * @param command command object for handling client messages
+     * @param configurationManager for reading configuration
+     * @throws Exception
+     */
+    public SelectorObjectServer(ServiceCommand command,
+            ConfigurationManager configurationManager) throws Exception {
+        super(command, configurationManager, true);
+        try {
+            selector = Selector.open();
+            server.getChannel().register(selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException e) {
+            server.close();
+            threadPool.shutdown();
+            throw e;
+        }
+        setName("ObjectServer selector");
+        start();
+
+    }  //- SelectorObjectServer
+
+
+    /**
+     * Accepts connections, reads requests and writes back responses until
+     * the server is shut down.  Connections idle for longer than the socket
+     * timeout are closed, as the threaded server does.
+     */
+    public void run() {
+        try {
+            long lastSweep = System.currentTimeMillis();
+            while (!isShutdown()) {
+                selector.select(SWEEP_INTERVAL);
+
+                Connection connection;
+                while ((connection = answered.poll()) != null) {
+                    connection.resume();
+                }
+
+                Iterator<SelectionKey> keys =
+                    selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    try {
+                        if (key.isAcceptable()) {
+                            accept();
+                            continue;
+                        }
+                        connection = (Connection)key.attachment();
+                        if (key.isWritable()) {
+                            connection.write();
+                        }
+                        if (key.isValid() && key.isReadable()) {
+                            connection.read();
+                        }
+                    } catch (CancelledKeyException e) {
+                        /* Closed by a pool thread. */
+                    }
+                }
+
+                long now = System.currentTimeMillis();
+                if (now - lastSweep >= SWEEP_INTERVAL) {
+                    closeIdle(now);
+                    lastSweep = now;
+                }
+            }
+
+        } catch (ClosedSelectorException e) {
+            /* Ignore - shutdown. */
+        } catch (IOException e) {
+            /* Should never happen. */
+            e.printStackTrace();
+
+        } finally {
+            shutdown();
+            try {
+                for (SelectionKey key : selector.keys()) {
+                    if (key.attachment() != null) {
+                        ((Connection)key.attachment()).close();
+                    }
+                }
+                selector.close();
+            } catch (ClosedSelectorException e) {
+                /* Already closed. */
+            } catch (IOException e) {/*ignore*/}
+        }
+
+    }  //- run
+
+
+    /**
+     * Shuts down as ObjectServer does, and wakes the selector thread so that
+     * it closes the open connections.
+     */
+    public void shutdown() {
+        super.shutdown();
+        selector.wakeup();
+    }
+
+
+    private void accept() throws IOException {
+        SocketChannel channel = server.getChannel().accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        Connection connection = new Connection(channel);
+        connection.key =
+            channel.register(selector, SelectionKey.OP_READ, connection);
+
+    }  //- accept
+
+
+    private void closeIdle(long now) {
+        for (SelectionKey key : selector.keys()) {
+            Connection connection = (Connection)key.attachment();
+            try {
+                // Connections whose requests are being executed are not
+                // reading, and are not idle.
+                if (connection != null &&
+                        key.interestOps() == SelectionKey.OP_READ &&
+                        now - connection.lastActive > soTimeout) {
+                    connection.close();
+                }
+            } catch (CancelledKeyException e) {
+                /* Already closed. */
+            }
+        }
+
+    }  //- closeIdle
+
+
+    /**
+     * State of one client connection.  Input is read and split into
+     * requests by the selector thread; the requests are then decoded,
+     * executed and answered by a single pool thread at a time, which
+     * leaves any response it could not write at once for the selector
+     * thread.
+     */
+    private class Connection implements Runnable {
+
+        final SocketChannel channel;
+        SelectionKey key;
+        volatile long lastActive = System.currentTimeMillis();
+
+        private final boolean compressed = config.isUseCompression();
+        private final int blockSize = config.getCompressedBlockSize();
+
+        /* Bytes read but not yet making up a whole frame or block. */
+        private ByteBuffer input = ByteBuffer.allocate(BUFFER_SIZE);
+        /* Frames, or compressed blocks, for the pool thread to process. */
+        private List<byte[]> requests;
+        /* Response bytes still to be written. */
+        private ByteBuffer output;
+
+        /* Used by the pool thread only. */
+        private ByteBuffer inflated;
+        private Inflater inflater;
+        private Deflater deflater;
+        private ByteArrayOutputStream responseBuffer;
+        private ByteArrayOutputStream frameBuffer;
+        private DataOutputStream frameOutputStream;
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+
+        /*
+         * Reads what has arrived and, if that completes any frames (or
+         * blocks, with compression), stops reading and hands them to the
+         * thread pool.
+         */
+        void read() {
+            try {
+                if (!input.hasRemaining()) {
+                    input = grow(input, input.capacity()*2);
+                }
+                if (channel.read(input) < 0) {
+                    close();
+                    return;
+                }
+                lastActive = System.currentTimeMillis();
+
+                List<byte[]> complete = new ArrayList<byte[]>();
+                input.flip();
+                int header = compressed ? 8 : 4;
+                int needed = header;
+                while (input.remaining() >= 4) {
+                    int length = input.getInt(input.position());
+                    if (length < 0 || length > MAX_FRAME_SIZE) {
+                        throw new StreamCorruptedException(
+                                "Invalid frame length: " + length);
+                    }
+                    needed = header + length;
+                    if (input.remaining() < needed) {
+                        break;
+                    }
+                    byte[] request;
+                    if (compressed) {
+                        request = new byte[needed];
+                    } else {
+                        input.getInt();
+                        request = new byte[length];
+                    }
+                    input.get(request);
+                    complete.add(request);
+                    needed = header;
+                }
+                input.compact();
+                if (needed > input.capacity()) {
+                    input = grow(input, needed);
+                } else if (input.capacity() > MAX_RETAINED_BUFFER &&
+                        input.position() < BUFFER_SIZE) {
+                    input = grow(input, BUFFER_SIZE);
+                }
+
+                if (!complete.isEmpty()) {
+                    key.interestOps(0);
+                    requests = complete;
+                    threadPool.execute(this);
+                }
+
+            } catch (RejectedExecutionException e) {
+                /* Shutting down. */
+                close();
+            } catch (IOException e) {
+                close();
+            }
+
+        }  //- read
+
+
+        /*
+         * Decodes, executes and answers the requests handed over by read,
+         * then returns the connection to the selector thread.
+         */
+        public void run() {
+            try {
+                if (responseBuffer == null) {
+                    responseBuffer = new ByteArrayOutputStream();
+                    frameBuffer = new ByteArrayOutputStream();
+                    frameOutputStream = new DataOutputStream(frameBuffer);
+                }
+                if (compressed) {
+                    for (byte[] block : requests) {
+                        inflate(block);
+                    }
+                    inflated.flip();
+                    while (inflated.remaining() >= 4) {
+                        int length = inflated.getInt(inflated.position());
+                        if (length < 0 || length > MAX_FRAME_SIZE) {
+                            throw new StreamCorruptedException(
+                                    "Invalid frame length: " + length);
+                        }
+                        if (inflated.remaining() < 4 + length) {
+                            break;
+                        }
+                        inflated.getInt();
+                        byte[] frame = new byte[length];
+                        inflated.get(frame);
+                        answer(frame);
+                    }
+                    inflated.compact();
+                } else {
+                    for (byte[] frame : requests) {
+                        answer(frame);
+                    }
+                }
+                requests = null;
+
+                output = ByteBuffer.wrap(compressed ?
+                        deflate(responseBuffer) :
+                            responseBuffer.toByteArray());
+                if (responseBuffer.size() > MAX_RETAINED_BUFFER) {
+                    responseBuffer = new ByteArrayOutputStream();
+                } else {
+                    responseBuffer.reset();
+                }
+                channel.write(output);
+                if (!output.hasRemaining()) {
+                    output = null;
+                }
+
+            } catch (IOException e) {
+                close();
+                return;
+            } catch (ClassNotFoundException e) {
+                // SERIOUS - Object sent is not in local classpath.
+                e.printStackTrace();
+                close();
+                return;
+            } catch (Exception e) {
+                // Other unexpected error - take these seriously.
+                e.printStackTrace();
+                close();
+                return;
+            }
+            answered.add(this);
+            selector.wakeup();
+
+        }  //- run
+
+
+        private void answer(byte[] frame) throws IOException,
+                ClassNotFoundException {
+            Object request = CODEC.decode(
+                    new DataInputStream(new ByteArrayInputStream(frame)));
+            Object response;
+            if (request instanceof ValidationRequest) {
+                response = new ValidationResponse(
+                        ((ValidationRequest)request).getID());
+            } else {
+                response = commands.get().execute(request);
+            }
+
+            frameBuffer.reset();
+            CODEC.encode(response, frameOutputStream);
+            frameOutputStream.flush();
+            new DataOutputStream(responseBuffer).writeInt(frameBuffer.size());
+            frameBuffer.writeTo(responseBuffer);
+            if (frameBuffer.size() > MAX_RETAINED_BUFFER) {
+                frameBuffer = new ByteArrayOutputStream();
+                frameOutputStream = new DataOutputStream(frameBuffer);
+            }
+
+        }  //- answer
+
+
+        /*
+         * Appends the content of a block, as written by a
+         * CompressedBlockOutputStream, to the inflated input.
+         */
+        private void inflate(byte[] block) throws IOException {
+            ByteBuffer header = ByteBuffer.wrap(block);
+            int compressedLength = header.getInt();
+            int length = header.getInt();
+            if (length < 0 || length > MAX_FRAME_SIZE) {
+                throw new StreamCorruptedException(
+                        "Invalid block length: " + length);
+            }
+            if (inflater == null) {
+                inflater = new Inflater();
+                inflated = ByteBuffer.allocate(BUFFER_SIZE);
+            }
+            if (inflated.remaining() < length) {
+                inflated = grow(inflated, inflated.position() + length);
+            }
+            inflater.setInput(block, 8, compressedLength);
+            try {
+                int n = inflater.inflate(inflated.array(),
+                        inflated.position(), length);
+                if (n != length) {
+                    throw new StreamCorruptedException(
+                            "Truncated block");
+                }
+                inflated.position(inflated.position() + n);
+            } catch (DataFormatException e) {
+                throw new StreamCorruptedException(e.getMessage());
+            } finally {
+                inflater.reset();
+            }
+
+        }  //- inflate
+
+
+        /*
+         * Compresses the responses into blocks of at most the configured
+         * size, as a CompressedBlockOutputStream would.
+         */
+        private byte[] deflate(ByteArrayOutputStream responses)
+        throws IOException {
+            if (deflater == null) {
+                deflater = new Deflater();
+            }
+            byte[] plain = responses.toByteArray();
+            int size = (blockSize > 0) ? blockSize : plain.length;
+            ByteArrayOutputStream blocks = new ByteArrayOutputStream();
+            byte[] buffer = new byte[Math.min(size, plain.length) + 64];
+            for (int offset=0; offset<plain.length; offset+=size) {
+                int length = Math.min(size, plain.length - offset);
+                deflater.setInput(plain, offset, length);
+                deflater.finish();
+                ByteArrayOutputStream block = new ByteArrayOutputStream();
+                while (!deflater.finished()) {
+                    int n = deflater.deflate(buffer);
+                    block.write(buffer, 0, n);
+                }
+                deflater.reset();
+                ByteBuffer header = ByteBuffer.allocate(8);
+                header.putInt(block.size()).putInt(length);
+                blocks.write(header.array(), 0, 8);
+                block.writeTo(blocks);
+            }
+            return blocks.toByteArray();
+
+        }  //- deflate
+
+
+        /*
+         * Called on the selector thread once the pool thread is done:
+         * reads again, or first finishes writing the responses.
+         */
+        void resume() {
+            if (!key.isValid()) {
+                return;
+            }
+            lastActive = System.currentTimeMillis();
+            key.interestOps((output != null) ?
+                    SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+        }
+
+
+        void write() {
+            try {
+                channel.write(output);
+                lastActive = System.currentTimeMillis();
+                if (!output.hasRemaining()) {
+                    output = null;
+                    key.interestOps(SelectionKey.OP_READ);
+                }
+            } catch (IOException e) {
+                close();
+            }
+        }
+
+
+        void close() {
+            if (key != null) {
+                key.cancel();
+            }
+            try {
+                channel.close();
+            } catch (IOException e) {/*ignore*/}
+        }
+
+    }  //- class Connection
+
+
+    private static ByteBuffer grow(ByteBuffer buffer, int capacity) {
+        ByteBuffer grown = ByteBuffer.allocate(capacity);
+        buffer.flip();
+        grown.put(buffer);
+        return grown;
+    }
+
+}  //- class SelectorObjectServer
@@ -23,7 +23,7 @@ import edu.psu.citeseerx.utility.*;
  */
 public class ServerConfiguration {
 
-    public static enum TYPE { BYTE_STREAM, XSTREAM };
+    public static enum TYPE { BYTE_STREAM, XSTREAM, BINARY };
     
     private int serverPort;
     private int poolSize;
@@ -32,6 +32,7 @@ public class ServerConfiguration {
     private int compressedBlockSize;
     private String returnAddress;
     private TYPE type;
+    private boolean useSelector;
     
     private final ConfigurationManager manager;
     private final AccessKey accessKey = new AccessKey();
@@ -61,9 +62,18 @@ public class ServerConfiguration {
             type = TYPE.BYTE_STREAM;
         } else if (transferType.equals("XSTREAM")) {
             type = TYPE.XSTREAM;
+        } else if (transferType.equals("BINARY")) {
+            type = TYPE.BINARY;
         } else {
             throw new Exception ("objectTransferType not specified");
         }
+
+        // Optional: older configurations run the thread per connection
+        // server.
+        if (manager.containsKey("ObjectServer.useSelector", accessKey)) {
+            useSelector =
+                manager.getBoolean("ObjectServer.useSelector", accessKey);
+        }
         
     }  //- ServerConfiguration
     
@@ -124,7 +134,19 @@ public class ServerConfiguration {
 
     public void setType(TYPE type) {
         this.type = type;
-    }  
+    }
+
+    /**
+     * @return whether connections are served by a selector rather than a
+     * thread each (default false).
+     */
+    public boolean isUseSelector() {
+        return useSelector;
+    }
+
+    public void setUseSelector(boolean useSelector) {
+        this.useSelector = useSelector;
+    }
 }
 
 
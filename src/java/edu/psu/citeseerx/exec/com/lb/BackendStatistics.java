@@ -0,0 +1,102 @@
+/*
+ * Copyright 2007 Penn State University
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.psu.citeseerx.exec.com.lb;
+
+import java.net.InetAddress;
+
+/**
+ * Snapshot of the state a balancer keeps for one backend ConnectionPool.
+ */
+public class BackendStatistics {
+
+    private final InetAddress host;
+    private final int port;
+    private final int inFlight;
+    private final long requests;
+    private final long failures;
+    private final double latency;
+    private final long ejectedFor;
+
+    public BackendStatistics(InetAddress host, int port, int inFlight,
+            long requests, long failures, double latency, long ejectedFor) {
+        this.host = host;
+        this.port = port;
+        this.inFlight = inFlight;
+        this.requests = requests;
+        this.failures = failures;
+        this.latency = latency;
+        this.ejectedFor = ejectedFor;
+    }
+
+    public InetAddress getHost() {
+        return host;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * @return the number of requests sent to the backend and not yet
+     * answered.
+     */
+    public int getInFlight() {
+        return inFlight;
+    }
+
+    /**
+     * @return the number of requests completed, successfully or not.
+     */
+    public long getRequests() {
+        return requests;
+    }
+
+    public long getFailures() {
+        return failures;
+    }
+
+    /**
+     * @return the moving average of response latency, in ms, or 0 if no
+     * response has been received.
+     */
+    public double getLatency() {
+        return latency;
+    }
+
+    /**
+     * @return the time, in ms, until the backend is tried again, or 0 if
+     * it is not ejected.
+     */
+    public long getEjectedFor() {
+        return ejectedFor;
+    }
+
+    public boolean isEjected() {
+        return ejectedFor > 0;
+    }
+
+    public String toString() {
+        StringBuffer buffer = new StringBuffer();
+        buffer.append(host.getHostAddress()).append(':').append(port);
+        buffer.append(" inFlight=").append(inFlight);
+        buffer.append(" requests=").append(requests);
+        buffer.append(" failures=").append(failures);
+        buffer.append(" latency=").append(Math.round(latency*1000)/1000.0);
+        buffer.append("ms");
+        if (isEjected()) {
+            buffer.append(" ejected=").append(ejectedFor).append("ms");
+        }
+        return buffer.toString();
+    }
+
+}  //- class BackendStatistics
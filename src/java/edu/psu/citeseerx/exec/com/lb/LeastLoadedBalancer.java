@@ -0,0 +1,412 @@
+/*
+ * Copyright 2007 Penn State University
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.psu.citeseerx.exec.com.lb;
+
+import edu.psu.citeseerx.exec.com.ConnectionPool;
+import edu.psu.citeseerx.exec.com.ObjectTransferConnection;
+
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * LoadBalancer that sends each query to the less loaded of two backends
+ * picked at random, so that slow backends receive less work rather than
+ * building queues while fast ones sit idle.  The load of a backend is the
+ * number of its queries in flight, weighted by a moving average of its
+ * response latency; backends with no response yet are compared on queries
+ * in flight alone.
+ * <br><br>
+ * A backend whose query fails is ejected from the balance set for a while,
+ * doubling with each consecutive failure up to a maximum, and the query is
+ * retried on another backend.  Should all backends be ejected, the one due
+ * back soonest is tried.  Monitors receive the statistics of each backend
+ * when one is ejected and at most every reporting interval otherwise.
+ *
+ * @version $Rev$ $Date$
+ */
+public class LeastLoadedBalancer implements LoadBalancer {
+
+    protected final List<Backend> balanceSet =
+        new CopyOnWriteArrayList<Backend>();
+
+    private final Random random = new Random();
+
+    private double latencyWeight = 0.2;
+    private long ejectionTime = 1000;
+    private long maxEjectionTime = 60000;
+    private long reportInterval = 60000;
+
+    private volatile long lastReport = System.currentTimeMillis();
+
+
+    /**
+     * Sets the weight of each new latency measure in the moving average
+     * (default 0.2).
+     * @param latencyWeight
+     */
+    public void setLatencyWeight(double latencyWeight) {
+        this.latencyWeight = latencyWeight;
+    }
+
+    /**
+     * Sets the time, in ms, for which a backend is ejected after its first
+     * failure (default 1000).
+     * @param ejectionTime
+     */
+    public void setEjectionTime(long ejectionTime) {
+        this.ejectionTime = ejectionTime;
+    }
+
+    /**
+     * Sets the longest time, in ms, for which a backend is ejected
+     * (default 60000).
+     * @param maxEjectionTime
+     */
+    public void setMaxEjectionTime(long maxEjectionTime) {
+        this.maxEjectionTime = maxEjectionTime;
+    }
+
+    /**
+     * Sets the time, in ms, between reports of statistics to monitors
+     * (default 60000).
+     * @param reportInterval
+     */
+    public void setReportInterval(long reportInterval) {
+        this.reportInterval = reportInterval;
+    }
+
+
+    public Object query(Object obj) throws BalanceSetException {
+        if (balanceSet.isEmpty()) {
+            throw new BalanceSetException("No resources available");
+        }
+        List<Backend> tried = new ArrayList<Backend>();
+        for (int i=0; i<balanceSet.size(); i++) {
+            Backend backend = choose(tried);
+            if (backend == null) {
+                break;
+            }
+            tried.add(backend);
+
+            ObjectTransferConnection connection = null;
+            backend.inFlight.incrementAndGet();
+            long start = System.nanoTime();
+            try {
+                connection = backend.pool.leaseConnection(-1);
+                connection.writeObject(obj);
+                Object response = connection.readObject();
+                backend.pool.returnConnection(connection);
+                backend.succeeded(System.nanoTime() - start);
+                report(false);
+                return response;
+
+            } catch (Exception e) {
+                if (connection != null) {
+                    backend.pool.invalidate(connection);
+                }
+                long ejected = backend.failed();
+                System.err.println("LeastLoadedBalancer: " +
+                        backend.pool.getServerHost() + ":" +
+                        backend.pool.getServerPort() + " failed (" + e +
+                        "), ejected for " + ejected + "ms");
+                report(true);
+
+            } finally {
+                backend.inFlight.decrementAndGet();
+            }
+        }
+        throw new BalanceSetException("Failure of all resources");
+
+    }  //- query
+
+
+    /**
+     * Adds a new pool to the balance set.  If the pool is already part of
+     * the balance set, it will not be added again.
+     */
+    public void addPool(ConnectionPool pool) {
+        boolean first;
+        synchronized(this) {
+            if (find(pool) != null) {
+                return;
+            }
+            balanceSet.add(new Backend(pool));
+            first = (balanceSet.size() == 1);
+        }
+        // Registered outside the lock: the pool calls back into
+        // removePool while holding its own.
+        pool.registerMonitor(this);
+        if (first) {
+            notifyServiceAvailable(true);
+        }
+
+    }  //- addPool
+
+
+    /**
+     * Removes a connection pool from the balance set.  This should rarely
+     * be called directly.  Calling shutdown on the pool will result in
+     * it's removal from the set.
+     */
+    public void removePool(ConnectionPool pool) {
+        boolean last;
+        synchronized(this) {
+            Backend backend = find(pool);
+            if (backend == null) {
+                return;
+            }
+            balanceSet.remove(backend);
+            last = balanceSet.isEmpty();
+        }
+        pool.removeMonitor(this);
+        if (last) {
+            notifyServiceAvailable(false);
+        }
+
+    }  //- removePool
+
+
+    /**
+     * Gets a connection from the least loaded of two backends.  Queries
+     * made over the connection are not counted in the statistics of the
+     * backend.
+     */
+    public ObjectTransferConnection getConnection(int time) throws Exception {
+        Backend backend = choose(Collections.<Backend>emptyList());
+        if (backend == null) {
+            return null;
+        }
+        return backend.pool.leaseConnection(time);
+
+    }  //- getConnection
+
+
+    /**
+     * @return a snapshot of the statistics of each backend.
+     */
+    public List<BackendStatistics> getStatistics() {
+        long now = System.currentTimeMillis();
+        List<BackendStatistics> statistics =
+            new ArrayList<BackendStatistics>();
+        for (Backend backend : balanceSet) {
+            statistics.add(backend.getStatistics(now));
+        }
+        return statistics;
+
+    }  //- getStatistics
+
+
+    /*
+     * Picks two backends not yet tried at random among those not ejected,
+     * and returns the less loaded.  If all are ejected, returns the one due
+     * back soonest.
+     */
+    private Backend choose(List<Backend> tried) {
+        long now = System.currentTimeMillis();
+        List<Backend> candidates = new ArrayList<Backend>(balanceSet.size());
+        Backend soonest = null;
+        for (Backend backend : balanceSet) {
+            if (tried.contains(backend)) {
+                continue;
+            }
+            if (backend.isEjected(now)) {
+                if (soonest == null ||
+                        backend.ejectedUntil < soonest.ejectedUntil) {
+                    soonest = backend;
+                }
+            } else {
+                candidates.add(backend);
+            }
+        }
+        if (candidates.isEmpty()) {
+            return soonest;
+        }
+        if (candidates.size() == 1) {
+            return candidates.get(0);
+        }
+
+        int first, second;
+        synchronized(random) {
+            first = random.nextInt(candidates.size());
+            second = random.nextInt(candidates.size() - 1);
+        }
+        if (second >= first) {
+            second++;
+        }
+        Backend a = candidates.get(first);
+        Backend b = candidates.get(second);
+        return (b.isLessLoadedThan(a)) ? b : a;
+
+    }  //- choose
+
+
+    private Backend find(ConnectionPool pool) {
+        for (Backend backend : balanceSet) {
+            if (backend.pool == pool) {
+                return backend;
+            }
+        }
+        return null;
+    }
+
+
+    /*
+     * Sends statistics to monitors if something changed worth reporting
+     * now, or once the reporting interval has passed.
+     */
+    private void report(boolean now) {
+        long time = System.currentTimeMillis();
+        if (!now && time - lastReport < reportInterval) {
+            return;
+        }
+        lastReport = time;
+        List<BackendStatistics> statistics = getStatistics();
+        synchronized(monitors) {
+            for (Iterator<LoadBalancerMonitor> it = monitors.iterator();
+                    it.hasNext(); ) {
+                it.next().notifyStatistics(this, statistics);
+            }
+        }
+
+    }  //- report
+
+
+    /**
+     * Called when a connection pool is shut down.  This method removes the
+     * pool from the balance set.
+     */
+    public void notifyShutdown(ConnectionPool pool) {
+        removePool(pool);
+    }
+
+
+    /**
+     * Called when a connection pool is finalized.  Does nothing.
+     */
+    public void notifyFinalized(ConnectionPool pool) {
+        /* Ignore this notification. */
+    }
+
+
+    protected Vector<LoadBalancerMonitor> monitors =
+        new Vector<LoadBalancerMonitor>();
+
+
+    /**
+     * Adds a monitor that will listen for events in this balancer.
+     */
+    public void registerMonitor(LoadBalancerMonitor monitor) {
+        if (!monitors.contains(monitor))
+            monitors.add(monitor);
+    }
+
+
+    /**
+     * Removes a monitor from the monitor list.
+     */
+    public void removeMonitor(LoadBalancerMonitor monitor) {
+        monitors.remove(monitor);
+    }
+
+
+    /**
+     * Notifies all monitors about changes in service availability.
+     */
+    public void notifyServiceAvailable(boolean available) {
+        synchronized(monitors) {
+            for (Iterator<LoadBalancerMonitor> it = monitors.iterator();
+                    it.hasNext(); ) {
+                it.next().notifyServiceAvailable(available);
+            }
+        }
+
+    }  //- notifyServiceAvailable
+
+
+    /**
+     * Load and failure state of one pool in the balance set.
+     */
+    protected class Backend {
+
+        final ConnectionPool pool;
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicLong requests = new AtomicLong();
+        final AtomicLong failures = new AtomicLong();
+
+        /* Moving average of latency in ns, 0 until the first response. */
+        private volatile double latency = 0;
+        private int consecutiveFailures = 0;
+        volatile long ejectedUntil = 0;
+
+        Backend(ConnectionPool pool) {
+            this.pool = pool;
+        }
+
+        boolean isEjected(long now) {
+            return now < ejectedUntil;
+        }
+
+        boolean isLessLoadedThan(Backend other) {
+            int load = inFlight.get();
+            int otherLoad = other.inFlight.get();
+            double average = latency;
+            double otherAverage = other.latency;
+            if (average == 0 || otherAverage == 0) {
+                if (load != otherLoad) {
+                    return load < otherLoad;
+                }
+                return average == 0 && otherAverage != 0;
+            }
+            return (load+1) * average < (otherLoad+1) * otherAverage;
+        }
+
+        synchronized void succeeded(long time) {
+            requests.incrementAndGet();
+            consecutiveFailures = 0;
+            latency = (latency == 0) ? time :
+                latency + latencyWeight * (time - latency);
+        }
+
+        /*
+         * Ejects the backend, for twice as long as the last time if it
+         * has not answered since.
+         * @return the time for which it is ejected, in ms.
+         */
+        synchronized long failed() {
+            requests.incrementAndGet();
+            failures.incrementAndGet();
+            long time = ejectionTime;
+            for (int i=0; i<consecutiveFailures; i++) {
+                if (time >= maxEjectionTime) {
+                    break;
+                }
+                time *= 2;
+            }
+            time = Math.min(time, maxEjectionTime);
+            consecutiveFailures++;
+            ejectedUntil = System.currentTimeMillis() + time;
+            return time;
+        }
+
+        BackendStatistics getStatistics(long now) {
+            return new BackendStatistics(pool.getServerHost(),
+                    pool.getServerPort(), inFlight.get(), requests.get(),
+                    failures.get(), latency / 1e6,
+                    Math.max(ejectedUntil - now, 0));
+        }
+
+    }  //- class Backend
+
+}  //- class LeastLoadedBalancer
@@ -12,6 +12,17 @@
  */
 package edu.psu.citeseerx.exec.com.lb;
 
+import java.util.List;
+
 public interface LoadBalancerMonitor {
     public void notifyServiceAvailable(boolean available);
+
+    /**
+     * Called by balancers that keep statistics on their backends, with a
+     * snapshot for each backend.
+     * @param balancer
+     * @param statistics
+     */
+    public void notifyStatistics(LoadBalancer balancer,
+            List<BackendStatistics> statistics);
 }
@@ -0,0 +1,238 @@
+/*
+ * Copyright 2007 Penn State University
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.psu.citeseerx.exec.com.tests;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import edu.psu.citeseerx.exec.com.BinaryCodec;
+import edu.psu.citeseerx.exec.com.ByteStreamSocketInitializer;
+import edu.psu.citeseerx.exec.com.ByteStreamTransferConnection;
+import edu.psu.citeseerx.exec.com.ObjectTransferConnection;
+import edu.psu.citeseerx.exec.com.SocketInitializer;
+import edu.psu.citeseerx.exec.com.XStreamSocketInitializer;
+import edu.psu.citeseerx.exec.com.XStreamTransferConnection;
+import edu.psu.citeseerx.exec.protocol.Protocol;
+import edu.psu.citeseerx.exec.protocol.ProtocolContainer;
+
+/**
+ * Compares the Java serialization, XStream and binary codec transports
+ * over a loopback connection, with requests shaped like those the task
+ * manager sends to services: a ProtocolContainer holding a query and a
+ * few metadata fields, answered by the Protocol with a result added.
+ * <br><br>
+ * For each transport, reports the latency of single round trips (mean,
+ * median and 99th percentile) and the throughput of the same requests
+ * sent without pipelining and pipelined.
+ * <br><br>
+ * Usage: CodecBenchmark [requests] [window] [java|xstream|binary ...]
+ */
+public class CodecBenchmark {
+
+    private static final int WARMUP = 2000;
+    private static final int BATCH = 100;
+
+    public static void main(String args[]) throws Exception {
+        int requests = (args.length > 0) ? Integer.parseInt(args[0]) : 20000;
+        int window = (args.length > 1) ? Integer.parseInt(args[1]) : 16;
+        List<String> transports = new ArrayList<String>();
+        for (int i=2; i<args.length; i++) {
+            transports.add(args[i]);
+        }
+        if (transports.isEmpty()) {
+            transports = Arrays.asList(
+                    new String[] { "java", "xstream", "binary" });
+        }
+
+        System.out.println("transport\tmean_us\tp50_us\tp99_us\t" +
+                "serial_req/s\tpipelined_req/s");
+        for (String transport : transports) {
+            run(transport, requests, window);
+        }
+
+    }  //- main
+
+
+    private static void run(String transport, int requests, int window)
+    throws Exception {
+        final ServerSocket server = new ServerSocket(0);
+        EchoServer echo = new EchoServer(server, transport);
+        echo.start();
+
+        Socket socket = new Socket(InetAddress.getByName("localhost"),
+                server.getLocalPort());
+        socket.setTcpNoDelay(true);
+        ObjectTransferConnection connection =
+            createConnection(socket, transport);
+        try {
+            // Requests are built anew for each call, as TaskStub does;
+            // Java serialization would otherwise send repeats as
+            // references to objects already written.
+            for (int i=0; i<WARMUP; i++) {
+                roundTrip(connection, buildRequest(i));
+            }
+
+            long[] latencies = new long[requests];
+            long start = System.nanoTime();
+            for (int i=0; i<requests; i++) {
+                long t = System.nanoTime();
+                roundTrip(connection, buildRequest(i));
+                latencies[i] = System.nanoTime() - t;
+            }
+            long serialTime = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int sent=0; sent<requests; sent+=BATCH) {
+                List<Object> batch = new ArrayList<Object>(BATCH);
+                for (int i=0; i<BATCH; i++) {
+                    batch.add(buildRequest(sent+i));
+                }
+                List<Object> responses = connection.pipeline(batch, window);
+                for (Object response : responses) {
+                    check(response);
+                }
+            }
+            long pipelinedTime = System.nanoTime() - start;
+            int pipelined = ((requests + BATCH - 1) / BATCH) * BATCH;
+
+            Arrays.sort(latencies);
+            long total = 0;
+            for (long latency : latencies) {
+                total += latency;
+            }
+            System.out.println(transport + "\t" +
+                    (total / requests / 1000) + "\t" +
+                    (latencies[requests / 2] / 1000) + "\t" +
+                    (latencies[(int)(requests * 0.99)] / 1000) + "\t" +
+                    (long)(requests / (serialTime / 1e9)) + "\t" +
+                    (long)(pipelined / (pipelinedTime / 1e9)));
+
+        } finally {
+            connection.terminate();
+            server.close();
+            echo.join();
+        }
+
+    }  //- run
+
+
+    private static void roundTrip(ObjectTransferConnection connection,
+            Object request) throws IOException, ClassNotFoundException {
+        connection.writeObject(request);
+        check(connection.readObject());
+    }
+
+    private static void check(Object response) {
+        if (!(response instanceof Protocol) ||
+                ((Protocol)response).get("RESULT") == null) {
+            throw new IllegalStateException("Bad response: " + response);
+        }
+    }
+
+
+    private static ProtocolContainer buildRequest(int i) {
+        Protocol protocol = new Protocol();
+        protocol.set("QUERY_STRING", "document/summary?doi=10.1.1.1." + i);
+        protocol.set("title",
+                "Efficient crawling through URL ordering number " + i);
+        StringBuffer abs = new StringBuffer();
+        for (int j=0; j<20; j++) {
+            abs.append("In this paper we study in what order a crawler ");
+        }
+        protocol.set("abstract", abs.toString());
+        ArrayList<String> authors = new ArrayList<String>();
+        authors.add("Junghoo Cho");
+        authors.add("Hector Garcia-Molina");
+        authors.add("Lawrence Page");
+        protocol.set("authors", authors);
+        protocol.set("ncites", new Integer(i));
+        protocol.setTaskParameter("maxResults", new Integer(10));
+        protocol.setKeeper("title");
+        return new ProtocolContainer(protocol, "summary");
+    }
+
+
+    private static ObjectTransferConnection createConnection(Socket socket,
+            String transport) throws IOException {
+        if (transport.equals("xstream")) {
+            return new XStreamTransferConnection(socket, false, 0);
+        }
+        return new ByteStreamTransferConnection(socket, false, 0,
+                transport.equals("binary") ? new BinaryCodec() : null);
+    }
+
+    private static SocketInitializer createInitializer(Socket socket,
+            String transport) {
+        if (transport.equals("xstream")) {
+            return new XStreamSocketInitializer(socket, false, 0);
+        }
+        return new ByteStreamSocketInitializer(socket, false, 0,
+                transport.equals("binary") ? new BinaryCodec() : null);
+    }
+
+
+    /*
+     * Answers requests on one connection the way ObjectServer's workers
+     * do, without needing a server configuration.
+     */
+    private static class EchoServer extends Thread {
+
+        private final ServerSocket server;
+        private final String transport;
+
+        EchoServer(ServerSocket server, String transport) {
+            this.server = server;
+            this.transport = transport;
+            setDaemon(true);
+        }
+
+        public void run() {
+            ObjectTransferConnection connection = null;
+            try {
+                Socket socket = server.accept();
+                socket.setTcpNoDelay(true);
+                connection =
+                    createInitializer(socket, transport).initialize();
+                while (true) {
+                    ProtocolContainer request =
+                        (ProtocolContainer)connection.readObject();
+                    Protocol response = request.getProtocol();
+                    response.set("RESULT", "ok");
+                    connection.sendObject(response);
+                    if (!connection.hasPendingInput()) {
+                        connection.flush();
+                    }
+                }
+            } catch (EOFException e) {
+                /* client done */
+            } catch (SocketException e) {
+                /* client done */
+            } catch (Exception e) {
+                e.printStackTrace();
+            } finally {
+                if (connection != null) {
+                    connection.terminate();
+                }
+            }
+        }
+
+    }  //- class EchoServer
+
+}  //- class CodecBenchmark
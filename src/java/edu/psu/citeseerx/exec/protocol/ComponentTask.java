@@ -13,7 +13,16 @@
 package edu.psu.citeseerx.exec.protocol;
 
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * A task of a TaskScript together with its place in the script's
+ * dependency graph.  A component task is never handed to the thread pool
+ * before it can run: each one counts the dependencies it still waits for,
+ * and the last of them to complete submits it through the parent script.
+ * A task whose required dependencies did not all succeed is not executed,
+ * but still completes so that the tasks after it are released.
+ */
 public class ComponentTask implements Runnable {
 
     protected final Task baseTask;
@@ -24,10 +33,11 @@ public class ComponentTask implements Runnable {
         this.parent = parent;
     }
     
-    //private Protocol protocol;
+    public String getName() {
+        return baseTask.getName();
+    }
     
     public void setProtocol(Protocol protocol) {
-        //this.protocol = protocol;
         baseTask.setProtocol(protocol);
     }
     
@@ -37,88 +47,95 @@ public class ComponentTask implements Runnable {
     private final Vector<ComponentTask> optionalDependencyList =
         new Vector<ComponentTask>();
     
+    // Tasks that count this one among their dependencies, once for each
+    // dependency list it is in.
+    private final Vector<ComponentTask> dependents =
+        new Vector<ComponentTask>();
+    
     public void addDependency(ComponentTask task, boolean optional) {
-        task.addListener(this);
-        if (optional) {
-            if (!optionalDependencyList.contains(task)) {
-                optionalDependencyList.add(task);
-            }
-        } else {
-            System.out.println("adding required");
-            if (!requiredDependencyList.contains(task)) {
-                requiredDependencyList.add(task);
+        Vector<ComponentTask> dependencyList = (optional) ?
+                optionalDependencyList : requiredDependencyList;
+        synchronized(dependencyList) {
+            if (dependencyList.contains(task)) {
+                return;
             }
+            dependencyList.add(task);
         }
-        System.out.println("added depency for component "+baseTask.name+
-                ": "+task.baseTask.name);
-        System.out.println(baseTask.name+" DEPSIZE: "+requiredDependencyList.size());
+        task.dependents.add(this);
             
     }  //- addDependency
     
     
-    private final Vector<Object> listeners =
-        new Vector<Object>();
+    private final AtomicInteger pendingDependencies = new AtomicInteger();
     
-    public void addListener(Object listener) {
-        if (!listeners.contains(listener))
-            listeners.add(listener);
-    }
-    
-    private void notifyCompleted() {
-        System.out.println("notify completed");
-        synchronized(listeners) {
-            for (Iterator<Object> it = listeners.iterator();
-                    it.hasNext(); ) {
-                System.out.println("notifying");
-                Object lock = it.next();
-                synchronized(lock) {
-                    lock.notifyAll();
-                }
-            }
+    /**
+     * Readies the task for a new run of the script.
+     * @return true if the task has no dependencies, and so can be submitted
+     * right away.
+     */
+    boolean prepare() {
+        taskComplete = false;
+        taskError = false;
+        readyTime = startTime = endTime = 0;
+        int dependencies =
+            requiredDependencyList.size() + optionalDependencyList.size();
+        pendingDependencies.set(dependencies);
+        if (dependencies == 0) {
+            readyTime = System.currentTimeMillis();
+            return true;
         }
+        return false;
         
-    }  //- notifyCompleted
+    }  //- prepare
+    
     
     /*
-    private void notifyFailed() {
-        synchronized(listeners) {
-            for (Iterator<ComponentTaskListener> it = listeners.iterator();
-                    it.hasNext(); ) {
-                it.next().taskFailed(this);
-            }
+     * Called by each dependency as it completes; the last one submits this
+     * task.
+     */
+    private void dependencyCompleted() {
+        if (pendingDependencies.decrementAndGet() == 0) {
+            readyTime = System.currentTimeMillis();
+            parent.submit(this);
         }
-        
-    }  //- notifyFailed
-    */
+    } //- dependencyCompleted
     
-    private boolean taskComplete = false;
+    
+    private volatile boolean taskComplete = false;
     
     public boolean isComplete() {
         return taskComplete;
     }
     
-    private boolean taskError = false;
+    private volatile boolean taskError = false;
     
     public boolean completedOK() {
         return taskError;
     }
     
-    //public final Object notificationLock = new Object();
+    private volatile long readyTime = 0;
+    private volatile long startTime = 0;
+    private volatile long endTime = 0;
+    
+    /**
+     * @return milliseconds the task spent in the thread pool queue after its
+     * dependencies completed, in the last run.
+     */
+    public long getQueueTime() {
+        return (startTime > 0) ? startTime - readyTime : 0;
+    }
+    
+    /**
+     * @return milliseconds the task took to execute in the last run, 0 if
+     * it was not executed.
+     */
+    public long getExecutionTime() {
+        return (endTime > 0) ? endTime - startTime : 0;
+    }
+    
     
     public void run() {
-        System.out.println(baseTask.name+" CP1");
-        synchronized(this) {
-            System.out.println(baseTask.name+" CP2");
-            while(dependenciesNotMet()) {
-                System.out.println(baseTask.name+": waiting for results");
-                try {
-                    wait();
-                } catch (InterruptedException e) {}
-                System.out.println(baseTask.name+": got results");
-            }
-        }
-        System.out.println(baseTask.name+" CP3");
-
+        startTime = System.currentTimeMillis();
         boolean dependenciesOK = true;
         synchronized(requiredDependencyList) {
             for (Iterator<ComponentTask> it =
@@ -129,53 +146,25 @@ public class ComponentTask implements Runnable {
                 }
             }                
         }
-        System.out.println(baseTask.name+" CP4");
 
-        if (dependenciesOK) {
-            if (!baseTask.execute()) {
-                taskError = false;
-            } else {
-                taskError = true;
+        try {
+            if (dependenciesOK) {
+                taskError = baseTask.execute();
+                endTime = System.currentTimeMillis();
             }
-        }
-
-        System.out.println(baseTask.name+" deps ok? " + dependenciesOK);
-
-        taskComplete = true;
-        notifyCompleted();
-        
-    }  //- run
-    
-    
-    private boolean dependenciesNotMet() {
-        System.out.println(baseTask.name+" CP1.1");
-        System.out.println(baseTask.name+" DEPSIZE: "+requiredDependencyList.size());
-
-        synchronized(requiredDependencyList) {
-            for (Iterator<ComponentTask> it = requiredDependencyList.iterator();
-                    it.hasNext(); ) {
-                ComponentTask task = it.next();
-                System.out.println(baseTask.name+" DEPSTATUS: "+task.baseTask.name+" "+task.isComplete());
-                if (!task.isComplete()) {
-                    return true;
-                }
+        } finally {
+            taskComplete = true;
+            ComponentTask[] released;
+            synchronized(dependents) {
+                released = dependents.toArray(new ComponentTask[0]);
             }
-        }
-        System.out.println(baseTask.name+" CP1.2");
-
-        synchronized(optionalDependencyList) {
-            for (Iterator<ComponentTask> it = optionalDependencyList.iterator();
-                    it.hasNext(); ) {
-                if (!it.next().isComplete()) {
-                    return true;
-                }
+            for (ComponentTask dependent : released) {
+                dependent.dependencyCompleted();
             }
+            parent.taskCompleted(this);
         }
-        System.out.println(baseTask.name+" CP1.3");
-
-        return false;
         
-    }  //- dependenciesNotMet
+    }  //- run
     
     
     public ComponentTask newInstance(TaskScript parent) {
@@ -186,15 +175,4 @@ public class ComponentTask implements Runnable {
         taskComplete = false;
     }
     
-    /*
-    public void taskCompleted(ComponentTask task) {
-        //dependencyList.remove(task);
-    }
-    
-    public void taskFailed(ComponentTask task) {
-        taskComplete = true;
-        notifyFailed();
-    }
-    */
-    
 }  //- class ComponentTask
@@ -12,6 +12,9 @@
  */
 package edu.psu.citeseerx.exec.protocol;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.io.Serializable;
 
 public abstract class DataItem implements Serializable {
@@ -26,4 +29,21 @@ public abstract class DataItem implements Serializable {
         this.label = label;
     }
     
+    /**
+     * Writes the state of the item other than its label, for transfer by
+     * the binary codec.  Subclasses that override this must also override
+     * readFields and have a public constructor taking the label alone;
+     * items of other classes are transferred by Java serialization.
+     * @param out
+     * @throws IOException
+     */
+    public void writeFields(DataOutput out) throws IOException {}
+    
+    /**
+     * Reads back the state written by writeFields.
+     * @param in
+     * @throws IOException
+     */
+    public void readFields(DataInput in) throws IOException {}
+    
 }  //- class DataItem
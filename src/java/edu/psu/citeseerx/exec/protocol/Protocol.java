@@ -49,12 +49,20 @@ public class Protocol implements Serializable {
         return taskParameters.containsKey(name);
     }
     
+    public Enumeration<String> getTaskParameterNames() {
+        return taskParameters.keys();
+    }
+    
     private ArrayList<String> dataItemsToKeep = new ArrayList<String>(); 
     
     public void setKeeper(String label) {
         dataItemsToKeep.add(label);
     }
     
+    public List<String> getKeepers() {
+        return Collections.unmodifiableList(dataItemsToKeep);
+    }
+    
     public void merge(Protocol protocol) {
         Enumeration<String> keys = protocol.getDataKeys();
         while (keys.hasMoreElements()) {
@@ -17,8 +17,12 @@ import java.util.Collections;
 import java.util.Enumeration;
 import java.util.Hashtable;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Vector;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadPoolExecutor;
 
 import org.w3c.dom.Document;
@@ -93,15 +97,12 @@ public abstract class TaskScript implements Runnable {
 
     }
     
-    final Object notificationLock = new Object();
-    
     protected void buildScriptDependencies() {
         for (Iterator<Integer> it = scriptDependencyIndex.iterator();
                 it.hasNext(); ) {
             ComponentTask task = taskIndex.get(it.next());
             System.out.println(name+" dependency: " +task.baseTask.name);
             scriptDependencyList.add(task);
-            task.addListener(notificationLock);
         }
                 
     }
@@ -305,27 +306,68 @@ public abstract class TaskScript implements Runnable {
         execute(auxThreadPool);
     }
     
+    private volatile ThreadPoolExecutor executor;
+    private volatile CountDownLatch pendingScriptDependencies;
+    private volatile Map<String,long[]> taskTimes =
+        Collections.emptyMap();
+    
+    /**
+     * @return for each task of the last execution, by task name, the
+     * milliseconds it waited in the pool queue and the milliseconds it
+     * took to execute, in that order.
+     */
+    public Map<String,long[]> getTaskTimes() {
+        return taskTimes;
+    }
+    
+    /**
+     * Translates the protocol and runs the tasks of the script, each one
+     * submitted to the executor only once all of its dependencies have
+     * completed, so that no pool thread is held by a task waiting on
+     * others.  Returns when the tasks the script ends with have completed.
+     * @param executor
+     */
     public void execute(ThreadPoolExecutor executor) {
         if (translator != null)
             translator.translate(protocol);
         else {
             System.out.println("null translator (execute)");
         }
+        List<ComponentTask> ready = new ArrayList<ComponentTask>();
         for (Iterator<ComponentTask> it = tasks.iterator();
                 it.hasNext(); ) {
             ComponentTask task = it.next();
-            System.out.println("Submitting " + task.baseTask.getName());
-            executor.submit(task);
+            if (task.prepare()) {
+                ready.add(task);
+            }
         }
-        synchronized(notificationLock) {
-            while (dependenciesNotMet()) {
-                System.out.println(name+": waiting for results");
-                try {
-                    notificationLock.wait();
-                } catch (InterruptedException e) {}
-                System.out.println("got results");
+        this.executor = executor;
+        pendingScriptDependencies =
+            new CountDownLatch(scriptDependencyList.size());
+        for (Iterator<ComponentTask> it = ready.iterator(); it.hasNext(); ) {
+            submit(it.next());
+        }
+        
+        boolean interrupted = false;
+        while (true) {
+            try {
+                pendingScriptDependencies.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
             }
         }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        
+        Map<String,long[]> times = new LinkedHashMap<String,long[]>();
+        for (Iterator<ComponentTask> it = tasks.iterator(); it.hasNext(); ) {
+            ComponentTask task = it.next();
+            times.put(task.getName(), new long[] {
+                    task.getQueueTime(), task.getExecutionTime() });
+        }
+        taskTimes = Collections.unmodifiableMap(times);
         for (Enumeration<String> e = protocol.getDataKeys(); e.hasMoreElements(); ) {
             String key = e.nextElement();
             Object val = protocol.get(key);
@@ -334,14 +376,32 @@ public abstract class TaskScript implements Runnable {
     }
     
     
-    private boolean dependenciesNotMet() {
-        System.out.println("Dep size: " + scriptDependencyList.size());
-        for (Iterator<ComponentTask> it = scriptDependencyList.iterator();
-                it.hasNext(); ) {
-            if (!it.next().isComplete())
-                return true;
+    /*
+     * Hands a task whose dependencies have all completed to the pool, or
+     * runs it in the calling thread if the pool refuses it, since the
+     * script would otherwise wait for it forever.
+     */
+    void submit(ComponentTask task) {
+        try {
+            executor.submit(task);
+        } catch (RejectedExecutionException e) {
+            task.run();
+        }
+    }
+    
+    
+    /*
+     * Called by each task as it completes, whether or not it executed.
+     */
+    void taskCompleted(ComponentTask task) {
+        synchronized(scriptDependencyList) {
+            for (Iterator<ComponentTask> it = scriptDependencyList.iterator();
+                    it.hasNext(); ) {
+                if (it.next() == task) {
+                    pendingScriptDependencies.countDown();
+                }
+            }
         }
-        return false;
     }
     
     public abstract TaskScript newInstance();
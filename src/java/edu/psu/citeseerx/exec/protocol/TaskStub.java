@@ -13,6 +13,7 @@
 package edu.psu.citeseerx.exec.protocol;
 
 import java.util.*;
+import edu.psu.citeseerx.exec.com.lb.BackendStatistics;
 import edu.psu.citeseerx.exec.com.lb.BalanceSetException;
 import edu.psu.citeseerx.exec.com.lb.LoadBalancer;
 import edu.psu.citeseerx.exec.com.lb.LoadBalancerMonitor;
@@ -131,6 +132,27 @@ public class TaskStub extends Task implements LoadBalancerMonitor {
         notifyMonitors();
     }
     
+    private volatile List<BackendStatistics> statistics =
+        Collections.emptyList();
+    
+    /**
+     * @return the last statistics reported by the balancer for each of
+     * its backends: requests in flight, moving average latency and
+     * whether the backend is ejected.  Empty until a report is received.
+     */
+    public List<BackendStatistics> getStatistics() {
+        return statistics;
+    }
+    
+    public void notifyStatistics(LoadBalancer balancer,
+            List<BackendStatistics> statistics) {
+        this.statistics = Collections.unmodifiableList(
+                new ArrayList<BackendStatistics>(statistics));
+        for (BackendStatistics backend : statistics) {
+            System.out.println("STUB STATISTICS: "+name+" "+backend);
+        }
+    }
+    
     protected final ArrayList<TaskStubMonitor> monitors =
         new ArrayList<TaskStubMonitor>();
     
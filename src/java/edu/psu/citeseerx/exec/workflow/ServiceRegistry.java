@@ -15,7 +15,7 @@ package edu.psu.citeseerx.exec.workflow;
 import edu.psu.citeseerx.exec.com.ConnectionPool;
 import edu.psu.citeseerx.exec.com.ConnectionPoolConfiguration;
 import edu.psu.citeseerx.exec.com.lb.LoadBalancer;
-import edu.psu.citeseerx.exec.com.lb.RoundRobinBalancer;
+import edu.psu.citeseerx.exec.com.lb.LeastLoadedBalancer;
 import edu.psu.citeseerx.exec.protocol.TaskStub;
 import edu.psu.citeseerx.utility.ConfigurationManager;
 
@@ -59,7 +59,7 @@ public class ServiceRegistry {
         if (connectionResources.containsKey(name)) {
             balancer = connectionResources.get(name);
         } else {
-            balancer = new RoundRobinBalancer();
+            balancer = new LeastLoadedBalancer();
             connectionResources.put(name, balancer);
         }
         stub.setBalancer(balancer);
@@ -86,7 +86,7 @@ public class ServiceRegistry {
                 stub.setBalancer(connectionResources.get(name));
                 connectionResources.get(name).addPool(pool);
             } else {
-                LoadBalancer balancer = new RoundRobinBalancer();
+                LoadBalancer balancer = new LeastLoadedBalancer();
                 balancer.addPool(pool);
                 stub.setBalancer(balancer);
                 connectionResources.put(name, balancer);
@@ -23,6 +23,8 @@ import edu.psu.citeseerx.utility.*;
 /**
  * This class can be used to import preparsed documents from the filesystem,
  * without going through any web services for additional parsing.
+ * Directories are imported through a BatchIngestionPipeline, whose stages
+ * each run on their own threads.
  *
  * @author Isaac Councill
  * @version $Rev$ $Date$
@@ -34,6 +36,101 @@ public class BatchIngester {
     public void setDocumentEntryPoint(DocumentEntryPoint entryPoint) {
         this.entryPoint = entryPoint;
     } //- setDocumentEntryPoint
+    
+    
+    private int parseThreads = 2;
+    
+    /**
+     * Sets the number of threads parsing XML files (default 2).
+     * @param parseThreads
+     */
+    public void setParseThreads(int parseThreads) {
+        this.parseThreads = parseThreads;
+    } //- setParseThreads
+    
+    
+    private int dedupeThreads = 2;
+    
+    /**
+     * Sets the number of threads looking up duplicate checksums
+     * (default 2).
+     * @param dedupeThreads
+     */
+    public void setDedupeThreads(int dedupeThreads) {
+        this.dedupeThreads = dedupeThreads;
+    } //- setDedupeThreads
+    
+    
+    private int doiBatchSize = 100;
+    
+    /**
+     * Sets the largest number of DOIs requested at once (default 100).
+     * @param doiBatchSize
+     */
+    public void setDoiBatchSize(int doiBatchSize) {
+        this.doiBatchSize = doiBatchSize;
+    } //- setDoiBatchSize
+    
+    
+    private int fileThreads = 2;
+    
+    /**
+     * Sets the number of threads copying files to the repository
+     * (default 2).
+     * @param fileThreads
+     */
+    public void setFileThreads(int fileThreads) {
+        this.fileThreads = fileThreads;
+    } //- setFileThreads
+    
+    
+    private int loadThreads = 2;
+    
+    /**
+     * Sets the number of threads inserting documents into the database
+     * (default 2).
+     * @param loadThreads
+     */
+    public void setLoadThreads(int loadThreads) {
+        this.loadThreads = loadThreads;
+    } //- setLoadThreads
+    
+    
+    private int clusterThreads = 1;
+    
+    /**
+     * Sets the number of threads clustering citations (default 1).  The
+     * clusterer may merge clusters being updated by another thread, so
+     * this should stay at 1 unless the clusterer is known to allow it.
+     * @param clusterThreads
+     */
+    public void setClusterThreads(int clusterThreads) {
+        this.clusterThreads = clusterThreads;
+    } //- setClusterThreads
+    
+    
+    private int queueSize = 100;
+    
+    /**
+     * Sets the number of documents that may wait in front of each stage
+     * (default 100).
+     * @param queueSize
+     */
+    public void setQueueSize(int queueSize) {
+        this.queueSize = queueSize;
+    } //- setQueueSize
+    
+    
+    private String checkpointFile;
+    
+    /**
+     * Sets the file recording the progress of ingestDirectories, so that
+     * files already imported are skipped if it is run again (default none).
+     * @param checkpointFile
+     */
+    public void setCheckpointFile(String checkpointFile) {
+        this.checkpointFile = checkpointFile;
+    } //- setCheckpointFile
 
     /**
      * Ingest a new document based on information provided by the given XML file 
@@ -88,6 +185,7 @@ public class BatchIngester {
             System.exit(0);
         }
                 
+        List<File> xmlFiles = new ArrayList<File>();
         for (String dir : args) {
            File file = new File(dir);
            if (!file.isDirectory()) {
@@ -97,17 +195,24 @@ public class BatchIngester {
            }
            File[] files = file.listFiles(new XMLFileNameFilter());
            for (File source : files) {
-               System.out.println("trying "+source.getName());
                if (source.getName().endsWith(".xml")) {
-                   try {
-                       ingest(source.getAbsolutePath());
-                   } catch (Exception e) {
-                       e.printStackTrace();
-                   }
+                   xmlFiles.add(source);
                }
            }
         }
         
+        BatchIngestionPipeline pipeline =
+            new BatchIngestionPipeline(entryPoint,
+                    new int[] { parseThreads, dedupeThreads, fileThreads,
+                            loadThreads, clusterThreads },
+                    doiBatchSize, queueSize,
+                    (checkpointFile == null) ? null : new File(checkpointFile));
+        try {
+            pipeline.run(xmlFiles);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        
     }  //- ingestDirectories
     
 }  //- class BatchIngester
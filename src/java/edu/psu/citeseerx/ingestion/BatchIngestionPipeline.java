@@ -0,0 +1,560 @@
+/*
+ * Copyright 2007 Penn State University
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.psu.citeseerx.ingestion;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import edu.psu.citeseerx.domain.*;
+import edu.psu.citeseerx.ingestion.datamappers.BatchMapper;
+import edu.psu.citeseerx.ingestion.datamappers.CrawlMetaMapper;
+import edu.psu.citeseerx.utility.*;
+
+/**
+ * Runs the steps of DocumentEntryPoint.importDocument for many documents
+ * at once, as a chain of stages connected by bounded queues: parsing,
+ * checksum dedupe, DOI minting, file import, database load and
+ * clustering.  Each stage has its own threads, except DOI minting, which
+ * takes documents in batches and obtains all their DOIs in one request.
+ * <br><br>
+ * Documents whose checksums match one still in the pipeline are held
+ * back until that one is loaded, then mapped to its DOI as duplicates,
+ * just as they would have been had the files been imported one at a time.
+ * <br><br>
+ * If a checkpoint file is given, a line is appended to it when a document
+ * is loaded and when it is done, and documents already done are skipped
+ * when the pipeline is run again.  Documents loaded but not yet clustered
+ * are read back from the database and clustered.
+ *
+ * @version $Rev$ $Date$
+ */
+class BatchIngestionPipeline {
+
+    private static final String LOADED = "LOADED";
+    private static final String DONE = "DONE";
+
+    /* Marks the end of input in a stage queue. */
+    private static final Job END = new Job(null);
+
+    private final DocumentEntryPoint entryPoint;
+
+    private final Stage parse;
+    private final Stage dedupe;
+    private final Stage mint;
+    private final Stage files;
+    private final Stage load;
+    private final Stage cluster;
+    private final Stage[] stages;
+
+    /* Checksums of documents in the pipeline not yet loaded. */
+    private final Map<String,Job> claimed = new HashMap<String,Job>();
+
+    private final File checkpointFile;
+    private final Map<String,String> loaded = new HashMap<String,String>();
+    private final Set<String> done = new HashSet<String>();
+    private PrintWriter checkpoint;
+
+    private final AtomicInteger imported = new AtomicInteger();
+    private final AtomicInteger duplicates = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private int skipped = 0;
+
+
+    /**
+     * @param entryPoint
+     * @param threads the number of threads of the parse, dedupe, file
+     * import, load and cluster stages, in that order.
+     * @param doiBatchSize the largest number of DOIs obtained at once.
+     * @param queueSize the capacity of the queue in front of each stage.
+     * @param checkpointFile null for no checkpoint.
+     */
+    BatchIngestionPipeline(DocumentEntryPoint entryPoint, int[] threads,
+            int doiBatchSize, int queueSize, File checkpointFile) {
+        this.entryPoint = entryPoint;
+        this.checkpointFile = checkpointFile;
+
+        parse = new ParseStage(threads[0], queueSize);
+        dedupe = new DedupeStage(threads[1], queueSize);
+        mint = new MintStage(doiBatchSize, queueSize);
+        files = new FileStage(threads[2], queueSize);
+        load = new LoadStage(threads[3], queueSize);
+        cluster = new ClusterStage(threads[4], queueSize);
+        stages = new Stage[] { parse, dedupe, mint, files, load, cluster };
+        for (int i=0; i<stages.length-1; i++) {
+            stages[i].next = stages[i+1];
+        }
+
+    }  //- BatchIngestionPipeline
+
+
+    /**
+     * Ingests the given XML files and waits until all are done, then
+     * prints a report of each stage.
+     * @param xmlFiles
+     * @throws IOException if the checkpoint cannot be read or written.
+     * @throws InterruptedException
+     */
+    public void run(List<File> xmlFiles)
+    throws IOException, InterruptedException {
+        readCheckpoint();
+
+        long start = System.nanoTime();
+        List<Thread> workers = new ArrayList<Thread>();
+        for (Stage stage : stages) {
+            for (int i=0; i<stage.threads; i++) {
+                Thread worker = new Thread(stage, stage.name + "-" + i);
+                worker.start();
+                workers.add(worker);
+            }
+        }
+        try {
+            for (File file : xmlFiles) {
+                String path = file.getAbsolutePath();
+                if (done.contains(path)) {
+                    skipped++;
+                    continue;
+                }
+                parse.queue.put(new Job(path));
+            }
+        } finally {
+            parse.end();
+            for (Thread worker : workers) {
+                worker.join();
+            }
+            if (checkpoint != null) {
+                checkpoint.close();
+            }
+        }
+        report(System.nanoTime() - start);
+
+    }  //- run
+
+
+    private void readCheckpoint() throws IOException {
+        if (checkpointFile == null) {
+            return;
+        }
+        if (checkpointFile.exists()) {
+            BufferedReader reader =
+                new BufferedReader(new FileReader(checkpointFile));
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String[] fields = line.split("\t");
+                    if (fields.length == 3 && fields[0].equals(LOADED)) {
+                        loaded.put(fields[1], fields[2]);
+                    } else if (fields.length == 2 && fields[0].equals(DONE)) {
+                        done.add(fields[1]);
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        }
+        checkpoint = new PrintWriter(new FileWriter(checkpointFile, true));
+
+    }  //- readCheckpoint
+
+
+    private void checkpoint(String state, Job job) {
+        if (checkpoint == null) {
+            return;
+        }
+        synchronized(checkpoint) {
+            if (state.equals(LOADED)) {
+                checkpoint.println(LOADED + "\t" + job.xmlFile + "\t" +
+                        job.doi);
+            } else {
+                checkpoint.println(DONE + "\t" + job.xmlFile);
+            }
+            checkpoint.flush();
+        }
+
+    }  //- checkpoint
+
+
+    private void report(long elapsed) {
+        double seconds = elapsed / 1e9;
+        System.out.println("Imported " + imported + ", duplicates " +
+                duplicates + ", failed " + failed + ", skipped " + skipped +
+                " in " + Math.round(seconds) + "s");
+        System.out.println("stage\tthreads\tdocs\tfailed\tmean_ms\t" +
+                "busy_docs/s\tdocs/s");
+        for (Stage stage : stages) {
+            long count = stage.count.get();
+            double busy = stage.time.get() / 1e9;
+            System.out.println(stage.name + "\t" + stage.threads + "\t" +
+                    count + "\t" + stage.failures.get() + "\t" +
+                    ((count == 0) ? 0 : Math.round(busy * 1000 / count)) +
+                    "\t" + ((busy == 0) ? 0 :
+                        Math.round(count * stage.threads / busy)) +
+                    "\t" + Math.round(count / seconds));
+        }
+
+    }  //- report
+
+
+    /*
+     * Called once a document is in the database or found to duplicate
+     * one that is: documents held back for sharing its checksums are
+     * mapped to the same DOIs.  A null list means the document failed,
+     * and so do those held back for it.
+     */
+    private void resolve(Job job, List<String> dois) {
+        List<Job> followers;
+        synchronized(claimed) {
+            for (CheckSum sum : job.doc.getFileInfo().getCheckSums()) {
+                if (claimed.get(sum.getSha1()) == job) {
+                    claimed.remove(sum.getSha1());
+                }
+            }
+            followers = job.followers;
+            job.followers = null;
+        }
+        if (followers == null) {
+            return;
+        }
+        for (Job follower : followers) {
+            if (dois == null) {
+                fail(follower, new IngestionException(
+                        "Duplicate of failed document " + job.xmlFile));
+                continue;
+            }
+            try {
+                mapDuplicate(follower, dois);
+            } catch (Exception e) {
+                fail(follower, e);
+            }
+        }
+
+    }  //- resolve
+
+
+    private void mapDuplicate(Job job, List<String> dois) throws Exception {
+        for (String doi : dois) {
+            entryPoint.updateHubMapping(job.doc, doi);
+            System.err.println(job.xmlFile + " is duplicate: " + doi);
+        }
+        duplicates.incrementAndGet();
+        checkpoint(DONE, job);
+        System.out.println("Imported " + job.xmlFile);
+
+    }  //- mapDuplicate
+
+
+    private void fail(Job job, Exception e) {
+        failed.incrementAndGet();
+        System.err.println("Failed " + job.xmlFile + ": " + e);
+        e.printStackTrace();
+
+    }  //- fail
+
+
+    /**
+     * One document on its way through the pipeline.
+     */
+    private static class Job {
+
+        final String xmlFile;
+        Document doc;
+        String doi;
+
+        /* Documents sharing a checksum with this one, held back until
+         * it is loaded; null once it is. */
+        List<Job> followers = new ArrayList<Job>();
+
+        Job(String xmlFile) {
+            this.xmlFile = xmlFile;
+        }
+
+        String getFileBase() {
+            return FileUtils.stripExtension(xmlFile);
+        }
+
+    }  //- class Job
+
+
+    /**
+     * A step of the pipeline, run by its own threads, taking documents
+     * from its queue and passing them on to the next stage.
+     */
+    private abstract class Stage implements Runnable {
+
+        final String name;
+        final int threads;
+        final int batchSize;
+        final BlockingQueue<Job> queue;
+        Stage next;
+
+        final AtomicLong count = new AtomicLong();
+        final AtomicLong failures = new AtomicLong();
+        final AtomicLong time = new AtomicLong();
+        private final AtomicInteger running;
+
+        Stage(String name, int threads, int batchSize, int queueSize) {
+            this.name = name;
+            this.threads = Math.max(threads, 1);
+            this.batchSize = Math.max(batchSize, 1);
+            this.queue = new ArrayBlockingQueue<Job>(queueSize);
+            this.running = new AtomicInteger(this.threads);
+        }
+
+        /*
+         * Processes one document, returning the stage to which it goes
+         * next, or null if it is done.
+         */
+        abstract Stage process(Job job) throws Exception;
+
+        /*
+         * Processes the documents taken together from the queue.  Unless
+         * overridden, they are processed one by one.
+         */
+        void process(List<Job> jobs) throws InterruptedException {
+            for (Job job : jobs) {
+                long start = System.nanoTime();
+                Stage target = null;
+                try {
+                    target = process(job);
+                } catch (Exception e) {
+                    failed(job, e);
+                    continue;
+                } finally {
+                    time.addAndGet(System.nanoTime() - start);
+                    count.incrementAndGet();
+                }
+                if (target != null) {
+                    target.queue.put(job);
+                }
+            }
+        }
+
+        void failed(Job job, Exception e) {
+            failures.incrementAndGet();
+            fail(job, e);
+            if (job.doc != null) {
+                resolve(job, null);
+            }
+        }
+
+        /* Tells the threads of this stage that no more input will come. */
+        void end() throws InterruptedException {
+            for (int i=0; i<threads; i++) {
+                queue.put(END);
+            }
+        }
+
+        public void run() {
+            List<Job> batch = new ArrayList<Job>(batchSize);
+            try {
+                boolean ended = false;
+                while (!ended) {
+                    batch.clear();
+                    batch.add(queue.take());
+                    queue.drainTo(batch, batchSize - 1);
+                    int ends = 0;
+                    for (Iterator<Job> it = batch.iterator(); it.hasNext(); ) {
+                        if (it.next() == END) {
+                            it.remove();
+                            ends++;
+                        }
+                    }
+                    // Markers taken for other threads are put back.
+                    for (int i=1; i<ends; i++) {
+                        queue.put(END);
+                    }
+                    ended = (ends > 0);
+                    if (!batch.isEmpty()) {
+                        process(batch);
+                    }
+                }
+            } catch (InterruptedException e) {
+                System.err.println(Thread.currentThread().getName() +
+                        " interrupted");
+            } finally {
+                if (running.decrementAndGet() == 0 && next != null) {
+                    try {
+                        next.end();
+                    } catch (InterruptedException e) {
+                        /* ignore */
+                    }
+                }
+            }
+        }
+
+    }  //- class Stage
+
+
+    private class ParseStage extends Stage {
+
+        ParseStage(int threads, int queueSize) {
+            super("parse", threads, 1, queueSize);
+        }
+
+        Stage process(Job job) throws Exception {
+            String doi = loaded.get(job.xmlFile);
+            if (doi != null) {
+                // Loaded before an interruption; only clustering is left.
+                job.doi = doi;
+                job.doc = entryPoint.getLoadedDocument(doi);
+                return cluster;
+            }
+
+            FileInputStream in = new FileInputStream(job.xmlFile);
+            try {
+                job.doc = BatchMapper.map(in);
+            } finally {
+                in.close();
+            }
+            FileInputStream met =
+                new FileInputStream(job.getFileBase() + ".met");
+            try {
+                CrawlMetaMapper.map(job.doc, met);
+            } finally {
+                met.close();
+            }
+            return next;
+        }
+
+    }  //- class ParseStage
+
+
+    private class DedupeStage extends Stage {
+
+        DedupeStage(int threads, int queueSize) {
+            super("dedupe", threads, 1, queueSize);
+        }
+
+        Stage process(Job job) throws Exception {
+            List<CheckSum> sums = job.doc.getFileInfo().getCheckSums();
+            synchronized(claimed) {
+                for (CheckSum sum : sums) {
+                    Job owner = claimed.get(sum.getSha1());
+                    if (owner != null) {
+                        owner.followers.add(job);
+                        return null;
+                    }
+                }
+                for (CheckSum sum : sums) {
+                    claimed.put(sum.getSha1(), job);
+                }
+            }
+
+            List<CheckSum> duplicateEntries = entryPoint.findDuplicates(job.doc);
+            if (duplicateEntries.isEmpty()) {
+                return next;
+            }
+            List<String> dois = new ArrayList<String>();
+            for (CheckSum dup : duplicateEntries) {
+                dois.add(dup.getDOI());
+            }
+            mapDuplicate(job, dois);
+            resolve(job, dois);
+            return null;
+        }
+
+    }  //- class DedupeStage
+
+
+    private class MintStage extends Stage {
+
+        MintStage(int batchSize, int queueSize) {
+            super("doi", 1, batchSize, queueSize);
+        }
+
+        Stage process(Job job) throws Exception {
+            job.doi = entryPoint.getDOIs(1)[0];
+            job.doc.setDatum(Document.DOI_KEY, job.doi);
+            return next;
+        }
+
+        void process(List<Job> jobs) throws InterruptedException {
+            long start = System.nanoTime();
+            String[] dois;
+            try {
+                dois = entryPoint.getDOIs(jobs.size());
+            } catch (Exception e) {
+                for (Job job : jobs) {
+                    failed(job, e);
+                }
+                return;
+            } finally {
+                time.addAndGet(System.nanoTime() - start);
+                count.addAndGet(jobs.size());
+            }
+            for (int i=0; i<jobs.size(); i++) {
+                Job job = jobs.get(i);
+                job.doi = dois[i];
+                job.doc.setDatum(Document.DOI_KEY, job.doi);
+                next.queue.put(job);
+            }
+        }
+
+    }  //- class MintStage
+
+
+    private class FileStage extends Stage {
+
+        FileStage(int threads, int queueSize) {
+            super("files", threads, 1, queueSize);
+        }
+
+        Stage process(Job job) throws Exception {
+            entryPoint.importFiles(job.doc, job.getFileBase());
+            return next;
+        }
+
+    }  //- class FileStage
+
+
+    private class LoadStage extends Stage {
+
+        LoadStage(int threads, int queueSize) {
+            super("load", threads, 1, queueSize);
+        }
+
+        Stage process(Job job) throws Exception {
+            entryPoint.loadDocument(job.doc);
+            checkpoint(LOADED, job);
+            resolve(job, Collections.singletonList(job.doi));
+            return next;
+        }
+
+    }  //- class LoadStage
+
+
+    private class ClusterStage extends Stage {
+
+        ClusterStage(int threads, int queueSize) {
+            super("cluster", threads, 1, queueSize);
+        }
+
+        Stage process(Job job) throws Exception {
+            entryPoint.clusterDocument(job.doc);
+            imported.incrementAndGet();
+            checkpoint(DONE, job);
+            System.out.println("Imported " + job.xmlFile);
+            return null;
+        }
+
+        void failed(Job job, Exception e) {
+            // Loaded already: the checkpoint has it to retry clustering.
+            failures.incrementAndGet();
+            fail(job, e);
+        }
+
+    }  //- class ClusterStage
+
+}  //- class BatchIngestionPipeline
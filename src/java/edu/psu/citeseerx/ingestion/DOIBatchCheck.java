@@ -0,0 +1,97 @@
+/*
+ * Copyright 2007 Penn State University
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.psu.citeseerx.ingestion;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.springframework.beans.factory.ListableBeanFactory;
+
+import edu.psu.citeseerx.ingestion.ws.DOIClient;
+import edu.psu.citeseerx.loaders.ContextReader;
+import edu.psu.citeseerx.utility.CSXConstants;
+
+/**
+ * Checks the DOI requests made by batch ingestion against the DOIServer
+ * configured in the context.  It takes batches the way the DOI stage of
+ * BatchIngester does, through {@link DocumentEntryPoint#getDOIs(int)},
+ * then as many DOIs one at a time from the doiClient, which hands them
+ * out from batches of its own batchSize.  Every request must return as
+ * many DOIs as asked for, none of them empty, and no DOI may be returned
+ * twice.  The DOIs taken are used up.
+ * <br><br>
+ * Usage: DOIBatchCheck [batches [batch_size]]
+ *
+ * @version $Rev$ $Date$
+ */
+public class DOIBatchCheck {
+
+    public static void main(String[] args) throws Exception {
+        int batches = (args.length > 0) ? Integer.parseInt(args[0]) : 10;
+        int batchSize = (args.length > 1) ? Integer.parseInt(args[1]) : 16;
+
+        ListableBeanFactory factory = ContextReader.loadContext();
+        DocumentEntryPoint entryPoint =
+            (DocumentEntryPoint)factory.getBean("documentEntryPoint");
+        DOIClient doiClient = (DOIClient)factory.getBean("doiClient");
+
+        if (!check(entryPoint, doiClient, batches, batchSize)) {
+            System.exit(1);
+        }
+    } //- main
+
+
+    /**
+     * @return true if every DOI was new and not empty.
+     * @throws Exception if a request fails or returns the wrong number
+     * of DOIs.
+     */
+    static boolean check(DocumentEntryPoint entryPoint, DOIClient doiClient,
+            int batches, int batchSize) throws Exception {
+        Set<String> seen = new HashSet<String>();
+        int bad = 0;
+
+        long start = System.currentTimeMillis();
+        for (int i=0; i<batches; i++) {
+            for (String doi : entryPoint.getDOIs(batchSize)) {
+                bad += record(seen, doi);
+            }
+        }
+        long batched = System.currentTimeMillis() - start;
+
+        start = System.currentTimeMillis();
+        for (int i=0; i<batches*batchSize; i++) {
+            bad += record(seen,
+                    doiClient.getDOI(CSXConstants.ARTICLE_SUB_ID));
+        }
+        long single = System.currentTimeMillis() - start;
+
+        System.out.println("batched: "+batches+" x "+batchSize+" DOIs in "+
+                batched+" ms");
+        System.out.println("one at a time: "+(batches*batchSize)+
+                " DOIs in "+single+" ms");
+        System.out.println("distinct DOIs: "+seen.size()+
+                ", empty or repeated: "+bad);
+        return bad == 0;
+    } //- check
+
+
+    private static int record(Set<String> seen, String doi) {
+        if (doi == null || doi.length() == 0 || !seen.add(doi)) {
+            System.out.println("Bad DOI: "+doi);
+            return 1;
+        }
+        return 0;
+    } //- record
+
+}  //- class DOIBatchCheck
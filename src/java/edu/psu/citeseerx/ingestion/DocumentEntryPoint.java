@@ -98,15 +98,9 @@ class DocumentEntryPoint {
             //String doi = doibase+counter++;
             doc.setDatum(Document.DOI_KEY, doi);
             
-            fileIngester.importFileData(doc, fileBase);
-            
-            csxdao.insertDocumentEntry(doc);
-            csxdao.importDocument(doc);
-            
-            clusterer.clusterDocument(doc);
-            
-            ThinDoc cluster = citedao.getThinDoc(doc.getClusterID());
-            inferenceUpdater.updateDocument(cluster, doi);
+            importFiles(doc, fileBase);
+            loadDocument(doc);
+            clusterDocument(doc);
             
         }
         for (CheckSum dup : duplicateEntries) {
@@ -118,6 +112,51 @@ class DocumentEntryPoint {
     }  //- importDocument
     
     
+    /*
+     * The steps of importDocument, for callers that run them separately,
+     * such as the BatchIngester pipeline.  They must be called in order
+     * for each document, once its DOI is set.
+     */
+    
+    /**
+     * Obtains new DOIs for n documents in a single request.
+     */
+    protected String[] getDOIs(int n) throws Exception {
+        return doiClient.getDOIs(CSXConstants.ARTICLE_SUB_ID, n);
+    }  //- getDOIs
+    
+    
+    protected void importFiles(Document doc, String fileBase)
+    throws Exception {
+        fileIngester.importFileData(doc, fileBase);
+    }  //- importFiles
+    
+    
+    protected void loadDocument(Document doc) throws Exception {
+        csxdao.insertDocumentEntry(doc);
+        csxdao.importDocument(doc);
+    }  //- loadDocument
+    
+    
+    protected void clusterDocument(Document doc) throws Exception {
+        clusterer.clusterDocument(doc);
+        
+        ThinDoc cluster = citedao.getThinDoc(doc.getClusterID());
+        inferenceUpdater.updateDocument(cluster,
+                doc.getDatum(Document.DOI_KEY));
+    }  //- clusterDocument
+    
+    
+    /**
+     * Reads back a document already loaded by loadDocument, with its
+     * citations, so that it can be clustered after an interruption.
+     */
+    protected Document getLoadedDocument(String doi) {
+        return csxdao.getDocumentFromDB(doi, true, false, true, false, false,
+                false);
+    }  //- getLoadedDocument
+    
+    
     protected List<CheckSum> findDuplicates(Document doc)
     throws SQLException {
 
@@ -12,6 +12,13 @@
  */
 package edu.psu.citeseerx.ingestion.ws;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
 import javax.xml.namespace.QName;
 import javax.xml.rpc.*;
 
@@ -29,6 +36,18 @@ public class DOIClient {
         this.endpointAddress = endpointAddress;
     }
 
+    private int batchSize = 1;
+    
+    /**
+     * Sets the number of DOIs fetched from the DOIServer at a time by
+     * getDOI, which hands them out one by one.  DOIs fetched but not
+     * handed out when the client is discarded are never used.
+     * @param batchSize (default 1)
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    } //- setBatchSize
+
     private String namespace = "http://doi.citeseerx.psu.edu";
     
     /**
@@ -54,13 +73,88 @@ public class DOIClient {
     }  //- DOIClient
     
     
+    /* DOIs fetched but not yet handed out, by type. */
+    private final Map<Integer,LinkedList<String>> fetched =
+        new HashMap<Integer,LinkedList<String>>();
+    
     /**
-     * Gets a new DOI from the DOIServer.
+     * Gets a new DOI, from those already fetched from the DOIServer if
+     * the batch size is over 1.
      * @param doiType type of DOI as defined in CSXConstants
      * @return a new DOI from the DOIServer.
      * @throws Exception
      */
     public String getDOI(int doiType) throws Exception {
+        if (batchSize <= 1) {
+            return fetchDOI(doiType);
+        }
+        synchronized(fetched) {
+            LinkedList<String> dois = fetched.get(doiType);
+            if (dois == null) {
+                dois = new LinkedList<String>();
+                fetched.put(doiType, dois);
+            }
+            if (dois.isEmpty()) {
+                for (String doi : getDOIs(doiType, batchSize)) {
+                    dois.add(doi);
+                }
+            }
+            return dois.removeFirst();
+        }
+        
+    }  //- getDOI
+    
+    
+    /**
+     * Gets new DOIs from the DOIServer in a single call.  The DOIServer
+     * answers with one return element per DOI, which the JAX-RPC runtime
+     * may hand back as a single value, an array or a list, or as the first
+     * value with the others among the output values; all are accepted.
+     * @param doiType type of DOI as defined in CSXConstants
+     * @param n number of DOIs
+     * @return n new DOIs from the DOIServer.
+     * @throws Exception
+     */
+    public String[] getDOIs(int doiType, int n) throws Exception {
+        
+        Call call = service.createCall();
+
+        call.setTargetEndpointAddress(endpointAddress);
+        call.setOperationName(new QName(namespace, "getDOIs"));
+        
+        Object result = call.invoke(
+                new Object[] { new Integer(doiType), new Integer(n) });
+        List<String> dois = new ArrayList<String>(n);
+        addValues(dois, result);
+        List<?> outputs = call.getOutputValues();
+        if (outputs != null) {
+            addValues(dois, outputs);
+        }
+        if (dois.size() != n) {
+            throw new Exception("DOIServer returned " + dois.size() +
+                    " DOIs, expected " + n);
+        }
+        return dois.toArray(new String[n]);
+        
+    }  //- getDOIs
+    
+    
+    private static void addValues(List<String> dois, Object value) {
+        if (value instanceof Object[]) {
+            for (Object element : (Object[])value) {
+                addValues(dois, element);
+            }
+        } else if (value instanceof Collection<?>) {
+            for (Object element : (Collection<?>)value) {
+                addValues(dois, element);
+            }
+        } else if (value != null) {
+            dois.add(value.toString());
+        }
+    }  //- addValues
+    
+    
+    private String fetchDOI(int doiType) throws Exception {
         
         Call call = service.createCall();
 
@@ -71,6 +165,6 @@ public class DOIClient {
         
         return doi;
         
-    }  //- getDOI
+    }  //- fetchDOI
     
 }  //- class DOIClient
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2007 Penn State University
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.psu.citeseerx.loaders;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.springframework.beans.factory.ListableBeanFactory;
+
+import edu.psu.citeseerx.citematch.keybased.BulkKeyMatcher;
+
+/**
+ * Loads the bulkCitationClusterer bean and writes citation graph load files
+ * for the whole corpus to the directory given as the first argument,
+ * optionally starting from the DOI given as the second.
+ * @version $$Rev$$ $$Date$$
+ */
+public class BulkClusterLoader {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Please specify an output directory and, " +
+                    "optionally, a starting ID (default 0.0.0.0.0)");
+            System.exit(1);
+        }
+        String start = (args.length > 1) ? args[1] : "0.0.0.0.0";
+        ListableBeanFactory factory = ContextReader.loadContext();
+        BulkKeyMatcher matcher =
+            (BulkKeyMatcher)factory.getBean("bulkCitationClusterer");
+        try {
+            matcher.buildAll(start, new File(args[0]));
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    } //- main
+} //- class BulkClusterLoader
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2007 Penn State University
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.psu.citeseerx.loaders;
+
+import java.io.IOException;
+
+import org.springframework.beans.factory.ListableBeanFactory;
+
+import edu.psu.citeseerx.updates.IndexUpdateManager;
+
+/**
+ * Loads the indexUpdateManager bean and runs indexInCollection, optionally
+ * resuming after the cluster ID given as the first argument.
+ * @version $$Rev$$ $$Date$$
+ */
+public class CollectionIndexLoader {
+
+    public static void main(String[] args) throws IOException {
+        ListableBeanFactory factory = ContextReader.loadContext();
+        IndexUpdateManager updater =
+            (IndexUpdateManager)factory.getBean("indexUpdateManager");
+        if (args.length > 0) {
+            updater.setStartID(Long.parseLong(args[0]));
+        }
+        try {
+            updater.indexInCollection();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    } //- main
+} //- class CollectionIndexLoader
@@ -13,20 +13,13 @@
 package edu.psu.citeseerx.myciteseer.updates;
 
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
-import java.io.Reader;
-import java.io.StringReader;
-import java.io.StringWriter;
-import java.io.Writer;
-import java.net.HttpURLConnection;
-import java.net.ProtocolException;
 import java.net.URL;
 import java.util.Date;
 import java.util.List;
 
 import edu.psu.citeseerx.myciteseer.domain.Account;
 import edu.psu.citeseerx.myciteseer.domain.logic.MyCiteSeerFacade;
+import edu.psu.citeseerx.updates.SolrUpdateWriter;
 
 /**
  * Utilities for updating a solr index to be consistent to the myciteseerx
@@ -55,14 +48,14 @@ import edu.psu.citeseerx.myciteseer.domain.logic.MyCiteSeerFacade;
  */
 public class UserIndexUpdateManager {
 	
-	private URL solrUpdateUrl;
+	private SolrUpdateWriter solr;
 
 	/**
 	 * Sets the update URL to the solr server
 	 * @param solrUpdateUrl Uptade URL to a solr server
 	 */
 	public void setSolrUpdateUrl(URL solrUpdateUrl) {
-		this.solrUpdateUrl = solrUpdateUrl;
+		this.solr = new SolrUpdateWriter(solrUpdateUrl);
 	} //- setSolrUpdateUrl
 	
 	private MyCiteSeerFacade myciteseer;
@@ -102,7 +95,7 @@ public class UserIndexUpdateManager {
 			}
 		}while (!finished);
 		
-		sendOptimize();
+		solr.optimize();
 		
 	} //- indexAll
 	
@@ -141,9 +134,9 @@ public class UserIndexUpdateManager {
 		 * internal ids needs to be added to this list.
 		 */
 		List<Long> toDelete = myciteseer.getDisabled(currentTime);
-		processDeletions(toDelete);
+		solr.delete(toDelete);
 		myciteseer.setUsersLastIndexTime(currentTime);
-		sendOptimize();
+		solr.optimize();
 	} //- indexSinceLastUpdate
 	
 
@@ -155,205 +148,86 @@ public class UserIndexUpdateManager {
 	 */
 	private void indexUsers(List<Account> toIndex) throws IOException {
 		
-		StringBuffer xmlBuffer = new StringBuffer();
-        xmlBuffer.append("<add>");
-        int nBatch = 0;
-        
-        for(Account user : toIndex) {
-        	if (user.isEnabled()) {
-        		buildDocEntry(user, xmlBuffer);
-        	}
-        	if (++nBatch>=200) {
-                xmlBuffer.append("</add>");
-                sendPost(xmlBuffer.toString());
-                xmlBuffer = new StringBuffer();
-                xmlBuffer.append("<add>");
-                nBatch = 0;
-            }
-            indexed++;
-        }
-        if (nBatch>0) {
-            xmlBuffer.append("</add>");
-            sendPost(xmlBuffer.toString());
-        }
+		SolrUpdateWriter.AddStream stream = null;
+		try {
+			for(Account user : toIndex) {
+				if (stream == null) {
+					stream = solr.openAdd();
+				}
+				if (user.isEnabled()) {
+					buildDocEntry(user, stream);
+				}
+				if (stream.getDocCount()>=200) {
+					stream.close();
+					stream = null;
+				}
+				indexed++;
+			}
+			if (stream != null) {
+				stream.close();
+			}
+		} catch (IOException e) {
+			if (stream != null) {
+				stream.abort();
+			}
+			throw(e);
+		}
         
-        sendCommit();
+        solr.commit();
         System.out.println("commit "+indexed);
 		
 	} //- indexUsers
 	
 	/*
-	 * Builds a record in Solr update syntax corresponding to the
+	 * Writes a record in Solr update syntax corresponding to the
      * supplied parameters.
 	 * @param user
-	 * @param buffer
+	 * @param stream
 	 */
-	private void buildDocEntry(Account user, StringBuffer buffer) {
-		buffer.append("<doc>");
-		buffer.append("<field name=\"id\">");
-        buffer.append(user.getInternalId());
-        buffer.append("</field>");
-		buffer.append("<field name=\"userid\">");
-        buffer.append(user.getUsername());
-        buffer.append("</field>");
+	private void buildDocEntry(Account user, SolrUpdateWriter.AddStream stream)
+	throws IOException {
+		stream.startDoc();
+		stream.addField("id", user.getInternalId());
+		stream.addField("userid", user.getUsername());
         
         String fullName = "";
         fullName = user.getFirstName();
-        buffer.append("<field name=\"firstName\">");
-        buffer.append(user.getFirstName());
-        buffer.append("</field>");
+        stream.addField("firstName", user.getFirstName());
         
         String middleName = user.getMiddleName();
         if (middleName != null && middleName.length() > 0) {
-        	buffer.append("<field name=\"middleName\">");
-            buffer.append(middleName);
-            buffer.append("</field>");
+        	stream.addField("middleName", middleName);
             fullName += " " + middleName;
         }
-        buffer.append("<field name=\"lastName\">");
-        buffer.append(user.getLastName());
-        buffer.append("</field>");
+        stream.addField("lastName", user.getLastName());
         fullName += " " + user.getLastName();
         
-        buffer.append("<field name=\"fullName\">");
-        buffer.append(fullName);
-        buffer.append("</field>");
+        stream.addField("fullName", fullName);
         
         String affil1 = user.getAffiliation1();
         if (affil1 != null && affil1.length() > 0) {
-        	buffer.append("<field name=\"affil1\">");
-            buffer.append(affil1);
-            buffer.append("</field>");
+        	stream.addField("affil1", affil1);
         }
         
         String affil2 = user.getAffiliation2();
         if (affil2 != null && affil2.length() > 0) {
-        	buffer.append("<field name=\"affil2\">");
-            buffer.append(affil2);
-            buffer.append("</field>");
+        	stream.addField("affil2", affil2);
         }
         
         String country = user.getCountry();
         if (country != null && country.length() > 0) {
-        	buffer.append("<field name=\"country\">");
-            buffer.append(country);
-            buffer.append("</field>");
+        	stream.addField("country", country);
         }
         
         String province = user.getProvince();
         if (province != null && province.length() > 0) {
-        	buffer.append("<field name=\"province\">");
-            buffer.append(province);
-            buffer.append("</field>");
+        	stream.addField("province", province);
         }
         
         String webPage = user.getWebPage();
         if (webPage != null && webPage.length() > 0) {
-        	buffer.append("<field name=\"webpage\">");
-            buffer.append(webPage);
-            buffer.append("</field>");
+        	stream.addField("webpage", webPage);
         }
-		buffer.append("</doc>");
+		stream.endDoc();
 	} //- buildDocEntry
-	
-	/*
-	 * Sends commit command to Solr server
-	 * @throws IOException
-	 */
-	private void sendCommit() throws IOException {
-        sendPost("<commit waitFlush=\"false\" waitSearcher=\"false\"/>");
-    } //- sendCommit
-	
-	/*
-	 * Sends optimize command to Solr server
-	 * @throws IOException
-	 */
-	private void sendOptimize() throws IOException {
-        sendPost("<optimize/>");
-    } //- sendOptimize
-	
-	/*
-	 * Post a command to a Solr server
-	 * @param str
-	 * @throws IOException
-	 */
-	private void sendPost(String str) throws IOException {
-
-        HttpURLConnection conn =
-            (HttpURLConnection)solrUpdateUrl.openConnection();
-        try {
-            conn.setRequestMethod("POST");
-        } catch (ProtocolException e) { /* unlikely... */ }
-        conn.setDoOutput(true);
-        conn.setDoInput(true);
-        conn.setUseCaches(false);
-        conn.setAllowUserInteraction(false);
-        conn.setRequestProperty("Content-Type", "text/xml; charset=UTF-8");
-        
-        Writer wr = new OutputStreamWriter(conn.getOutputStream());
-        
-        try {
-            pipe(new StringReader(str), wr);
-        } catch (IOException e) {
-            throw(e);
-        } finally {
-            try { wr.close(); } catch (Exception e) { }
-        }
-        
-        Reader reader = new InputStreamReader(conn.getInputStream());
-        try {
-            StringWriter output = new StringWriter();
-            pipe(reader,output);
-            checkExpectedResponse(output.toString());
-        } catch (IOException e) {
-            throw(e);
-        } finally {
-            try { reader.close(); } catch (Exception e) { }
-        }
-        
-    }  //- sendPost
-	
-	private static void pipe(Reader reader, Writer writer) throws IOException {
-        char[] buf = new char[1024];
-        int read = 0;
-        while ((read = reader.read(buf)) >= 0) {
-            writer.write(buf, 0, read);
-        }
-        writer.flush();
-        
-    }  //- pipe
-	
-	private static final String expectedResponse =
-        "<int name=\"status\">0</int>";
-    
-	/*
-	 * Checks the Solr server response. 
-	 * @param response
-	 * @throws IOException
-	 */
-    private static void checkExpectedResponse(String response)
-    throws IOException {
-        if (response.indexOf(expectedResponse) < 0) {
-            throw new IOException("Unexpected response from solr: "+response);
-        }
-    } //- checkExpectedResponse
-    
-    /*
-     * deletes from the index users who has been deleted/disabled.
-     * @param list
-     * @throws IOException
-     */
-    private void processDeletions(List<Long> list) throws IOException {
-        if (list.isEmpty()) {
-            return;
-        }
-        for (Object o : list) {
-            String del = "<delete><id>";
-            del += (Long)o;
-            del += "</id></delete>";
-            sendPost(del);  // Have to send multiple posts due to Solr bug.
-        }
-        sendCommit();
-        
-    }  //- processDeletions
 } //- UserIndexUpdateManager
@@ -0,0 +1,214 @@
+/*
+ * Copyright 2007 Penn State University
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.psu.citeseerx.oai;
+
+import java.io.OutputStream;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import edu.psu.citeseerx.domain.Document;
+import edu.psu.citeseerx.utility.DateUtils;
+
+/**
+ * Writes an OAI-PMH response directly to a stream, element by element, as
+ * it is produced.  The output is the same as that of the document built
+ * with {@link OAIUtils}, without holding the whole response in memory.
+ * <br><br>
+ * Calls must follow the structure of the response: startResponse, then
+ * the content of the verb, then endResponse.
+ * @version $Rev$ $Date$
+ */
+public class OAIStreamWriter {
+
+    private static final XMLOutputFactory factory =
+        XMLOutputFactory.newInstance();
+
+    private final XMLStreamWriter writer;
+
+    /**
+     * @param out stream the response is written to, in UTF-8. It is not
+     * closed by this writer.
+     * @throws XMLStreamException
+     */
+    public OAIStreamWriter(OutputStream out) throws XMLStreamException {
+        synchronized(factory) {
+            writer = factory.createXMLStreamWriter(out, "UTF-8");
+        }
+    } //- OAIStreamWriter
+
+    /**
+     * Writes the XML declaration, the root, responseDate and request
+     * elements.
+     * @param responseDate
+     * @param baseURL
+     * @param attributes Attributes of the request element. It can be null
+     * or an empty map.
+     * @throws XMLStreamException
+     */
+    public void startResponse(Date responseDate, String baseURL,
+            Map<String, String> attributes) throws XMLStreamException {
+        writer.writeStartDocument("UTF-8", "1.0");
+        writer.writeStartElement(OAIUtils.OAI_PMH_ROOT);
+        writer.writeDefaultNamespace(OAIUtils.OAI_PMH_NAMESPACE);
+        writer.writeNamespace("xsi", OAIUtils.XML_SCHEMA_INSTANCE);
+        writer.writeAttribute("xsi", OAIUtils.XML_SCHEMA_INSTANCE,
+                "schemaLocation", OAIUtils.OAI_SCHEMA_LOCATION);
+        writeElement("responseDate", DateUtils.formatRFC3339(responseDate));
+        writer.writeStartElement("request");
+        if (attributes != null) {
+            for (Map.Entry<String, String> attribute : attributes.entrySet()) {
+                writer.writeAttribute(attribute.getKey(),
+                        attribute.getValue());
+            }
+        }
+        writeText(baseURL);
+        writer.writeEndElement();
+    } //- startResponse
+
+    /**
+     * Writes an error element
+     * @param code
+     * @param message
+     * @throws XMLStreamException
+     */
+    public void writeError(String code, String message)
+    throws XMLStreamException {
+        writer.writeStartElement("error");
+        writer.writeAttribute("code", code);
+        writeText(message);
+        writer.writeEndElement();
+    } //- writeError
+
+    /**
+     * Opens the element holding the content of a verb, such as ListRecords.
+     * It is closed by the next call to endVerb.
+     * @param verb
+     * @throws XMLStreamException
+     */
+    public void startVerb(String verb) throws XMLStreamException {
+        writer.writeStartElement(verb);
+    } //- startVerb
+
+    /**
+     * Closes the element opened by startVerb
+     * @throws XMLStreamException
+     */
+    public void endVerb() throws XMLStreamException {
+        writer.writeEndElement();
+    } //- endVerb
+
+    /**
+     * Writes a header element
+     * @param identifier
+     * @param dateStamp
+     * @param granularity
+     * @throws XMLStreamException
+     */
+    public void writeRecordHeader(String identifier, Date dateStamp,
+            String granularity) throws XMLStreamException {
+        writer.writeStartElement("header");
+        writeElement("identifier", identifier);
+        writeElement("datestamp",
+                OAIUtils.buildDatestamp(dateStamp, granularity));
+        writer.writeEndElement();
+    } //- writeRecordHeader
+
+    /**
+     * Writes a record element with the information of a CiteSeerX document.
+     * The metadata written depends on the metadataFormat parameter.
+     * @see OAIUtils#addRecord(org.jdom.Element, String, List, List, String,
+     * Document, String, String, int, String, Date)
+     * @throws XMLStreamException
+     */
+    public void writeRecord(String viewDocURL, List<String>cited,
+            List<String>citing, String rights, Document doc,
+            String contributor, String granularity, int metadataFormat,
+            String oaiIdentifier, Date dateStamp) throws XMLStreamException {
+        writer.writeStartElement("record");
+        writeRecordHeader(oaiIdentifier, dateStamp, granularity);
+        if (metadataFormat == OAIUtils.OAI_DC_METADATAFORMAT) {
+            /*
+             * Since OAI_DC doesn't allow qualified elements, for oai_dc we
+             * just put the cited documents and not the citing.
+             */
+            writeOAIDC(viewDocURL, cited, null, rights, doc, contributor,
+                    granularity);
+        }
+        writer.writeEndElement();
+    } //- writeRecord
+
+    /**
+     * Writes a resumption token element
+     * @param token
+     * @throws XMLStreamException
+     */
+    public void writeResumptionToken(String token) throws XMLStreamException {
+        writeElement("resumptionToken", token);
+    } //- writeResumptionToken
+
+    /**
+     * Closes the root element and the document and flushes the output.
+     * @throws XMLStreamException
+     */
+    public void endResponse() throws XMLStreamException {
+        writer.writeEndDocument();
+        writer.flush();
+        writer.close();
+    } //- endResponse
+
+    /*
+     * Writes a metadata element holding the oai_dc record of the document
+     */
+    private void writeOAIDC(String viewDocURL, List<String>cited,
+            List<String>citing, String rights, Document doc,
+            String contributor, String granularity)
+    throws XMLStreamException {
+        writer.writeStartElement("metadata");
+        writer.writeStartElement("oai_dc", "dc", OAIUtils.OAI_DC_NAMESPACE);
+        writer.writeNamespace("oai_dc", OAIUtils.OAI_DC_NAMESPACE);
+        writer.writeNamespace("dc", OAIUtils.DC_NAMESPACE);
+        writer.writeAttribute("xsi", OAIUtils.XML_SCHEMA_INSTANCE,
+                "schemaLocation", OAIUtils.OAI_DC_SCHEMA_LOCATION);
+        for (String[] element : OAIUtils.buildOAIDCElements(viewDocURL,
+                cited, citing, rights, doc, contributor, granularity)) {
+            writer.writeStartElement("dc", element[0], OAIUtils.DC_NAMESPACE);
+            writeText(element[1]);
+            writer.writeEndElement();
+        }
+        writer.writeEndElement();
+        writer.writeEndElement();
+    } //- writeOAIDC
+
+    /*
+     * Writes an element of the OAI-PMH name space with the given value
+     */
+    private void writeElement(String elementName, String elementValue)
+    throws XMLStreamException {
+        writer.writeStartElement(elementName);
+        writeText(elementValue);
+        writer.writeEndElement();
+    } //- writeElement
+
+    private void writeText(String elementValue) throws XMLStreamException {
+        String text = OAIUtils.buildText(elementValue);
+        if (text != null) {
+            writer.writeCharacters(text);
+        }
+    } //- writeText
+
+} //- class OAIStreamWriter
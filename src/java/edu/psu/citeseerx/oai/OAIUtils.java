@@ -14,6 +14,7 @@ package edu.psu.citeseerx.oai;
 
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
@@ -37,19 +38,19 @@ import edu.psu.citeseerx.utility.SafeText;
  */
 public class OAIUtils {
     
-    private static final String OAI_PMH_ROOT = "OAI-PMH";
-    private static final String OAI_PMH_NAMESPACE = 
+    static final String OAI_PMH_ROOT = "OAI-PMH";
+    static final String OAI_PMH_NAMESPACE = 
         "http://www.openarchives.org/OAI/2.0/";
-    private static final String XML_SCHEMA_INSTANCE = 
+    static final String XML_SCHEMA_INSTANCE = 
         "http://www.w3.org/2001/XMLSchema-instance"; 
-    private static final String OAI_SCHEMA_LOCATION = 
+    static final String OAI_SCHEMA_LOCATION = 
         "http://www.openarchives.org/OAI/2.0/ " +
         "http://www.openarchives.org/OAI/2.0/OAI-PMH.xsd";
-    private static final String OAI_DC_NAMESPACE = 
+    static final String OAI_DC_NAMESPACE = 
         "http://www.openarchives.org/OAI/2.0/oai_dc/";
-    private static final String DC_NAMESPACE = 
+    static final String DC_NAMESPACE = 
         "http://purl.org/dc/elements/1.1/";
-    private static final String OAI_DC_SCHEMA_LOCATION =
+    static final String OAI_DC_SCHEMA_LOCATION =
         "http://www.openarchives.org/OAI/2.0/oai_dc/ " +
         "http://www.openarchives.org/OAI/2.0/oai_dc.xsd";
     private static final String OAI_IDENTIFIER_NAMESPACE =
@@ -413,20 +414,32 @@ public class OAIUtils {
             }
         }
         
-        if (null != elementValue && elementValue.trim().length() > 0) {
-	    String newElementValue;
-            try {
-                byte[] utf8Bytes = elementValue.getBytes("UTF-8");
-                newElementValue = new String(utf8Bytes,"UTF-8");
-            } catch(UnsupportedEncodingException e){
-                newElementValue = elementValue;
-            }
-            toBeAdded.setText(SafeText.stripBadChars(newElementValue));
+        String text = buildText(elementValue);
+        if (null != text) {
+            toBeAdded.setText(text);
         }
 
         toAddTo.addContent(toAddTo.getContentSize(), toBeAdded);
         return toBeAdded;
     } //- addElement
+
+    /*
+     * Returns the text to write for an element value, or null if the value
+     * is empty.
+     */
+    static String buildText(String elementValue) {
+        if (null == elementValue || elementValue.trim().length() == 0) {
+            return null;
+        }
+        String newElementValue;
+        try {
+            byte[] utf8Bytes = elementValue.getBytes("UTF-8");
+            newElementValue = new String(utf8Bytes,"UTF-8");
+        } catch(UnsupportedEncodingException e){
+            newElementValue = elementValue;
+        }
+        return SafeText.stripBadChars(newElementValue);
+    } //- buildText
     
     /*
      * Returns the OAI_PMH name space.
@@ -484,28 +497,45 @@ public class OAIUtils {
         oaidc.addNamespaceDeclaration(getXMLINSTANCENamespace());
         oaidc.setAttribute("schemaLocation", OAI_DC_SCHEMA_LOCATION, 
                 getXMLINSTANCENamespace());
-        addElement(oaidc, "title", doc.getDatum(Document.TITLE_KEY, true), null, 
-                dcNamespace);
+        for (String[] element : buildOAIDCElements(viewDocURL, cited, citing, 
+                rights, doc, contributor, granularity)) {
+            addElement(oaidc, element[0], element[1], null, dcNamespace);
+        }
+        return metadata;
+    } //- createOIADC
+    
+    /*
+     * Returns the Dublin Core elements of a document, in order, as pairs of
+     * element name and value. Values can be null, in which case the element
+     * is written empty.
+     */
+    static List<String[]> buildOAIDCElements(String viewDocURL,
+            List<String>cited, List<String>citing, String rights, 
+            edu.psu.citeseerx.domain.Document doc, String contributor,
+            String granularity) {
+        
+        List<String[]> elements = new ArrayList<String[]>();
+        elements.add(new String[] {"title", 
+                doc.getDatum(Document.TITLE_KEY, true)});
         for (Author creator : doc.getAuthors()) {
             /*
              * All the authors are creators of the document
              */
-            addElement(oaidc, "creator", creator.getDatum(Author.NAME_KEY, true), 
-                    null, dcNamespace);
+            elements.add(new String[] {"creator", 
+                    creator.getDatum(Author.NAME_KEY, true)});
         }
         for (Keyword keyword : doc.getKeywords()) {
-            addElement(oaidc, "subject", keyword.getDatum(Keyword.KEYWORD_KEY,
-                    Keyword.ENCODED), null, dcNamespace);
+            elements.add(new String[] {"subject", 
+                    keyword.getDatum(Keyword.KEYWORD_KEY, Keyword.ENCODED)});
         }
-        addElement(oaidc, "description", doc.getDatum(Document.ABSTRACT_KEY, 
-                Document.ENCODED), null, dcNamespace);
-        addElement(oaidc, "contributor", contributor, null, dcNamespace);
-        addElement(oaidc, "publisher", doc.getDatum(Document.PUBLISHER_KEY, 
-                Document.ENCODED), null, dcNamespace);
+        elements.add(new String[] {"description", 
+                doc.getDatum(Document.ABSTRACT_KEY, Document.ENCODED)});
+        elements.add(new String[] {"contributor", contributor});
+        elements.add(new String[] {"publisher", 
+                doc.getDatum(Document.PUBLISHER_KEY, Document.ENCODED)});
         // Last time the document was modified; eg metadata was corrected.
-        addElement(oaidc, "date", 
-                buildDatestamp(doc.getVersionTime(), granularity), null, 
-                dcNamespace);
+        elements.add(new String[] {"date", 
+                buildDatestamp(doc.getVersionTime(), granularity)});
         
         DocumentFileInfo dFileInfo = doc.getFileInfo();
         String cDate = null;
@@ -518,12 +548,12 @@ public class OAIUtils {
             e.printStackTrace();
             cDate = null;
         }
-        addElement(oaidc, "date", cDate, null, dcNamespace);
+        elements.add(new String[] {"date", cDate});
         try {
             String year = doc.getDatum(Document.YEAR_KEY);
             if (null != year && year.length() > 0) {
                 Integer.parseInt(year);
-                addElement(oaidc, "date", year, null, dcNamespace);
+                elements.add(new String[] {"date", year});
             }
         }catch (NumberFormatException e) {
             // ignore. We just don't add the element
@@ -532,17 +562,15 @@ public class OAIUtils {
         if ((urls != null) && (urls.size() > 0)) {
             
             if (dFileInfo.getUrls().get(0).contains(".pdf")) {
-                addElement(oaidc, "format", "application/pdf", null,
-                        dcNamespace);
+                elements.add(new String[] {"format", "application/pdf"});
             }else if (dFileInfo.getUrls().get(0).contains(".ps")) {
-                addElement(oaidc, "format", "application/postscript", null,
-                        dcNamespace);
+                elements.add(new String[] {"format", 
+                        "application/postscript"});
             }else if (dFileInfo.getUrls().get(0).contains(".gz")) {
-                addElement(oaidc, "format", "application/zip", null,
-                        dcNamespace);
+                elements.add(new String[] {"format", "application/zip"});
             }
         }
-        addElement(oaidc, "type", "text", null, dcNamespace);
+        elements.add(new String[] {"type", "text"});
         
         /*
          * In the header we already put the OAI identifier as requested by the 
@@ -552,30 +580,29 @@ public class OAIUtils {
          * library using this URL
          */
         String fullURL = viewDocURL + "?doi=" + doc.getDatum(Document.DOI_KEY);
-        addElement(oaidc, "identifier", fullURL, null, dcNamespace);
+        elements.add(new String[] {"identifier", fullURL});
 
         List<String> urlList = dFileInfo.getUrls();
         if (!urlList.isEmpty()) {
-            addElement(oaidc, "source", urlList.get(0), null, 
-                dcNamespace);
+            elements.add(new String[] {"source", urlList.get(0)});
         }
-        addElement(oaidc, "language", "en", null, dcNamespace);
+        elements.add(new String[] {"language", "en"});
         
         // Add papers cited by this one.
-	if(cited != null) {
-        	for (String cite : cited) {
-            		addElement(oaidc, "relation", cite, null, dcNamespace);
-        	}
-	}
+        if (cited != null) {
+            for (String cite : cited) {
+                elements.add(new String[] {"relation", cite});
+            }
+        }
         
         // Add papers citing by this one.
-	if(citing != null) {
-        	for (String cite : citing) {
-            		addElement(oaidc, "relation", cite, null, dcNamespace);
-        	}
-	}
-        addElement(oaidc, "rights", rights, null, dcNamespace);
-        return metadata;
-    } //- createOIADC
+        if (citing != null) {
+            for (String cite : citing) {
+                elements.add(new String[] {"relation", cite});
+            }
+        }
+        elements.add(new String[] {"rights", rights});
+        return elements;
+    } //- buildOAIDCElements
     
 } //- class OAIUtils
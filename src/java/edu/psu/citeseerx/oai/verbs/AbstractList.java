@@ -12,9 +12,15 @@
  */
 package edu.psu.citeseerx.oai.verbs;
 
+import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -24,9 +30,12 @@ import org.jdom.Element;
 
 import edu.psu.citeseerx.dao2.logic.CSXDAO;
 import edu.psu.citeseerx.dao2.logic.CiteClusterDAO;
+import edu.psu.citeseerx.domain.ClusterNeighbors;
+import edu.psu.citeseerx.domain.DOIInfo;
 import edu.psu.citeseerx.domain.Document;
 import edu.psu.citeseerx.domain.ThinDoc;
 import edu.psu.citeseerx.oai.OAIUtils;
+import edu.psu.citeseerx.updates.PublicDOIMapper;
 import edu.psu.citeseerx.utility.DateUtils;
 
 /**
@@ -103,6 +112,42 @@ public abstract class AbstractList extends AbstractVerb {
     public void setCiteClusterDAO(CiteClusterDAO citedao) {
         this.citedao = citedao;
     } //- setCiteClusterDAO
+    
+    private PublicDOIMapper publicDOIMapper;
+    
+    public void setPublicDOIMapper(PublicDOIMapper publicDOIMapper) {
+        this.publicDOIMapper = publicDOIMapper;
+    } //- setPublicDOIMapper
+    
+    private int setCountCacheSize = 100;
+    
+    /**
+     * @param setCountCacheSize Number of (from, until) windows whose record
+     * count is kept in memory, least recently used first out (default 100,
+     * 0 for none)
+     */
+    public void setSetCountCacheSize(int setCountCacheSize) {
+        this.setCountCacheSize = setCountCacheSize;
+    } //- setSetCountCacheSize
+    
+    private long setCountCacheTime = 600000;
+    
+    /**
+     * @param setCountCacheTime Time, in ms, for which the record count of a
+     * window is used before being counted again (default 600000)
+     */
+    public void setSetCountCacheTime(long setCountCacheTime) {
+        this.setCountCacheTime = setCountCacheTime;
+    } //- setSetCountCacheTime
+    
+    private final Map<String, CachedCount> setCounts = 
+        new LinkedHashMap<String, CachedCount>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+        protected boolean removeEldestEntry(
+                Map.Entry<String, CachedCount> eldest) {
+            return size() > setCountCacheSize;
+        }
+    };
 	
 
     /**
@@ -115,29 +160,14 @@ public abstract class AbstractList extends AbstractVerb {
      */
     private List<String>getCitingDocuments(Long clusterID) {
         int start = 0;
-        int nRecords = 10;
+        int nRecords = 100;
         List<String>citing = new ArrayList<String>();
         List<ThinDoc> citations = null;
         if (clusterID != null) {
             citations = citedao.getCitingDocuments(clusterID, start, nRecords);
             boolean finished = citations.isEmpty();
             while (!finished) {
-                for (ThinDoc cite : citations) {
-                    if (cite.getInCollection()) {
-                        // Obtain the DOIs associated to this cluster
-                        List<String> dois = 
-                            citedao.getPaperIDs(cite.getCluster());
-                        Document citingDoc = null;
-                        for (String doi : dois) {
-                            citingDoc = csxdao.getDocumentFromDB(doi, 
-                                    false, false);
-                            if (citingDoc != null && citingDoc.isPublic()) {
-                                citing.add(citingDoc.getDatum(Document.DOI_KEY));
-                                break;
-                            }
-                        }
-                    }
-                }
+                citing.addAll(getPublicDOIs(citations));
                 start += nRecords;
                 if (nRecords <= citations.size()) {
                     citations = citedao.getCitingDocuments(clusterID, start, 
@@ -171,22 +201,7 @@ public abstract class AbstractList extends AbstractVerb {
             
             boolean finished = citations.isEmpty();
             while (!finished) {
-                for (ThinDoc cite : citations) {
-                    if (cite.getInCollection()) {
-                        // Obtain the DOIs associated to this cluster
-                        List<String> dois = 
-                            citedao.getPaperIDs(cite.getCluster());
-                        Document citedDoc = null;
-                        for (String doi : dois) {
-                            citedDoc = csxdao.getDocumentFromDB(doi, 
-                                    false, false);
-                            if (citedDoc != null && citedDoc.isPublic()) {
-                                cited.add(citedDoc.getDatum(Document.DOI_KEY));
-                                break;
-                            }
-                        }
-                    }
-                }
+                cited.addAll(getPublicDOIs(citations));
                 start += nRecords;
                 if (nRecords <= citations.size()) {
                     citations = citedao.getCitedDocuments(clusterID, start, 
@@ -199,6 +214,215 @@ public abstract class AbstractList extends AbstractVerb {
         return cited;
     } //- getCitedDocuments
     
+    /*
+     * Returns the DOI of the public paper of each cluster in the list that
+     * is in the collection and has one, in list order.
+     */
+    private List<String> getPublicDOIs(List<ThinDoc> clusters) {
+        List<Long> clusterIDs = new ArrayList<Long>();
+        for (ThinDoc cluster : clusters) {
+            if (cluster.getInCollection()) {
+                clusterIDs.add(cluster.getCluster());
+            }
+        }
+        Map<Long, String> publicDOIs =
+            publicDOIMapper.getPublicDOIs(clusterIDs);
+        List<String> dois = new ArrayList<String>();
+        for (Long clusterID : clusterIDs) {
+            String doi = publicDOIs.get(clusterID);
+            if (doi != null) {
+                dois.add(doi);
+            }
+        }
+        return dois;
+    } //- getPublicDOIs
+    
+    /**
+     * Obtains the number of records in the given window, counting them only
+     * if the count isn't already known.
+     * @param from
+     * @param until
+     * @return the number of records modified between from and until
+     */
+    protected Integer getSetCount(Date from, Date until) {
+        String key = from.getTime() + "-" + until.getTime();
+        long now = System.currentTimeMillis();
+        synchronized(setCounts) {
+            CachedCount cached = setCounts.get(key);
+            if (cached != null && cached.expires > now) {
+                return cached.count;
+            }
+        }
+        Integer count = csxdao.getSetDOICount(from, until, "0");
+        if (setCountCacheSize > 0) {
+            synchronized(setCounts) {
+                setCounts.put(key, 
+                        new CachedCount(count, now + setCountCacheTime));
+            }
+        }
+        return count;
+    } //- getSetCount
+    
+    /**
+     * Validates the arguments of a list request and obtains the identifiers
+     * of the page of records it asks for, along with the resumption token
+     * for the next one. The number of records in the requested window is
+     * only obtained for the first page; it travels in the resumption token,
+     * along with the window itself, for the following pages.
+     * @param request
+     * @param maxRecords Maximum number of records in the page
+     * @return The requested page
+     * @throws OAIVerbException if the request is not valid or no records
+     * are found
+     */
+    protected ListPage getPage(HttpServletRequest request, int maxRecords)
+    throws OAIVerbException {
+		String metadataPrefix = request.getParameter("metadataPrefix");
+		String from = request.getParameter("from");
+		String until = request.getParameter("until");
+		String set = request.getParameter("set");
+		String resumptionToken = request.getParameter("resumptionToken");
+		
+		if (set != null) {
+			addError(new OAIError(getRepositoryIdentifier() + "does not " +
+					"support sets", OAIError.NO_SET_HIERARCHY_ERROR));
+		}
+		
+		if (from == null) {
+			from = getEarliestDatestamp();
+		}else{
+			validateDate(from);
+		}
+		if (until == null) {
+			until = DateUtils.formatDateISO8601UTC(new Date());
+		}else{
+			validateDate(until);
+		}
+		String iniDOI = null;
+		Integer completeSetCount = null;
+		Integer recordsSent = null;
+		Date fromDate = null;
+		Date untilDate = null;
+		if (resumptionToken != null) {
+			if (isValidResumptionToken(resumptionToken)) {
+				String[] resTokens = resumptionToken.split("-");
+				iniDOI = resTokens[0];
+				completeSetCount = Integer.parseInt(resTokens[1]);
+				recordsSent = Integer.parseInt(resTokens[2]);
+				metadataPrefix = resTokens[3];
+				if (resTokens.length == 6) {
+				    // The window of the first request.
+				    fromDate = new Date(Long.parseLong(resTokens[4]));
+				    untilDate = new Date(Long.parseLong(resTokens[5]));
+				}
+			}
+		}
+		
+		isValidMetaDataPrefix(metadataPrefix);
+		ListPage page = null;
+		if (!hasErrors()) {
+			try {
+			    if (fromDate == null) {
+			        fromDate = DateUtils.parseDateToUTCDate(from);
+			        untilDate = DateUtils.parseDateToUTCDate(until);
+			    }
+				iniDOI = (null == iniDOI) ? "0" : iniDOI;
+				int sent = (null == recordsSent) ? 0 : recordsSent.intValue();
+				List<DOIInfo> ids = csxdao.getSetDOIs(fromDate, untilDate, 
+				        iniDOI, maxRecords);
+				if (ids.size() == 0) {
+					addError(new OAIError("No records were found", 
+							OAIError.NO_RECORDS_MATCH_ERROR));
+				}else{
+					if (completeSetCount == null) {
+						completeSetCount = getSetCount(fromDate, untilDate);
+					}
+					sent += ids.size();
+					String newResumptionToken = "";
+					if (sent < completeSetCount.intValue()) {
+					    newResumptionToken = generateResumptionToken(
+								ids.get(ids.size()-1).getDoi(), 
+								completeSetCount, sent, metadataPrefix, 
+								fromDate, untilDate);
+					}
+					page = new ListPage(metadataPrefix, ids, 
+					        newResumptionToken);
+				}
+			}catch (ParseException e) {
+				// This shouldn't happen since date were validated.
+				addError(new OAIError("Invalid dates were found", 
+						OAIError.BAD_ARGUMENT_ERROR));
+			}
+		}
+		
+		if (hasErrors()) {
+			throw new OAIVerbException(getErrors());
+		}
+		return page;
+    } //- getPage
+    
+    /**
+     * Loads the documents of a page with a single pass over the database.
+     * @param ids
+     * @return The public documents among the given ones, in page order.
+     */
+    protected List<Document> getPublicDocuments(List<DOIInfo> ids) {
+        List<String> dois = new ArrayList<String>(ids.size());
+        for (DOIInfo doi : ids) {
+            dois.add(doi.getDoi());
+        }
+        List<Document> docs = new ArrayList<Document>(ids.size());
+        for (Document doc : csxdao.getDocumentsFromDB(dois, false, false, 
+                false, false, true, false)) {
+            if (doc.isPublic()) {
+                docs.add(doc);
+            }
+        }
+        return docs;
+    } //- getPublicDocuments
+    
+    /**
+     * Obtains the documents cited by each of the given documents, reading
+     * the citation graph of all of them at once.
+     * @param docs
+     * @return The DOIs of the public documents cited by each document, by
+     * cluster. Documents cited that aren't part of the corpus aren't
+     * included.
+     */
+    protected Map<Long, List<String>> getCitedDocuments(List<Document> docs) {
+        Map<Long, List<String>> cited = new HashMap<Long, List<String>>();
+        List<Long> clusterIDs = new ArrayList<Long>();
+        for (Document doc : docs) {
+            if (doc.getClusterID() != null) {
+                clusterIDs.add(doc.getClusterID());
+            }
+        }
+        if (clusterIDs.isEmpty()) {
+            return cited;
+        }
+        
+        ClusterNeighbors neighbors = citedao.getClusterNeighbors(clusterIDs);
+        Set<Long> citedClusters = new LinkedHashSet<Long>();
+        for (Long clusterID : clusterIDs) {
+            for (long citedCluster : neighbors.getCitedClusters(clusterID)) {
+                citedClusters.add(citedCluster);
+            }
+        }
+        Map<Long, String> publicDOIs = 
+            publicDOIMapper.getPublicDOIs(citedClusters);
+        for (Long clusterID : clusterIDs) {
+            List<String> dois = new ArrayList<String>();
+            for (long citedCluster : neighbors.getCitedClusters(clusterID)) {
+                String doi = publicDOIs.get(citedCluster);
+                if (doi != null) {
+                    dois.add(doi);
+                }
+            }
+            cited.put(clusterID, dois);
+        }
+        return cited;
+    } //- getCitedDocuments
+    
 	/**
 	 * Generates the resumption token
 	 * @param doi
@@ -222,6 +446,28 @@ public abstract class AbstractList extends AbstractVerb {
 		
 	} //- generateResumptionTokenElement
 	
+	/**
+	 * Generates a resumption token which also carries the window of the
+	 * request, so that following pages cover the same records.
+	 * @param doi
+	 * @param totalCount
+	 * @param itemsSent
+	 * @param metadataPrefix
+	 * @param from
+	 * @param until
+	 * @return A resumption token built based on the given parameters
+	 */
+	protected String generateResumptionToken(String doi, 
+			Integer totalCount, Integer itemsSent, String metadataPrefix,
+			Date from, Date until) {
+		String token = generateResumptionToken(doi, totalCount, itemsSent, 
+				metadataPrefix);
+		if (token.length() > 0) {
+			token += "-" + from.getTime() + "-" + until.getTime();
+		}
+		return token;
+	} //- generateResumptionToken
+	
 	/**
 	 * @param date
 	 * @return True if the given date comply with the repository granularity.
@@ -368,7 +614,7 @@ public abstract class AbstractList extends AbstractVerb {
 
 		String[] tokens = resumptionToken.split("-");
 		
-		if (tokens.length != 4) {
+		if (tokens.length != 4 && tokens.length != 6) {
 			isValid = false;
 		}else{
 			Pattern pattern = Pattern.compile(doiRegExpr);
@@ -379,6 +625,10 @@ public abstract class AbstractList extends AbstractVerb {
 			try {
 				Integer.parseInt(tokens[1]);
 				Integer.parseInt(tokens[2]);
+				if (tokens.length == 6) {
+					Long.parseLong(tokens[4]);
+					Long.parseLong(tokens[5]);
+				}
 			}catch (NumberFormatException e) {
 				isValid = false;
 			}
@@ -424,11 +674,83 @@ public abstract class AbstractList extends AbstractVerb {
 	            doc.getVersionTime());
 	} //- buildDocumentRecord
 	
+	/**
+	 * Builds a OAI record for a corpus document whose cited documents are
+	 * already known
+	 * @param doc
+	 * @param cited
+	 * @param toAddTo
+	 * @param metadataFormat
+	 * @return the created record.
+	 */
+	protected Element buildDocumentRecord(Document doc, List<String> cited,
+	        Element toAddTo, int metadataFormat) {
+	    return OAIUtils.addRecord(toAddTo, getViewDocURL(), cited, null, 
+	            RIGHTS, doc, contributor, getGranularity(), metadataFormat, 
+	            buildIdentifier(doc.getDatum(Document.DOI_KEY)), 
+	            doc.getVersionTime());
+	} //- buildDocumentRecord
+	
 	/* (non-Javadoc)
 	 * @see edu.psu.citeseerx.oai.verbs.AbstractVerb#doProcess(javax.servlet.http.HttpServletRequest, org.jdom.Element)
 	 */
 	@Override
 	protected abstract Element doProcess(HttpServletRequest request, 
 	        Element root) throws OAIVerbException;
+	
+	/**
+	 * A page of records answering a list request
+	 */
+	protected static class ListPage {
+	    
+	    private final String metadataPrefix;
+	    private final List<DOIInfo> ids;
+	    private final String resumptionToken;
+	    
+	    ListPage(String metadataPrefix, List<DOIInfo> ids, 
+	            String resumptionToken) {
+	        this.metadataPrefix = metadataPrefix;
+	        this.ids = ids;
+	        this.resumptionToken = resumptionToken;
+	    } //- ListPage
+	    
+	    /**
+	     * @return the format in which records are requested
+	     */
+	    public int getMetadataFormat() {
+	        int metadataFormat = 0;
+	        if (METADATA_OAI_DC.equals(metadataPrefix)) {
+	            metadataFormat = OAIUtils.OAI_DC_METADATAFORMAT;
+	        }
+	        return metadataFormat;
+	    } //- getMetadataFormat
+	    
+	    /**
+	     * @return the identifiers, and modification dates, of the records
+	     * in the page.
+	     */
+	    public List<DOIInfo> getIds() {
+	        return ids;
+	    } //- getIds
+	    
+	    /**
+	     * @return the token to request the next page, empty if this is the
+	     * last one.
+	     */
+	    public String getResumptionToken() {
+	        return resumptionToken;
+	    } //- getResumptionToken
+	    
+	} //- class ListPage
+	
+	private static class CachedCount {
+	    final Integer count;
+	    final long expires;
+	    
+	    CachedCount(Integer count, long expires) {
+	        this.count = count;
+	        this.expires = expires;
+	    }
+	} //- class CachedCount
 
 } //- Class AbstractList
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2007 Penn State University
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.psu.citeseerx.oai.verbs;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.xml.stream.XMLStreamException;
+
+import edu.psu.citeseerx.domain.Document;
+import edu.psu.citeseerx.oai.OAIStreamWriter;
+
+/**
+ * Base class for the list verbs that write their response directly to the
+ * output. Arguments are validated, and the identifiers of the page are
+ * obtained, before anything is written so errors are still answered with
+ * an error response. Records are then written as they are assembled.
+ * @version $Rev$ $Date$
+ */
+public abstract class AbstractStreamingList extends AbstractList
+implements StreamingVerb {
+
+	/* (non-Javadoc)
+	 * @see edu.psu.citeseerx.oai.verbs.StreamingVerb#processRequest(javax.servlet.http.HttpServletRequest, java.io.OutputStream)
+	 */
+	public void processRequest(HttpServletRequest request, OutputStream out)
+	throws IOException {
+
+		ListPage page = null;
+		List<OAIError> errors = null;
+		try {
+			// Checking we have all the arguments we need.
+			checkArguments(request);
+			page = getPage(request, getPageSize());
+		}catch (OAIVerbException e) {
+			errors = new ArrayList<OAIError>(e.getErrors());
+		}finally{
+			// Clean any errors occurred in this call.
+			getErrors().clear();
+		}
+
+		try {
+			OAIStreamWriter writer = new OAIStreamWriter(out);
+			Date responseDate = new Date(System.currentTimeMillis());
+			if (errors != null) {
+				/*
+				 * The request element must not include attributes when
+				 * errors happens.
+				 */
+				writer.startResponse(responseDate, getBaseURL(), null);
+				for (OAIError err : errors) {
+					writer.writeError(err.getErrorCode(), err.getMessage());
+				}
+			}else{
+				writer.startResponse(responseDate, getBaseURL(),
+						getRequestElements(request));
+				writePage(writer, page);
+			}
+			writer.endResponse();
+		}catch (XMLStreamException e) {
+			IOException ioe = new IOException(e.getMessage());
+			ioe.initCause(e);
+			throw ioe;
+		}
+	} //- processRequest
+
+	/**
+	 * Writes a OAI record for a corpus document whose cited documents are
+	 * already known
+	 * @param writer
+	 * @param doc
+	 * @param cited
+	 * @param metadataFormat
+	 * @throws XMLStreamException
+	 */
+	protected void writeDocumentRecord(OAIStreamWriter writer, Document doc,
+			List<String> cited, int metadataFormat)
+	throws XMLStreamException {
+		writer.writeRecord(getViewDocURL(), cited, null, RIGHTS, doc,
+				getContributor(), getGranularity(), metadataFormat,
+				buildIdentifier(doc.getDatum(Document.DOI_KEY)),
+				doc.getVersionTime());
+	} //- writeDocumentRecord
+
+	/**
+	 * @return the maximum number of records in a page of the response
+	 */
+	protected abstract int getPageSize();
+
+	/**
+	 * Writes the content of the verb for the given page
+	 * @param writer
+	 * @param page
+	 * @throws XMLStreamException
+	 */
+	protected abstract void writePage(OAIStreamWriter writer, ListPage page)
+	throws XMLStreamException;
+
+} //- class AbstractStreamingList
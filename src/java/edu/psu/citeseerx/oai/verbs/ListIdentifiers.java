@@ -12,17 +12,14 @@
  */
 package edu.psu.citeseerx.oai.verbs;
 
-import java.text.ParseException;
-import java.util.Date;
-import java.util.List;
-
 import javax.servlet.http.HttpServletRequest;
+import javax.xml.stream.XMLStreamException;
 
 import org.jdom.Element;
 
 import edu.psu.citeseerx.domain.DOIInfo;
+import edu.psu.citeseerx.oai.OAIStreamWriter;
 import edu.psu.citeseerx.oai.OAIUtils;
-import edu.psu.citeseerx.utility.DateUtils;
 
 
 /**
@@ -31,7 +28,7 @@ import edu.psu.citeseerx.utility.DateUtils;
  * @author Juan Pablo Fernandez Ramirez
  * @version $Rev$ $Date$
  */
-public class ListIdentifiers extends AbstractList {
+public class ListIdentifiers extends AbstractStreamingList {
 
 	// Defines expected parameters and if they are required or not.
 	protected static final String[] expectedArguments = {
@@ -47,110 +44,46 @@ public class ListIdentifiers extends AbstractList {
 		}
 	} //- ListIdentifiers
 
+	/* (non-Javadoc)
+	 * @see edu.psu.citeseerx.oai.verbs.AbstractStreamingList#getPageSize()
+	 */
+	@Override
+	protected int getPageSize() {
+		return getMaxReturnRecords();
+	} //- getPageSize
+
 	/* (non-Javadoc)
 	 * @see edu.psu.citeseerx.oai.verbs.AbstractList#doProcess(javax.servlet.http.HttpServletRequest, org.jdom.Element)
 	 */
 	@Override
 	protected Element doProcess(HttpServletRequest request, Element root)
     throws OAIVerbException {
-		// Get verb arguments.
-		String metadataPrefix = request.getParameter("metadataPrefix");
-		String from = request.getParameter("from");
-		String until = request.getParameter("until");
-		String set = request.getParameter("set");
-		String resumptionToken = request.getParameter("resumptionToken");
-		
-		if (set != null) {
-			addError(new OAIError(getRepositoryIdentifier() + "does not " +
-					"support sets", OAIError.NO_SET_HIERARCHY_ERROR));
-		}
-		
-		if (from == null) {
-			from = getEarliestDatestamp();
-		}else{
-			validateDate(from);
-		}
-		if (until == null) {
-			until = DateUtils.formatDateISO8601UTC(new Date());
-		}else{
-			validateDate(until);
-		}
-		String[] resTokens = null;
-		String iniDOI = null;
-		Integer completeSetCount = null;
-		Integer recordsSent = null;
-		if (resumptionToken != null) {
-			if (isValidResumptionToken(resumptionToken)) {
-				resTokens = resumptionToken.split("-");
-				iniDOI = resTokens[0];
-				completeSetCount = Integer.parseInt(resTokens[1]);
-				recordsSent = Integer.parseInt(resTokens[2]);
-				metadataPrefix = resTokens[3];
-			}
-		}
-		
-		isValidMetaDataPrefix(metadataPrefix);
-		if (!hasErrors()) {
-			// So far so good! get the records.
-			try { 
-				iniDOI = (null == iniDOI) ? "0" : iniDOI;
-				recordsSent = (null == recordsSent) ? new Integer(0) : 
-					recordsSent;
-				List<DOIInfo> ids = csxdao.getSetDOIs(
-						DateUtils.parseDateToUTCDate(from), 
-						DateUtils.parseDateToUTCDate(until), iniDOI, 
-						getMaxReturnRecords());
-				if (ids.size() == 0) {
-					addError(new OAIError("No records were found", 
-							OAIError.NO_RECORDS_MATCH_ERROR));
-				}else{
-				    Element identifiers = OAIUtils.addListIdentifiers(root); 
-					for (DOIInfo doi : ids) {
-					    OAIUtils.addRecordHeader(identifiers, 
-					            buildIdentifier(doi.getDoi()), 
-					            doi.getModifiedDate(), 
-					            getGranularity());
-					}
-
-					// Build a resumption token if necessary
-					if (resumptionToken == null) {
-						// Get the complete set count only if it's the 
-						// first call
-						completeSetCount = csxdao.getSetDOICount(
-								DateUtils.parseDateToUTCDate(from), 
-								DateUtils.parseDateToUTCDate(until), 
-								iniDOI);
-					}
-					recordsSent = new Integer(
-							ids.size()+recordsSent.intValue());
-
-					String newResumptionToken = "";
-					if (recordsSent < completeSetCount) {
-					    newResumptionToken = generateResumptionToken(
-                                ids.get(ids.size()-1).getDoi(), 
-                                completeSetCount, recordsSent, 
-                                metadataPrefix);
-					}else if ((recordsSent.intValue() == completeSetCount.intValue()) && 
-							(resumptionToken != null)) {
-					    newResumptionToken = "";
-					}
-					OAIUtils.addResumptionToken(identifiers, newResumptionToken);
-				}
-			}catch (ParseException e) {
-				// This shouldn't happen since date were validated.
-				addError(new OAIError("Invalid dates were found", 
-						OAIError.BAD_ARGUMENT_ERROR));
-			}
-		}
+		ListPage page = getPage(request, getPageSize());
 		
-		/*
-		 * This is not an else since errors could happen while creating 
-		 * the response
-		 */
-		if (hasErrors()) {
-			throw new OAIVerbException(getErrors());
+		Element identifiers = OAIUtils.addListIdentifiers(root); 
+		for (DOIInfo doi : page.getIds()) {
+		    OAIUtils.addRecordHeader(identifiers, 
+		            buildIdentifier(doi.getDoi()), 
+		            doi.getModifiedDate(), 
+		            getGranularity());
 		}
+		OAIUtils.addResumptionToken(identifiers, page.getResumptionToken());
 		return root;
 	} //- doProcess
 	
+	/* (non-Javadoc)
+	 * @see edu.psu.citeseerx.oai.verbs.AbstractStreamingList#writePage(edu.psu.citeseerx.oai.OAIStreamWriter, edu.psu.citeseerx.oai.verbs.AbstractList.ListPage)
+	 */
+	@Override
+	protected void writePage(OAIStreamWriter writer, ListPage page)
+	throws XMLStreamException {
+		writer.startVerb("ListIdentifiers");
+		for (DOIInfo doi : page.getIds()) {
+		    writer.writeRecordHeader(buildIdentifier(doi.getDoi()), 
+		            doi.getModifiedDate(), getGranularity());
+		}
+		writer.writeResumptionToken(page.getResumptionToken());
+		writer.endVerb();
+	} //- writePage
+	
 } //- class ListIdentifiers
\ No newline at end of file
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2007 Penn State University
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.psu.citeseerx.oai.verbs;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import javax.servlet.http.HttpServletRequest;
+
+
+/**
+ * Verbs able to write their response directly to the output, as it is
+ * produced, instead of building it as a document first.
+ * @version $Rev$ $Date$
+ */
+public interface StreamingVerb extends Verb {
+
+	/**
+	 * process the OAI-PMH request and writes the XML response to the given
+	 * stream, in UTF-8.
+	 * @see Verb#processRequest(HttpServletRequest)
+	 * @param request  Object containing the OAI-PMH request
+	 * @param out  Stream the response is written to. It is not closed.
+	 * @throws IOException if the response can't be written.
+	 */
+	void processRequest(HttpServletRequest request, OutputStream out)
+	throws IOException;
+} //- interface StreamingVerb
@@ -0,0 +1,326 @@
+/*
+ * Copyright 2007 Penn State University
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.psu.citeseerx.updates;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Citation counts by author, keyed by a 64 bit hash of the lower cased
+ * name and held in open addressing arrays of primitives, so that each
+ * distinct name costs twelve bytes (at most twice that with the table
+ * half full) rather than a map entry, a string and a container object.
+ * <br><br>
+ * If a spill threshold is set, the counts are written to a temporary file
+ * as a run sorted by name ID whenever that many names are held, and the
+ * runs are merged back when the top authors are taken, which bounds the
+ * memory used whatever the number of distinct names.
+ *
+ * @version $Rev$ $Date$
+ */
+class AuthorCitationCounts {
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    // Marks free slots; no name is given this ID.
+    private static final long FREE = 0;
+
+    private long[] ids;
+    private int[] counts;
+    private int size = 0;
+
+    private final int spillThreshold;
+    private final File spillDir;
+    private final List<File> runs = new ArrayList<File>();
+
+    /**
+     * @param spillThreshold number of names after which counts are written
+     * to disk, or 0 to keep all counts in memory.
+     * @param spillDir directory for the temporary files.
+     */
+    AuthorCitationCounts(int spillThreshold, File spillDir) {
+        this.spillThreshold = spillThreshold;
+        this.spillDir = spillDir;
+        allocate(1024);
+    } //- AuthorCitationCounts
+
+
+    /**
+     * @param name
+     * @return the ID under which citations of the name are counted: names
+     * equal but for case have the same ID.
+     */
+    static long nameID(String name) {
+        String key = name.toLowerCase();
+        long hash = FNV_OFFSET;
+        for (int i=0; i<key.length(); i++) {
+            char c = key.charAt(i);
+            hash ^= (c & 0xff);
+            hash *= FNV_PRIME;
+            hash ^= (c >>> 8);
+            hash *= FNV_PRIME;
+        }
+        return (hash == FREE) ? 1 : hash;
+    } //- nameID
+
+
+    /**
+     * Adds citations to the count of a name.
+     * @param id
+     * @param citations
+     * @throws IOException if the counts could not be spilled.
+     */
+    void add(long id, int citations) throws IOException {
+        int slot = slot(id);
+        if (ids[slot] == FREE) {
+            ids[slot] = id;
+            size++;
+            if (spillThreshold > 0 && size >= spillThreshold) {
+                counts[slot] += citations;
+                spill();
+                return;
+            }
+            if (size*2 > ids.length) {
+                counts[slot] += citations;
+                allocate(ids.length*2);
+                return;
+            }
+        }
+        counts[slot] += citations;
+    } //- add
+
+
+    /**
+     * @param k
+     * @return the k names with the most citations, most cited first.
+     * @throws IOException
+     */
+    List<Entry> top(int k) throws IOException {
+        PriorityQueue<Entry> heap =
+            new PriorityQueue<Entry>(Math.max(k, 1), ASCENDING);
+        if (runs.isEmpty()) {
+            for (int i=0; i<ids.length; i++) {
+                if (ids[i] != FREE) {
+                    offer(heap, k, ids[i], counts[i]);
+                }
+            }
+        } else {
+            spill();
+            merge(heap, k);
+        }
+        List<Entry> top = new ArrayList<Entry>(heap);
+        Collections.sort(top, Collections.reverseOrder(ASCENDING));
+        return top;
+
+    }  //- top
+
+
+    /**
+     * Drops all counts and deletes any spilled runs.
+     */
+    void clear() {
+        for (File run : runs) {
+            run.delete();
+        }
+        runs.clear();
+        ids = null;
+        counts = null;
+        allocate(1024);
+    } //- clear
+
+
+    private int slot(long id) {
+        int mask = ids.length-1;
+        int slot = (int)(id ^ (id >>> 32)) & mask;
+        while (ids[slot] != FREE && ids[slot] != id) {
+            slot = (slot+1) & mask;
+        }
+        return slot;
+    } //- slot
+
+    private void allocate(int capacity) {
+        long[] oldIDs = ids;
+        int[] oldCounts = counts;
+        ids = new long[capacity];
+        counts = new int[capacity];
+        size = 0;
+        if (oldIDs == null) {
+            return;
+        }
+        for (int i=0; i<oldIDs.length; i++) {
+            if (oldIDs[i] != FREE) {
+                int slot = slot(oldIDs[i]);
+                ids[slot] = oldIDs[i];
+                counts[slot] = oldCounts[i];
+                size++;
+            }
+        }
+    } //- allocate
+
+
+    /*
+     * Writes the counts held as a run sorted by ID and empties the table,
+     * keeping its capacity.
+     */
+    private void spill() throws IOException {
+        long[] sorted = new long[size];
+        int n = 0;
+        for (int i=0; i<ids.length; i++) {
+            if (ids[i] != FREE) {
+                sorted[n++] = ids[i];
+            }
+        }
+        Arrays.sort(sorted);
+
+        File run = File.createTempFile("authors", ".run", spillDir);
+        runs.add(run);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(run), 1 << 16));
+        try {
+            for (long id : sorted) {
+                out.writeLong(id);
+                out.writeInt(counts[slot(id)]);
+            }
+        } finally {
+            out.close();
+        }
+        Arrays.fill(ids, FREE);
+        Arrays.fill(counts, 0);
+        size = 0;
+
+    }  //- spill
+
+
+    private void merge(PriorityQueue<Entry> heap, int k) throws IOException {
+        PriorityQueue<RunReader> readers = new PriorityQueue<RunReader>(
+                runs.size(), new Comparator<RunReader>() {
+            public int compare(RunReader r1, RunReader r2) {
+                return (r1.id < r2.id) ? -1 : ((r1.id > r2.id) ? 1 : 0);
+            }
+        });
+        try {
+            for (File run : runs) {
+                RunReader reader = new RunReader(run);
+                if (reader.next()) {
+                    readers.add(reader);
+                } else {
+                    reader.close();
+                }
+            }
+            while (!readers.isEmpty()) {
+                long id = readers.peek().id;
+                int total = 0;
+                while (!readers.isEmpty() && readers.peek().id == id) {
+                    RunReader reader = readers.poll();
+                    total += reader.count;
+                    if (reader.next()) {
+                        readers.add(reader);
+                    } else {
+                        reader.close();
+                    }
+                }
+                offer(heap, k, id, total);
+            }
+        } finally {
+            for (RunReader reader : readers) {
+                reader.close();
+            }
+        }
+
+    }  //- merge
+
+
+    private static void offer(PriorityQueue<Entry> heap, int k, long id,
+            int count) {
+        if (k <= 0) {
+            return;
+        }
+        if (heap.size() < k) {
+            heap.add(new Entry(id, count));
+            return;
+        }
+        // Replaces the least entry if ranked above it by ASCENDING.
+        Entry least = heap.peek();
+        if (count > least.count || (count == least.count && id < least.id)) {
+            heap.poll();
+            heap.add(new Entry(id, count));
+        }
+    } //- offer
+
+
+    private static final Comparator<Entry> ASCENDING =
+        new Comparator<Entry>() {
+        public int compare(Entry e1, Entry e2) {
+            if (e1.count != e2.count) {
+                return (e1.count < e2.count) ? -1 : 1;
+            }
+            // Fixes the order of equally cited names.
+            return (e1.id > e2.id) ? -1 : ((e1.id < e2.id) ? 1 : 0);
+        }
+    };
+
+
+    /**
+     * Citation count of a name ID.
+     */
+    static class Entry {
+        final long id;
+        final int count;
+
+        Entry(long id, int count) {
+            this.id = id;
+            this.count = count;
+        }
+    }  //- class Entry
+
+
+    private static class RunReader {
+        private final DataInputStream in;
+        long id;
+        int count;
+
+        RunReader(File run) throws IOException {
+            in = new DataInputStream(new BufferedInputStream(
+                    new FileInputStream(run), 1 << 16));
+        }
+
+        boolean next() throws IOException {
+            try {
+                id = in.readLong();
+            } catch (EOFException e) {
+                return false;
+            }
+            count = in.readInt();
+            return true;
+        }
+
+        void close() {
+            try { in.close(); } catch (IOException e) {}
+        }
+    }  //- class RunReader
+
+}  //- class AuthorCitationCounts
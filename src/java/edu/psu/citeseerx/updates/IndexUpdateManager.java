@@ -12,29 +12,32 @@
  */
 package edu.psu.citeseerx.updates;
 
-import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
-import java.net.ProtocolException;
-import java.net.URL;
 import java.net.URLEncoder;
 import java.sql.SQLException;
 
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.StringTokenizer;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.io.BufferedReader;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
-import java.io.Reader;
-import java.io.StringReader;
-import java.io.StringWriter;
+import java.io.InterruptedIOException;
 import java.io.UnsupportedEncodingException;
-import java.io.Writer;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -42,6 +45,7 @@ import org.apache.commons.logging.LogFactory;
 import edu.psu.citeseerx.dao2.logic.CSXDAO;
 import edu.psu.citeseerx.dao2.logic.CiteClusterDAO;
 import edu.psu.citeseerx.domain.Author;
+import edu.psu.citeseerx.domain.ClusterNeighbors;
 import edu.psu.citeseerx.domain.Document;
 import edu.psu.citeseerx.domain.DocumentFileInfo;
 import edu.psu.citeseerx.domain.DomainTransformer;
@@ -85,13 +89,29 @@ public class IndexUpdateManager {
     } //- setMaxTextLength
     
     
-    private URL solrUpdateUrl;
+    private SolrUpdateWriter solr;
     
     public void setSolrURL(String solrUpdateUrl) throws MalformedURLException {
-        this.solrUpdateUrl = new URL(solrUpdateUrl);
+        this.solr = new SolrUpdateWriter(solrUpdateUrl);
+        this.solr.setGzip(compressUpdates);
     } //- setSolrURL
     
     
+    private boolean compressUpdates = false;
+    
+    /**
+     * Sends update requests gzip compressed.  Requires a Solr container
+     * that accepts compressed request bodies.
+     * @param compressUpdates (default false)
+     */
+    public void setCompressUpdates(boolean compressUpdates) {
+        this.compressUpdates = compressUpdates;
+        if (solr != null) {
+            solr.setGzip(compressUpdates);
+        }
+    } //- setCompressUpdates
+    
+    
     private CSXDAO csxdao;
     
     public void setCSXDAO(CSXDAO csxdao) {
@@ -105,22 +125,108 @@ public class IndexUpdateManager {
         this.citedao = citedao;
     } //- setCiteClusterDAO
     
+    
+    private PublicDOIMapper publicDOIMapper;
+    
+    public void setPublicDOIMapper(PublicDOIMapper publicDOIMapper) {
+        this.publicDOIMapper = publicDOIMapper;
+    } //- setPublicDOIMapper
+    
+    
     public void setredoAll(boolean redoAll) {
 		this.redoAll = redoAll;
     }   
  
+    private int assemblerThreads = 0;
+    
+    /**
+     * Sets the number of threads that assemble Solr documents when
+     * re-indexing the collection.  A value of zero (the default) keeps the
+     * original single-threaded behaviour of indexInCollection.
+     * @param assemblerThreads
+     */
+    public void setAssemblerThreads(int assemblerThreads) {
+        this.assemblerThreads = assemblerThreads;
+    } //- setAssemblerThreads
+    
+    
+    private int posterThreads = 2;
+    
+    /**
+     * Sets the number of threads concurrently posting assembled batches
+     * to Solr in pipelined mode.
+     * @param posterThreads (default 2)
+     */
+    public void setPosterThreads(int posterThreads) {
+        this.posterThreads = posterThreads;
+    } //- setPosterThreads
+    
+    
+    private int queueCapacity = 16;
+    
+    /**
+     * Sets the number of assembled batches that may wait to be posted
+     * before the assemblers (and, in turn, the cluster reader) block.
+     * @param queueCapacity (default 16)
+     */
+    public void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+    } //- setQueueCapacity
+    
+    
+    private int batchSize = 200;
+    
+    /**
+     * Sets the number of documents sent to Solr in a single post.
+     * @param batchSize (default 200)
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    } //- setBatchSize
+    
+    
+    private int commitInterval = 10000;
+    
+    /**
+     * Sets the number of posted documents after which a commit is sent in
+     * pipelined mode.  Commits are independent of cluster page boundaries.
+     * @param commitInterval (default 10000)
+     */
+    public void setCommitInterval(int commitInterval) {
+        this.commitInterval = commitInterval;
+    } //- setCommitInterval
+    
+    
+    private long startID = 0;
+    
+    /**
+     * Sets the cluster ID after which indexInCollection starts reading.
+     * Use the resume ID logged at the last commit of an interrupted run to
+     * continue it.
+     * @param startID (default 0)
+     */
+    public void setStartID(long startID) {
+        this.startID = startID;
+    } //- setStartID
+    
+    
     /**
      * Updates the index only for records that have corresponding document
      * records (document files within the CiteSeerX corpus).  This re-indexes
      * everything - not indexUpdateTime is recorded.
+     * <br><br>
+     * If assemblerThreads is greater than zero the work is done by
+     * {@link #indexInCollectionPipelined()}.
      * @throws IOException
      */
     public void indexInCollection() throws IOException {
+        if (assemblerThreads > 0) {
+            indexInCollectionPipelined();
+            return;
+        }
         int counter = 0;
         int lastCommit = 0;
-        Long lastID = new Long(0);
-        
-        List<ThinDoc> docsAdded = new ArrayList<ThinDoc>();
+        Long lastID = new Long(startID);
         
         boolean finished = false;
         
@@ -135,75 +241,388 @@ public class IndexUpdateManager {
                 break;
             }
 
-            // Create root element
-            StringBuffer xmlBuffer = new StringBuffer();
-            xmlBuffer.append("<add>");
-
-            int nBatch = 0;
-            
-            for (ThinDoc doc : docs) {
+            ClusterNeighbors neighbors =
+                citedao.getClusterNeighbors(getClusterIDs(docs));
+            Map<Long, Document> publicDocs =
+                loadPublicDocs(docs, true);
 
-                Long clusterid = doc.getCluster();
-                lastID = clusterid;
-                
-                List<Long> cites = new ArrayList<Long>();
-                List<Long> citedby = new ArrayList<Long>();                
-                if (clusterid != null) {
-                    cites = citedao.getCitedClusters(clusterid);
-                    citedby = citedao.getCitingClusters(clusterid);
-                }
+            SolrUpdateWriter.AddStream stream = null;
+            try {
+                for (ThinDoc doc : docs) {
 
-                List<String> dois = citedao.getPaperIDs(clusterid);
-                Document fullDoc = null;
-                boolean documentFound = false;
-                
-                for (String doi : dois) {
-                    fullDoc = csxdao.getDocumentFromDB(doi, false, false);
-                    if (fullDoc.isPublic()) {
-                        documentFound = true;
-                        break;
+                    lastID = doc.getCluster();
+                    if (stream == null) {
+                        stream = solr.openAdd();
                     }
+                    writeDocEntry(buildEntry(doc, neighbors, publicDocs),
+                            stream);
+                    if (stream.getDocCount()>=batchSize) {
+                        stream.close();
+                        stream = null;
+                    }
+                    counter++;
+
                 }
-                if (fullDoc != null && documentFound) {
-                    // We index the full document
-                    fullDoc.setClusterID(clusterid);
-                    fullDoc.setNcites(doc.getNcites());
-                    buildDocEntry(fullDoc, cites, citedby, xmlBuffer);
-                } else {
-                    /*
-                     * We don't have the full document or it's not public.
-                     * We index the citation
-                     */
-                    buildDocEntry(doc, cites, citedby, xmlBuffer);
+                if (stream != null) {
+                    stream.close();
                 }
-                docsAdded.add(doc);
-                if (++nBatch>=200) {
-                    xmlBuffer.append("</add>");
-                    sendPost(xmlBuffer.toString());
-                    // Create the new root element
-                    xmlBuffer = new StringBuffer();
-                    xmlBuffer.append("<add>");
-                    nBatch = 0;
+            } catch (IOException e) {
+                if (stream != null) {
+                    stream.abort();
                 }
-                counter++;
-                
-            }
-            if (nBatch>0) {
-                xmlBuffer.append("</add>");
-                sendPost(xmlBuffer.toString());
+                throw(e);
             }
 
-            sendCommit();
-            docsAdded.clear();
+            solr.commit();
             lastCommit = counter;
             logger.info("commit "+lastCommit);
             System.out.println("commit "+lastCommit);
         }
-        sendOptimize();
+        solr.optimize();
         
     }  //- indexInCollection
     
     
+    /**
+     * Re-indexes the collection as a staged pipeline.  The calling thread
+     * reads cluster pages in keyset order and splits them into batches;
+     * assemblerThreads threads fetch the graph neighbourhood and document
+     * records for each batch and build the update XML; posterThreads
+     * threads send the finished batches to Solr.  Bounded queues between
+     * the stages provide backpressure so that memory use does not depend
+     * on the size of the collection.
+     * <br><br>
+     * Commits are sent every commitInterval posted documents.  Since
+     * batches may complete out of order, each commit logs the highest
+     * cluster ID below which every batch has been posted; passing that ID
+     * to setStartID resumes an interrupted run without gaps.
+     * @throws IOException
+     */
+    public void indexInCollectionPipelined() throws IOException {
+        IndexPipeline pipeline = new IndexPipeline();
+        ExecutorService assemblers =
+            Executors.newFixedThreadPool(assemblerThreads);
+        ExecutorService posters =
+            Executors.newFixedThreadPool(posterThreads);
+        
+        for (int i=0; i<posterThreads; i++) {
+            posters.execute(new BatchPoster(pipeline));
+        }
+        
+        Long lastID = new Long(startID);
+        long seq = 0;
+        try {
+            while (!pipeline.hasFailed()) {
+                List<ThinDoc> docs =
+                    citedao.getClustersInCollection(lastID, 1000);
+                if (docs.isEmpty()) {
+                    break;
+                }
+                for (int i=0; i<docs.size(); i+=batchSize) {
+                    List<ThinDoc> batch = docs.subList(i,
+                            Math.min(i+batchSize, docs.size()));
+                    pipeline.assemblyPermits.acquire();
+                    assemblers.execute(new BatchAssembler(pipeline, seq++,
+                            new ArrayList<ThinDoc>(batch)));
+                }
+                lastID = docs.get(docs.size()-1).getCluster();
+            }
+            assemblers.shutdown();
+            assemblers.awaitTermination(Long.MAX_VALUE, TimeUnit.SECONDS);
+            for (int i=0; i<posterThreads; i++) {
+                pipeline.postQueue.put(IndexBatch.END);
+            }
+            posters.shutdown();
+            posters.awaitTermination(Long.MAX_VALUE, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            assemblers.shutdownNow();
+            posters.shutdownNow();
+            throw new InterruptedIOException("Interrupted while indexing; " +
+                    "resume from "+pipeline.getResumeID());
+        }
+        
+        if (pipeline.hasFailed()) {
+            IOException e = new IOException("Indexing failed; resume from " +
+                    pipeline.getResumeID());
+            e.initCause(pipeline.failure);
+            throw e;
+        }
+        
+        solr.commit();
+        logger.info("commit "+pipeline.posted.get());
+        solr.optimize();
+        
+    }  //- indexInCollectionPipelined
+    
+    
+    /**
+     * Resolves what should be indexed for a cluster: the public document
+     * record if the cluster is in the collection and has one, and the
+     * cluster record otherwise.
+     * @param doc
+     * @param neighbors graph neighbourhood of the page doc was read from
+     * @param publicDocs public document records of the page, as returned
+     * by loadPublicDocs
+     * @return the entry to write to the index.
+     */
+    private IndexEntry buildEntry(ThinDoc doc, ClusterNeighbors neighbors,
+            Map<Long, Document> publicDocs) {
+        Long clusterid = doc.getCluster();
+        
+        long[] cites = neighbors.getCitedClusters(clusterid);
+        long[] citedby = neighbors.getCitingClusters(clusterid);
+
+        Document fullDoc = publicDocs.get(clusterid);
+        if (fullDoc != null) {
+            // We index the full document
+            fullDoc.setClusterID(clusterid);
+            fullDoc.setNcites(doc.getNcites());
+            return new IndexEntry(fullDoc, cites, citedby);
+        }
+        /*
+         * We don't have the full document or it's not public.
+         * We index the citation
+         */
+        return new IndexEntry(DomainTransformer.toDocument(doc), cites,
+                citedby);
+        
+    }  //- buildEntry
+    
+    
+    /**
+     * Loads in full, for each cluster of a page that is in the collection,
+     * its public paper as given by the PublicDOIMapper.  The papers picked
+     * are read in bulk, with citations, acknowledgments, keywords and tags.
+     * @param docs a page of clusters
+     * @param allInCollection if true every cluster is taken to be in the
+     * collection, otherwise each cluster's own flag is used
+     * @return the document to index, keyed by cluster ID, for each cluster
+     * that has one.
+     */
+    private Map<Long, Document> loadPublicDocs(List<ThinDoc> docs,
+            boolean allInCollection) {
+        List<Long> clusters = new ArrayList<Long>();
+        for (ThinDoc doc : docs) {
+            if (allInCollection || doc.getInCollection()) {
+                clusters.add(doc.getCluster());
+            }
+        }
+        Map<Long, Document> publicDocs = new HashMap<Long, Document>();
+        if (clusters.isEmpty()) {
+            return publicDocs;
+        }
+        Map<Long, String> publicDOIs = publicDOIMapper.getPublicDOIs(clusters);
+
+        List<String> picked = new ArrayList<String>();
+        Map<String, Long> pickedClusters = new HashMap<String, Long>();
+        for (Map.Entry<Long, String> publicDOI : publicDOIs.entrySet()) {
+            picked.add(publicDOI.getValue());
+            pickedClusters.put(publicDOI.getValue(), publicDOI.getKey());
+        }
+        for (Document fullDoc : csxdao.getDocumentsFromDB(picked, true,
+                false, false, true, true, true)) {
+            publicDocs.put(pickedClusters.get(
+                    fullDoc.getDatum(Document.DOI_KEY)), fullDoc);
+        }
+        return publicDocs;
+        
+    }  //- loadPublicDocs
+    
+    
+    /**
+     * Document record and graph neighbourhood of a cluster to be indexed.
+     */
+    private static class IndexEntry {
+        
+        final Document doc;
+        final long[] cites;
+        final long[] citedby;
+        
+        IndexEntry(Document doc, long[] cites, long[] citedby) {
+            this.doc = doc;
+            this.cites = cites;
+            this.citedby = citedby;
+        }
+        
+    }  //- class IndexEntry
+    
+    
+    private static List<Long> getClusterIDs(List<ThinDoc> docs) {
+        List<Long> ids = new ArrayList<Long>(docs.size());
+        for (ThinDoc doc : docs) {
+            if (doc.getCluster() != null) {
+                ids.add(doc.getCluster());
+            }
+        }
+        return ids;
+        
+    }  //- getClusterIDs
+    
+    
+    /**
+     * A unit of work passed from the assemblers to the posters.
+     */
+    private static class IndexBatch {
+        
+        static final IndexBatch END = new IndexBatch(-1, null, null);
+        
+        final long seq;
+        final Long lastID;
+        final List<IndexEntry> entries;
+        
+        IndexBatch(long seq, Long lastID, List<IndexEntry> entries) {
+            this.seq = seq;
+            this.lastID = lastID;
+            this.entries = entries;
+        }
+        
+    }  //- class IndexBatch
+    
+    
+    /**
+     * State shared by the stages of a pipelined run.
+     */
+    private class IndexPipeline {
+        
+        final Semaphore assemblyPermits =
+            new Semaphore(assemblerThreads * 2);
+        final BlockingQueue<IndexBatch> postQueue =
+            new ArrayBlockingQueue<IndexBatch>(queueCapacity);
+        final AtomicInteger posted = new AtomicInteger(0);
+        final AtomicInteger sinceCommit = new AtomicInteger(0);
+        
+        volatile Throwable failure;
+        
+        /* Completed batches that are ahead of the contiguous prefix. */
+        private final TreeMap<Long,Long> completed = new TreeMap<Long,Long>();
+        private long nextSeq = 0;
+        private Long resumeID = new Long(startID);
+        
+        boolean hasFailed() {
+            return failure != null;
+        }
+        
+        void fail(Throwable t) {
+            if (failure == null) {
+                failure = t;
+            }
+            logger.fatal("Indexing pipeline failed", t);
+        }
+        
+        /**
+         * Records that a batch has been posted and advances the resume ID
+         * over every batch posted so far without gaps.
+         */
+        synchronized void batchPosted(IndexBatch batch) {
+            completed.put(new Long(batch.seq), batch.lastID);
+            while (!completed.isEmpty() &&
+                    completed.firstKey().longValue() == nextSeq) {
+                resumeID = completed.remove(completed.firstKey());
+                nextSeq++;
+            }
+        }
+        
+        synchronized Long getResumeID() {
+            return resumeID;
+        }
+        
+    }  //- class IndexPipeline
+    
+    
+    /**
+     * Loads the records and graph neighbourhood for one batch of clusters.
+     */
+    private class BatchAssembler implements Runnable {
+        
+        private final IndexPipeline pipeline;
+        private final long seq;
+        private final List<ThinDoc> docs;
+        
+        BatchAssembler(IndexPipeline pipeline, long seq, List<ThinDoc> docs) {
+            this.pipeline = pipeline;
+            this.seq = seq;
+            this.docs = docs;
+        }
+        
+        public void run() {
+            try {
+                if (pipeline.hasFailed()) {
+                    return;
+                }
+                ClusterNeighbors neighbors =
+                    citedao.getClusterNeighbors(getClusterIDs(docs));
+                Map<Long, Document> publicDocs =
+                    loadPublicDocs(docs, true);
+                List<IndexEntry> entries =
+                    new ArrayList<IndexEntry>(docs.size());
+                for (ThinDoc doc : docs) {
+                    entries.add(buildEntry(doc, neighbors, publicDocs));
+                }
+                pipeline.postQueue.put(new IndexBatch(seq,
+                        docs.get(docs.size()-1).getCluster(), entries));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                pipeline.fail(e);
+            } catch (Exception e) {
+                pipeline.fail(e);
+            } finally {
+                pipeline.assemblyPermits.release();
+            }
+        }
+        
+    }  //- class BatchAssembler
+    
+    
+    /**
+     * Streams assembled batches to Solr, reading document full text as it
+     * goes, and sends a commit whenever commitInterval documents have been
+     * posted since the last one.
+     */
+    private class BatchPoster implements Runnable {
+        
+        private final IndexPipeline pipeline;
+        
+        BatchPoster(IndexPipeline pipeline) {
+            this.pipeline = pipeline;
+        }
+        
+        public void run() {
+            while (true) {
+                IndexBatch batch;
+                try {
+                    batch = pipeline.postQueue.take();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (batch == IndexBatch.END) {
+                    return;
+                }
+                if (pipeline.hasFailed()) {
+                    // Keep draining so that assemblers never block.
+                    continue;
+                }
+                try {
+                    postEntries(batch.entries);
+                    pipeline.batchPosted(batch);
+                    int size = batch.entries.size();
+                    int total = pipeline.posted.addAndGet(size);
+                    int pending = pipeline.sinceCommit.addAndGet(size);
+                    if (pending >= commitInterval &&
+                            pipeline.sinceCommit.compareAndSet(pending, 0)) {
+                        Long resumeID = pipeline.getResumeID();
+                        solr.commit();
+                        logger.info("commit "+total+" resume from "+resumeID);
+                        System.out.println("commit "+total);
+                    }
+                } catch (Exception e) {
+                    pipeline.fail(e);
+                }
+            }
+        }
+        
+    }  //- class BatchPoster
+    
+    
     /**
      * Indexes all cluster records modified since the last update time.
      * @throws SQLException
@@ -219,8 +638,6 @@ public class IndexUpdateManager {
         Date lastUpdate = citedao.getLastIndexTime();
         Date currentTime = new Date(System.currentTimeMillis());
         
-        ArrayList<ThinDoc> docsAdded = new ArrayList<ThinDoc>();
-        
         while(true) {
 
             List<ThinDoc> docs = new ArrayList<ThinDoc>();
@@ -234,108 +651,85 @@ public class IndexUpdateManager {
                 break;
             }
 
-            // Create root element
-            StringBuffer xmlBuffer = new StringBuffer();
-            xmlBuffer.append("<add>");
+            ClusterNeighbors neighbors =
+                citedao.getClusterNeighbors(getClusterIDs(docs));
+            Map<Long, Document> publicDocs =
+                loadPublicDocs(docs, false);
 
-            int nBatch = 0;
-            
-            for (ThinDoc doc : docs) {
+            SolrUpdateWriter.AddStream stream = null;
+            Long firstID = null;
+            try {
+                for (ThinDoc doc : docs) {
 
-                Long clusterid = doc.getCluster();
-                lastID = clusterid;
-                
-                List<Long> cites = new ArrayList<Long>();
-                List<Long> citedby = new ArrayList<Long>();
-
-                if (clusterid != null) {
-                    cites = citedao.getCitedClusters(clusterid);
-                    citedby = citedao.getCitingClusters(clusterid);
-                }
-
-                if (doc.getInCollection()) {
-                    List<String> dois = citedao.getPaperIDs(clusterid);
-                    Document fullDoc = null;
-                    boolean documentFound = false;
-                    for (String doi : dois) {
-                        fullDoc = csxdao.getDocumentFromDB(doi, false, false);
-                        if (fullDoc.isPublic()) {
-                            documentFound = true;
-                            break;
-                        }
+                    lastID = doc.getCluster();
+                    if (stream == null) {
+                        stream = solr.openAdd();
+                        firstID = lastID;
                     }
-                    if (fullDoc != null && documentFound) {
-                        // We index the full document
-                        fullDoc.setClusterID(clusterid);
-                        fullDoc.setNcites(doc.getNcites());
-                        buildDocEntry(fullDoc, cites, citedby, xmlBuffer);
-                    } else {
-                        /*
-                         * The full document it's not public.
-                         * We index the citation
-                         */
-                        buildDocEntry(doc, cites, citedby, xmlBuffer);
+                    writeDocEntry(buildEntry(doc, neighbors, publicDocs),
+                            stream);
+                    if (stream.getDocCount()>=batchSize) {
+                        stream.close();
+                        stream = null;
                     }
-                    
-                } else {
-                    // We don't have the full document. Index the citation
-                    buildDocEntry(doc, cites, citedby, xmlBuffer);
+                    counter++;
+
                 }
-                docsAdded.add(doc);
-                if (++nBatch>=200) {
-                    xmlBuffer.append("</add>");
-                    try {
-                        sendPost(xmlBuffer.toString());
-                    }catch (IOException e) {
-                        logger.fatal("An error occurred while posting: " +
-                                xmlBuffer.toString() , e);
-                        throw(e);
-                    }
-                    // Create the new root element
-                    xmlBuffer = new StringBuffer();
-                    xmlBuffer.append("<add>");
-                    nBatch = 0;
+                if (stream != null) {
+                    stream.close();
                 }
-                counter++;
-                
-            }
-            if (nBatch>0) {
-                xmlBuffer.append("</add>");
-                try {
-                    sendPost(xmlBuffer.toString());
-                }catch (IOException e) {
-                    logger.fatal("An error occurred while posting: " +
-                            xmlBuffer.toString() , e);
-                    throw(e);
+            } catch (IOException e) {
+                if (stream != null) {
+                    stream.abort();
                 }
+                logger.fatal("An error occurred while posting clusters " +
+                        firstID + " to " + lastID, e);
+                throw(e);
             }
 
-            //sendCommit();
-            docsAdded.clear();
+            //solr.commit();
             lastCommit = counter;
             logger.info("commit "+lastCommit);
             System.out.println("commit "+lastCommit);
         }
         
-        processDeletions(citedao.getDeletions(currentTime));
+        solr.delete(citedao.getDeletions(currentTime));
         citedao.removeDeletions(currentTime);
         citedao.setLastIndexTime(currentTime);
         
-        sendOptimize();
+        solr.optimize();
                 
     }  //- indexAll
     
     /**
-     * Builds a record in Solr update syntax corresponding to the
-     * supplied parameters, and adds it to the supplied element
-     * @param doc
-     * @param cites
-     * @param citedby
-     * @param buffer
+     * Streams a batch of entries to Solr as one add request.
+     * @param entries
+     * @throws IOException
+     */
+    private void postEntries(List<IndexEntry> entries) throws IOException {
+        SolrUpdateWriter.AddStream stream = solr.openAdd();
+        try {
+            for (IndexEntry entry : entries) {
+                writeDocEntry(entry, stream);
+            }
+            stream.close();
+        } catch (IOException e) {
+            stream.abort();
+            throw(e);
+        }
+        
+    }  //- postEntries
+    
+    /**
+     * Writes a record in Solr update syntax corresponding to the
+     * supplied entry to the supplied stream.
+     * @param entry
+     * @param stream
      * @throws IOException
      */
-    private void buildDocEntry(Document doc, List<Long> cites,
-            List<Long> citedby, StringBuffer buffer) throws IOException {
+    private void writeDocEntry(IndexEntry entry,
+            SolrUpdateWriter.AddStream stream) throws IOException {
+        Document doc = entry.doc;
         String id = doc.getClusterID().toString();
         String doi = doc.getDatum(Document.DOI_KEY, Document.ENCODED);
         String title = doc.getDatum(Document.TITLE_KEY, Document.ENCODED);
@@ -348,7 +742,6 @@ public class IndexUpdateManager {
         String vol = doc.getDatum(Document.VOL_KEY, Document.ENCODED);
         String num = doc.getDatum(Document.NUM_KEY, Document.ENCODED);
         String tech = doc.getDatum(Document.TECH_KEY, Document.ENCODED);
-        String text = getText(doc);
         long vtime = (doc.getVersionTime() != null) ?
                 doc.getVersionTime().getTime() : 0;
         
@@ -388,167 +781,69 @@ public class IndexUpdateManager {
 	    }
         }
         
-        
-        StringBuffer citesBuffer = new StringBuffer();
-        for (Iterator<Long> cids = cites.iterator(); cids.hasNext(); ) {
-            citesBuffer.append(cids.next());
-            if (cids.hasNext()) {
-                citesBuffer.append(" ");
-            }
-        }
-        
-        StringBuffer citedbyBuffer = new StringBuffer();
-        for (Iterator<Long> cids = citedby.iterator(); cids.hasNext(); ) {
-            citedbyBuffer.append(cids.next());
-            if (cids.hasNext()) {
-                citedbyBuffer.append(" ");
-            }
-        }
+        // Read the text only now so a single document's text is held.
+        String text = getText(doc);
         
         // Open the doc Element
-        buffer.append("<doc>");
+        stream.startDoc();
         
-        // Add doc's children
-        addField(buffer, "id", id);
+        // Add doc's children. Null values are skipped by the stream.
+        stream.addField("id", id);
         if (doi != null) {
-            addField(buffer, "doi", doi);
-            addField(buffer, "incol", "1");
+            stream.addField("doi", doi);
+            stream.addField("incol", "1");
         }else{
-            addField(buffer, "incol", "0");
-        }
-        
-        if (title != null) {
-            addField(buffer, "title", title);
-        }
-
-        if (venue != null) {
-            addField(buffer, "venue", venue);
-        }
-
-        if (ventype != null) {
-            addField(buffer, "ventype", ventype);
-        }
-
-        if (abs != null) {
-            addField(buffer, "abstract", abs);
+            stream.addField("incol", "0");
         }
         
-        if (pages != null) {
-            addField(buffer, "pages", pages);
-        }
-
-        if (publ != null) {
-            addField(buffer, "publisher", publ);
-        }
-
-        if (vol != null) {
-            addField(buffer, "vol", vol);
-        }
-
-        if (num != null) {
-            addField(buffer, "num", num);
-        }
-
-        if (tech != null) {
-            addField(buffer, "tech", tech);
-        }
-
-        if (url != null) {
-            addField(buffer, "url", url);
-        }
+        stream.addField("title", title);
+        stream.addField("venue", venue);
+        stream.addField("ventype", ventype);
+        stream.addField("abstract", abs);
+        stream.addField("pages", pages);
+        stream.addField("publisher", publ);
+        stream.addField("vol", vol);
+        stream.addField("num", num);
+        stream.addField("tech", tech);
+        stream.addField("url", url);
 
-        addField(buffer, "ncites", Integer.toString(ncites));
-        addField(buffer, "scites", Integer.toString(scites));
+        stream.addField("ncites", ncites);
+        stream.addField("scites", scites);
         
         try {
             int year_i = Integer.parseInt(year);
-            addField(buffer, "year", Integer.toString(year_i));
-        } catch (Exception e) { }
+            stream.addField("year", year_i);
+        } catch (NumberFormatException e) { }
         
         for (String keyword : keywords) {
-            addField(buffer, "keyword", keyword);
+            stream.addField("keyword", keyword);
         }
         
         for (String name : authorNames) {
-            addField(buffer, "author", name);
+            stream.addField("author", name);
         }
 
         for (String norm : authorNorms) {
-            addField(buffer, "authorNorms", norm);
+            stream.addField("authorNorms", norm);
         }
 
         for (String affil : authorAffils) {
-            addField(buffer, "affil", affil);
+            stream.addField("affil", affil);
         }
         
         for (Tag tag : doc.getTags()) {
-            addField(buffer, "tag", SafeText.encodeHTMLSpecialChars(
+            stream.addField("tag", SafeText.encodeHTMLSpecialChars(
                     tag.getTag()));
         }
-        if (text != null) {
-            addField(buffer, "text", text);
-        }
+        stream.addField("text", text);
 
-        addField(buffer, "cites", citesBuffer.toString());
-        addField(buffer, "citedby", citedbyBuffer.toString());
-        addField(buffer, "vtime", Long.toString(vtime));
+        stream.addField("cites", entry.cites);
+        stream.addField("citedby", entry.citedby);
+        stream.addField("vtime", vtime);
         
         // Close the doc Element.
-        buffer.append("</doc>");
-    } //- buildDocEntry
-    
-    /**
-     * Translates the supplied ThinDoc to a Document object and passes
-     * control the the Document-based buildDocEntry method.
-     * @param thinDoc
-     * @param cites
-     * @param citedby
-     * @param buffer
-     * @throws IOException
-     */
-    private void buildDocEntry(ThinDoc thinDoc, List<Long> cites,
-            List<Long> citedby, StringBuffer buffer) throws IOException {
-
-        Document doc = DomainTransformer.toDocument(thinDoc);
-        buildDocEntry(doc, cites, citedby, buffer);
-        
-    }  //- buildDocEntry
-    
-    /**
-     * Adds a new field to the element.
-     * <b>Note:</b> This method assumes value is XML safe so it does not
-     * contain the 5 XML entities (<, >, ", ', and &). Before adding the value,
-     * invalid XML characters are stripped out.
-     * @param buffer
-     * @param fieldName
-     * @param value
-     */
-    private void addField(StringBuffer buffer, String fieldName, String value) {
-        buffer.append("<field name=\"");
-        buffer.append(fieldName);
-        buffer.append("\">");
-       	String newvalue = value; 
-        // Get rid of XML bad characters. Note: Don't call SafeText.cleanXML
-        // since all the values received are already encoded. SafeText could
-        // produce things like: &amp;amp; since the text already has &amp;
-
-	/* 
-		Added Pradeep Teregowda (26 May 2009), this should clean up
-		some of the mess ?
-	*/
-	try {
-		byte[] utf8Bytes = value.getBytes("UTF-8");
-		newvalue = new String(utf8Bytes,"UTF-8");
-	}
-	catch(UnsupportedEncodingException e) {
-		e.printStackTrace();
-	}
-	/*
-		Ends addition (new value continues)
-	*/
-        buffer.append(SafeText.stripBadChars(newvalue));
-        buffer.append("</field>");
-    } //- addElement
+        stream.endDoc();
+    } //- writeDocEntry
     
     /**
      * Builds a list of author normalizations to create more flexible
@@ -682,88 +977,6 @@ public class IndexUpdateManager {
     }  //- getText
     
     
-    private void sendCommit() throws IOException {
-        sendPost("<commit waitFlush=\"false\" waitSearcher=\"false\"/>");
-    }
-    
-    private void sendOptimize() throws IOException {
-        sendPost("<optimize/>");
-    }
-    
-    private void sendPost(String str) throws IOException {
-
-        HttpURLConnection conn =
-            (HttpURLConnection)solrUpdateUrl.openConnection();
-        try {
-            conn.setRequestMethod("POST");
-        } catch (ProtocolException e) { /* unlikely... */ }
-        conn.setDoOutput(true);
-        conn.setDoInput(true);
-        conn.setUseCaches(false);
-        conn.setAllowUserInteraction(false);
-        conn.setRequestProperty("Content-Type", "text/xml; charset=UTF-8");
-        
-        Writer wr = new OutputStreamWriter(conn.getOutputStream());
-        
-        try {
-            pipe(new StringReader(str), wr);
-        } catch (IOException e) {
-            throw(e);
-        } finally {
-            try { wr.close(); } catch (Exception e) { }
-        }
-        
-        Reader reader = new InputStreamReader(conn.getInputStream());
-        try {
-            StringWriter output = new StringWriter();
-            pipe(reader,output);
-            checkExpectedResponse(output.toString());
-        } catch (IOException e) {
-            throw(e);
-        } finally {
-            try { reader.close(); } catch (Exception e) { }
-        }
-        
-    }  //- sendPost
-    
-    
-    private static void pipe(Reader reader, Writer writer) throws IOException {
-        char[] buf = new char[1024];
-        int read = 0;
-        while ((read = reader.read(buf)) >= 0) {
-            writer.write(buf, 0, read);
-        }
-        writer.flush();
-        
-    }  //- pipe
-    
-    
-    private static final String expectedResponse =
-        "<int name=\"status\">0</int>";
-    
-    private static void checkExpectedResponse(String response)
-    throws IOException {
-        if (response.indexOf(expectedResponse) < 0) {
-            throw new IOException("Unexpected response from solr: "+response);
-        }
-    }
-    
-    
-    private void processDeletions(List<Long> list) throws IOException {
-        if (list.isEmpty()) {
-            return;
-        }
-        for (Object o : list) {
-            String del = "<delete><id>";
-            del += (Long)o;
-            del += "</id></delete>";
-            sendPost(del);  // Have to send multiple posts due to Solr bug.
-        }
-        sendCommit();
-        
-    }  //- processDeletions
-    
-    
     /*
     public static void main(String[] args) throws Exception {
         
@@ -13,8 +13,17 @@
 package edu.psu.citeseerx.updates;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -62,49 +71,156 @@ public class InferenceUpdater {
     } //- setUpdateManager
     
     
+    private int workerThreads = 4;
+    
+    /**
+     * Sets the number of threads building inference data in updateAll.
+     * Each reads citations through the CSXDAO, so the data source should
+     * allow at least as many connections.
+     * @param workerThreads (default 4)
+     */
+    public void setWorkerThreads(int workerThreads) {
+        this.workerThreads = workerThreads;
+    } //- setWorkerThreads
+    
+    
+    private int pageSize = 1000;
+    
+    /**
+     * Sets the number of changed clusters read and written back at a time
+     * by updateAll.
+     * @param pageSize (default 1000)
+     */
+    public void setPageSize(int pageSize) {
+        this.pageSize = pageSize;
+    } //- setPageSize
+    
+    
     /**
      * Updates all clusters that have changed since the last update time.
+     * Changed clusters are read a page at a time in ID order with one
+     * query, so clusters that have not changed (and gaps in the ID space)
+     * cost nothing.  Inference data for the clusters of a page is built on
+     * workerThreads threads, and the cluster records and inference times
+     * of the page are then written back as two batches before the
+     * documents of the clusters are updated.
      * @throws JSONException
      * @throws IOException
      */
     public void updateAll() throws JSONException, IOException {
-        Long min = citedao.getMinClusterID();
-        Long max = citedao.getMaxClusterID();
-        if (min==null || max==null) {
-            System.err.println("Null value for min or max at updateAll");
-        }
+        ExecutorService workers = Executors.newFixedThreadPool(workerThreads);
         long counter = 0;
+        Long lastID = new Long(0);
         
-        for (Long i=min; i<=max; i++) {
-            counter++;
-            Date updateTime = citedao.checkInfUpdateRequired(i);
-            if (updateTime != null) {
-                ThinDoc doc = updateCluster(i);
-                citedao.insertInfUpdateTime(i, updateTime);
-                if (doc != null
-                        && doc.getInCollection()
-                        && doc.getNcites() > 0) {
-                    updateInference(doc);
+        try {
+            while (true) {
+                List<ThinDoc> clusters =
+                    citedao.getInfUpdateRequired(lastID, pageSize);
+                if (clusters.isEmpty()) {
+                    break;
                 }
-            }
-            if ((counter%1000)==0) {
+                
+                List<Future<ThinDoc>> bundles =
+                    new ArrayList<Future<ThinDoc>>(clusters.size());
+                for (final ThinDoc cluster : clusters) {
+                    bundles.add(workers.submit(new Callable<ThinDoc>() {
+                        public ThinDoc call() throws JSONException {
+                            return buildCluster(cluster);
+                        }
+                    }));
+                }
+                
+                List<ThinDoc> updated = new ArrayList<ThinDoc>();
+                List<ThinDoc> docs = new ArrayList<ThinDoc>(clusters.size());
+                Map<Long, Date> times = new HashMap<Long, Date>();
+                for (int i=0; i<clusters.size(); i++) {
+                    ThinDoc cluster = clusters.get(i);
+                    ThinDoc bundle = getResult(bundles.get(i));
+                    if (bundle != null) {
+                        updated.add(bundle);
+                        docs.add(bundle);
+                    } else {
+                        docs.add(cluster);
+                    }
+                    times.put(cluster.getCluster(), cluster.getUpdateTime());
+                }
+                citedao.updateClusters(updated);
+                citedao.insertInfUpdateTimes(times);
+                
+                for (ThinDoc doc : docs) {
+                    if (doc.getInCollection() && doc.getNcites() > 0) {
+                        updateInference(doc);
+                    }
+                }
+                
+                counter += clusters.size();
+                lastID = clusters.get(clusters.size()-1).getCluster();
                 System.out.println("Processed "+counter);
             }
+        } finally {
+            workers.shutdownNow();
         }
         
     }  //- updateAll
     
     
+    private static ThinDoc getResult(Future<ThinDoc> result)
+    throws JSONException, IOException {
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted in updateAll");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof JSONException) {
+                throw (JSONException)cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException)cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error)cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }  //- getResult
+    
+    
     protected ThinDoc updateCluster(Long clusterid) throws JSONException {
         
         ThinDoc cluster = citedao.getThinDoc(clusterid);
-        if (cluster == null || cluster.getNcites() <= 0) return cluster;
+        if (cluster == null) return null;
+        
+        ThinDoc bundle = buildCluster(cluster);
+        if (bundle == null) {
+            return cluster;
+        }
+        citedao.updateCluster(bundle, true);
+        
+        return bundle;
+        
+    }  //- updateCluster
+    
+    
+    /**
+     * Builds new canonical metadata for a cluster from the metadata of its
+     * citations.  Nothing is written.
+     * @param cluster
+     * @return the updated cluster record, or null if the cluster has no
+     * citations to build from.
+     * @throws JSONException
+     */
+    protected ThinDoc buildCluster(ThinDoc cluster) throws JSONException {
+        
+        if (cluster.getNcites() <= 0) return null;
+        Long clusterid = cluster.getCluster();
 
         JSONObject json = new JSONObject();
         
         List<Citation> citations = csxdao.getCitationsForCluster(clusterid);
         if (citations.size() == 0) {
-            return cluster;
+            return null;
         }
         for (Citation citation : citations) {
             ThinDoc thinDoc = DomainTransformer.toThinDoc(citation);
@@ -119,11 +235,10 @@ public class InferenceUpdater {
         bundle.setSelfCites(cluster.getSelfCites());
         bundle.setInCollection(cluster.getInCollection());
         bundle.setObservations(cluster.getObservations());
-        citedao.updateCluster(bundle, true);
         
         return bundle;
         
-    }  //- updateCluster
+    }  //- buildCluster
     
     
     public void updateInference(ThinDoc doc) throws IOException {
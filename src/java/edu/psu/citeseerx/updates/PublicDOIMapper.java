@@ -0,0 +1,274 @@
+/*
+ * Copyright 2007 Penn State University
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.psu.citeseerx.updates;
+
+import java.util.*;
+
+import edu.psu.citeseerx.dao2.logic.CSXDAO;
+import edu.psu.citeseerx.dao2.logic.CiteClusterDAO;
+import edu.psu.citeseerx.domain.Document;
+
+/**
+ * Finds the public paper that stands for a citation cluster: the first
+ * public paper of the cluster in DOI order.  The choice is stored in the
+ * citation graph database, where clustering invalidates it whenever a
+ * paper joins or leaves the cluster, and recently used mappings are also
+ * kept in memory.  Only clusters missing from both are worked out from
+ * their papers, with one query for the papers of all of them and one for
+ * the state of all the papers.
+ * <br><br>
+ * Changes of state made through the UpdateManager invalidate the mapping
+ * of the document's cluster, as does any other update the mapper is
+ * registered to hear about.  An invalidation bumps the version of the
+ * stored mapping, and a mapping worked out is only stored if the version
+ * it was read at is still current, so a lookup racing with a change
+ * never stores the earlier state, in this process or another.  Nor is it
+ * kept in memory if the cluster was invalidated in this process during
+ * the lookup.  Other processes only see changes once their own cached
+ * mapping expires.
+ *
+ * @version $Rev$ $Date$
+ */
+public class PublicDOIMapper implements UpdateListener {
+
+    /* Largest number of clusters looked up with a single query. */
+    private static final int MAX_LOOKUP = 1000;
+
+    private CSXDAO csxdao;
+
+    public void setCSXDAO(CSXDAO csxdao) {
+        this.csxdao = csxdao;
+    } //- setCSXDAO
+
+
+    private CiteClusterDAO citedao;
+
+    public void setCiteClusterDAO(CiteClusterDAO citedao) {
+        this.citedao = citedao;
+    } //- setCiteClusterDAO
+
+
+    private int cacheSize = 10000;
+
+    /**
+     * Sets the number of mappings kept in memory, least recently used
+     * first out (default 10000, 0 for none).
+     * @param cacheSize
+     */
+    public void setCacheSize(int cacheSize) {
+        this.cacheSize = cacheSize;
+    } //- setCacheSize
+
+
+    private long cacheTime = 300000;
+
+    /**
+     * Sets the time, in ms, for which a mapping kept in memory is used
+     * before being read again (default 300000).
+     * @param cacheTime
+     */
+    public void setCacheTime(long cacheTime) {
+        this.cacheTime = cacheTime;
+    } //- setCacheTime
+
+
+    private final Map<Long, CachedDOI> cache =
+        new LinkedHashMap<Long, CachedDOI>(1024, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+        protected boolean removeEldestEntry(
+                Map.Entry<Long, CachedDOI> eldest) {
+            return size() > cacheSize;
+        }
+    };
+
+    /* Guarded by cache: lookups under way, and while there are any, when
+     * each cluster was last invalidated, counted in invalidations. */
+    private int lookups = 0;
+    private long invalidations = 0;
+    private final Map<Long, Long> invalidated = new HashMap<Long, Long>();
+
+
+    /**
+     * @param clusterid
+     * @return the DOI of the public paper standing for the cluster, or
+     * null if it has no public paper.
+     */
+    public String getPublicDOI(Long clusterid) {
+        return getPublicDOIs(Collections.singletonList(clusterid))
+            .get(clusterid);
+    }  //- getPublicDOI
+
+
+    /**
+     * @param clusterids
+     * @return the DOI of the public paper standing for each cluster, by
+     * cluster.  Clusters with no public paper are left out.
+     */
+    public Map<Long, String> getPublicDOIs(Collection<Long> clusterids) {
+        Map<Long, String> dois = new HashMap<Long, String>();
+        Set<Long> unknown = new LinkedHashSet<Long>();
+        long now = System.currentTimeMillis();
+        synchronized(cache) {
+            for (Long clusterid : clusterids) {
+                CachedDOI cached = cache.get(clusterid);
+                if (cached != null && cached.expires > now) {
+                    if (cached.doi != null) {
+                        dois.put(clusterid, cached.doi);
+                    }
+                } else {
+                    unknown.add(clusterid);
+                }
+            }
+        }
+        List<Long> missing = new ArrayList<Long>(unknown);
+
+        for (int i=0; i<missing.size(); i+=MAX_LOOKUP) {
+            List<Long> batch =
+                missing.subList(i, Math.min(i+MAX_LOOKUP, missing.size()));
+            long started;
+            synchronized(cache) {
+                lookups++;
+                started = invalidations;
+            }
+            Map<Long, String> found = new HashMap<Long, String>();
+            Set<Long> current = new HashSet<Long>();
+            try {
+                lookup(batch, found, current);
+            } finally {
+                synchronized(cache) {
+                    for (Long clusterid : batch) {
+                        String doi = found.get(clusterid);
+                        Long changed = invalidated.get(clusterid);
+                        if (cacheSize > 0 && current.contains(clusterid) &&
+                                (changed == null || changed <= started)) {
+                            cache.put(clusterid,
+                                    new CachedDOI(doi, now + cacheTime));
+                        }
+                        if (doi != null) {
+                            dois.put(clusterid, doi);
+                        }
+                    }
+                    if (--lookups == 0) {
+                        invalidated.clear();
+                    }
+                }
+            }
+        }
+        return dois;
+
+    }  //- getPublicDOIs
+
+
+    /**
+     * Invalidates the mapping of a cluster, to be worked out again when
+     * next needed.
+     * @param clusterid
+     */
+    public void invalidate(Long clusterid) {
+        if (clusterid == null) {
+            return;
+        }
+        citedao.invalidatePublicDOI(clusterid);
+        synchronized(cache) {
+            cache.remove(clusterid);
+            if (lookups > 0) {
+                invalidated.put(clusterid, ++invalidations);
+            }
+        }
+    }  //- invalidate
+
+
+    /**
+     * Invalidates the mapping of the cluster the document belongs to in the
+     * citation graph, if any.
+     * @param doc
+     */
+    public void invalidate(Document doc) {
+        invalidate(citedao.getPaperCluster(doc.getDatum(Document.DOI_KEY)));
+    }  //- invalidate
+
+
+    /**
+     * Invalidates the mapping of the cluster of the updated document.
+     */
+    public void handleUpdate(Document doc) {
+        invalidate(doc);
+    }  //- handleUpdate
+
+
+    /*
+     * Reads the stored mappings of the clusters, then works out and stores
+     * those not found, into found.  Clusters whose mapping was read valid,
+     * was stored, or that have no paper are added to current; the others
+     * were invalidated during the lookup.
+     */
+    private void lookup(List<Long> clusterids, Map<Long, String> found,
+            Set<Long> current) {
+        Map<Long, Long> versions = new HashMap<Long, Long>();
+        found.putAll(citedao.getPublicDOIs(clusterids, versions));
+        current.addAll(found.keySet());
+        List<Long> unmapped = new ArrayList<Long>();
+        for (Long clusterid : clusterids) {
+            if (!found.containsKey(clusterid)) {
+                unmapped.add(clusterid);
+            }
+        }
+        if (unmapped.isEmpty()) {
+            return;
+        }
+
+        Map<Long, List<String>> papers = citedao.getPaperIDs(unmapped);
+        List<String> candidates = new ArrayList<String>();
+        for (List<String> ids : papers.values()) {
+            candidates.addAll(ids);
+        }
+        Map<String, Document> records = candidates.isEmpty() ?
+                new HashMap<String, Document>() :
+                csxdao.getDocuments(candidates, false);
+
+        // Clusters with no paper are not stored: they may no longer exist,
+        // and the mapping table only takes clusters that do.
+        for (Long clusterid : unmapped) {
+            if (!papers.containsKey(clusterid)) {
+                current.add(clusterid);
+            }
+        }
+        Map<Long, String> worked = new HashMap<Long, String>();
+        for (Map.Entry<Long, List<String>> cluster : papers.entrySet()) {
+            String doi = null;
+            for (String id : cluster.getValue()) {
+                Document record = records.get(id);
+                if (record != null && record.isPublic()) {
+                    doi = id;
+                    break;
+                }
+            }
+            worked.put(cluster.getKey(), doi);
+        }
+        current.addAll(citedao.insertPublicDOIs(worked, versions));
+        found.putAll(worked);
+
+    }  //- lookup
+
+
+    private static class CachedDOI {
+        final String doi;
+        final long expires;
+
+        CachedDOI(String doi, long expires) {
+            this.doi = doi;
+            this.expires = expires;
+        }
+    }  //- class CachedDOI
+
+}  //- class PublicDOIMapper
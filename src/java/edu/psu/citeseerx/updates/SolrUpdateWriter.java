@@ -0,0 +1,346 @@
+/*
+ * Copyright 2007 Penn State University
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.psu.citeseerx.updates;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.ProtocolException;
+import java.net.URL;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import org.jdom.Verifier;
+
+/**
+ * Sends update requests to a Solr server.  Add requests are serialized
+ * field by field straight onto a chunked HTTP request body, optionally gzip
+ * compressed, so the memory needed to send a batch is bounded by the write
+ * buffer rather than by the size of the batch.
+ * <br><br>
+ * Instances are thread safe; each {@link AddStream} must be used by a
+ * single thread.
+ *
+ * @version $Rev$ $Date$
+ */
+public class SolrUpdateWriter {
+
+    private static final String expectedResponse =
+        "<int name=\"status\">0</int>";
+
+    private final URL solrUpdateUrl;
+
+    public SolrUpdateWriter(URL solrUpdateUrl) {
+        this.solrUpdateUrl = solrUpdateUrl;
+    } //- SolrUpdateWriter
+
+    public SolrUpdateWriter(String solrUpdateUrl)
+    throws MalformedURLException {
+        this(new URL(solrUpdateUrl));
+    } //- SolrUpdateWriter
+
+
+    private int bufferSize = 64*1024;
+
+    /**
+     * Sets the size of the character buffer, and of the HTTP chunks, used
+     * when streaming add requests.
+     * @param bufferSize (default 65536)
+     */
+    public void setBufferSize(int bufferSize) {
+        this.bufferSize = bufferSize;
+    } //- setBufferSize
+
+
+    private boolean gzip = false;
+
+    /**
+     * Compresses add requests with gzip.  The Solr container must be set
+     * up to accept Content-Encoding: gzip request bodies.
+     * @param gzip (default false)
+     */
+    public void setGzip(boolean gzip) {
+        this.gzip = gzip;
+    } //- setGzip
+
+
+    /**
+     * Opens a new add request.  Documents written to the returned stream
+     * are sent as they are written; the request completes on
+     * {@link AddStream#close()}.
+     * @return the stream to write documents to.
+     * @throws IOException
+     */
+    public AddStream openAdd() throws IOException {
+        return new AddStream();
+    } //- openAdd
+
+
+    public void commit() throws IOException {
+        post("<commit waitFlush=\"false\" waitSearcher=\"false\"/>");
+    } //- commit
+
+    public void optimize() throws IOException {
+        post("<optimize/>");
+    } //- optimize
+
+
+    /**
+     * Deletes the given ids from the index and commits.  Ids are sent one
+     * post at a time due to a Solr bug with multiple ids per request.
+     * @param ids
+     * @throws IOException
+     */
+    public void delete(List<? extends Object> ids) throws IOException {
+        delete(ids, true);
+    } //- delete
+
+
+    /**
+     * Deletes the given ids from the index, committing only if asked to,
+     * for callers that commit or optimize afterwards anyway.
+     * @param ids
+     * @param commit
+     * @throws IOException
+     */
+    public void delete(List<? extends Object> ids, boolean commit)
+    throws IOException {
+        if (ids.isEmpty()) {
+            return;
+        }
+        for (Object id : ids) {
+            post("<delete><id>" + id + "</id></delete>");
+        }
+        if (commit) {
+            commit();
+        }
+    } //- delete
+
+
+    /**
+     * Posts a small, complete update command.
+     * @param xml
+     * @throws IOException
+     */
+    public void post(String xml) throws IOException {
+        HttpURLConnection conn = openConnection(false);
+        Writer wr = new OutputStreamWriter(conn.getOutputStream(), "UTF-8");
+        try {
+            wr.write(xml);
+            wr.flush();
+        } finally {
+            try { wr.close(); } catch (Exception e) { }
+        }
+        readResponse(conn);
+    } //- post
+
+
+    private HttpURLConnection openConnection(boolean streaming)
+    throws IOException {
+        HttpURLConnection conn =
+            (HttpURLConnection)solrUpdateUrl.openConnection();
+        try {
+            conn.setRequestMethod("POST");
+        } catch (ProtocolException e) { /* unlikely... */ }
+        conn.setDoOutput(true);
+        conn.setDoInput(true);
+        conn.setUseCaches(false);
+        conn.setAllowUserInteraction(false);
+        conn.setRequestProperty("Content-Type", "text/xml; charset=UTF-8");
+        if (streaming) {
+            conn.setChunkedStreamingMode(bufferSize);
+            if (gzip) {
+                conn.setRequestProperty("Content-Encoding", "gzip");
+            }
+        }
+        return conn;
+    } //- openConnection
+
+
+    private static void readResponse(HttpURLConnection conn)
+    throws IOException {
+        Reader reader = new InputStreamReader(conn.getInputStream(), "UTF-8");
+        try {
+            StringBuffer output = new StringBuffer();
+            char[] buf = new char[1024];
+            int read = 0;
+            while ((read = reader.read(buf)) >= 0) {
+                output.append(buf, 0, read);
+            }
+            if (output.indexOf(expectedResponse) < 0) {
+                throw new IOException("Unexpected response from solr: " +
+                        output);
+            }
+        } finally {
+            try { reader.close(); } catch (Exception e) { }
+        }
+    } //- readResponse
+
+
+    /**
+     * A single streaming &lt;add&gt; request.
+     */
+    public class AddStream {
+
+        private final HttpURLConnection conn;
+        private final Writer writer;
+        private int docCount = 0;
+        private boolean inDoc = false;
+        private boolean closed = false;
+
+        private AddStream() throws IOException {
+            conn = openConnection(true);
+            OutputStream out = conn.getOutputStream();
+            if (gzip) {
+                out = new GZIPOutputStream(out, bufferSize);
+            }
+            writer = new BufferedWriter(new OutputStreamWriter(out, "UTF-8"),
+                    bufferSize);
+            writer.write("<add>");
+        }
+
+        public void startDoc() throws IOException {
+            if (inDoc) {
+                throw new IllegalStateException("document already started");
+            }
+            writer.write("<doc>");
+            inDoc = true;
+        } //- startDoc
+
+        public void endDoc() throws IOException {
+            if (!inDoc) {
+                throw new IllegalStateException("no document started");
+            }
+            writer.write("</doc>");
+            inDoc = false;
+            docCount++;
+        } //- endDoc
+
+        /**
+         * Writes a field to the current document.  Null values are skipped.
+         * <b>Note:</b> The value is assumed to be XML-encoded already, so
+         * it must not contain the 5 XML entities (<, >, ", ', and &).
+         * Characters that are not valid in XML are stripped and unpaired
+         * surrogates are replaced with '?' while writing.
+         * @param fieldName
+         * @param value
+         * @throws IOException
+         */
+        public void addField(String fieldName, String value)
+        throws IOException {
+            if (value == null) {
+                return;
+            }
+            writer.write("<field name=\"");
+            writer.write(fieldName);
+            writer.write("\">");
+            writeClean(value);
+            writer.write("</field>");
+        } //- addField
+
+        public void addField(String fieldName, long value)
+        throws IOException {
+            writer.write("<field name=\"");
+            writer.write(fieldName);
+            writer.write("\">");
+            writer.write(Long.toString(value));
+            writer.write("</field>");
+        } //- addField
+
+        /**
+         * Writes a field whose value is a space separated list of ids.
+         * @param fieldName
+         * @param values
+         * @throws IOException
+         */
+        public void addField(String fieldName, long[] values)
+        throws IOException {
+            writer.write("<field name=\"");
+            writer.write(fieldName);
+            writer.write("\">");
+            for (int i=0; i<values.length; i++) {
+                if (i > 0) {
+                    writer.write(' ');
+                }
+                writer.write(Long.toString(values[i]));
+            }
+            writer.write("</field>");
+        } //- addField
+
+        /**
+         * @return the number of documents completed on this stream.
+         */
+        public int getDocCount() {
+            return docCount;
+        } //- getDocCount
+
+        /**
+         * Completes the request and checks the Solr response.
+         * @throws IOException
+         */
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                writer.write("</add>");
+                writer.flush();
+            } finally {
+                try { writer.close(); } catch (Exception e) { }
+            }
+            readResponse(conn);
+        } //- close
+
+        /**
+         * Drops the request without waiting for a response.  Solr will
+         * reject the truncated body.
+         */
+        public void abort() {
+            closed = true;
+            conn.disconnect();
+        } //- abort
+
+        private void writeClean(String value) throws IOException {
+            int len = value.length();
+            for (int i=0; i<len; i++) {
+                char ch = value.charAt(i);
+                if (Character.isHighSurrogate(ch)) {
+                    if (i+1 < len &&
+                            Character.isLowSurrogate(value.charAt(i+1))) {
+                        char low = value.charAt(++i);
+                        if (Verifier.isXMLCharacter(
+                                Character.toCodePoint(ch, low))) {
+                            writer.write(ch);
+                            writer.write(low);
+                        }
+                    } else {
+                        writer.write('?');
+                    }
+                } else if (Character.isLowSurrogate(ch)) {
+                    writer.write('?');
+                } else if (Verifier.isXMLCharacter(ch)) {
+                    writer.write(ch);
+                }
+            }
+        } //- writeClean
+
+    }  //- class AddStream
+
+}  //- class SolrUpdateWriter
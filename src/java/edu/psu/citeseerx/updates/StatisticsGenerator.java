@@ -19,11 +19,10 @@ import edu.psu.citeseerx.domain.AuthorStatContainer;
 import java.io.*;
 import java.util.ArrayList;
 import java.util.Calendar;
-import java.util.Collection;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Utilities for generating citations statistics for Document, Citations,
@@ -76,6 +75,20 @@ public class StatisticsGenerator {
     public void setOutputDir(String outputDir) {
         this.outputDir = outputDir;
     } //- setOutputDir
+    
+    
+    private int spillThreshold = 0;
+    
+    /**
+     * Set the number of distinct author names whose citation counts are
+     * kept in memory when generating author statistics.  Beyond it, counts
+     * are written to temporary files in the output directory and merged
+     * at the end.
+     * @param spillThreshold (default 0, all counts are kept in memory).
+     */
+    public void setSpillThreshold(int spillThreshold) {
+        this.spillThreshold = spillThreshold;
+    } //- setSpillThreshold
 
     
     /**
@@ -84,8 +97,7 @@ public class StatisticsGenerator {
      */
     public void genStats() throws IOException {
         makeOutputDir();
-        genArticleStats(true);
-        genArticleStats(false);
+        genArticleStats();
         genAuthorStats();    
     } //- genStats
     
@@ -110,27 +122,93 @@ public class StatisticsGenerator {
     
     
     /**
-     * Generate article statistics.
-     * @param includeCitations set to true if processing stats for all
-     * citations, not just for articles in the repository.
+     * Generate article statistics: the most cited clusters overall and for
+     * each year from startingYear on, both among all citations
+     * ("citations" files) and among articles in the repository ("articles"
+     * files).  All rankings are kept in memory during a single pass over
+     * the clusters, in ID order, and the records of the clusters ranked are
+     * fetched once the pass is over.
      * @throws IOException
      */
-    public void genArticleStats(boolean includeCitations) throws IOException {
-        
-        List<ThinDoc> docs = citestat.getMostCitedArticles(numArticles,includeCitations);
-        String fileName = (includeCitations) ? "citations" : "articles";
-        writeDocs(docs, outputDir+FILE_SEP+fileName);
+    public void genArticleStats() throws IOException {
         
         int currentYear = Calendar.getInstance().get(Calendar.YEAR);
-        for (int i=startingYear; i<=currentYear; i++) {
-            docs = citestat.getMostCitedArticlesByYear(
-                    numArticles, i, includeCitations);
-            writeDocs(docs, outputDir+FILE_SEP+fileName+"_"+i);
+        int years = Math.max(currentYear-startingYear+1, 0);
+        TopClusters citations = new TopClusters(numArticles);
+        TopClusters articles = new TopClusters(numArticles);
+        TopClusters[] citationsByYear = new TopClusters[years];
+        TopClusters[] articlesByYear = new TopClusters[years];
+        for (int i=0; i<years; i++) {
+            citationsByYear[i] = new TopClusters(numArticles);
+            articlesByYear[i] = new TopClusters(numArticles);
+        }
+        
+        long start = 0;
+        int batch = 10000;
+        while(true) {
+            start = start+1;
+            List<ThinDoc> clusters = citestat.getClusterSizes(start, batch);
+            if (clusters.isEmpty()) {
+                break;
+            }
+            for (ThinDoc cluster : clusters) {
+                long id = cluster.getCluster();
+                int ncites = cluster.getNcites();
+                int year = cluster.getYear()-startingYear;
+                boolean inYears = year >= 0 && year < years;
+                citations.offer(id, ncites);
+                if (inYears) {
+                    citationsByYear[year].offer(id, ncites);
+                }
+                if (cluster.getInCollection()) {
+                    articles.offer(id, ncites);
+                    if (inYears) {
+                        articlesByYear[year].offer(id, ncites);
+                    }
+                }
+                start = id;
+            }
+        }
+        
+        writeDocs(citations, outputDir+FILE_SEP+"citations");
+        writeDocs(articles, outputDir+FILE_SEP+"articles");
+        for (int i=0; i<years; i++) {
+            int year = startingYear+i;
+            writeDocs(citationsByYear[i],
+                    outputDir+FILE_SEP+"citations_"+year);
+            writeDocs(articlesByYear[i], outputDir+FILE_SEP+"articles_"+year);
         }
         
     }  //- genArticleStats
     
     
+    /*
+     * Writes the clusters of a ranking, fetched in batches, in rank order.
+     * Clusters deleted since the ranking was made are left out.
+     */
+    private void writeDocs(TopClusters top, String fileName)
+    throws IOException {
+        List<Long> ids = top.drain();
+        List<ThinDoc> docs = new ArrayList<ThinDoc>(ids.size());
+        int batch = 1000;
+        for (int i=0; i<ids.size(); i+=batch) {
+            List<Long> ranked = ids.subList(i, Math.min(i+batch, ids.size()));
+            Map<Long,ThinDoc> found = new HashMap<Long,ThinDoc>();
+            for (ThinDoc doc : citestat.getClusters(ranked)) {
+                found.put(doc.getCluster(), doc);
+            }
+            for (Long id : ranked) {
+                ThinDoc doc = found.get(id);
+                if (doc != null) {
+                    docs.add(doc);
+                }
+            }
+        }
+        writeDocs(docs, fileName);
+        
+    }  //- writeDocs
+    
+    
     private static final String NEW_LINE = System.getProperty("line.separator");
     private static final String FILE_SEP = System.getProperty("file.separator");
     
@@ -183,12 +261,62 @@ public class StatisticsGenerator {
     
     
     /**
-     * Generate author statistics.
+     * Generate author statistics.  Citations are counted per lower cased
+     * author name in a first pass over the clusters, of which only the
+     * numAuthors most cited names are kept; a second pass finds the most
+     * frequent spelling of each of those names, which is the one written.
      * @throws IOException
      */
     public void genAuthorStats() throws IOException {
-        HashMap<String,AuthorContainer> authors =
-            new HashMap<String,AuthorContainer>();
+        final AuthorCitationCounts counts =
+            new AuthorCitationCounts(spillThreshold, new File(outputDir));
+        List<AuthorCitationCounts.Entry> top;
+        try {
+            scanAuthors(new AuthorVisitor() {
+                public void visit(String name, int ncites)
+                throws IOException {
+                    counts.add(AuthorCitationCounts.nameID(name), ncites);
+                }
+            });
+            top = counts.top(numAuthors);
+        } finally {
+            counts.clear();
+        }
+        
+        final Map<Long,Map<String,int[]>> spellings =
+            new HashMap<Long,Map<String,int[]>>();
+        for (AuthorCitationCounts.Entry entry : top) {
+            spellings.put(entry.id, new LinkedHashMap<String,int[]>());
+        }
+        scanAuthors(new AuthorVisitor() {
+            public void visit(String name, int ncites) {
+                Map<String,int[]> observations =
+                    spellings.get(AuthorCitationCounts.nameID(name));
+                if (observations == null) {
+                    return;
+                }
+                int[] count = observations.get(name);
+                if (count == null) {
+                    observations.put(name, new int[] { 1 });
+                } else {
+                    count[0]++;
+                }
+            }
+        });
+        writeAuthStats(top, spellings, outputDir+FILE_SEP+"authors");
+        
+    }  //- genAuthorStats
+    
+    
+    private interface AuthorVisitor {
+        void visit(String name, int ncites) throws IOException;
+    }
+    
+    /*
+     * Streams every author name of every cluster, with the number of
+     * citations to the cluster.
+     */
+    private void scanAuthors(AuthorVisitor visitor) throws IOException {
         long start = 0;
         int batch = 10000;
         while(true) {
@@ -198,32 +326,21 @@ public class StatisticsGenerator {
             if (authorStats.isEmpty()) {
                 break;
             }
-            for (Object o : authorStats) {
-                AuthorStatContainer container = (AuthorStatContainer)o;
+            for (AuthorStatContainer container : authorStats) {
                 for (String name : container.getAuthors()) {
-                    AuthorContainer ac = new AuthorContainer(name);
-                    ac.addCitations(container.getNcites());
-                    if (authors.containsKey(ac.getKey())) {
-                        authors.get(ac.getKey()).add(ac);
-                    }
-                    else {
-                        authors.put(ac.getKey(), ac);
-                    }
+                    visitor.visit(name, container.getNcites());
                 }
                 start = container.getCluster();
             }
         }
-        Collection<AuthorContainer> authc = authors.values();
-        List<AuthorContainer> authl = new ArrayList<AuthorContainer>(authc);
-        Collections.sort(authl, new DescendingComparator());
-        int size = (authl.size() > numAuthors) ? numAuthors : authl.size();
-        writeAuthStats(authl.subList(0, size), outputDir+FILE_SEP+"authors");
         
-    }  //- genAuthorStats
+    }  //- scanAuthors
     
     
-    private static void writeAuthStats(List<AuthorContainer> authorStats, 
-            String fileName) throws IOException {
+    private static void writeAuthStats(
+            List<AuthorCitationCounts.Entry> authorStats,
+            Map<Long,Map<String,int[]>> spellings, String fileName)
+    throws IOException {
 
         FileWriter writer = new FileWriter(fileName);
         BufferedWriter out = new BufferedWriter(writer);
@@ -232,114 +349,36 @@ public class StatisticsGenerator {
         String creation = Long.toString(System.currentTimeMillis());
         out.write(creation);
         out.write(NEW_LINE);
-        for (Object o : authorStats) {
-            AuthorContainer container = (AuthorContainer)o;
-            out.write(container.getCanonicalName());
+        for (AuthorCitationCounts.Entry entry : authorStats) {
+            out.write(getCanonicalName(spellings.get(entry.id)));
             out.write("\t");
-            out.write(Integer.toString(container.getCitationCount()));
+            out.write(Integer.toString(entry.count));
             out.write(NEW_LINE);
         }
         out.close();
         
     }  //- writeAuthStats
     
-}  //- class StatisticsGenerator
-
-
-/**
- * Comparator for sorting authors by number of citations in decending order.
- *
- * @author Isaac Councill
- * @version $Rev$ $Date$
- */
-class DescendingComparator implements Comparator<AuthorContainer> {
-    public final int compare(AuthorContainer ac1, AuthorContainer ac2) {
-        return -1*ac1.compareTo(ac2);
-    }
-}  //- class DescendingComparator
-
-
-/**
- * Generic container for author stat data.
- *
- * @author Isaac Councill
- * @version $Rev$ $Date$
- */
-class AuthorContainer implements Comparable<AuthorContainer> {
-    
-    private HashMap<String,Integer> observations =
-        new HashMap<String,Integer>();
-    
-    private String key;
-    
-    public String getKey() {
-        return key;
-    }
-    
     
-    public AuthorContainer(String name) {
-        if (name == null);
-        key = name.toLowerCase();
-        observations.put(name, new Integer(1));
-    }
-    
-    
-    public void addObservation(String name) {
-        if (observations.containsKey(name)) {
-            observations.put(name, observations.get(name)+1);
-        } else {
-            observations.put(name, new Integer(1));
-        }
-    }  //- addObservation
-    
-    
-    private int citations = 0;
-    
-    public void addCitations(int citations) {
-        this.citations += citations; 
-    }
-    
-    public int getCitationCount() {
-        return citations;
-    }
-    
-    
-    public String getCanonicalName() {
+    /*
+     * The most frequent spelling, the first seen among equally frequent
+     * ones.
+     */
+    private static String getCanonicalName(Map<String,int[]> observations) {
         int maxVal = 0;
         String maxName = "";
-        for (String name : observations.keySet()) {
-            int val = observations.get(name).intValue();
+        for (Map.Entry<String,int[]> observation : observations.entrySet()) {
+            int val = observation.getValue()[0];
             if (val > maxVal) {
                 maxVal = val;
-                maxName = name;
+                maxName = observation.getKey();
             }
         }
         return maxName;
         
     }  //- getCanonicalName
     
-    
-    public void add(AuthorContainer ac) {
-        this.addObservation(ac.getCanonicalName());
-        this.addCitations(ac.getCitationCount());
-    }
-    
-    
-    public int compareTo(AuthorContainer ac) {
-        if (ac==null) {
-            return 1;
-        }
-        if (this.getCitationCount() == ac.getCitationCount()) {
-            return 0;
-        } else if (this.getCitationCount() > ac.getCitationCount()) {
-            return 1;
-        } else {
-            return -1;
-        }
-        
-    }  //- compareTo
-        
-}  //- class AuthorContainer
+}  //- class StatisticsGenerator
 
 
 class InvalidNameException extends Exception {
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2007 Penn State University
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.psu.citeseerx.updates;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The most cited clusters among those offered, up to a fixed number, held
+ * as a min-heap over arrays of primitives so that a scan of all clusters
+ * can keep one for each year at little cost.  Equally cited clusters are
+ * ranked by ascending ID.
+ *
+ * @version $Rev$ $Date$
+ */
+class TopClusters {
+
+    private final int capacity;
+    private long[] ids;
+    private int[] sizes;
+    private int n = 0;
+
+    /**
+     * @param capacity number of clusters kept.
+     */
+    TopClusters(int capacity) {
+        this.capacity = Math.max(capacity, 0);
+        int initial = Math.min(this.capacity, 64);
+        ids = new long[initial];
+        sizes = new int[initial];
+    } //- TopClusters
+
+
+    /**
+     * Keeps the cluster if it ranks among the most cited seen so far.
+     * @param id
+     * @param size the number of citations to the cluster.
+     */
+    void offer(long id, int size) {
+        if (n < capacity) {
+            if (n == ids.length) {
+                grow();
+            }
+            ids[n] = id;
+            sizes[n] = size;
+            siftUp(n++);
+        } else if (n > 0 && (size > sizes[0] ||
+                (size == sizes[0] && id < ids[0]))) {
+            ids[0] = id;
+            sizes[0] = size;
+            siftDown(0);
+        }
+    } //- offer
+
+
+    /**
+     * Empties the heap.
+     * @return the IDs of the clusters kept, most cited first.
+     */
+    List<Long> drain() {
+        long[] ranked = new long[n];
+        for (int i=n-1; i>=0; i--) {
+            ranked[i] = ids[0];
+            n--;
+            ids[0] = ids[n];
+            sizes[0] = sizes[n];
+            siftDown(0);
+        }
+        List<Long> top = new ArrayList<Long>(ranked.length);
+        for (long id : ranked) {
+            top.add(id);
+        }
+        return top;
+    } //- drain
+
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i-1) >>> 1;
+            if (!lower(i, parent)) {
+                break;
+            }
+            swap(i, parent);
+            i = parent;
+        }
+    } //- siftUp
+
+    private void siftDown(int i) {
+        while (true) {
+            int child = 2*i+1;
+            if (child >= n) {
+                break;
+            }
+            if (child+1 < n && lower(child+1, child)) {
+                child++;
+            }
+            if (!lower(child, i)) {
+                break;
+            }
+            swap(i, child);
+            i = child;
+        }
+    } //- siftDown
+
+    /*
+     * Whether the cluster at i ranks below the one at j.
+     */
+    private boolean lower(int i, int j) {
+        if (sizes[i] != sizes[j]) {
+            return sizes[i] < sizes[j];
+        }
+        return ids[i] > ids[j];
+    } //- lower
+
+    private void swap(int i, int j) {
+        long id = ids[i];
+        ids[i] = ids[j];
+        ids[j] = id;
+        int size = sizes[i];
+        sizes[i] = sizes[j];
+        sizes[j] = size;
+    } //- swap
+
+    private void grow() {
+        int length = (int)Math.min((long)capacity, ids.length*2L);
+        long[] newIDs = new long[length];
+        int[] newSizes = new int[length];
+        System.arraycopy(ids, 0, newIDs, 0, n);
+        System.arraycopy(sizes, 0, newSizes, 0, n);
+        ids = newIDs;
+        sizes = newSizes;
+    } //- grow
+
+}  //- class TopClusters
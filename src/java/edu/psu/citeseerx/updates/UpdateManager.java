@@ -236,6 +236,24 @@ public class UpdateManager {
     }  //- updateDocument
     
     
+    private PublicDOIMapper publicDOIMapper;
+    
+    /**
+     * Sets the mapper told about changes of document state, which may
+     * change the public paper of the document's cluster (default none).
+     * @param publicDOIMapper
+     */
+    public void setPublicDOIMapper(PublicDOIMapper publicDOIMapper) {
+        this.publicDOIMapper = publicDOIMapper;
+    } //- setPublicDOIMapper
+    
+    private void notifyStateChange(Document doc) {
+        if (publicDOIMapper != null) {
+            publicDOIMapper.invalidate(doc);
+        }
+    } //- notifyStateChange
+    
+    
     private List<UpdateListener> listeners =
         new ArrayList<UpdateListener>();
     
@@ -276,12 +294,14 @@ public class UpdateManager {
     {
     	doc.setState(DocumentProperties.IS_DMCA);
     	csxdao.setDocState(doc,DocumentProperties.IS_DMCA);
+    	notifyStateChange(doc);
     }
     
     public void deleteDocument(Document doc) 
     throws JSONException {
     	doc.setState(DocumentProperties.LOGICAL_DELETE);
     	csxdao.setDocState(doc,DocumentProperties.LOGICAL_DELETE);
+    	notifyStateChange(doc);
     }
     
     /**
@@ -297,6 +317,7 @@ public class UpdateManager {
     throws JSONException {
         doc.setState(DocumentProperties.IS_PUBLIC);
         csxdao.setDocState(doc,DocumentProperties.IS_PUBLIC );
+        notifyStateChange(doc);
     } //- setPublicDocument
     
     
@@ -0,0 +1,227 @@
+/*
+ * Copyright 2007 Penn State University
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.psu.citeseerx.utility;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Sorts text files that do not fit in memory.  Lines are read into runs of
+ * bounded size, each run is sorted in memory and written to a temporary
+ * file, and the runs are then merged.  Lines are compared with
+ * String.compareTo, so records that should sort numerically must start
+ * with fixed width numbers (see {@link #pad(long)}).  The sort is stable.
+ *
+ * @version $Rev$ $Date$
+ */
+public class ExternalSorter {
+
+    private static final String ENCODING = "UTF-8";
+
+    private final File tmpDir;
+
+    public ExternalSorter(File tmpDir) {
+        this.tmpDir = tmpDir;
+    } //- ExternalSorter
+
+
+    private long maxRunChars = 32L*1024*1024;
+
+    /**
+     * @param maxRunChars maximum number of characters held in memory
+     * while building a run (default 32M).
+     */
+    public void setMaxRunChars(long maxRunChars) {
+        this.maxRunChars = maxRunChars;
+    } //- setMaxRunChars
+
+
+    private int maxMergeFiles = 128;
+
+    /**
+     * @param maxMergeFiles maximum number of runs merged at once; more runs
+     * than this are merged in several passes (default 128).
+     */
+    public void setMaxMergeFiles(int maxMergeFiles) {
+        this.maxMergeFiles = Math.max(2, maxMergeFiles);
+    } //- setMaxMergeFiles
+
+
+    /**
+     * Writes the lines of input to output in sorted order.  The input and
+     * output may be the same file.
+     * @param input
+     * @param output
+     * @throws IOException
+     */
+    public void sort(File input, File output) throws IOException {
+
+        List<File> runs = new ArrayList<File>();
+        try {
+            BufferedReader reader = openReader(input);
+            try {
+                List<String> lines = new ArrayList<String>();
+                long chars = 0;
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    lines.add(line);
+                    chars += line.length();
+                    if (chars >= maxRunChars) {
+                        runs.add(writeRun(lines));
+                        lines.clear();
+                        chars = 0;
+                    }
+                }
+                if (!lines.isEmpty() || runs.isEmpty()) {
+                    runs.add(writeRun(lines));
+                }
+            } finally {
+                try { reader.close(); } catch (IOException e) {}
+            }
+
+            while (runs.size() > maxMergeFiles) {
+                List<File> group =
+                    new ArrayList<File>(runs.subList(0, maxMergeFiles));
+                File merged = File.createTempFile("run", ".txt", tmpDir);
+                merge(group, merged);
+                runs.subList(0, maxMergeFiles).clear();
+                runs.add(0, merged);
+                deleteAll(group);
+            }
+            merge(runs, output);
+
+        } finally {
+            deleteAll(runs);
+        }
+
+    }  //- sort
+
+
+    /**
+     * @param value a non-negative number.
+     * @return value as 19 zero padded digits, the width of Long.MAX_VALUE.
+     */
+    public static String pad(long value) {
+        String digits = Long.toString(value);
+        StringBuilder buf = new StringBuilder(19);
+        for (int i=digits.length(); i<19; i++) {
+            buf.append('0');
+        }
+        return buf.append(digits).toString();
+    } //- pad
+
+
+    private File writeRun(List<String> lines) throws IOException {
+        Collections.sort(lines);
+        File run = File.createTempFile("run", ".txt", tmpDir);
+        BufferedWriter writer = openWriter(run);
+        try {
+            for (String line : lines) {
+                writer.write(line);
+                writer.write('\n');
+            }
+        } finally {
+            writer.close();
+        }
+        return run;
+    } //- writeRun
+
+
+    /*
+     * Runs are merged in order, so equal lines keep the order of the runs
+     * they came from.
+     */
+    private void merge(List<File> runs, File output) throws IOException {
+
+        PriorityQueue<RunReader> queue = new PriorityQueue<RunReader>();
+        BufferedWriter writer = null;
+        try {
+            for (int i=0; i<runs.size(); i++) {
+                RunReader reader = new RunReader(openReader(runs.get(i)), i);
+                if (reader.next()) {
+                    queue.add(reader);
+                } else {
+                    reader.close();
+                }
+            }
+            writer = openWriter(output);
+            while (!queue.isEmpty()) {
+                RunReader reader = queue.poll();
+                writer.write(reader.line);
+                writer.write('\n');
+                if (reader.next()) {
+                    queue.add(reader);
+                } else {
+                    reader.close();
+                }
+            }
+        } finally {
+            for (RunReader reader : queue) {
+                reader.close();
+            }
+            if (writer != null) {
+                writer.close();
+            }
+        }
+
+    }  //- merge
+
+
+    private static BufferedReader openReader(File file) throws IOException {
+        return new BufferedReader(new InputStreamReader(
+                new FileInputStream(file), ENCODING), 64*1024);
+    } //- openReader
+
+    private static BufferedWriter openWriter(File file) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(file), ENCODING), 64*1024);
+    } //- openWriter
+
+    private static void deleteAll(List<File> files) {
+        for (File file : files) {
+            file.delete();
+        }
+    } //- deleteAll
+
+
+    private static class RunReader implements Comparable<RunReader> {
+
+        private final BufferedReader reader;
+        private final int order;
+        String line;
+
+        RunReader(BufferedReader reader, int order) {
+            this.reader = reader;
+            this.order = order;
+        }
+
+        boolean next() throws IOException {
+            line = reader.readLine();
+            return line != null;
+        }
+
+        void close() {
+            try { reader.close(); } catch (IOException e) {}
+        }
+
+        public int compareTo(RunReader other) {
+            int c = line.compareTo(other.line);
+            return (c != 0) ? c : order - other.order;
+        }
+
+    }  //- class RunReader
+
+}  //- class ExternalSorter
@@ -13,10 +13,13 @@
 package edu.psu.citeseerx.web;
 
 import edu.psu.citeseerx.dao2.logic.CSXDAO;
+import edu.psu.citeseerx.domain.CheckSum;
 import edu.psu.citeseerx.domain.Document;
 import edu.psu.citeseerx.domain.DocumentFileInfo;
+import edu.psu.citeseerx.webutils.FileSender;
 import edu.psu.citeseerx.webutils.RedirectUtils;
 
+import org.springframework.dao.DataAccessException;
 import org.springframework.web.servlet.mvc.Controller;
 import org.springframework.web.servlet.ModelAndView;
 
@@ -29,7 +32,9 @@ import java.util.Map;
 
 /**
  * Process a request to download a file, sending the file to the user. If for 
- * some reason the file is not found and Internal error is generated.
+ * some reason the file is not found the user is redirected to the document
+ * summary. Files are sent by {@link FileSender}, which answers conditional
+ * and byte range requests; the stored SHA1 of the file is its ETag.
  * @author Isaac Councill
  * @version $Rev: 81 $ $Date: 2011-01-14 17:37:35 -0500 (Fri, 14 Jan 2011) $
  */
@@ -61,9 +66,6 @@ public class FileDownloadController implements Controller {
             return new ModelAndView("baddoi", model);
         }
         
-        BufferedInputStream input = null;
-        BufferedOutputStream output = null;
-        
         try {
             Document doc = null;
             try {
@@ -72,19 +74,18 @@ public class FileDownloadController implements Controller {
                 e.printStackTrace();
             }
             
-	    if (doc.isDMCA() == true) {
-        	String dmcaTitle = "DMCA Notice";
-                model.put("doi", doi);
-                model.put("pagetitle", dmcaTitle);
-                return new ModelAndView("dmcaPage", model);
-
-	    }
             if (doc == null || doc.isPublic() == false) {
                 String errorTitle = "Document Not Found";
                 model.put("doi", doi);
                 model.put("pagetitle", errorTitle);
                 return new ModelAndView("baddoi", model);
             }
+            if (doc.isDMCA() == true) {
+                String dmcaTitle = "DMCA Notice";
+                model.put("doi", doi);
+                model.put("pagetitle", dmcaTitle);
+                return new ModelAndView("dmcaPage", model);
+            }
             
             if (type.equalsIgnoreCase("url")) {
 
@@ -124,29 +125,40 @@ public class FileDownloadController implements Controller {
                     return new ModelAndView("baddoi", model);
                 }
             
-                FileInputStream in = csxdao.getFileInputStream(doi, rep, type);
-                input = new BufferedInputStream(in);
-            
-                int contentLength = input.available();
-                response.setContentLength(contentLength);
-            
-                output = new BufferedOutputStream(response.getOutputStream());
-                while(contentLength-- > 0) {
-                    output.write(input.read());
-                }
-                output.flush();
+                File file = new File(csxdao.getPath(doi, rep, type));
+                FileSender.sendFile(request, response, file,
+                        getETag(doi, type));
             }
         } catch (IOException e) {
             e.printStackTrace();
-            RedirectUtils.sendRedirect(request, response, 
-                    "/viewdoc/summary?doi="+doi);
+            if (!response.isCommitted()) {
+                response.reset();
+                RedirectUtils.sendRedirect(request, response, 
+                        "/viewdoc/summary?doi="+doi);
+            }
             return null;
-        } finally {
-            try { input.close(); } catch (Exception exc) {}
-            try { output.close(); } catch (Exception exc) {}
         }
         return null;
         
     }  //- handleRequest
+    
+    
+    /*
+     * The stored SHA1 of the file is used as its entity tag, so clients
+     * can revalidate cached copies without downloading them again.
+     */
+    private String getETag(String doi, String type) {
+        try {
+            for (CheckSum checksum : csxdao.getChecksumsForDocument(doi)) {
+                if (type.equalsIgnoreCase(checksum.getFileType())
+                        && checksum.getSha1() != null) {
+                    return checksum.getSha1();
+                }
+            }
+        } catch (DataAccessException e) {
+            e.printStackTrace();
+        }
+        return null;
+    } //- getETag
 
 }  //- class FileDownloadController
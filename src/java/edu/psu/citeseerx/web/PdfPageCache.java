@@ -0,0 +1,299 @@
+/*
+ * Copyright 2007 Penn State University
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.psu.citeseerx.web;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import com.lowagie.text.Document;
+import com.lowagie.text.DocumentException;
+import com.lowagie.text.pdf.PdfCopy;
+import com.lowagie.text.pdf.PdfImportedPage;
+import com.lowagie.text.pdf.PdfReader;
+
+import edu.psu.citeseerx.dao2.logic.CSXDAO;
+
+/**
+ * Extracts single pages of repository PDFs as stand alone PDF documents.
+ * <br><br>
+ * Extracted pages are kept on disk in a directory next to the repository
+ * file (<i>doi</i>.pages/<i>page</i>.pdf) so repeat requests are served as
+ * static files; a page is extracted again when the PDF is newer than it.
+ * To extract, parsed PdfReaders are kept in a pool shared by all requests,
+ * bounded both by number of readers and by the total size of the files
+ * they were read from, and evicted least recently used first.
+ *
+ * @version $Rev$ $Date$
+ */
+public class PdfPageCache {
+
+    private static final String PAGE_DIR_SUFFIX = ".pages";
+    private static int OUTPUT_BYTE_ARRAY_INITIAL_SIZE = 4096;
+
+    private CSXDAO csxdao;
+
+    public void setCSXDAO (CSXDAO csxdao) {
+        this.csxdao = csxdao;
+    } //- setCSXDAO
+
+    private int maxReaders = 32;
+
+    /**
+     * @param maxReaders maximum number of PdfReaders kept open.
+     */
+    public void setMaxReaders(int maxReaders) {
+        this.maxReaders = maxReaders;
+    } //- setMaxReaders
+
+    private long maxReaderBytes = 256L * 1024 * 1024;
+
+    /**
+     * @param maxReaderBytes maximum total size of the PDF files the open
+     * readers were read from.
+     */
+    public void setMaxReaderBytes(long maxReaderBytes) {
+        this.maxReaderBytes = maxReaderBytes;
+    } //- setMaxReaderBytes
+
+    private boolean diskCache = true;
+
+    /**
+     * @param diskCache whether extracted pages are stored next to the
+     * repository file.
+     */
+    public void setDiskCache(boolean diskCache) {
+        this.diskCache = diskCache;
+    } //- setDiskCache
+
+
+    private final LinkedHashMap<String, ReaderEntry> readers =
+        new LinkedHashMap<String, ReaderEntry>(16, 0.75f, true);
+    private long readerBytes = 0;
+
+
+    /**
+     * Returns the stored copy of a page, extracting it first if it is not
+     * stored yet or is older than the PDF.
+     * @param doi
+     * @param repID
+     * @param page the page number, starting from 1.
+     * @return the file holding the page, or null if pages cannot be stored
+     * on disk, in which case {@link #extractPage} should be used.
+     * @throws IllegalArgumentException if the document has no such page.
+     * @throws IOException
+     * @throws DocumentException
+     */
+    public File getPageFile(String doi, String repID, int page)
+    throws IOException, DocumentException {
+        if (!diskCache) {
+            return null;
+        }
+        File pdf = new File(csxdao.getPath(doi, repID, "pdf"));
+        File pageDir = new File(pdf.getParentFile(),
+                pdf.getName().substring(0, pdf.getName().length() -
+                        ".pdf".length()) + PAGE_DIR_SUFFIX);
+        File pageFile = new File(pageDir, page + ".pdf");
+
+        if (pageFile.isFile() && pageFile.lastModified() >= pdf.lastModified()) {
+            return pageFile;
+        }
+        if (!pdf.isFile()) {
+            throw new IOException("No PDF for " + doi);
+        }
+        boolean writable = pageDir.isDirectory() ? pageDir.canWrite() :
+            pdf.getParentFile().canWrite();
+        if (!writable) {
+            return null;
+        }
+
+        // Extracted before the directory is made, so that requests for
+        // pages the document doesn't have leave nothing behind.
+        ByteArrayOutputStream baos = extractPage(doi, repID, page);
+        pageDir.mkdir();
+        if (!pageDir.isDirectory()) {
+            return null;
+        }
+
+        // Written under a temporary name and renamed so that concurrent
+        // requests never see a partial file.
+        File tmp = File.createTempFile("page" + page + "-", ".tmp",
+                pageDir);
+        try {
+            FileOutputStream out = new FileOutputStream(tmp);
+            try {
+                baos.writeTo(out);
+            } finally {
+                out.close();
+            }
+            if (!tmp.renameTo(pageFile)) {
+                pageFile.delete();
+                if (!tmp.renameTo(pageFile)) {
+                    throw new IOException("Could not store " + pageFile);
+                }
+            }
+        } finally {
+            tmp.delete();
+        }
+        return pageFile;
+
+    }  //- getPageFile
+
+
+    /**
+     * @param doi
+     * @param repID
+     * @param page the page number, starting from 1.
+     * @return a PDF document holding only the given page.
+     * @throws IllegalArgumentException if the document has no such page.
+     * @throws IOException
+     * @throws DocumentException
+     */
+    public ByteArrayOutputStream extractPage(String doi, String repID,
+            int page) throws IOException, DocumentException {
+
+        ReaderEntry entry = acquire(doi, repID);
+        try {
+            // PdfReader is not safe for concurrent use.
+            synchronized(entry) {
+                PdfReader reader = entry.reader;
+                if (page < 1 || page > reader.getNumberOfPages()) {
+                    throw new IllegalArgumentException("No page " + page +
+                            " in " + doi);
+                }
+                Document document = new Document(
+                        reader.getPageSizeWithRotation(page));
+                ByteArrayOutputStream baos =
+                    new ByteArrayOutputStream(OUTPUT_BYTE_ARRAY_INITIAL_SIZE);
+                PdfCopy copy = new PdfCopy(document, baos);
+                document.open();
+                PdfImportedPage docPage = copy.getImportedPage(reader, page);
+                copy.addPage(docPage);
+                document.close();
+                return baos;
+            }
+        } finally {
+            release(entry);
+        }
+
+    }  //- extractPage
+
+
+    /**
+     * Closes all pooled readers.
+     */
+    public synchronized void clear() {
+        for (ReaderEntry entry : readers.values()) {
+            evict(entry);
+        }
+        readers.clear();
+        readerBytes = 0;
+    } //- clear
+
+
+    private ReaderEntry acquire(String doi, String repID)
+    throws IOException {
+        String key = repID + "/" + doi;
+        File pdf = new File(csxdao.getPath(doi, repID, "pdf"));
+        long modified = pdf.lastModified();
+        synchronized(this) {
+            ReaderEntry entry = readers.get(key);
+            if (entry != null && entry.modified >= modified) {
+                entry.users++;
+                return entry;
+            }
+        }
+
+        // Parsing is slow, so it is done without holding the pool lock;
+        // if another request opened the same document meanwhile, the copy
+        // opened here is dropped.
+        PdfReader reader = csxdao.getPdfReader(doi, repID);
+        ReaderEntry opened = new ReaderEntry(reader,
+                Math.max(pdf.length(), 1), modified);
+        synchronized(this) {
+            ReaderEntry entry = readers.get(key);
+            if (entry != null && entry.modified >= modified) {
+                reader.close();
+                entry.users++;
+                return entry;
+            }
+            if (entry != null) {
+                readers.remove(key);
+                readerBytes -= entry.size;
+                evict(entry);
+            }
+            opened.users++;
+            readers.put(key, opened);
+            readerBytes += opened.size;
+            trim();
+            return opened;
+        }
+
+    }  //- acquire
+
+
+    private synchronized void release(ReaderEntry entry) {
+        entry.users--;
+        if (entry.evicted && entry.users == 0) {
+            entry.reader.close();
+        }
+    } //- release
+
+
+    /*
+     * Evicts least recently used readers until the pool is within bounds,
+     * always keeping the most recent one.
+     */
+    private void trim() {
+        List<ReaderEntry> evicted = new ArrayList<ReaderEntry>();
+        Iterator<ReaderEntry> it = readers.values().iterator();
+        while (readers.size() > 1 &&
+                (readers.size() > maxReaders || readerBytes > maxReaderBytes)) {
+            ReaderEntry entry = it.next();
+            it.remove();
+            readerBytes -= entry.size;
+            evicted.add(entry);
+        }
+        for (ReaderEntry entry : evicted) {
+            evict(entry);
+        }
+    } //- trim
+
+    private void evict(ReaderEntry entry) {
+        entry.evicted = true;
+        if (entry.users == 0) {
+            entry.reader.close();
+        }
+    } //- evict
+
+
+    private static class ReaderEntry {
+        final PdfReader reader;
+        final long size;
+        final long modified;
+        int users = 0;
+        boolean evicted = false;
+
+        ReaderEntry(PdfReader reader, long size, long modified) {
+            this.reader = reader;
+            this.size = size;
+            this.modified = modified;
+        }
+    }  //- class ReaderEntry
+
+}  //- class PdfPageCache
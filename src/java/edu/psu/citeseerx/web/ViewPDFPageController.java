@@ -13,6 +13,7 @@
 package edu.psu.citeseerx.web;
 
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
@@ -25,27 +26,23 @@ import javax.servlet.http.HttpServletResponse;
 import org.springframework.web.servlet.ModelAndView;
 import org.springframework.web.servlet.mvc.Controller;
 
-import com.lowagie.text.Document;
 import com.lowagie.text.DocumentException;
-import com.lowagie.text.pdf.PdfCopy;
-import com.lowagie.text.pdf.PdfImportedPage;
-import com.lowagie.text.pdf.PdfReader;
 
-import edu.psu.citeseerx.dao2.logic.CSXDAO;
+import edu.psu.citeseerx.webutils.FileSender;
 
 /**
+ * Sends a single page of a document's PDF, as extracted and stored by a
+ * {@link PdfPageCache}.
  * @author Juan Pablo Fernandez Ramirez
  * @version $Rev$ $Date$
  */
 public class ViewPDFPageController implements Controller {
     
-    private static int OUTPUT_BYTE_ARRAY_INITIAL_SIZE = 4096;
+    private PdfPageCache pdfPageCache;
     
-    private CSXDAO csxdao;
-    
-    public void setCSXDAO (CSXDAO csxdao) {
-        this.csxdao = csxdao;
-    } //- setCSXDAO
+    public void setPdfPageCache (PdfPageCache pdfPageCache) {
+        this.pdfPageCache = pdfPageCache;
+    } //- setPdfPageCache
     
     /* (non-Javadoc)
      * @see org.springframework.web.servlet.mvc.Controller#handleRequest(javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse)
@@ -75,22 +72,22 @@ public class ViewPDFPageController implements Controller {
         }
         
         try {
-            PdfReader reader = csxdao.getPdfReader(doi, rep);
-            Document document = new Document(
-                    reader.getPageSizeWithRotation(iPage));
-            ByteArrayOutputStream baos =
-                new ByteArrayOutputStream(OUTPUT_BYTE_ARRAY_INITIAL_SIZE);
-            PdfCopy copy = new PdfCopy(document, baos);
-            document.open();
-            PdfImportedPage docPage = copy.getImportedPage(reader, iPage);
-            copy.addPage(docPage);
-            document.close();
-            
+            File pageFile = pdfPageCache.getPageFile(doi, rep, iPage);
             response.setContentType("application/pdf");
-            response.setContentLength(baos.size());
-            ServletOutputStream out = response.getOutputStream();
-            baos.writeTo(out);
-            out.flush();
+            if (pageFile != null) {
+                FileSender.sendFile(request, response, pageFile, null);
+            }else{
+                ByteArrayOutputStream baos =
+                    pdfPageCache.extractPage(doi, rep, iPage);
+                response.setContentLength(baos.size());
+                ServletOutputStream out = response.getOutputStream();
+                baos.writeTo(out);
+                out.flush();
+            }
+        }catch (IllegalArgumentException e) {
+            e.printStackTrace();
+            model.put("pagetitle", errorTitle);
+            return new ModelAndView("viewDocError", model);
         }catch (IOException e) {
             e.printStackTrace();
             model.put("pagetitle", errorTitle);
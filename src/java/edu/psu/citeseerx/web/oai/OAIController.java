@@ -18,6 +18,7 @@ import java.util.HashMap;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import edu.psu.citeseerx.oai.verbs.StreamingVerb;
 import edu.psu.citeseerx.oai.verbs.Verb;
 
 import org.jdom.Document;
@@ -154,30 +155,39 @@ public class OAIController implements Controller {
     	String verb = null;
 		verb = ServletRequestUtils.getStringParameter(request, "verb", "");
 
-		Document xmlResponse;
+		Verb handler;
 
 		if(verb.equals("GetRecord")) {
-			xmlResponse = getRecord.processRequest(request);
+			handler = getRecord;
 		}
 		else if(verb.equals("Identify")) {
-			xmlResponse = identify.processRequest(request);
+			handler = identify;
 		}
 		else if(verb.equals("ListIdentifiers")) {
-			xmlResponse = listIdentifiers.processRequest(request);
+			handler = listIdentifiers;
 		}
 		else if(verb.equals("ListMetadataFormats")) {
-			xmlResponse = listMetadataFormats.processRequest(request);
+			handler = listMetadataFormats;
 		}
 		else if(verb.equals("ListRecords")) {
-			xmlResponse = listRecords.processRequest(request);
+			handler = listRecords;
 		}
 		else if(verb.equals("ListSets")) {
-			xmlResponse = listSets.processRequest(request);
+			handler = listSets;
 		}
 		else {
-			xmlResponse = badVerb.processRequest(request);
+			handler = badVerb;
 		}
 		
+		if (handler instanceof StreamingVerb) {
+			// Written as it's produced, without going through the view.
+			response.setContentType("text/xml; charset=UTF-8");
+			((StreamingVerb)handler).processRequest(request, 
+					response.getOutputStream());
+			return null;
+		}
+		Document xmlResponse = handler.processRequest(request);
+		
 		HashMap<String, Object> model = new HashMap<String, Object>();
 		model.put("xml", xmlResponse);
 		return new ModelAndView("oai2", model);
@@ -0,0 +1,263 @@
+/*
+ * Copyright 2007 Penn State University
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.psu.citeseerx.webutils;
+
+import javax.servlet.http.*;
+
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Sends a file from disk as the body of a response.  Conditional requests
+ * (If-None-Match, If-Modified-Since) are answered with 304 Not Modified and
+ * a single byte range (Range, If-Range) with 206 Partial Content, which is
+ * what PDF viewers use for partial reads.  Requests asking for several
+ * ranges get the whole file.
+ * <br><br>
+ * When the container offers Tomcat's sendfile support the file is handed
+ * to the connector and never enters the JVM; otherwise it is copied with
+ * FileChannel.transferTo.
+ * @version $Rev$ $Date$
+ */
+public class FileSender {
+
+    private static final String SENDFILE_SUPPORT =
+        "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME =
+        "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START =
+        "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END =
+        "org.apache.tomcat.sendfile.end";
+
+    // Smaller files are cheaper to write directly than to hand off.
+    private static final long SENDFILE_MIN_SIZE = 48 * 1024;
+
+    /**
+     * Sends the file, or the part of it asked for, honoring conditional
+     * request headers.  The content type and any other headers must be set
+     * before calling this.
+     * @param request
+     * @param response
+     * @param file
+     * @param etag entity tag for the current file content, without quotes,
+     * or null if none is known.
+     * @throws FileNotFoundException if the file does not exist.
+     * @throws IOException
+     */
+    public static void sendFile(HttpServletRequest request,
+            HttpServletResponse response, File file, String etag)
+    throws IOException {
+
+        if (!file.isFile()) {
+            throw new FileNotFoundException(file.getPath());
+        }
+        long length = file.length();
+        // HTTP dates have a resolution of one second.
+        long lastModified = file.lastModified() / 1000 * 1000;
+        String quotedTag = (etag != null) ? "\"" + etag + "\"" : null;
+
+        if (quotedTag != null) {
+            response.setHeader("ETag", quotedTag);
+        }
+        if (lastModified > 0) {
+            response.setDateHeader("Last-Modified", lastModified);
+        }
+        response.setHeader("Accept-Ranges", "bytes");
+
+        if (notModified(request, quotedTag, lastModified)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        long start = 0;
+        long end = length - 1;
+        String range = request.getHeader("Range");
+        if (range != null && ifRangeMatches(request, quotedTag, lastModified)) {
+            long[] bounds = parseRange(range, length);
+            if (bounds == null) {
+                response.setHeader("Content-Range", "bytes */" + length);
+                response.sendError(
+                        HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                return;
+            }
+            if (bounds.length == 2) {
+                start = bounds[0];
+                end = bounds[1];
+                response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                response.setHeader("Content-Range",
+                        "bytes " + start + "-" + end + "/" + length);
+            }
+        }
+        long count = end - start + 1;
+        setContentLength(response, count);
+
+        if ("HEAD".equalsIgnoreCase(request.getMethod()) || count <= 0) {
+            return;
+        }
+
+        if (count >= SENDFILE_MIN_SIZE &&
+                Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            request.setAttribute(SENDFILE_FILENAME, file.getCanonicalPath());
+            request.setAttribute(SENDFILE_START, new Long(start));
+            request.setAttribute(SENDFILE_END, new Long(end + 1));
+            return;
+        }
+
+        FileInputStream in = new FileInputStream(file);
+        try {
+            FileChannel channel = in.getChannel();
+            OutputStream out = response.getOutputStream();
+            WritableByteChannel target = Channels.newChannel(out);
+            long position = start;
+            while (position <= end) {
+                long sent = channel.transferTo(position, end + 1 - position,
+                        target);
+                if (sent <= 0) {
+                    // The file was truncated after its length was taken.
+                    break;
+                }
+                position += sent;
+            }
+            out.flush();
+        } finally {
+            try { in.close(); } catch (IOException e) {}
+        }
+
+    }  //- sendFile
+
+
+    /*
+     * If-None-Match takes precedence over If-Modified-Since, as in
+     * RFC 2616 section 14.26.
+     */
+    private static boolean notModified(HttpServletRequest request,
+            String quotedTag, long lastModified) {
+        String method = request.getMethod();
+        if (!"GET".equalsIgnoreCase(method) &&
+                !"HEAD".equalsIgnoreCase(method)) {
+            return false;
+        }
+        String ifNoneMatch = request.getHeader("If-None-Match");
+        if (ifNoneMatch != null) {
+            return quotedTag != null && tagListMatches(ifNoneMatch, quotedTag);
+        }
+        long ifModifiedSince = getDateHeader(request, "If-Modified-Since");
+        return ifModifiedSince >= 0 && lastModified > 0 &&
+            lastModified <= ifModifiedSince;
+    } //- notModified
+
+
+    private static boolean ifRangeMatches(HttpServletRequest request,
+            String quotedTag, long lastModified) {
+        String ifRange = request.getHeader("If-Range");
+        if (ifRange == null) {
+            return true;
+        }
+        ifRange = ifRange.trim();
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            // Weak tags may not be used with If-Range.
+            return quotedTag != null && quotedTag.equals(ifRange);
+        }
+        long date = getDateHeader(request, "If-Range");
+        return date >= 0 && lastModified > 0 && lastModified <= date;
+    } //- ifRangeMatches
+
+
+    private static boolean tagListMatches(String header, String quotedTag) {
+        for (String tag : header.split(",")) {
+            tag = tag.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals("*") || tag.equals(quotedTag)) {
+                return true;
+            }
+        }
+        return false;
+    } //- tagListMatches
+
+
+    private static long getDateHeader(HttpServletRequest request,
+            String name) {
+        try {
+            return request.getDateHeader(name);
+        } catch (IllegalArgumentException e) {
+            return -1;
+        }
+    } //- getDateHeader
+
+
+    /**
+     * Parses a Range header against a file of the given length.
+     * @param header
+     * @param length
+     * @return the first and last byte positions of a single satisfiable
+     * range, an empty array if the header should be ignored and the whole
+     * file sent, or null if no range can be satisfied.
+     */
+    static long[] parseRange(String header, long length) {
+        header = header.trim();
+        if (!header.startsWith("bytes=")) {
+            return new long[0];
+        }
+        String spec = header.substring("bytes=".length()).trim();
+        if (spec.indexOf(',') >= 0) {
+            return new long[0];
+        }
+        int dash = spec.indexOf('-');
+        if (dash < 0) {
+            return new long[0];
+        }
+        try {
+            String first = spec.substring(0, dash).trim();
+            String last = spec.substring(dash + 1).trim();
+            long start, end;
+            if (first.length() == 0) {
+                // Suffix range: the final bytes of the file.
+                long suffix = Long.parseLong(last);
+                if (suffix <= 0 || length == 0) {
+                    return null;
+                }
+                start = Math.max(0, length - suffix);
+                end = length - 1;
+            } else {
+                start = Long.parseLong(first);
+                end = (last.length() == 0) ? length - 1 : Long.parseLong(last);
+                if (start >= length) {
+                    return null;
+                }
+                if (end < start) {
+                    return new long[0];
+                }
+                end = Math.min(end, length - 1);
+            }
+            return new long[] { start, end };
+        } catch (NumberFormatException e) {
+            return new long[0];
+        }
+    } //- parseRange
+
+
+    private static void setContentLength(HttpServletResponse response,
+            long length) {
+        if (length <= Integer.MAX_VALUE) {
+            response.setContentLength((int)length);
+        } else {
+            response.setHeader("Content-Length", Long.toString(length));
+        }
+    } //- setContentLength
+
+}  //- class FileSender
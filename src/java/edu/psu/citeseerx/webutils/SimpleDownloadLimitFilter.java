@@ -13,13 +13,40 @@
 package edu.psu.citeseerx.webutils;
 
 import java.io.*;
+import java.util.ArrayList;
 import java.util.Date;
-import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import javax.servlet.*;
 import javax.servlet.http.*;
 
 /**
- * Filter to prevent massive downloads from the same ip address. 
+ * Filter to prevent massive downloads from the same ip address.  Two limits
+ * are applied: a repeat of the same request (ip address and query) within
+ * timeLimit milliseconds of the last accepted one is rejected and logged,
+ * and an ip address may make at most limit requests within a sliding
+ * window of window milliseconds (one day by default).
+ * <br><br>
+ * Request threads never wait on each other: state is kept per ip and per
+ * request in concurrent maps and updated with compare-and-set.  A daemon
+ * thread writes the log, removes entries that can no longer affect a
+ * decision, and periodically logs hit and block counts.  A map holds at
+ * most maxEntries entries: when a new client would go past that, the next
+ * few entries in insertion order are looked at and the one seen longest
+ * ago or with the fewest requests in the window is evicted, while the
+ * others go back to the end of the order.  Every entry thus comes up for
+ * eviction in turn, wherever it hashes, so memory use stays bounded under
+ * floods and every client is still limited.
  * @author Isaac Councill
  * @version $Rev$ $Date$
  */
@@ -28,17 +55,43 @@ public class SimpleDownloadLimitFilter implements Filter {
     private int limit = 1000;
     private String redirectUrl = "";
 
-    // 30 Seconds.
+    // 3 Seconds.
     private Long timeLimit = new Long(3000);
     
-    private HashMap<String,Integer> dlCounts = new HashMap<String,Integer>();
+    private long window = ONE_DAY;
+    private int maxEntries = 500000;
+    private long statsInterval = 1000*60*60;
+    
     private String[] allowedUserAgents = new String[0];
     private String[] allowedIPs = new String[0];
     private String ipLogFilter = "ipLog.txt";
     private BufferedWriter ipLogWriter = null;
     
-    private HashMap<String, Long>sameDL = new HashMap<String, Long>();
- 
+    private final ConcurrentHashMap<String,AtomicReference<WindowCount>>
+        dlCounts =
+            new ConcurrentHashMap<String,AtomicReference<WindowCount>>();
+    private final AtomicInteger dlCountsSize = new AtomicInteger();
+    private final Queue<Tracked<AtomicReference<WindowCount>>> dlCountsOrder =
+        new ConcurrentLinkedQueue<Tracked<AtomicReference<WindowCount>>>();
+    private final ConcurrentHashMap<String, AtomicLong> sameDL =
+        new ConcurrentHashMap<String, AtomicLong>();
+    private final AtomicInteger sameDLSize = new AtomicInteger();
+    private final Queue<Tracked<AtomicLong>> sameDLOrder =
+        new ConcurrentLinkedQueue<Tracked<AtomicLong>>();
+    
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong allowed = new AtomicLong();
+    private final AtomicLong repeatBlocks = new AtomicLong();
+    private final AtomicLong limitBlocks = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong logDrops = new AtomicLong();
+    
+    private static final int LOG_QUEUE_SIZE = 10000;
+    private final BlockingQueue<String> logQueue =
+        new LinkedBlockingQueue<String>(LOG_QUEUE_SIZE);
+    private Thread maintenanceThread;
+    private volatile boolean running = false;
+    
     /* (non-Javadoc)
      * @see javax.servlet.Filter#init(javax.servlet.FilterConfig)
      */
@@ -89,6 +142,26 @@ public class SimpleDownloadLimitFilter implements Filter {
                     "Invalid time limit specified: "+timeLimitStr);
             System.err.println("Using default limit of "+timeLimit);
         }
+        String windowStr = config.getInitParameter("window");
+        if (windowStr != null) {
+            try {
+                window = Long.parseLong(windowStr);
+            }catch (NumberFormatException e) {
+                System.err.println("SimpleDownloadLimitFilter: " +
+                        "Invalid window specified: "+windowStr);
+                System.err.println("Using default window of "+window);
+            }
+        }
+        String maxEntriesStr = config.getInitParameter("maxEntries");
+        if (maxEntriesStr != null) {
+            try {
+                maxEntries = Integer.parseInt(maxEntriesStr);
+            }catch (NumberFormatException e) {
+                System.err.println("SimpleDownloadLimitFilter: " +
+                        "Invalid maxEntries specified: "+maxEntriesStr);
+                System.err.println("Using default maxEntries of "+maxEntries);
+            }
+        }
         String ipLogFileStr = config.getInitParameter("ipLogFile");
         if (ipLogFileStr != null) {
             ipLogFilter = ipLogFileStr;
@@ -104,6 +177,17 @@ public class SimpleDownloadLimitFilter implements Filter {
             System.err.println("SimpleDownloadLimitFilter: " +
                     "A problem ocurred while opening the log file: "+ipLogFilter);
         }
+        
+        running = true;
+        maintenanceThread = new Thread(new Runnable() {
+            public void run() {
+                maintain();
+            }
+        }, "SimpleDownloadLimitFilter");
+        maintenanceThread.setDaemon(true);
+        maintenanceThread.start();
+        config.getServletContext().setAttribute(
+                SimpleDownloadLimitFilter.class.getName(), this);
     }  //- init
     
     
@@ -114,7 +198,9 @@ public class SimpleDownloadLimitFilter implements Filter {
             ServletResponse response, FilterChain chain)
     throws IOException, ServletException {
 
+        hits.incrementAndGet();
         if (allowedUserAgentorIP(request)) {
+            allowed.incrementAndGet();
             chain.doFilter(request, response);
             return;
         }
@@ -133,69 +219,363 @@ public class SimpleDownloadLimitFilter implements Filter {
     }  //- doFilter
     
     
-    private synchronized boolean downloadsExceeded(ServletRequest request) {
+    private boolean downloadsExceeded(ServletRequest request) {
 
-        updateFlushTime();
         String ipaddr = request.getRemoteAddr();
         HttpServletRequest hreq = (HttpServletRequest)request;
         String rQS = hreq.getQueryString();
         String keySameDL = ipaddr+rQS;
+        long actualTime = System.currentTimeMillis();
 
-        if (sameDL.containsKey(keySameDL)) {
-            Long lastHit = sameDL.get(keySameDL);
-            Long actualTime = System.currentTimeMillis();
-            if ((actualTime-lastHit) <= timeLimit) {
-                if (ipLogWriter!=null) {
-                    StringBuilder buffer = new StringBuilder();
-                    buffer.append(ipaddr);
-                    buffer.append('\t');
-                    buffer.append(rQS);
-                    buffer.append('\t');
-                    buffer.append(new Date(actualTime));
-                    try {
-                        ipLogWriter.write(buffer.toString());
-                        ipLogWriter.newLine();
-                        ipLogWriter.flush();
-                    }catch (Exception e) {
-                        e.printStackTrace();
-                        System.err.println("SimpleDownloadLimitFilter: " +
-                                "A problem ocurred while writing to the log file: "
-                                + ipLogFilter);
-                    }
-                }
-                return true;
+        AtomicLong lastHit = sameDL.get(keySameDL);
+        if (lastHit == null) {
+            lastHit = track(sameDL, sameDLSize, sameDLOrder, keySameDL,
+                    new AtomicLong(actualTime));
+            while (sameDLSize.get() > maxEntries &&
+                    evict(sameDL, sameDLSize, sameDLOrder, keySameDL,
+                            LAST_HIT)) {
+                evictions.incrementAndGet();
             }
-            sameDL.put(keySameDL, actualTime);
         }else{
-            sameDL.put(keySameDL, System.currentTimeMillis());
+            while (true) {
+                long last = lastHit.get();
+                if ((actualTime-last) <= timeLimit) {
+                    repeatBlocks.incrementAndGet();
+                    log(ipaddr, rQS, actualTime);
+                    return true;
+                }
+                if (lastHit.compareAndSet(last, actualTime)) {
+                    break;
+                }
+            }
         }
         
-        if (dlCounts.containsKey(ipaddr)) {
-            Integer dlc = dlCounts.get(ipaddr);
-            if (dlc >= limit) {
+        AtomicReference<WindowCount> count = dlCounts.get(ipaddr);
+        if (count == null) {
+            count = track(dlCounts, dlCountsSize, dlCountsOrder, ipaddr,
+                    new AtomicReference<WindowCount>(
+                            new WindowCount(bucketOf(actualTime), 0, 0)));
+            while (dlCountsSize.get() > maxEntries &&
+                    evictIP(ipaddr, actualTime)) {
+                evictions.incrementAndGet();
+            }
+        }
+        long bucket = bucketOf(actualTime);
+        while (true) {
+            WindowCount current = count.get();
+            WindowCount rolled = current.rollTo(bucket);
+            if (rolled.estimate(actualTime, window) >= limit) {
+                limitBlocks.incrementAndGet();
                 return true;
             }
-            dlCounts.put(ipaddr, dlc+1);
-        } else {
-            dlCounts.put(ipaddr, new Integer(1));
+            if (count.compareAndSet(current, rolled.increment())) {
+                return false;
+            }
         }
-        return false;
         
     }  //- downloadsExceeded
+    
+    
+    /*
+     * Adds a new entry, returning the entry that ended up in the map.
+     */
+    private <T> T track(ConcurrentHashMap<String, T> map, AtomicInteger size,
+            Queue<Tracked<T>> order, String key, T value) {
+        T previous = map.putIfAbsent(key, value);
+        if (previous != null) {
+            return previous;
+        }
+        size.incrementAndGet();
+        order.offer(new Tracked<T>(key, value));
+        return value;
+    } //- track
+    
+    
+    /*
+     * A map entry, queued in the order entries were added.  The queue may
+     * still hold entries that have since been removed from the map; those
+     * are dropped when they come up.
+     */
+    private static class Tracked<T> {
+        final String key;
+        final T value;
+        
+        Tracked(String key, T value) {
+            this.key = key;
+            this.value = value;
+        }
+        
+        boolean isIn(ConcurrentHashMap<String, T> map) {
+            return map.get(key) == value;
+        }
         
+    }  //- class Tracked
     
-    private long lastFlushTime = System.currentTimeMillis();
-    private static final long ONE_DAY = 1000*60*60*24;
     
-    private void updateFlushTime() {
-        long currentTime = System.currentTimeMillis();
-        if (currentTime-lastFlushTime >= ONE_DAY) {
-            dlCounts.clear();
-            sameDL.clear();
-            lastFlushTime = currentTime;
+    /*
+     * Orders entries for eviction: the lowest is evicted first.
+     */
+    private interface Rank<T> {
+        double of(T value);
+    }  //- interface Rank
+    
+    
+    private static final Rank<AtomicLong> LAST_HIT = new Rank<AtomicLong>() {
+        public double of(AtomicLong lastHit) {
+            return lastHit.get();
+        }
+    };
+    
+    
+    // Entries looked at to choose one to evict.
+    private static final int EVICTION_SAMPLE = 8;
+    
+    /*
+     * Removes the lowest ranked of the next few entries in insertion order,
+     * other than the one just added, and puts the others back at the end
+     * of the order.  Returns false if none was removed.
+     */
+    private <T> boolean evict(ConcurrentHashMap<String, T> map,
+            AtomicInteger size, Queue<Tracked<T>> order, String added,
+            Rank<T> rank) {
+        List<Tracked<T>> sample = new ArrayList<Tracked<T>>(EVICTION_SAMPLE);
+        Tracked<T> victim = null;
+        double victimRank = 0;
+        Tracked<T> next;
+        while (sample.size() < EVICTION_SAMPLE &&
+                (next = order.poll()) != null) {
+            if (!next.isIn(map)) {
+                continue;
+            }
+            sample.add(next);
+            if (next.key.equals(added)) {
+                continue;
+            }
+            double nextRank = rank.of(next.value);
+            if (victim == null || nextRank < victimRank) {
+                victim = next;
+                victimRank = nextRank;
+            }
+        }
+        boolean removed =
+            victim != null && map.remove(victim.key, victim.value);
+        if (removed) {
+            size.decrementAndGet();
+        }
+        for (Tracked<T> entry : sample) {
+            if (entry != victim) {
+                order.offer(entry);
+            }
         }
+        return removed;
+    } //- evict
+    
+    
+    /*
+     * Evicts by the number of requests in the window ending now, so the
+     * clients closest to the limit stay tracked.
+     */
+    private boolean evictIP(String added, final long now) {
+        final long bucket = bucketOf(now);
+        return evict(dlCounts, dlCountsSize, dlCountsOrder, added,
+                new Rank<AtomicReference<WindowCount>>() {
+                    public double of(AtomicReference<WindowCount> count) {
+                        return count.get().rollTo(bucket).estimate(now,
+                                window);
+                    }
+                });
+    } //- evictIP
+    
+    
+    private long bucketOf(long time) {
+        return time / window;
+    } //- bucketOf
+    
+    
+    /**
+     * Requests from one ip address counted in two consecutive fixed buckets
+     * of window length.  The count over the sliding window ending now is
+     * estimated by weighting the previous bucket with the part of it that
+     * is still inside the window.  Instances are immutable so they can be
+     * swapped with compare-and-set.
+     */
+    private static class WindowCount {
+        final long bucket;
+        final int previous;
+        final int current;
         
-    }  //- updateFlushTime
+        WindowCount(long bucket, int previous, int current) {
+            this.bucket = bucket;
+            this.previous = previous;
+            this.current = current;
+        }
+        
+        WindowCount rollTo(long now) {
+            if (now == bucket) {
+                return this;
+            } else if (now == bucket+1) {
+                return new WindowCount(now, current, 0);
+            } else {
+                return new WindowCount(now, 0, 0);
+            }
+        }
+        
+        WindowCount increment() {
+            return new WindowCount(bucket, previous, current+1);
+        }
+        
+        double estimate(long time, long window) {
+            double elapsed = (double)(time - bucket*window) / window;
+            return previous * (1.0 - elapsed) + current;
+        }
+    }  //- class WindowCount
+    
+    
+    private void log(String ipaddr, String rQS, long actualTime) {
+        if (ipLogWriter == null) {
+            return;
+        }
+        StringBuilder buffer = new StringBuilder();
+        buffer.append(ipaddr);
+        buffer.append('\t');
+        buffer.append(rQS);
+        buffer.append('\t');
+        buffer.append(new Date(actualTime));
+        if (!logQueue.offer(buffer.toString())) {
+            logDrops.incrementAndGet();
+        }
+    } //- log
+    
+    
+    private static final long ONE_DAY = 1000*60*60*24;
+    private static final long SWEEP_INTERVAL = 1000*60;
+    
+    /*
+     * Run by the maintenance thread: writes queued log lines, and every
+     * SWEEP_INTERVAL removes expired entries.
+     */
+    private void maintain() {
+        long lastSweep = System.currentTimeMillis();
+        long lastStats = lastSweep;
+        while (running || !logQueue.isEmpty()) {
+            try {
+                String line = logQueue.poll(1000, TimeUnit.MILLISECONDS);
+                if (line != null) {
+                    writeLog(line);
+                    while ((line = logQueue.poll()) != null) {
+                        writeLog(line);
+                    }
+                    flushLog();
+                }
+            } catch (InterruptedException e) {
+                // Stopping; drain what is queued.
+            }
+            long now = System.currentTimeMillis();
+            if (now-lastSweep >= SWEEP_INTERVAL) {
+                sweep(now);
+                lastSweep = now;
+            }
+            if (now-lastStats >= statsInterval) {
+                writeLog(getStatistics() + "\t" + new Date(now));
+                flushLog();
+                lastStats = now;
+            }
+        }
+    }  //- maintain
+    
+    
+    private void sweep(long now) {
+        for (Iterator<Map.Entry<String, AtomicLong>> it =
+            sameDL.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<String, AtomicLong> entry = it.next();
+            if (now-entry.getValue().get() > timeLimit &&
+                    sameDL.remove(entry.getKey(), entry.getValue())) {
+                sameDLSize.decrementAndGet();
+            }
+        }
+        // With an integer limit, an estimate below one makes the same
+        // decisions as a new entry starting from zero.
+        long bucket = bucketOf(now);
+        for (Iterator<Map.Entry<String, AtomicReference<WindowCount>>> it =
+            dlCounts.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<String, AtomicReference<WindowCount>> entry = it.next();
+            WindowCount count = entry.getValue().get().rollTo(bucket);
+            if (count.estimate(now, window) < 1 &&
+                    dlCounts.remove(entry.getKey(), entry.getValue())) {
+                dlCountsSize.decrementAndGet();
+            }
+        }
+        prune(sameDL, sameDLOrder);
+        prune(dlCounts, dlCountsOrder);
+    }  //- sweep
+    
+    
+    /*
+     * Drops queued entries that are no longer in the map.
+     */
+    private <T> void prune(ConcurrentHashMap<String, T> map,
+            Queue<Tracked<T>> order) {
+        for (Iterator<Tracked<T>> it = order.iterator(); it.hasNext(); ) {
+            if (!it.next().isIn(map)) {
+                it.remove();
+            }
+        }
+    }  //- prune
+    
+    
+    private void writeLog(String line) {
+        if (ipLogWriter == null) {
+            return;
+        }
+        try {
+            ipLogWriter.write(line);
+            ipLogWriter.newLine();
+        }catch (Exception e) {
+            e.printStackTrace();
+            System.err.println("SimpleDownloadLimitFilter: " +
+                    "A problem ocurred while writing to the log file: "
+                    + ipLogFilter);
+        }
+    } //- writeLog
+    
+    private void flushLog() {
+        if (ipLogWriter == null) {
+            return;
+        }
+        try {
+            ipLogWriter.flush();
+        }catch (IOException e) {
+            e.printStackTrace();
+        }
+    } //- flushLog
+    
+    
+    /**
+     * @return request and block counts since the filter started, and the
+     * number of ip addresses and requests currently tracked.
+     */
+    public String getStatistics() {
+        return "hits=" + hits.get() +
+            " allowedAgents=" + allowed.get() +
+            " repeatBlocks=" + repeatBlocks.get() +
+            " limitBlocks=" + limitBlocks.get() +
+            " evictions=" + evictions.get() +
+            " logDrops=" + logDrops.get() +
+            " trackedIPs=" + dlCountsSize.get() +
+            " trackedRequests=" + sameDLSize.get();
+    } //- getStatistics
+    
+    public long getHits() {
+        return hits.get();
+    } //- getHits
+    
+    public long getRepeatBlocks() {
+        return repeatBlocks.get();
+    } //- getRepeatBlocks
+    
+    public long getLimitBlocks() {
+        return limitBlocks.get();
+    } //- getLimitBlocks
     
     
     private boolean allowedUserAgentorIP(ServletRequest request) {
@@ -226,6 +606,15 @@ public class SimpleDownloadLimitFilter implements Filter {
      * @see javax.servlet.Filter#destroy()
      */
     public void destroy() {
+        running = false;
+        if (maintenanceThread != null) {
+            maintenanceThread.interrupt();
+            try {
+                maintenanceThread.join(10000);
+            }catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
         if (ipLogWriter!= null) {
             try {
                 ipLogWriter.close();